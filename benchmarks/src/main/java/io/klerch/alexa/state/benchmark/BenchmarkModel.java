@@ -0,0 +1,66 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model with fields in all scopes used throughout the benchmarks. Its size is driven
+ * by the number of entries in its history.
+ */
+public class BenchmarkModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.SESSION) public boolean active;
+    @AlexaStateSave(Scope = AlexaScope.SESSION) public String lastIntent;
+    @AlexaStateSave(Scope = AlexaScope.USER) public String name;
+    @AlexaStateSave(Scope = AlexaScope.USER) public int score;
+    @AlexaStateSave(Scope = AlexaScope.USER) public List<String> history = new ArrayList<>();
+    @AlexaStateSave(Scope = AlexaScope.APPLICATION) public long highscore;
+    public String transientValue;
+
+    public BenchmarkModel() {}
+
+    /**
+     * Fills all fields of the model with sample data.
+     *
+     * @param model        the model to fill
+     * @param historySize  number of entries in the history of the model
+     * @return the given model
+     */
+    static BenchmarkModel withSampleData(final BenchmarkModel model, final int historySize) {
+        model.active = true;
+        model.lastIntent = "AMAZON.HelpIntent";
+        model.name = "Bob";
+        model.score = 42;
+        model.highscore = 4711L;
+        model.transientValue = "ignored";
+        for (int i = 0; i < historySize; i++) {
+            model.history.add("answer-" + i);
+        }
+        return model;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(final int score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Takes all the command line options of JMH. Unless a result format is given
+ * results are written as JSON to jmh-result.json so they can be tracked across builds.
+ */
+public class BenchmarkRunner {
+    private static final String resultFileDefault = "jmh-result.json";
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!commandLineOptions.getResult().hasValue()) {
+                options.result(resultFileDefault);
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import com.amazon.speech.speechlet.Application;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.User;
+
+/**
+ * Creates Alexa sessions for benchmarks.
+ */
+final class BenchmarkSessions {
+    private BenchmarkSessions() {}
+
+    static Session newSession() {
+        final Application application = new Application("amzn1.ask.skill.benchmark");
+        final User user = User.builder().withUserId("amzn1.ask.account.benchmark").build();
+        return Session.builder().withSessionId("amzn1.echo-api.session.benchmark")
+                .withApplication(application).withUser(user).build();
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.handler.AWSDynamoStateHandler;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the batching of reads and writes in the AWSDynamoStateHandler against a local stub
+ * of DynamoDB so results reflect the client-side overhead only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DynamoStateHandlerBenchmark {
+    // more than one write-batch (25 items) and one read-batch (100 items) of the handler
+    @Param({"1", "25", "100"})
+    public int modelCount;
+
+    private Session session;
+    private StubAmazonDynamoDB dynamoClient;
+    private AWSDynamoStateHandler handler;
+    private List<BenchmarkModel> models;
+    private List<String> ids;
+
+    @Setup
+    public void setup() throws AlexaStateException {
+        session = BenchmarkSessions.newSession();
+        dynamoClient = new StubAmazonDynamoDB();
+        handler = new AWSDynamoStateHandler(session, dynamoClient, "benchmark");
+        models = new ArrayList<>();
+        ids = new ArrayList<>();
+        for (int i = 0; i < modelCount; i++) {
+            final BenchmarkModel model = BenchmarkModel.withSampleData(handler.createModel(BenchmarkModel.class, "model" + i), 10);
+            models.add(model);
+            ids.add(model.getId());
+        }
+        handler.writeModels(models);
+    }
+
+    @Benchmark
+    public void writeModels() throws AlexaStateException {
+        handler.writeModels(models);
+    }
+
+    @Benchmark
+    public Map<String, BenchmarkModel> readModels() throws AlexaStateException {
+        // force reads to go to the stub instead of being served from the session
+        session.getAttributes().clear();
+        return handler.readModels(BenchmarkModel.class, ids);
+    }
+}
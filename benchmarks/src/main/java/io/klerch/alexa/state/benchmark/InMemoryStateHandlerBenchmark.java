@@ -0,0 +1,73 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.handler.InMemoryStateHandler;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hot paths of a handler with a backend against the InMemoryStateHandler. Without latency results
+ * reflect the overhead of the handler only, with latency they show how it adds up with round trips to a backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InMemoryStateHandlerBenchmark {
+    // simulated latency of a round trip to the backend in milliseconds
+    @Param({"0", "1"})
+    public long latencyMillis;
+
+    private static final int modelCount = 10;
+
+    private Session session;
+    private InMemoryStateHandler handler;
+    private List<BenchmarkModel> models;
+    private List<String> ids;
+
+    @Setup
+    public void setup() throws AlexaStateException {
+        session = BenchmarkSessions.newSession();
+        handler = new InMemoryStateHandler(session, new InMemoryStateHandler.Store()).withLatency(latencyMillis);
+        models = new ArrayList<>();
+        ids = new ArrayList<>();
+        for (int i = 0; i < modelCount; i++) {
+            final BenchmarkModel model = BenchmarkModel.withSampleData(handler.createModel(BenchmarkModel.class, "model" + i), 10);
+            models.add(model);
+            ids.add(model.getId());
+        }
+        handler.writeModels(models);
+    }
+
+    @Benchmark
+    public void writeModels() throws AlexaStateException {
+        handler.writeModels(models);
+    }
+
+    @Benchmark
+    public Map<String, BenchmarkModel> readModels() throws AlexaStateException {
+        // force reads to go to the store instead of being served from the session
+        session.getAttributes().clear();
+        return handler.readModels(BenchmarkModel.class, ids);
+    }
+
+    @Benchmark
+    public boolean exists() throws AlexaStateException {
+        // user-scoped existence checks always go to the store
+        return handler.exists(BenchmarkModel.class, ids.get(0), AlexaScope.USER);
+    }
+}
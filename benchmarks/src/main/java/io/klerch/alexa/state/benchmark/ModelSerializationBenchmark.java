@@ -0,0 +1,65 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serialization of models to and from JSON and maps across model sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelSerializationBenchmark {
+    @Param({"0", "10", "100", "1000"})
+    public int historySize;
+
+    private BenchmarkModel model;
+    private String sessionJson;
+    private String userJson;
+
+    @Setup
+    public void setup() throws AlexaStateException {
+        model = BenchmarkModel.withSampleData(new BenchmarkModel(), historySize);
+        model.setId("benchmark");
+        sessionJson = model.toJSON(AlexaScope.SESSION);
+        userJson = model.toJSON(AlexaScope.USER);
+    }
+
+    @Benchmark
+    public String toJsonSession() throws AlexaStateException {
+        return model.toJSON(AlexaScope.SESSION);
+    }
+
+    @Benchmark
+    public String toJsonUser() throws AlexaStateException {
+        return model.toJSON(AlexaScope.USER);
+    }
+
+    @Benchmark
+    public Map<String, Object> toMapSession() throws AlexaStateException {
+        return model.toMap(AlexaScope.SESSION);
+    }
+
+    @Benchmark
+    public boolean fromJsonSession() throws AlexaStateException {
+        return new BenchmarkModel().fromJSON(sessionJson, AlexaScope.SESSION);
+    }
+
+    @Benchmark
+    public boolean fromJsonUser() throws AlexaStateException {
+        return new BenchmarkModel().fromJSON(userJson, AlexaScope.USER);
+    }
+}
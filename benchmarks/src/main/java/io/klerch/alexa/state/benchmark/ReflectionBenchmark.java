@@ -0,0 +1,72 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import io.klerch.alexa.state.handler.AlexaSessionStateHandler;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModelFactory;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import io.klerch.alexa.state.utils.ReflectionUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reflective lookups done for every field of a model on each read and write and the
+ * instantiation of models done for every id on each read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflectionBenchmark {
+    private BenchmarkModel model;
+    private Field nameField;
+    private AlexaSessionStateHandler handler;
+
+    @Setup
+    public void setup() throws NoSuchFieldException {
+        model = BenchmarkModel.withSampleData(new BenchmarkModel(), 10);
+        nameField = BenchmarkModel.class.getDeclaredField("name");
+        handler = new AlexaSessionStateHandler(BenchmarkSessions.newSession());
+    }
+
+    @Benchmark
+    public BenchmarkModel createModel() {
+        return AlexaStateModelFactory.createModel(BenchmarkModel.class, handler, "id");
+    }
+
+    @Benchmark
+    public List<Field> getSaveStateFields() {
+        return model.getSaveStateFields();
+    }
+
+    @Benchmark
+    public List<Field> getSaveStateFieldsInScope() {
+        return model.getSaveStateFields(AlexaScope.USER);
+    }
+
+    @Benchmark
+    public Method getGetter() {
+        return ReflectionUtils.getGetter(model, "name");
+    }
+
+    @Benchmark
+    public Method getSetter() {
+        return ReflectionUtils.getSetter(model, "name");
+    }
+
+    @Benchmark
+    public Object getFieldValue() throws AlexaStateException {
+        return model.get(nameField);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.handler.AlexaSessionStateHandler;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading and writing models with the AlexaSessionStateHandler while the number of
+ * attributes in the session grows. Reads are expected to stay flat as models are looked up by their keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionStateHandlerBenchmark {
+    // number of models read or written per operation
+    private static final int modelCount = 10;
+
+    @Param({"10", "100", "500", "1000"})
+    public int attributeCount;
+
+    private AlexaSessionStateHandler handler;
+    private List<BenchmarkModel> models;
+    private List<String> ids;
+
+    @Setup
+    public void setup() throws AlexaStateException {
+        final Session session = BenchmarkSessions.newSession();
+        handler = new AlexaSessionStateHandler(session);
+        // unrelated attributes the handler needs to look past
+        for (int i = 0; i < attributeCount; i++) {
+            session.setAttribute("attribute-" + i, "value-" + i);
+        }
+        models = new ArrayList<>();
+        ids = new ArrayList<>();
+        for (int i = 0; i < modelCount; i++) {
+            final BenchmarkModel model = BenchmarkModel.withSampleData(handler.createModel(BenchmarkModel.class, "model" + i), 10);
+            models.add(model);
+            ids.add(model.getId());
+        }
+        handler.writeModels(models);
+    }
+
+    @Benchmark
+    public Optional<BenchmarkModel> readModel() throws AlexaStateException {
+        return handler.readModel(BenchmarkModel.class, ids.get(0));
+    }
+
+    @Benchmark
+    public Map<String, BenchmarkModel> readModels() throws AlexaStateException {
+        return handler.readModels(BenchmarkModel.class, ids);
+    }
+
+    @Benchmark
+    public void writeModels() throws AlexaStateException {
+        handler.writeModels(models);
+    }
+}
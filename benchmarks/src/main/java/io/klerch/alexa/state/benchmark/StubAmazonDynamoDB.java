@@ -0,0 +1,70 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.benchmark;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal DynamoDB client keeping items in memory. It only supports the batch operations
+ * and table description used by the AWSDynamoStateHandler.
+ */
+class StubAmazonDynamoDB extends AbstractAmazonDynamoDB {
+    private final Map<String, Map<List<AttributeValue>, Map<String, AttributeValue>>> tables = new ConcurrentHashMap<>();
+
+    @Override
+    public DescribeTableResult describeTable(final DescribeTableRequest request) {
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(request.getTableName())
+                .withTableStatus(TableStatus.ACTIVE));
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(final BatchWriteItemRequest request) {
+        request.getRequestItems().forEach((tableName, writeRequests) -> {
+            final Map<List<AttributeValue>, Map<String, AttributeValue>> table = getTable(tableName);
+            for (final WriteRequest writeRequest : writeRequests) {
+                if (writeRequest.getPutRequest() != null) {
+                    final Map<String, AttributeValue> item = writeRequest.getPutRequest().getItem();
+                    table.put(toKey(item), new HashMap<>(item));
+                } else if (writeRequest.getDeleteRequest() != null) {
+                    table.remove(toKey(writeRequest.getDeleteRequest().getKey()));
+                }
+            }
+        });
+        return new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap());
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(final BatchGetItemRequest request) {
+        final Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        request.getRequestItems().forEach((tableName, keysAndAttributes) -> {
+            final Map<List<AttributeValue>, Map<String, AttributeValue>> table = getTable(tableName);
+            final List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (final Map<String, AttributeValue> key : keysAndAttributes.getKeys()) {
+                final Map<String, AttributeValue> item = table.get(toKey(key));
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            responses.put(tableName, items);
+        });
+        return new BatchGetItemResult().withResponses(responses).withUnprocessedKeys(Collections.emptyMap());
+    }
+
+    private Map<List<AttributeValue>, Map<String, AttributeValue>> getTable(final String tableName) {
+        return tables.computeIfAbsent(tableName, name -> new ConcurrentHashMap<>());
+    }
+
+    private List<AttributeValue> toKey(final Map<String, AttributeValue> item) {
+        // hash-key and sort-key of the handler's table
+        return Arrays.asList(item.get("amzn-user-id"), item.get("model-class"));
+    }
+}
@@ -7,17 +7,21 @@
 package io.klerch.alexa.state.handler;
 
 import com.amazon.speech.speechlet.Session;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.*;
 import com.amazonaws.services.dynamodbv2.util.TableUtils;
+import io.klerch.alexa.state.model.AlexaStateIndex;
 import io.klerch.alexa.state.model.AlexaStateObject;
 import io.klerch.alexa.state.utils.AlexaStateException;
 import io.klerch.alexa.state.model.AlexaStateModel;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
 import org.apache.log4j.Logger;
 
+import java.math.BigDecimal;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -26,6 +30,14 @@ import java.util.stream.Collectors;
  * This handler reads and writes state for AlexaStateModels and considers all its fields annotated with AlexaSaveState-tags.
  * This handler derives from the AlexaSessionStateHandler thus it reads and writes state out of DynamoDB also to your Alexa
  * session.
+ * The score of a user in a leaderboard is saved as an item of the user. Leaderboards are read over a global secondary
+ * index named leaderboard-score with a string hash-key named leaderboard and a number sort-key named score. The index
+ * is created along with the table. Add it to your table if you provide an existing one or if the table was created by
+ * an earlier version of this handler and you make use of leaderboards. Both indexes project keys only.
+ * Same applies to the global secondary index named index-key with a string hash-key named index-key which serves
+ * lookups of models by the values of their indexed fields.
+ * Alternatively, enable index migration to let this handler add a missing index on first use of leaderboards or
+ * indexed fields.
  */
 public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
     private final Logger log = Logger.getLogger(AWSDynamoStateHandler.class);
@@ -45,9 +57,23 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
     static final String pkModel = "model-class";
     // column-name for table attribute used to store the state value (model JSON, single value)
     private static final String attributeKeyState = "state";
+    // name of the global secondary index over the scores of all users in a leaderboard
+    static final String leaderboardIndex = "leaderboard-score";
+    // column-names for hash-key and sort-key of the leaderboard index. only score items have them
+    static final String attributeKeyLeaderboard = "leaderboard";
+    static final String attributeKeyScore = "score";
+    // prefix of the sort-key of score items
+    private static final String leaderboardKeyPrefix = "__leaderboard:";
+    // name of the global secondary index over the index entries of indexed fields and its hash-key
+    static final String valueIndex = "index-key";
+    static final String attributeKeyIndex = "index-key";
     // flag that indicates if existence of table is approved to avoid multiple checks in
     // dynamodb in single instance lifetime
     private Boolean tableExistenceApproved = false;
+    // flag that indicates if missing global secondary indexes are added to an existing table on first use
+    private boolean indexMigrationEnabled = false;
+    // names of the global secondary indexes checked by this handler instance
+    private final Set<String> checkedIndexes = new HashSet<>();
 
     /**
      * The most convenient constructor just takes the Alexa session. An AWS client for accessing DynamoDB
@@ -158,6 +184,29 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         return this.tableName;
     }
 
+    /**
+     * Enables or disables index migration. If enabled, this handler adds the global secondary index for leaderboards
+     * or indexed fields to an existing table lacking it on first use of leaderboards or indexed fields. This requires
+     * the right to describe and update the table. DynamoDB backfills the index in the background and it cannot be
+     * queried before it is active. Disabled by default.
+     *
+     * @param indexMigrationEnabled True, to add missing indexes to an existing table.
+     * @return handler
+     */
+    public AWSDynamoStateHandler withIndexMigration(final boolean indexMigrationEnabled) {
+        this.indexMigrationEnabled = indexMigrationEnabled;
+        return this;
+    }
+
+    /**
+     * Returns if this handler adds missing global secondary indexes to an existing table on first use.
+     *
+     * @return True, if index migration is enabled.
+     */
+    public boolean isIndexMigrationEnabled() {
+        return this.indexMigrationEnabled;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -166,6 +215,14 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         return (AWSDynamoStateHandler)super.withUserId(userId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -182,9 +239,25 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
                     // wrap each model in a write-request and collect all of them
                     items.add(new WriteRequest(new PutRequest(item)))
             );
+            final Map<String, String> indexEntries = AlexaStateIndex.getEntries(model);
+            if (!indexEntries.isEmpty()) {
+                ensureIndexExists(getValueIndexDefinition());
+            }
+            // index entries go to the same batch and show up in the index once written
+            for (final Map.Entry<String, String> entry : indexEntries.entrySet()) {
+                final Map<String, AttributeValue> item = getUserScopedKeyAttributes(entry.getKey());
+                if (entry.getValue() != null) {
+                    item.put(attributeKeyIndex, new AttributeValue(entry.getValue()));
+                    items.add(new WriteRequest(new PutRequest(item)));
+                } else {
+                    items.add(new WriteRequest(new DeleteRequest(item)));
+                }
+            }
         }
         // write batch of write-request to dynamo
         writeItemsToDb(items);
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
     }
 
     /**
@@ -214,6 +287,8 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
                 });
         // write batch of write-requests to dynamo
         writeItemsToDb(items);
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
     }
 
     /**
@@ -251,40 +326,25 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
     @Override
     public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
         // select all models that have a representation in the session
-        final Map<String, TModel> existingModels = super.readModels(modelClass, ids);
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
         final Map<String, TModel> allModels = new HashMap<>(existingModels);
         // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
         // querying dynamodb in the following lines. only if there's actually something for it in dynamo we'll keep it.
         ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
             allModels.putIfAbsent(id, createModel(modelClass, id));
         });
-
-        // this is where we store all read-requests for dynamo
-        final List<Map<String, AttributeValue>> readRequests = new ArrayList<>();
-        // now we fill the list with read requests (could be two per model - one for user-scoped items, one for app-scoped items)
-        for (final TModel model : allModels.values()) {
-            getItems(model, false).forEach(readRequests::add);
-        }
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
 
         // this is where we store models that were updated with values found in DynamoDb
-        final Map<String, TModel> updatedModels = new HashMap<>();
-
-        if (!readRequests.isEmpty()) {
-            // go through resultset
-            for (final Map<String, AttributeValue> item : readItemsFromDb(readRequests)) {
-                final String modelId = item.get(pkModel).getS();
-                final TModel model = allModels.get(TModel.resolveAttributeKeyToId(modelClass, modelId));
-                // only fields in requested scope should be updated in the model
-                final AlexaScope scope = item.get(pkUser).getS().equals(attributeValueApp) ? AlexaScope.APPLICATION : AlexaScope.USER;
-                final boolean updated = model.fromJSON(item.getOrDefault(attributeKeyState, new AttributeValue("{}")).getS(), scope);
-                if (updated) {
-                    // keep in mind as updated
-                    updatedModels.put(model.getId(), model);
-                }
-            }
+        final Map<String, TModel> updatedModels = readModelsFromDb(modelClass, modelsToRead.values(), false);
+        // models not found under the alias of their type are looked up with the key they were saved with before
+        final List<TModel> legacyModelsToRead = selectLegacyModelsToRead(modelsToRead.values(), updatedModels);
+        if (!legacyModelsToRead.isEmpty()) {
+            updatedModels.putAll(readModelsFromDb(modelClass, legacyModelsToRead, true));
         }
         // write back updated values to session
-        super.writeModels(updatedModels.values());
+        mirrorModelsToSession(updatedModels.values());
 
         // finally we join models that were found in the session + models with updates from Dynamo
         existingModels.forEach((id, model) -> {
@@ -292,6 +352,12 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
                 updatedModels.put(id, model);
             }
         });
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
         return updatedModels;
     }
 
@@ -303,8 +369,10 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
         // first read all the session-scoped items and put to result map
         stateObjectMap.putAll(super.readValues(idsInScope));
+        // values already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, AlexaScope> idsToRead = selectValuesToRead(idsInScope);
         // build a list of attribute-sets of individual to-be-read items
-        final List<Map<String, AttributeValue>> attributesList = idsInScope.entrySet().stream()
+        final List<Map<String, AttributeValue>> attributesList = idsToRead.entrySet().stream()
                 // only do this for user and application scoped ids
                 .filter(entry -> entry.getValue().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
                 // get the attribute-set according to the given scope
@@ -314,16 +382,234 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         // go through result and transform result-item to state object
         readItemsFromDb(attributesList).forEach(item -> {
             final String id = item.get(pkModel).getS();
-            stateObjectMap.putIfAbsent(id, new AlexaStateObject(id, item.get(attributeKeyState), idsInScope.get(id)));
+            stateObjectMap.putIfAbsent(id, new AlexaStateObject(id, item.get(attributeKeyState).getS(), idsInScope.get(id)));
         });
         return stateObjectMap;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The range is read with a query on the sort-key of the items of the user or application.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        ensureTableExists();
+        final Map<String, String> names = new HashMap<>();
+        names.put("#u", pkUser);
+        names.put("#m", pkModel);
+        final Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":u", new AttributeValue(AlexaScope.APPLICATION.includes(scope) ? attributeValueApp : getUserId()));
+        values.put(":from", new AttributeValue(fromId));
+        values.put(":to", new AttributeValue(toId));
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            final QueryRequest queryRequest = new QueryRequest(tableName)
+                    .withKeyConditionExpression("#u = :u AND #m BETWEEN :from AND :to")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values)
+                    .withScanIndexForward(!descending)
+                    .withLimit(Math.min(limit - stateObjects.size(), 1000))
+                    .withExclusiveStartKey(lastEvaluatedKey);
+            final QueryResult result = awsClient.query(queryRequest);
+            for (final Map<String, AttributeValue> item : result.getItems()) {
+                final String id = item.get(pkModel).getS();
+                // between includes the upper bound of the range
+                if (!toId.equals(id)) {
+                    stateObjects.add(new AlexaStateObject(id, item.get(attributeKeyState).getS(), scope));
+                }
+            }
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty() && stateObjects.size() < limit);
+        return stateObjects;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Users are looked up with a query on the index of index entries.
+     */
+    @Override
+    List<String> readIndexFromBackend(final String indexKey) throws AlexaStateException {
+        ensureTableExists();
+        ensureIndexExists(getValueIndexDefinition());
+        final Map<String, String> names = new HashMap<>();
+        names.put("#k", attributeKeyIndex);
+        final Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":k", new AttributeValue(indexKey));
+        // a user may have several models with the same value
+        final Set<String> userIds = new LinkedHashSet<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            final QueryRequest queryRequest = new QueryRequest(tableName)
+                    .withIndexName(valueIndex)
+                    .withKeyConditionExpression("#k = :k")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values)
+                    .withExclusiveStartKey(lastEvaluatedKey);
+            final QueryResult result = awsClient.query(queryRequest);
+            result.getItems().forEach(item -> userIds.add(item.get(pkUser).getS()));
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return new ArrayList<>(userIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The score is saved as an item of the user which shows up in the leaderboard index.
+     */
+    @Override
+    void writeScoreToBackend(final String leaderboard, final double score) throws AlexaStateException {
+        ensureIndexExists(getLeaderboardIndexDefinition());
+        final Map<String, AttributeValue> item = getUserScopedKeyAttributes(leaderboardKeyPrefix + leaderboard);
+        item.put(attributeKeyLeaderboard, new AttributeValue(leaderboard));
+        item.put(attributeKeyScore, new AttributeValue().withN(BigDecimal.valueOf(score).stripTrailingZeros().toPlainString()));
+        writeItemsToDb(Collections.singletonList(new WriteRequest(new PutRequest(item))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void removeScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        final Map<String, AttributeValue> key = getUserScopedKeyAttributes(leaderboardKeyPrefix + leaderboard);
+        writeItemsToDb(Collections.singletonList(new WriteRequest(new DeleteRequest(key))));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The highest scores are read with a query on the leaderboard index in descending order.
+     */
+    @Override
+    Map<String, Double> readTopScoresFromBackend(final String leaderboard, final int count) throws AlexaStateException {
+        ensureTableExists();
+        ensureIndexExists(getLeaderboardIndexDefinition());
+        final Map<String, Double> scores = new LinkedHashMap<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            final QueryRequest queryRequest = getLeaderboardQuery(leaderboard, null)
+                    .withScanIndexForward(false)
+                    .withLimit(Math.min(count - scores.size(), 1000))
+                    .withExclusiveStartKey(lastEvaluatedKey);
+            final QueryResult result = awsClient.query(queryRequest);
+            for (final Map<String, AttributeValue> item : result.getItems()) {
+                scores.put(item.get(pkUser).getS(), Double.valueOf(item.get(attributeKeyScore).getN()));
+            }
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty() && scores.size() < count);
+        return scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Optional<Double> readScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        final List<Map<String, AttributeValue>> result = readItemsFromDb(Collections.singletonList(getUserScopedKeyAttributes(leaderboardKeyPrefix + leaderboard)));
+        return result.stream().findFirst()
+                .map(item -> item.get(attributeKeyScore))
+                .map(score -> Double.valueOf(score.getN()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Higher scores are counted with a query on the leaderboard index which does not return any item.
+     */
+    @Override
+    long countHigherScores(final String leaderboard, final double score) throws AlexaStateException {
+        ensureTableExists();
+        ensureIndexExists(getLeaderboardIndexDefinition());
+        long count = 0;
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            final QueryRequest queryRequest = getLeaderboardQuery(leaderboard, score)
+                    .withSelect(Select.COUNT)
+                    .withExclusiveStartKey(lastEvaluatedKey);
+            final QueryResult result = awsClient.query(queryRequest);
+            count += result.getCount() != null ? result.getCount() : 0;
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return count;
+    }
+
+    private QueryRequest getLeaderboardQuery(final String leaderboard, final Double higherThan) {
+        final Map<String, String> names = new HashMap<>();
+        names.put("#l", attributeKeyLeaderboard);
+        final Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":l", new AttributeValue(leaderboard));
+        String condition = "#l = :l";
+        if (higherThan != null) {
+            names.put("#s", attributeKeyScore);
+            values.put(":s", new AttributeValue().withN(BigDecimal.valueOf(higherThan).stripTrailingZeros().toPlainString()));
+            condition += " AND #s > :s";
+        }
+        return new QueryRequest(tableName)
+                .withIndexName(leaderboardIndex)
+                .withKeyConditionExpression(condition)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values);
+    }
+
+    private <TModel extends AlexaStateModel> Map<String, TModel> readModelsFromDb(final Class<TModel> modelClass, final Collection<TModel> models, final boolean legacy) throws AlexaStateException {
+        final Map<String, TModel> modelsById = new HashMap<>();
+        // this is where we store all read-requests for dynamo
+        final List<Map<String, AttributeValue>> readRequests = new ArrayList<>();
+        // now we fill the list with read requests (could be two per model - one for user-scoped items, one for app-scoped items)
+        for (final TModel model : models) {
+            modelsById.put(model.getId(), model);
+            getItems(model, false, legacy).forEach(readRequests::add);
+        }
+        final Map<String, TModel> updatedModels = new HashMap<>();
+        if (readRequests.isEmpty()) {
+            return updatedModels;
+        }
+        // go through resultset
+        for (final Map<String, AttributeValue> item : readItemsFromDb(readRequests)) {
+            final String modelId = item.get(pkModel).getS();
+            final TModel model = modelsById.get(AlexaStateKeyCodec.decode(modelClass, modelId));
+            // only fields in requested scope should be updated in the model
+            final AlexaScope scope = item.get(pkUser).getS().equals(attributeValueApp) ? AlexaScope.APPLICATION : AlexaScope.USER;
+            final boolean updated = model.fromJSON(item.getOrDefault(attributeKeyState, new AttributeValue("{}")).getS(), scope);
+            if (updated) {
+                // keep in mind as updated
+                updatedModels.put(model.getId(), model);
+            }
+        }
+        return updatedModels;
+    }
+
     private List<Map<String, AttributeValue>> getItems(final AlexaStateModel model, final boolean withState) throws AlexaStateException {
+        return getItems(model, withState, false);
+    }
+
+    private List<Map<String, AttributeValue>> getItems(final AlexaStateModel model, final boolean withState, final boolean legacy) throws AlexaStateException {
         final List<Map<String, AttributeValue>> items = new ArrayList<>();
         if (model.hasUserScopedField()) {
             // add primary keys as attributes
-            final Map<String, AttributeValue> attributes = getUserScopedKeyAttributes(model.getClass(), model.getId());
+            final Map<String, AttributeValue> attributes = getUserScopedKeyAttributes(getAttributeKey(model, legacy));
             if (withState) {
                 // add json as attribute
                 final String jsonState = model.toJSON(AlexaScope.USER);
@@ -334,7 +620,7 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         }
         if (model.hasApplicationScopedField()) {
             // add primary keys as attributes
-            final Map<String, AttributeValue> attributes = getAppScopedKeyAttributes(model.getClass(), model.getId());
+            final Map<String, AttributeValue> attributes = getAppScopedKeyAttributes(getAttributeKey(model, legacy));
             if (withState) {
                 // add json as attribute
                 final String jsonState = model.toJSON(AlexaScope.APPLICATION);
@@ -398,14 +684,6 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         // given custom table is always assumed as existing so you can have this option to bypass existance checks
         // for reason of least privileges on used AWS credentials or better performance
         if (!tableExistenceApproved || !tableExists()) {
-            final ArrayList<AttributeDefinition> attributeDefinitions = new ArrayList<>();
-            // describe keys (both will be Strings)
-            attributeDefinitions.add(new AttributeDefinition()
-                    .withAttributeName(pkUser)
-                    .withAttributeType("S"));
-            attributeDefinitions.add(new AttributeDefinition()
-                    .withAttributeName(pkModel)
-                    .withAttributeType("S"));
             // define keys with name and type
             final ArrayList<KeySchemaElement> keySchema = new ArrayList<>();
             keySchema.add(new KeySchemaElement()
@@ -418,12 +696,15 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
             final CreateTableRequest awsRequest = new CreateTableRequest()
                     .withTableName(tableName)
                     .withKeySchema(keySchema)
-                    .withAttributeDefinitions(attributeDefinitions)
+                    .withAttributeDefinitions(getAttributeDefinitions())
+                    .withGlobalSecondaryIndexes(getLeaderboardIndexDefinition(), getValueIndexDefinition())
                     .withProvisionedThroughput(new ProvisionedThroughput()
                             .withReadCapacityUnits(readCapacityUnits)
                             .withWriteCapacityUnits(writeCapacityUnits));
             // create on not existing table
             if (TableUtils.createTableIfNotExists(awsClient, awsRequest)) {
+                // a table created by this handler has all indexes
+                awsRequest.getGlobalSecondaryIndexes().forEach(index -> checkedIndexes.add(index.getIndexName()));
                 log.info(String.format("Table '%1$s' is created in DynamoDB. Now standing by for up to ten minutes for this table to be in active state.", tableName));
                 // wait for table to be in ACTIVE state in order to proceed with read or write
                 // this could take up to possible ten minutes so be sure to run this code once before publishing your skill ;)
@@ -435,11 +716,102 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
                     throw AlexaStateException.create(message).withCause(e).withHandler(this).build();
                 }
             }
+            tableExistenceApproved = true;
         }
     }
 
-    private <TModel extends AlexaStateModel> Map<String, AttributeValue> getUserScopedKeyAttributes(final Class<TModel> modelClass, final String id) {
-        return getUserScopedKeyAttributes(TModel.getAttributeKey(modelClass, id));
+    private List<AttributeDefinition> getAttributeDefinitions() {
+        final ArrayList<AttributeDefinition> attributeDefinitions = new ArrayList<>();
+        // describe keys (both will be Strings)
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName(pkUser)
+                .withAttributeType("S"));
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName(pkModel)
+                .withAttributeType("S"));
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName(attributeKeyLeaderboard)
+                .withAttributeType("S"));
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName(attributeKeyScore)
+                .withAttributeType("N"));
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName(attributeKeyIndex)
+                .withAttributeType("S"));
+        return attributeDefinitions;
+    }
+
+    private GlobalSecondaryIndex getLeaderboardIndexDefinition() {
+        // sparse index over score items ordered by score within a leaderboard
+        return new GlobalSecondaryIndex()
+                .withIndexName(leaderboardIndex)
+                .withKeySchema(new KeySchemaElement().withAttributeName(attributeKeyLeaderboard).withKeyType(KeyType.HASH),
+                        new KeySchemaElement().withAttributeName(attributeKeyScore).withKeyType(KeyType.RANGE))
+                .withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY))
+                .withProvisionedThroughput(new ProvisionedThroughput()
+                        .withReadCapacityUnits(readCapacityUnits)
+                        .withWriteCapacityUnits(writeCapacityUnits));
+    }
+
+    private GlobalSecondaryIndex getValueIndexDefinition() {
+        // sparse index over index entries of indexed fields
+        return new GlobalSecondaryIndex()
+                .withIndexName(valueIndex)
+                .withKeySchema(new KeySchemaElement().withAttributeName(attributeKeyIndex).withKeyType(KeyType.HASH))
+                .withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY))
+                .withProvisionedThroughput(new ProvisionedThroughput()
+                        .withReadCapacityUnits(readCapacityUnits)
+                        .withWriteCapacityUnits(writeCapacityUnits));
+    }
+
+    /**
+     * Adds the given global secondary index to the existing table if it does not have it and index migration is
+     * enabled. Tables created by an earlier version of this handler lack indexes introduced later on. Each index is
+     * checked once per handler instance. DynamoDB backfills the index in the background and it cannot be queried
+     * before it is active. Only one index can be added at a time so a failed attempt is logged and repeated by the
+     * next handler making use of the index.
+     * @param index definition of the index
+     * @throws AlexaStateException Checking the existence of the table failed.
+     */
+    private void ensureIndexExists(final GlobalSecondaryIndex index) throws AlexaStateException {
+        if (!indexMigrationEnabled || checkedIndexes.contains(index.getIndexName())) {
+            return;
+        }
+        ensureTableExists();
+        if (!checkedIndexes.add(index.getIndexName())) {
+            return;
+        }
+        try {
+            final TableDescription table = awsClient.describeTable(new DescribeTableRequest(tableName)).getTable();
+            final List<GlobalSecondaryIndexDescription> indexes = Optional.ofNullable(table.getGlobalSecondaryIndexes()).orElse(Collections.emptyList());
+            if (indexes.stream().anyMatch(description -> index.getIndexName().equals(description.getIndexName()))) {
+                return;
+            }
+            // only attributes of the table key and the new index key are allowed as definitions
+            final Set<String> keyAttributes = new HashSet<>();
+            table.getKeySchema().forEach(key -> keyAttributes.add(key.getAttributeName()));
+            index.getKeySchema().forEach(key -> keyAttributes.add(key.getAttributeName()));
+            final CreateGlobalSecondaryIndexAction createAction = new CreateGlobalSecondaryIndexAction()
+                    .withIndexName(index.getIndexName())
+                    .withKeySchema(index.getKeySchema())
+                    .withProjection(index.getProjection());
+            // tables billed on demand describe their capacity with zero units and take no throughput for an index
+            final ProvisionedThroughputDescription throughput = table.getProvisionedThroughput();
+            if (throughput == null || throughput.getReadCapacityUnits() == null || throughput.getReadCapacityUnits() > 0) {
+                createAction.setProvisionedThroughput(index.getProvisionedThroughput());
+            }
+            final UpdateTableRequest awsRequest = new UpdateTableRequest()
+                    .withTableName(tableName)
+                    .withAttributeDefinitions(getAttributeDefinitions().stream()
+                            .filter(definition -> keyAttributes.contains(definition.getAttributeName()))
+                            .collect(Collectors.toList()))
+                    .withGlobalSecondaryIndexUpdates(new GlobalSecondaryIndexUpdate().withCreate(createAction));
+            awsClient.updateTable(awsRequest);
+            log.info(String.format("Global secondary index '%1$s' is added to table '%2$s' in DynamoDB. It can be used once DynamoDB finished backfilling it.", index.getIndexName(), tableName));
+        } catch (final AmazonServiceException e) {
+            // e.g. another index is being created or the client lacks the right to update the table
+            log.warn(String.format("Could not add global secondary index '%1$s' to table '%2$s' for now.", index.getIndexName(), tableName), e);
+        }
     }
 
     private Map<String, AttributeValue> getUserScopedKeyAttributes(final String id) {
@@ -449,10 +821,6 @@ public class AWSDynamoStateHandler extends AlexaSessionStateHandler {
         return attributes;
     }
 
-    private <TModel extends AlexaStateModel> Map<String, AttributeValue> getAppScopedKeyAttributes(final Class<TModel> modelClass, final String id) {
-        return getAppScopedKeyAttributes(TModel.getAttributeKey(modelClass, id));
-    }
-
     private Map<String, AttributeValue> getAppScopedKeyAttributes(final String id) {
         Map<String, AttributeValue> attributes = new HashMap<>();
         attributes.put(pkModel, new AttributeValue(id));
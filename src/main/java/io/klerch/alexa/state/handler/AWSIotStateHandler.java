@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
 import io.klerch.alexa.state.model.AlexaStateModel;
 import io.klerch.alexa.state.model.AlexaStateObject;
 import io.klerch.alexa.state.utils.AlexaStateException;
@@ -106,6 +107,8 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
                 publishState(model, AlexaScope.APPLICATION);
             }
         }
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
     }
 
     /**
@@ -123,6 +126,8 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
                 publishState(stateObject);
             }
         }
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
     }
 
     /**
@@ -171,7 +176,7 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
     @Override
     public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
         // select all models that have a representation in the session
-        final Map<String, TModel> existingModels = super.readModels(modelClass, ids);
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
 
         final Map<String, TModel> allModels = new HashMap<>(existingModels);
         // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
@@ -179,11 +184,13 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
         ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
             allModels.putIfAbsent(id, createModel(modelClass, id));
         });
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
 
         // this is where we store models that were updated with values found in DynamoDb
         final Map<String, TModel> updatedModels = new HashMap<>();
 
-        for (final TModel model : allModels.values()) {
+        for (final TModel model : modelsToRead.values()) {
             // we need to remember if there will be something from thing shadow to be written to the model
             // in order to write those values back to the session at the end of this method
             Boolean modelChanged = false;
@@ -200,7 +207,7 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
             }
         }
         // write back updated values to session
-        super.writeModels(updatedModels.values());
+        mirrorModelsToSession(updatedModels.values());
 
         // finally we join models that were found in the session + models with updates from Dynamo
         existingModels.forEach((id, model) -> {
@@ -209,6 +216,12 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
             }
         });
 
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
         return updatedModels;
     }
 
@@ -223,6 +236,58 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
         return getNodeFromThingShadow(id, scope).map(value -> new AlexaStateObject(id, value, scope));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Map<String, String> readModelJson(final Collection<String> attributeKeys, final AlexaScope scope) throws AlexaStateException {
+        final Map<String, String> states = new HashMap<>();
+        if (attributeKeys.isEmpty()) {
+            return states;
+        }
+        // state of all models in a scope is in one thing shadow which is read once
+        final String thingState = getState(scope);
+        try {
+            final ObjectMapper mapper = new ObjectMapper();
+            final JsonNode reported = mapper.readTree(thingState).path("state").path("reported");
+            for (final String attributeKey : attributeKeys) {
+                final JsonNode node = reported.path(attributeKey);
+                if (node.isObject()) {
+                    states.put(attributeKey, mapper.writeValueAsString(node));
+                }
+            }
+        } catch (IOException e) {
+            final String error = format("Could not extract model states from thing shadow '%1$s'", getThingName(scope));
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).build();
+        }
+        return states;
+    }
+
+    /**
+     * {@inheritDoc}
+     * All values of a scope are in one thing shadow which is read once to select the range.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        final String thingState = getState(scope);
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        try {
+            final ObjectMapper mapper = new ObjectMapper();
+            final Iterator<Map.Entry<String, JsonNode>> nodes = mapper.readTree(thingState).path("state").path("reported").fields();
+            while (nodes.hasNext()) {
+                final Map.Entry<String, JsonNode> node = nodes.next();
+                final JsonNode value = node.getValue();
+                stateObjects.add(new AlexaStateObject(node.getKey(), value.isTextual() ? value.asText() : mapper.writeValueAsString(value), scope));
+            }
+        } catch (IOException e) {
+            final String error = format("Could not extract range of values from thing shadow '%1$s'", getThingName(scope));
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).build();
+        }
+        return selectRange(stateObjects, fromId, toId, limit, descending);
+    }
+
     /**
      * Returns name of the thing whose shadow is updated by this handler. It depends on
      * the scope of the fields persisted in AWS IoT as APPLICATION-scoped fields go to a different
@@ -335,7 +400,11 @@ public class AWSIotStateHandler extends AlexaSessionStateHandler {
     }
 
     private boolean fromThingShadowToModel(final AlexaStateModel model, final AlexaScope scope) throws AlexaStateException {
-        final Optional<String> state = getNodeFromThingShadow(model.getAttributeKey(), scope);
+        Optional<String> state = getNodeFromThingShadow(model.getAttributeKey(), scope);
+        if (!state.isPresent() && AlexaStateKeyCodec.hasAlias(model.getClass())) {
+            // node written before the model got an alias
+            state = getNodeFromThingShadow(AlexaStateKeyCodec.encodeLegacy(model.getClass(), model.getId()), scope);
+        }
         return state.isPresent() && model.fromJSON(state.get(), scope);
     }
 
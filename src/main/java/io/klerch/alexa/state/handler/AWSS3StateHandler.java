@@ -11,17 +11,23 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import io.klerch.alexa.state.model.AlexaStateObject;
 import io.klerch.alexa.state.utils.AlexaStateException;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
 import io.klerch.alexa.state.model.AlexaStateModel;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * As this handler works in the user and application scope it persists all models to an S3 bucket.
@@ -92,6 +98,14 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
         return (AWSS3StateHandler)super.withUserId(userId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -117,6 +131,8 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
                 awsClient.putObject(bucketName, filePath, fileContents);
             }
         }
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
     }
 
     /**
@@ -138,6 +154,8 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
                     // write all app-scoped attributes to file
                     awsClient.putObject(bucketName, filePath, value);
                 });
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
     }
 
     /**
@@ -175,7 +193,7 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
     @Override
     public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
         // select all models that have a representation in the session
-        final Map<String, TModel> existingModels = super.readModels(modelClass, ids);
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
 
         final Map<String, TModel> allModels = new HashMap<>(existingModels);
         // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
@@ -183,11 +201,13 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
         ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
             allModels.putIfAbsent(id, createModel(modelClass, id));
         });
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
 
         // this is where we store models that were updated with values found in DynamoDb
         final Map<String, TModel> updatedModels = new HashMap<>();
 
-        for (final TModel model : allModels.values()) {
+        for (final TModel model : modelsToRead.values()) {
             // we need to remember if there will be something from S3 to be written to the model
             // in order to write those values back to the session at the end of this method
             Boolean modelChanged = false;
@@ -206,7 +226,7 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
             }
         }
         // write back updated values to session
-        super.writeModels(updatedModels.values());
+        mirrorModelsToSession(updatedModels.values());
 
         // finally we join models that were found in the session + models with updates from Dynamo
         existingModels.forEach((id, model) -> {
@@ -214,6 +234,12 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
                 updatedModels.put(id, model);
             }
         });
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
         return updatedModels;
     }
 
@@ -225,8 +251,10 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
         final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
         // first read all the session-scoped items and put to result map
         stateObjectMap.putAll(super.readValues(idsInScope));
+        // values already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, AlexaScope> idsToRead = selectValuesToRead(idsInScope);
 
-        idsInScope.forEach((id, scope) -> {
+        idsToRead.forEach((id, scope) -> {
             if (scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION)) {
                 final String filePath = AlexaScope.USER.includes(scope) ?
                         getUserScopedFilePath(id) : getAppScopedFilePath(id);
@@ -246,9 +274,58 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
         return stateObjectMap;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Files of the range are listed in the folder of the user or application before they are read one by one.
+     * S3 only lists files in ascending order so the whole range is listed if read descending.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        final String folder = (AlexaScope.APPLICATION.includes(scope) ? folderNameApp : getUserId()) + "/";
+        final String suffix = "." + fileExtension;
+        final List<AlexaStateObject> files = new ArrayList<>();
+        final ListObjectsV2Request listRequest = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(folder + StringUtils.getCommonPrefix(fromId, toId))
+                .withStartAfter(folder + fromId);
+        ListObjectsV2Result listResult;
+        do {
+            listResult = awsClient.listObjectsV2(listRequest);
+            for (final S3ObjectSummary summary : listResult.getObjectSummaries()) {
+                final String key = summary.getKey();
+                if (key.endsWith(suffix)) {
+                    files.add(new AlexaStateObject(key.substring(folder.length(), key.length() - suffix.length()), null, scope));
+                }
+            }
+            listRequest.setContinuationToken(listResult.getNextContinuationToken());
+        } while (listResult.isTruncated() && (descending || files.size() < limit));
+
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        for (final AlexaStateObject file : selectRange(files, fromId, toId, limit, descending)) {
+            getS3FileContentsAsString(folder + file.getId() + suffix)
+                    .ifPresent(fileContents -> stateObjects.add(new AlexaStateObject(file.getId(), fileContents, scope)));
+        }
+        return stateObjects;
+    }
+
     private boolean fromS3FileContentsToModel(final AlexaStateModel alexaStateModel, final String id, final AlexaScope scope) throws AlexaStateException {
+        return fromS3FileToModel(alexaStateModel, AlexaStateKeyCodec.encode(alexaStateModel.getClass(), id), scope) ||
+                // file written before the model got an alias
+                (AlexaStateKeyCodec.hasAlias(alexaStateModel.getClass()) &&
+                        fromS3FileToModel(alexaStateModel, AlexaStateKeyCodec.encodeLegacy(alexaStateModel.getClass(), id), scope));
+    }
+
+    private boolean fromS3FileToModel(final AlexaStateModel alexaStateModel, final String attributeKey, final AlexaScope scope) throws AlexaStateException {
         // read from item with scoped model
-        final String filePath = AlexaScope.APPLICATION.includes(scope) ? getAppScopedFilePath(alexaStateModel.getClass(), id) : getUserScopedFilePath(alexaStateModel.getClass(), id);
+        final String filePath = AlexaScope.APPLICATION.includes(scope) ? getAppScopedFilePath(attributeKey) : getUserScopedFilePath(attributeKey);
         // extract values from json and assign it to model
         return awsClient.doesObjectExist(bucketName, filePath) && alexaStateModel.fromJSON(getS3FileContentsAsString(filePath).orElse("{}"), scope);
     }
@@ -275,7 +352,7 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
     }
 
     private <TModel extends AlexaStateModel> String getUserScopedFilePath(final Class<TModel> modelClass, final String id) {
-        return getUserId() + "/" + TModel.getAttributeKey(modelClass, id) + "." + fileExtension;
+        return getUserId() + "/" + AlexaStateKeyCodec.encode(modelClass, id) + "." + fileExtension;
     }
 
     private String getUserScopedFilePath(final String id) {
@@ -283,7 +360,7 @@ public class AWSS3StateHandler extends AlexaSessionStateHandler {
     }
 
     private <TModel extends AlexaStateModel> String getAppScopedFilePath(final Class<TModel> modelClass, final String id) {
-        return folderNameApp + "/" + TModel.getAttributeKey(modelClass, id) + "." + fileExtension;
+        return folderNameApp + "/" + AlexaStateKeyCodec.encode(modelClass, id) + "." + fileExtension;
     }
 
     private String getAppScopedFilePath(final String id) {
@@ -0,0 +1,30 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+/**
+ * The read policy defines if a handler persisting state in the user and application scope goes to its backend
+ * for models and values that already have a representation in the Alexa session. All those handlers mirror
+ * state they read from or write to their backend to the session. With a session-first policy this mirrored
+ * state is served from the session in later turns of a multi-turn dialog without another roundtrip to the backend.
+ */
+public enum AlexaReadPolicy {
+    /**
+     * State is always read from the backend even if it is already present in the session.
+     */
+    ALWAYS_BACKEND,
+    /**
+     * State mirrored to the session by the handler after reading it from or writing it to the backend
+     * is served from the session for the rest of the session.
+     */
+    SESSION_FIRST,
+    /**
+     * State mirrored to the session by the handler after reading it from or writing it to the backend
+     * is served from the session as long as it is not older than a given maximum age.
+     */
+    SESSION_FIRST_WITH_MAX_AGE
+}
@@ -8,14 +8,32 @@ package io.klerch.alexa.state.handler;
 
 import com.amazon.speech.speechlet.Session;
 import com.amazonaws.util.StringUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateChunkedList;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.AlexaStateIndex;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
 import io.klerch.alexa.state.model.AlexaStateModel;
 import io.klerch.alexa.state.model.AlexaStateModelFactory;
+import io.klerch.alexa.state.model.AlexaStateModelView;
 import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.model.AlexaStateRef;
+import io.klerch.alexa.state.model.AlexaStateScore;
 import io.klerch.alexa.state.utils.AlexaStateException;
+import io.klerch.alexa.state.utils.ConversionUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.log4j.Logger;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -25,7 +43,29 @@ import java.util.stream.Collectors;
  */
 public class AlexaSessionStateHandler implements AlexaStateHandler {
     private final Logger log = Logger.getLogger(AlexaSessionStateHandler.class);
+    // session attribute holding the timestamps of when state was mirrored from a backend to the session
+    static final String attributeKeyLoaded = "__loaded";
+    // marker left in the session for a model whose state was spilled to the backend
+    static final String spilledMarker = "__spilled";
+    // prefix of the id of the user-scoped value holding the state of a spilled model
+    static final String spilledKeyPrefix = "__spilled:";
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private int sessionSizeBudget = 0;
+    // encoded sizes of session attributes along with the values they were measured for
+    private final Map<String, Map.Entry<Object, Integer>> attributeSizes = new HashMap<>();
     private String userId;
+    private AlexaReadPolicy readPolicy = AlexaReadPolicy.ALWAYS_BACKEND;
+    private long maxAgeMillis = 0L;
+    // model instances read or written by this handler (by attribute key)
+    private final Map<String, AlexaStateModel> identityMap = new HashMap<>();
+    private boolean identityMapEnabled = false;
+    // views waiting for their user- or application-scoped state along with the attributes backing them
+    private final Map<AlexaStateModelView<?>, Map<String, Object>> lazyViews = new LinkedHashMap<>();
+    // lazily loading views for which any state was found
+    private final Set<AlexaStateModelView<?>> lazyViewsFound = new HashSet<>();
+    private boolean lazyLoadingEnabled = false;
+    // models read partially along with the values (as json) their fields not loaded had right after the read
+    private final Map<AlexaStateModel, Map<String, JsonNode>> partialModels = new IdentityHashMap<>();
     final Session session;
 
     /**
@@ -75,6 +115,173 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
         return this;
     }
 
+    /**
+     * Sets the read policy which decides if state already mirrored to the session is read from the
+     * backend again. It only applies to handlers persisting state in the user and application scope. By default
+     * state is always read from the backend.
+     * @param readPolicy read policy. Use withReadPolicy(AlexaReadPolicy, long) for SESSION_FIRST_WITH_MAX_AGE.
+     */
+    public final void setReadPolicy(final AlexaReadPolicy readPolicy) {
+        setReadPolicy(readPolicy, 0L);
+    }
+
+    /**
+     * Sets the read policy which decides if state already mirrored to the session is read from the
+     * backend again. It only applies to handlers persisting state in the user and application scope.
+     * @param readPolicy read policy
+     * @param maxAgeMillis milliseconds state mirrored to the session is served from there. Only applies to SESSION_FIRST_WITH_MAX_AGE.
+     */
+    public final void setReadPolicy(final AlexaReadPolicy readPolicy, final long maxAgeMillis) {
+        Validate.notNull(readPolicy, "Read policy must not be null.");
+        Validate.isTrue(maxAgeMillis >= 0, "Max age must not be negative.");
+        this.readPolicy = readPolicy;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Sets the read policy which decides if state already mirrored to the session is read from the
+     * backend again. It only applies to handlers persisting state in the user and application scope.
+     * @param readPolicy read policy. Use withReadPolicy(AlexaReadPolicy, long) for SESSION_FIRST_WITH_MAX_AGE.
+     * @return handler
+     */
+    public AlexaStateHandler withReadPolicy(final AlexaReadPolicy readPolicy) {
+        setReadPolicy(readPolicy);
+        return this;
+    }
+
+    /**
+     * Sets the read policy which decides if state already mirrored to the session is read from the
+     * backend again. It only applies to handlers persisting state in the user and application scope.
+     * @param readPolicy read policy
+     * @param maxAgeMillis milliseconds state mirrored to the session is served from there. Only applies to SESSION_FIRST_WITH_MAX_AGE.
+     * @return handler
+     */
+    public AlexaStateHandler withReadPolicy(final AlexaReadPolicy readPolicy, final long maxAgeMillis) {
+        setReadPolicy(readPolicy, maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Gets the read policy which decides if state already mirrored to the session is read from the
+     * backend again.
+     * @return read policy
+     */
+    public final AlexaReadPolicy getReadPolicy() {
+        return this.readPolicy;
+    }
+
+    /**
+     * Gets the milliseconds state mirrored to the session is served from there if the read policy
+     * is SESSION_FIRST_WITH_MAX_AGE.
+     * @return max age in milliseconds
+     */
+    public final long getMaxAge() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * Sets the maximum number of bytes the JSON-encoded session attributes should take. On exceeding the budget
+     * after writing models the largest models in the session are spilled to the backend of this handler and
+     * replaced by a compact marker. Spilled models are reloaded from the backend on the next read. Only handlers
+     * persisting state in the user scope spill models. The budget is disabled by default.
+     * @param sessionSizeBudget maximum number of bytes of all session attributes. Zero disables the budget.
+     */
+    public final void setSessionSizeBudget(final int sessionSizeBudget) {
+        Validate.isTrue(sessionSizeBudget >= 0, "Session size budget must not be negative.");
+        this.sessionSizeBudget = sessionSizeBudget;
+    }
+
+    /**
+     * Sets the maximum number of bytes the JSON-encoded session attributes should take. On exceeding the budget
+     * after writing models the largest models in the session are spilled to the backend of this handler and
+     * replaced by a compact marker. Spilled models are reloaded from the backend on the next read.
+     * @param sessionSizeBudget maximum number of bytes of all session attributes. Zero disables the budget.
+     * @return handler
+     */
+    public AlexaStateHandler withSessionSizeBudget(final int sessionSizeBudget) {
+        setSessionSizeBudget(sessionSizeBudget);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of bytes the JSON-encoded session attributes should take.
+     * @return maximum number of bytes of all session attributes. Zero if the budget is disabled.
+     */
+    public final int getSessionSizeBudget() {
+        return this.sessionSizeBudget;
+    }
+
+    /**
+     * Enables or disables the identity map of this handler. With the identity map enabled the handler keeps
+     * all models it read or wrote and returns the very same instance on reading a model again instead of
+     * parsing it from the session or going to the backend another time. As a handler usually lives as long as
+     * a request this is where the identity map lives as well. It is disabled by default.
+     * @param identityMapEnabled True, to enable the identity map
+     */
+    public final void setIdentityMapEnabled(final boolean identityMapEnabled) {
+        this.identityMapEnabled = identityMapEnabled;
+        if (!identityMapEnabled) {
+            identityMap.clear();
+        }
+    }
+
+    /**
+     * Enables or disables the identity map of this handler. With the identity map enabled the handler keeps
+     * all models it read or wrote and returns the very same instance on reading a model again.
+     * @param identityMapEnabled True, to enable the identity map
+     * @return handler
+     */
+    public AlexaStateHandler withIdentityMap(final boolean identityMapEnabled) {
+        setIdentityMapEnabled(identityMapEnabled);
+        return this;
+    }
+
+    /**
+     * Returns if the identity map of this handler is enabled.
+     * @return True, if the identity map is enabled
+     */
+    public final boolean isIdentityMapEnabled() {
+        return this.identityMapEnabled;
+    }
+
+    /**
+     * Enables or disables lazy loading of model views. With lazy loading enabled readModelView returns right away
+     * for models not present in the session. The user- and application-scoped state of the model is read from
+     * the backend not before a field in the respective scope is accessed in the view. The first access batches the
+     * loads of all views waiting for state in this scope. As existence of a model is not checked up front a view is
+     * returned even if there's no state for it. It is disabled by default.
+     * @param lazyLoadingEnabled True, to enable lazy loading of model views
+     */
+    public final void setLazyLoadingEnabled(final boolean lazyLoadingEnabled) {
+        this.lazyLoadingEnabled = lazyLoadingEnabled;
+    }
+
+    /**
+     * Enables or disables lazy loading of model views. With lazy loading enabled readModelView returns right away
+     * and reads state of a scope not before a field in this scope is accessed.
+     * @param lazyLoadingEnabled True, to enable lazy loading of model views
+     * @return handler
+     */
+    public AlexaStateHandler withLazyLoading(final boolean lazyLoadingEnabled) {
+        setLazyLoadingEnabled(lazyLoadingEnabled);
+        return this;
+    }
+
+    /**
+     * Returns if lazy loading of model views is enabled.
+     * @return True, if lazy loading of model views is enabled
+     */
+    public final boolean isLazyLoadingEnabled() {
+        return this.lazyLoadingEnabled;
+    }
+
+    /**
+     * Forgets about all models kept in the identity map so they are read again on next access.
+     */
+    public final void clearIdentityMap() {
+        identityMap.clear();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -108,6 +315,38 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
     @Override
     public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
         Validate.notNull(models, "Collection of models to write must not be null.");
+        // fields not loaded of partially read models must not be overwritten with their defaults
+        completePartialModels(models);
+        writeChunks(models);
+        final Set<String> spilledAttributeKeys = models.stream()
+                .map(AlexaStateModel::getAttributeKey)
+                .filter(attributeKey -> spilledMarker.equals(session.getAttribute(attributeKey)))
+                .collect(Collectors.toSet());
+        putModelsToSession(models);
+        enforceSessionSizeBudget(models.stream().map(AlexaStateModel::getAttributeKey).collect(Collectors.toSet()));
+        // spilled state of models now kept in the session as a whole is outdated
+        final List<String> outdatedSpilledKeys = spilledAttributeKeys.stream()
+                .filter(attributeKey -> !spilledMarker.equals(session.getAttribute(attributeKey)))
+                .map(attributeKey -> spilledKeyPrefix + attributeKey)
+                .collect(Collectors.toList());
+        if (!outdatedSpilledKeys.isEmpty()) {
+            removeValues(outdatedSpilledKeys);
+        }
+    }
+
+    /**
+     * Mirrors models read from the backend of this handler to the session. Unlike writing models this neither
+     * writes chunks nor spills models to the backend so reading never writes to the backend. Models spilled to
+     * the backend stay spilled to keep the session within its budget.
+     * @param models models read from the backend
+     */
+    void mirrorModelsToSession(final Collection<? extends AlexaStateModel> models) {
+        putModelsToSession(models.stream()
+                .filter(model -> !spilledMarker.equals(session.getAttribute(model.getAttributeKey())))
+                .collect(Collectors.toList()));
+    }
+
+    private void putModelsToSession(final Collection<? extends AlexaStateModel> models) {
         models.forEach(model -> {
             try {
                 // scope annotations will be ignored as there is only one context you can saveState attributes
@@ -118,6 +357,7 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
                 log.error(e);
             }
         });
+        rememberModels(models);
     }
 
     /**
@@ -170,8 +410,33 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
     @Override
     public void removeModels(Collection<? extends AlexaStateModel> models) throws AlexaStateException {
         Validate.notNull(models, "Collection of models to be removed must not be null.");
+        removeValues(forgetModels(models));
+    }
+
+    /**
+     * Forgets about partial reads of the given models and returns the keys of all
+     * state saved for them. Handlers delegating the removal of models to other handlers
+     * use it to clean up the session without removing state twice.
+     * @param models models to be removed
+     * @return keys of the models, their chunks, index entries and aliased state
+     * @throws AlexaStateException if the keys of the models could not be determined
+     */
+    List<String> forgetModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        models.forEach(partialModels::remove);
         final List<String> ids = models.stream().map(AlexaStateModel::getAttributeKey).collect(Collectors.toList());
-        removeValues(ids);
+        // chunks of chunked lists are saved apart from their model
+        for (final AlexaStateModel model : models) {
+            for (final AlexaStateChunkedList<?> list : model.getChunkedLists()) {
+                ids.addAll(list.getChunkKeys());
+            }
+        }
+        // index entries are saved apart from their model
+        models.forEach(model -> ids.addAll(AlexaStateIndex.getEntryKeys(model)));
+        // also remove state saved before the model got an alias otherwise it would be read again
+        models.stream()
+                .filter(model -> AlexaStateKeyCodec.hasAlias(model.getClass()))
+                .forEach(model -> ids.add(getAttributeKey(model, true)));
+        return ids;
     }
 
     /**
@@ -185,7 +450,17 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
     @Override
     public void removeValues(final Collection<String> ids) throws AlexaStateException {
         Validate.notNull(ids, "Collection of ids whose values to be removed must not be null.");
+        // state of spilled models needs to be removed from the backend as well
+        final List<String> spilledKeys = ids.stream()
+                .filter(id -> spilledMarker.equals(session.getAttribute(id)))
+                .map(id -> spilledKeyPrefix + id)
+                .collect(Collectors.toList());
         ids.forEach(session::removeAttribute);
+        ids.forEach(identityMap::remove);
+        forgetLoaded(ids);
+        if (!spilledKeys.isEmpty()) {
+            removeValues(spilledKeys);
+        }
     }
 
     /**
@@ -206,60 +481,612 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
          return models.isEmpty() ? Optional.empty() : Optional.of(models.get(id));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Optional<TModel> readModel(final Class<TModel> modelClass, final String id, final Collection<String> fieldNames) throws AlexaStateException {
+        Validate.notNull(fieldNames, "Collection of field names to read must not be null.");
+        final TModel model = createModel(modelClass, id);
+        final Set<String> saveStateFieldNames = model.getSaveStateFields().stream().map(Field::getName).collect(Collectors.toSet());
+        fieldNames.forEach(fieldName -> Validate.isTrue(saveStateFieldNames.contains(fieldName), "'%1$s' is not an AlexaStateSave-field of '%2$s'.", fieldName, modelClass.getTypeName()));
+        // models present in the session or identity map are already parsed
+        final String attributeKey = model.getAttributeKey();
+        if (session.getAttributes().containsKey(attributeKey) || getKnownModel(modelClass, id) != null) {
+            return readModel(modelClass, id);
+        }
+        boolean found = false;
+        for (final AlexaScope scope : Arrays.asList(AlexaScope.USER, AlexaScope.APPLICATION)) {
+            // only scopes of requested fields are read
+            if (model.getSaveStateFields(scope).stream().noneMatch(field -> fieldNames.contains(field.getName()))) {
+                continue;
+            }
+            final String json = readModelJson(Collections.singletonList(attributeKey), scope).get(attributeKey);
+            if (json != null) {
+                model.fromJSON(json, scope, fieldNames);
+                found = true;
+            }
+        }
+        if (!found) {
+            return Optional.empty();
+        }
+        final Set<String> unloadedFieldNames = new HashSet<>(saveStateFieldNames);
+        unloadedFieldNames.removeAll(fieldNames);
+        if (!unloadedFieldNames.isEmpty()) {
+            partialModels.put(model, getFieldValues(model, unloadedFieldNames));
+        }
+        return Optional.of(model);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TEvent extends AlexaStateEvent> TEvent appendEvent(final TEvent event) throws AlexaStateException {
+        Validate.notNull(event, "Event to append must not be null.");
+        if (event.getId() == null) {
+            event.setId(AlexaStateEvent.createId(Instant.now()));
+        }
+        final AlexaStateObject stateObject = new AlexaStateObject(event.getAttributeKey(), event.toJSON(AlexaScope.USER), AlexaScope.USER);
+        writeEvent(stateObject);
+        // events are read with range reads only so they are not kept in the session if there is a backend
+        if (canSpillToBackend()) {
+            session.removeAttribute(stateObject.getId());
+            forgetLoaded(Collections.singletonList(stateObject.getId()));
+        }
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TEvent extends AlexaStateEvent> List<TEvent> readLastEvents(final Class<TEvent> eventClass, final int count) throws AlexaStateException {
+        Validate.isTrue(count > 0, "Number of events to read must be greater than zero.");
+        final List<TEvent> events = readEvents(eventClass, Instant.EPOCH, AlexaStateEvent.getMaxTime(), count, true);
+        // latest events are read first but returned in the order they happened
+        Collections.reverse(events);
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TEvent extends AlexaStateEvent> List<TEvent> readEvents(final Class<TEvent> eventClass, final Instant from, final Instant to) throws AlexaStateException {
+        return readEvents(eventClass, from, to, Integer.MAX_VALUE, false);
+    }
+
+    private <TEvent extends AlexaStateEvent> List<TEvent> readEvents(final Class<TEvent> eventClass, final Instant from, final Instant to, final int limit, final boolean descending) throws AlexaStateException {
+        Validate.notNull(eventClass, "Type of events must not be null.");
+        if (!supportsRangeReads()) {
+            throw rangeReadsNotSupported();
+        }
+        final String fromId = AlexaStateKeyCodec.encode(eventClass, AlexaStateEvent.getIdPrefix(from));
+        final String toId = AlexaStateKeyCodec.encode(eventClass, AlexaStateEvent.getIdPrefix(to));
+        final List<TEvent> events = new ArrayList<>();
+        for (final AlexaStateObject stateObject : readValueRange(fromId, toId, limit, descending, AlexaScope.USER)) {
+            final TEvent event = createModel(eventClass, AlexaStateKeyCodec.decode(eventClass, stateObject.getId()));
+            event.fromJSON(String.valueOf(stateObject.getValue()), AlexaScope.USER);
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The session handler looks up values in the session. Handlers with a backend capable of range reads override
+     * this along with readValueRange.
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return !canSpillToBackend();
+    }
+
+    /**
+     * Writes an appended event as a single user-scoped value. Handlers keeping events apart from other values
+     * to read them with range reads override this.
+     * @param stateObject The event as a single value.
+     * @throws AlexaStateException Writing to the backend failed.
+     */
+    void writeEvent(final AlexaStateObject stateObject) throws AlexaStateException {
+        writeValues(Collections.singletonList(stateObject));
+    }
+
+    /**
+     * Reads single values whose ids are within the given range with one request to the backend of this handler.
+     * Ids are compared lexicographically. Handlers with a backend capable of range reads override this. The session
+     * handler looks up values in the session.
+     * @param fromId Lowest id of the range (inclusive).
+     * @param toId Highest id of the range (exclusive).
+     * @param limit Maximum number of values to read.
+     * @param descending True, to read the values with the highest ids first.
+     * @param scope USER or APPLICATION
+     * @return values ordered by their ids
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        if (!supportsRangeReads()) {
+            throw rangeReadsNotSupported();
+        }
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        session.getAttributes().forEach((id, value) -> stateObjects.add(new AlexaStateObject(id, value, scope)));
+        return selectRange(stateObjects, fromId, toId, limit, descending);
+    }
+
+    /**
+     * Selects values whose ids are within the given range, orders them by their ids and applies the limit. Values
+     * coming first win if there are several ones with the same id.
+     * @param stateObjects candidates
+     * @param fromId Lowest id of the range (inclusive).
+     * @param toId Highest id of the range (exclusive).
+     * @param limit Maximum number of values to select.
+     * @param descending True, to select the values with the highest ids first.
+     * @return selected values ordered by their ids
+     */
+    static List<AlexaStateObject> selectRange(final Collection<AlexaStateObject> stateObjects, final String fromId, final String toId, final int limit, final boolean descending) {
+        final Map<String, AlexaStateObject> selected = new HashMap<>();
+        stateObjects.stream()
+                .filter(stateObject -> stateObject.getId().compareTo(fromId) >= 0 && stateObject.getId().compareTo(toId) < 0)
+                .forEach(stateObject -> selected.putIfAbsent(stateObject.getId(), stateObject));
+        final Comparator<AlexaStateObject> byId = Comparator.comparing(AlexaStateObject::getId);
+        return selected.values().stream()
+                .sorted(descending ? byId.reversed() : byId)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeScore(final String leaderboard, final double score) throws AlexaStateException {
+        Validate.notBlank(leaderboard, "Name of leaderboard must not be blank.");
+        Validate.isTrue(!Double.isNaN(score) && !Double.isInfinite(score), "Score must be a finite number.");
+        if (!supportsLeaderboards()) {
+            throw leaderboardsNotSupported();
+        }
+        writeScoreToBackend(leaderboard, score);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeScore(final String leaderboard) throws AlexaStateException {
+        Validate.notBlank(leaderboard, "Name of leaderboard must not be blank.");
+        if (!supportsLeaderboards()) {
+            throw leaderboardsNotSupported();
+        }
+        removeScoreFromBackend(leaderboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<AlexaStateScore> readTopScores(final String leaderboard, final int count) throws AlexaStateException {
+        Validate.notBlank(leaderboard, "Name of leaderboard must not be blank.");
+        Validate.isTrue(count > 0, "Number of scores to read must be greater than zero.");
+        if (!supportsLeaderboards()) {
+            throw leaderboardsNotSupported();
+        }
+        final List<AlexaStateScore> scores = new ArrayList<>();
+        for (final Map.Entry<String, Double> entry : readTopScoresFromBackend(leaderboard, count).entrySet()) {
+            // users with the same score share the rank of the first one of them
+            final AlexaStateScore previous = scores.isEmpty() ? null : scores.get(scores.size() - 1);
+            final int rank = previous != null && Double.compare(previous.getScore(), entry.getValue()) == 0 ? previous.getRank() : scores.size() + 1;
+            scores.add(new AlexaStateScore(entry.getKey(), entry.getValue(), rank));
+        }
+        return scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<AlexaStateScore> readScore(final String leaderboard) throws AlexaStateException {
+        Validate.notBlank(leaderboard, "Name of leaderboard must not be blank.");
+        if (!supportsLeaderboards()) {
+            throw leaderboardsNotSupported();
+        }
+        final Optional<Double> score = readScoreFromBackend(leaderboard);
+        if (!score.isPresent()) {
+            return Optional.empty();
+        }
+        final long higherScores = countHigherScores(leaderboard, score.get());
+        return Optional.of(new AlexaStateScore(getUserId(), score.get(), (int) Math.min(higherScores + 1, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Writes the score of the user to a leaderboard in the backend of this handler. Handlers with a backend shared
+     * by all users override this along with supportsLeaderboards and the other leaderboard operations. The session
+     * cannot hold a leaderboard as it only sees one user.
+     * @param leaderboard The name of the leaderboard.
+     * @param score The new score of the user.
+     * @throws AlexaStateException Writing to the backend failed.
+     */
+    void writeScoreToBackend(final String leaderboard, final double score) throws AlexaStateException {
+        throw leaderboardsNotSupported();
+    }
+
+    /**
+     * Removes the score of the user from a leaderboard in the backend of this handler.
+     * @param leaderboard The name of the leaderboard.
+     * @throws AlexaStateException Removing from the backend failed.
+     */
+    void removeScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        throw leaderboardsNotSupported();
+    }
+
+    /**
+     * Reads the highest scores of a leaderboard from the backend of this handler.
+     * @param leaderboard The name of the leaderboard.
+     * @param count Maximum number of scores to read.
+     * @return scores by user id ordered from the highest to the lowest score
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    Map<String, Double> readTopScoresFromBackend(final String leaderboard, final int count) throws AlexaStateException {
+        throw leaderboardsNotSupported();
+    }
+
+    /**
+     * Reads the score of the user in a leaderboard from the backend of this handler.
+     * @param leaderboard The name of the leaderboard.
+     * @return score of the user. Empty if the user has no score in this leaderboard.
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    Optional<Double> readScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        throw leaderboardsNotSupported();
+    }
+
+    /**
+     * Counts the users with a score higher than the given one in a leaderboard of the backend of this handler.
+     * @param leaderboard The name of the leaderboard.
+     * @param score A score.
+     * @return number of users with a higher score
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    long countHigherScores(final String leaderboard, final double score) throws AlexaStateException {
+        throw leaderboardsNotSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> List<String> readUserIds(final Class<TModel> modelClass, final String fieldName, final Object value) throws AlexaStateException {
+        Validate.notNull(value, "Value to look up must not be null.");
+        final String indexKey = AlexaStateIndex.getIndexKey(modelClass, fieldName, value);
+        if (!supportsIndexes()) {
+            throw indexesNotSupported();
+        }
+        return readIndexFromBackend(indexKey);
+    }
+
+    /**
+     * Reads the users with an index entry for the given index key from the backend of this handler. Handlers
+     * maintaining an index in a backend shared by all users override this along with supportsIndexes. The session
+     * cannot hold an index as it only sees one user.
+     * @param indexKey The index key to look up.
+     * @return ids of the users
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    List<String> readIndexFromBackend(final String indexKey) throws AlexaStateException {
+        throw indexesNotSupported();
+    }
+
+    AlexaStateException rangeReadsNotSupported() {
+        final String error = String.format("%1$s does not support range reads. Check supportsRangeReads() before.", getClass().getSimpleName());
+        log.error(error);
+        return AlexaStateException.create(error).withHandler(this).build();
+    }
+
+    private AlexaStateException leaderboardsNotSupported() {
+        final String error = String.format("%1$s does not support leaderboards. Check supportsLeaderboards() before.", getClass().getSimpleName());
+        log.error(error);
+        return AlexaStateException.create(error).withHandler(this).build();
+    }
+
+    private AlexaStateException indexesNotSupported() {
+        final String error = String.format("%1$s does not support indexes. Check supportsIndexes() before.", getClass().getSimpleName());
+        log.error(error);
+        return AlexaStateException.create(error).withHandler(this).build();
+    }
+
+    /**
+     * Returns the names of the fields not loaded for a model read partially by this handler.
+     * @param model A model read with readModel and a set of field names.
+     * @return names of fields not loaded. Empty if all fields were loaded or the model was saved in the meantime.
+     */
+    public Set<String> getUnloadedFields(final AlexaStateModel model) {
+        return Collections.unmodifiableSet(partialModels.getOrDefault(model, Collections.emptyMap()).keySet());
+    }
+
     @Override
     public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        final Map<String, TModel> models = readModelsFromSession(modelClass, ids);
+        rememberModels(models.values());
+        return models;
+    }
+
+    /**
+     * Reads models from the identity map or the session attributes. Models not yet in the identity map
+     * are not remembered so handlers with a backend can still decide to read them from there.
+     * @param modelClass The type of the models.
+     * @param ids The ids of the models.
+     * @param <TModel> The type of the models.
+     * @return models found in the identity map or the session (by id)
+     * @throws AlexaStateException Reading spilled state from the backend failed.
+     */
+    <TModel extends AlexaStateModel> Map<String, TModel> readModelsFromSession(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
         final Map<String, TModel> models = new HashMap<>();
-        final Collection<String> resolvedIds = ids.stream().map(id -> TModel.getAttributeKey(modelClass, id)).collect(Collectors.toList());
-        final Map<String, Object> raw = new HashMap<>();
+        final Map<String, Object> attributes = session.getAttributes();
+        // look up the attribute key of each model directly rather than going through all the attributes of the session
+        for (final String id : ids) {
+            String attributeKey = AlexaStateKeyCodec.encode(modelClass, id);
+            final TModel knownModel = getKnownModel(modelClass, id);
+            if (knownModel != null) {
+                models.put(id, knownModel);
+                continue;
+            }
+            Object o = attributes.get(attributeKey);
+            if (o == null && AlexaStateKeyCodec.hasAlias(modelClass)) {
+                // state written to the session before the model got an alias
+                attributeKey = AlexaStateKeyCodec.encodeLegacy(modelClass, id);
+                o = attributes.get(attributeKey);
+            }
+            if (o == null) {
+                continue;
+            }
+            final TModel model = toModel(modelClass, attributeKey, o);
+            if (model != null) {
+                log.debug(String.format("Read state for '%1$s' in session attributes.", model));
+                // unresolve ids
+                models.put(model.getId(), model);
+            }
+        }
+        return models;
+    }
 
-        session.getAttributes().forEach((id,val) -> {
-            if (resolvedIds.contains(id) && val != null) {
-                raw.put(id, val);
+    /**
+     * {@inheritDoc}
+     * If the model is not present as a map in the session it is read with readModel first (which might go to the
+     * backend of this handler) and mirrored to the session. With lazy loading enabled the view is returned right away
+     * and its state is read on first access to a field instead.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <TModel extends AlexaStateModel> Optional<AlexaStateModelView<TModel>> readModelView(final Class<TModel> modelClass, final String id) throws AlexaStateException {
+        final String attributeKey = AlexaStateKeyCodec.encode(modelClass, id);
+        Object o = session.getAttribute(attributeKey);
+        if (o == null && lazyLoadingEnabled && getKnownModel(modelClass, id) == null) {
+            final TModel model = createModel(modelClass, id);
+            final List<AlexaScope> scopes = new ArrayList<>();
+            if (model.hasUserScopedField()) {
+                scopes.add(AlexaScope.USER);
             }
-        });
+            if (model.hasApplicationScopedField()) {
+                scopes.add(AlexaScope.APPLICATION);
+            }
+            if (!scopes.isEmpty()) {
+                final Map<String, Object> attributes = new HashMap<>();
+                final AlexaStateModelView<TModel> view = new AlexaStateModelView<>(modelClass, id, attributes, this)
+                        .withLazyLoading(scopes, this::loadLazyViews);
+                lazyViews.put(view, attributes);
+                return Optional.of(view);
+            }
+        }
+        if (!(o instanceof Map<?, ?>)) {
+            final Optional<TModel> model = readModel(modelClass, id);
+            if (!model.isPresent()) {
+                return Optional.empty();
+            }
+            o = model.get().toMap(AlexaScope.SESSION);
+            session.setAttribute(attributeKey, o);
+        }
+        return Optional.of(new AlexaStateModelView<>(modelClass, id, (Map<String, Object>) o, this));
+    }
 
-        for (final String id : raw.keySet()) {
-            final Object o = raw.get(id);
+    /**
+     * Reads the state of models in one scope from the backend of this handler as json. Handlers whose backend does
+     * not serve model state with readValues override this.
+     * @param attributeKeys keys of the models
+     * @param scope USER or APPLICATION
+     * @return state of the models (by attribute key) as found in the given scope
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    Map<String, String> readModelJson(final Collection<String> attributeKeys, final AlexaScope scope) throws AlexaStateException {
+        final Map<String, String> states = new HashMap<>();
+        if (attributeKeys.isEmpty()) {
+            return states;
+        }
+        for (final Map.Entry<String, AlexaStateObject> entry : readValues(attributeKeys, scope).entrySet()) {
+            final Object value = entry.getValue().getValue();
+            if (value instanceof Map<?, ?>) {
+                try {
+                    states.put(entry.getKey(), mapper.writeValueAsString(value));
+                } catch (final JsonProcessingException e) {
+                    final String error = String.format("Could not serialize state of '%1$s'.", entry.getKey());
+                    log.error(error, e);
+                    throw AlexaStateException.create(error).withCause(e).withHandler(this).build();
+                }
+            } else if (value != null) {
+                states.put(entry.getKey(), String.valueOf(value));
+            }
+        }
+        return states;
+    }
 
-            if (o instanceof Map<?, ?>) {
-                final Map<?, ?> childAttributes = (Map<?, ?>) o;
-                final TModel model = AlexaStateModelFactory.createModel(modelClass, this, TModel.resolveAttributeKeyToId(modelClass, id));
+    private Map<String, Map<String, Object>> readModelStates(final Collection<String> attributeKeys, final AlexaScope scope) throws AlexaStateException {
+        final Map<String, Map<String, Object>> states = new HashMap<>();
+        readModelJson(attributeKeys, scope).forEach((attributeKey, json) -> states.put(attributeKey, ConversionUtils.mapJson(json)));
+        return states;
+    }
 
-                if (model != null) {
-                    model.getSaveStateFields(AlexaScope.SESSION).parallelStream()
-                            .filter(field -> childAttributes.containsKey(field.getName()))
-                            .forEach(field -> {
-                                try {
-                                    model.set(field, childAttributes.get(field.getName()));
-                                } catch (AlexaStateException e) {
-                                    log.error(String.format("Could not set value for '%1$s' of model '%2$s'", field.getName(), model), e);
-                                }
-                            });
-                    log.debug(String.format("Read state for '%1$s' in session attributes.", model));
-                    models.put(id, model);
+    /**
+     * Reads the fields not loaded of models read partially by this handler so they are complete before they get written.
+     * Fields set after the model was read keep their value. State of all models is read with one request per scope.
+     * @param models models to be written
+     * @throws AlexaStateException Reading from the backend failed.
+     */
+    void completePartialModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        if (partialModels.isEmpty()) {
+            return;
+        }
+        // fields neither loaded nor set since the read (by model)
+        final Map<AlexaStateModel, Set<String>> untouchedFieldNames = new IdentityHashMap<>();
+        for (final AlexaStateModel model : models) {
+            final Map<String, JsonNode> valuesOnRead = partialModels.remove(model);
+            if (valuesOnRead == null) {
+                continue;
+            }
+            final Set<String> fieldNames = new HashSet<>();
+            getFieldValues(model, valuesOnRead.keySet()).forEach((fieldName, value) -> {
+                if (Objects.equals(valuesOnRead.get(fieldName), value)) {
+                    fieldNames.add(fieldName);
                 }
+            });
+            if (!fieldNames.isEmpty()) {
+                untouchedFieldNames.put(model, fieldNames);
             }
-            else if (o instanceof String) {
-                final TModel model = AlexaStateModelFactory.createModel(modelClass, this, id);
-                model.fromJSON((String)o);
-                log.debug(String.format("Read state for '%1$s' in session attributes.", model));
-                models.put(id, model);
+        }
+        for (final AlexaScope scope : Arrays.asList(AlexaScope.USER, AlexaScope.APPLICATION)) {
+            final Map<String, AlexaStateModel> modelsToComplete = new HashMap<>();
+            untouchedFieldNames.forEach((model, fieldNames) -> {
+                if (model.getSaveStateFields(scope).stream().anyMatch(field -> fieldNames.contains(field.getName()))) {
+                    modelsToComplete.put(model.getAttributeKey(), model);
+                }
+            });
+            if (modelsToComplete.isEmpty()) {
+                continue;
             }
-            else {
-                // if not a map than expect it to be the model
-                // this only happens if a model was added to the session before its json-serialization
-                final TModel model = (TModel)o;
-                log.debug(String.format("Read state for '%1$s' in session attributes.", model));
-                models.put(id, model);
+            for (final Map.Entry<String, String> state : readModelJson(modelsToComplete.keySet(), scope).entrySet()) {
+                final AlexaStateModel model = modelsToComplete.get(state.getKey());
+                if (model != null) {
+                    model.fromJSON(state.getValue(), scope, untouchedFieldNames.get(model));
+                }
             }
         }
+    }
 
-        final Map<String, TModel> modelsToReturn = new HashMap<>();
-        // unresolve ids
-        models.forEach((id, model) -> {
-            modelsToReturn.put(model.getId(), model);
+    private Map<String, JsonNode> getFieldValues(final AlexaStateModel model, final Collection<String> fieldNames) throws AlexaStateException {
+        // values are kept as json to not be affected by changes to mutable values like lists
+        final Map<String, JsonNode> values = new HashMap<>();
+        for (final Field field : model.getSaveStateFields()) {
+            if (fieldNames.contains(field.getName())) {
+                try {
+                    values.put(field.getName(), mapper.valueToTree(model.get(field)));
+                } catch (final IllegalArgumentException e) {
+                    final String error = String.format("Could not encode value of '%1$s' as Json.", field.getName());
+                    log.error(error, e);
+                    throw AlexaStateException.create(error).withCause(e).withModel(model).withHandler(this).build();
+                }
+            }
+        }
+        return values;
+    }
+
+    private void loadLazyViews(final AlexaStateModelView<?> view, final AlexaScope scope) throws AlexaStateException {
+        // the first access to a scope loads it for all views waiting for it
+        final Map<String, AlexaStateModelView<?>> viewsToLoad = new HashMap<>();
+        lazyViews.keySet().stream().filter(lazyView -> !lazyView.isLoaded(scope))
+                .forEach(lazyView -> viewsToLoad.put(AlexaStateKeyCodec.encode(lazyView.getModelClass(), lazyView.getId()), lazyView));
+        final Map<String, Map<String, Object>> states = readModelStates(viewsToLoad.keySet(), scope);
+        viewsToLoad.forEach((attributeKey, lazyView) -> {
+            final Map<String, Object> state = states.get(attributeKey);
+            if (state != null) {
+                lazyViewsFound.add(lazyView);
+            }
+            lazyView.load(scope, state);
         });
-        return modelsToReturn;
+        // views with all of their state loaded are mirrored to the session if any state was found
+        final List<String> loadedKeys = new ArrayList<>();
+        final Iterator<Map.Entry<AlexaStateModelView<?>, Map<String, Object>>> iterator = lazyViews.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<AlexaStateModelView<?>, Map<String, Object>> entry = iterator.next();
+            final AlexaStateModelView<?> lazyView = entry.getKey();
+            if (lazyView.isLoaded(AlexaScope.USER) && lazyView.isLoaded(AlexaScope.APPLICATION)) {
+                final String attributeKey = AlexaStateKeyCodec.encode(lazyView.getModelClass(), lazyView.getId());
+                if (lazyViewsFound.remove(lazyView) && !session.getAttributes().containsKey(attributeKey)) {
+                    session.setAttribute(attributeKey, entry.getValue());
+                    loadedKeys.add(attributeKey);
+                }
+                iterator.remove();
+            }
+        }
+        markAsLoaded(loadedKeys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <TModel extends AlexaStateModel> TModel toModel(final Class<TModel> modelClass, final String attributeKey, final Object o) throws AlexaStateException {
+        if (spilledMarker.equals(o)) {
+            // state of this model was spilled to the backend
+            final Optional<AlexaStateObject> spilled = readValue(spilledKeyPrefix + attributeKey, AlexaScope.USER);
+            if (!spilled.isPresent() || spilled.get().getValue() == null) {
+                log.warn(String.format("Could not reload spilled state of '%1$s' from the backend.", attributeKey));
+                return null;
+            }
+            final TModel model = AlexaStateModelFactory.createModel(modelClass, this, AlexaStateKeyCodec.decode(modelClass, attributeKey));
+            model.fromJSON(String.valueOf(spilled.get().getValue()));
+            return model;
+        }
+        if (o instanceof Map<?, ?>) {
+            final Map<?, ?> childAttributes = (Map<?, ?>) o;
+            final TModel model = AlexaStateModelFactory.createModel(modelClass, this, AlexaStateKeyCodec.decode(modelClass, attributeKey));
+            if (model != null) {
+                // a model only has a handful of fields so they are set one after another
+                for (final Field field : model.getSaveStateFields(AlexaScope.SESSION)) {
+                    // fields with a short name might still be saved with their full name
+                    final String persistedName = AlexaStateModel.getPersistedName(field);
+                    final String name = childAttributes.containsKey(persistedName) ? persistedName : field.getName();
+                    if (childAttributes.containsKey(name)) {
+                        try {
+                            final Object value = childAttributes.get(name);
+                            // references are kept as their keys in the session
+                            model.set(field, value != null && isHandlerManagedField(field) ?
+                                    mapper.convertValue(value, mapper.getTypeFactory().constructType(field.getGenericType())) : value);
+                        } catch (AlexaStateException e) {
+                            log.error(String.format("Could not set value for '%1$s' of model '%2$s'", field.getName(), model), e);
+                        }
+                    }
+                }
+            }
+            return model;
+        }
+        else if (o instanceof String) {
+            final TModel model = AlexaStateModelFactory.createModel(modelClass, this, AlexaStateKeyCodec.decode(modelClass, attributeKey));
+            model.fromJSON((String)o);
+            return model;
+        }
+        // if not a map than expect it to be the model
+        // this only happens if a model was added to the session before its json-serialization
+        return (TModel)o;
+    }
+
+    private static boolean isHandlerManagedField(final Field field) {
+        // fields holding references directly or in a collection or map and chunked lists are kept as json in the session
+        return isHandlerManagedType(field.getGenericType());
+    }
+
+    private static boolean isHandlerManagedType(final Type type) {
+        if (type instanceof Class<?>) {
+            final Class<?> clazz = (Class<?>) type;
+            return clazz.isArray() ? isHandlerManagedType(clazz.getComponentType()) :
+                    AlexaStateRef.class.isAssignableFrom(clazz) || AlexaStateChunkedList.class.isAssignableFrom(clazz);
+        }
+        if (type instanceof ParameterizedType) {
+            final ParameterizedType parameterizedType = (ParameterizedType) type;
+            return isHandlerManagedType(parameterizedType.getRawType()) ||
+                    Arrays.stream(parameterizedType.getActualTypeArguments()).anyMatch(AlexaSessionStateHandler::isHandlerManagedType);
+        }
+        if (type instanceof GenericArrayType) {
+            return isHandlerManagedType(((GenericArrayType) type).getGenericComponentType());
+        }
+        if (type instanceof WildcardType) {
+            return Arrays.stream(((WildcardType) type).getUpperBounds()).anyMatch(AlexaSessionStateHandler::isHandlerManagedType);
+        }
+        return false;
     }
 
     /**
@@ -267,7 +1094,7 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
      */
     @Override
     public <TModel extends AlexaStateModel> boolean exists(final Class<TModel> modelClass) throws AlexaStateException {
-        return exists(TModel.getAttributeKey(modelClass));
+        return exists(modelClass, null, AlexaScope.SESSION);
     }
 
     /**
@@ -275,7 +1102,7 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
      */
     @Override
     public <TModel extends AlexaStateModel> boolean exists(final Class<TModel> modelClass, final String id) throws AlexaStateException {
-        return exists(TModel.getAttributeKey(modelClass, id));
+        return exists(modelClass, id, AlexaScope.SESSION);
     }
 
     /**
@@ -283,7 +1110,7 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
      */
     @Override
     public <TModel extends AlexaStateModel> boolean exists(final Class<TModel> modelClass, final AlexaScope scope) throws AlexaStateException {
-        return exists(TModel.getAttributeKey(modelClass), scope);
+        return exists(modelClass, null, scope);
     }
 
     /**
@@ -291,7 +1118,9 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
      */
     @Override
     public <TModel extends AlexaStateModel> boolean exists(final Class<TModel> modelClass, final String id, final AlexaScope scope) throws AlexaStateException {
-        return exists(TModel.getAttributeKey(modelClass, id), scope);
+        return exists(AlexaStateKeyCodec.encode(modelClass, id), scope) ||
+                // state saved before the model got an alias
+                (AlexaStateKeyCodec.hasAlias(modelClass) && exists(AlexaStateKeyCodec.encodeLegacy(modelClass, id), scope));
     }
 
     /**
@@ -361,6 +1190,279 @@ public class AlexaSessionStateHandler implements AlexaStateHandler {
         return stateObjectMap;
     }
 
+    /**
+     * Selects those models a handler needs to read from its backend as per the read policy. Models
+     * are served from the session only if they were mirrored from the backend before and are not outdated.
+     * @param models models to be read (by id)
+     * @param <TModel> model type
+     * @return models to be read from the backend (by id)
+     */
+    <TModel extends AlexaStateModel> Map<String, TModel> selectModelsToRead(final Map<String, TModel> models) {
+        if (AlexaReadPolicy.ALWAYS_BACKEND.equals(readPolicy) && identityMap.isEmpty()) {
+            return models;
+        }
+        final Map<String, Object> loaded = getLoadTimestamps();
+        final Map<String, TModel> modelsToRead = new HashMap<>();
+        models.forEach((id, model) -> {
+            // models served from the identity map were already read from or written to the backend in this request
+            if (identityMap.get(model.getAttributeKey()) == model) {
+                return;
+            }
+            if (AlexaReadPolicy.ALWAYS_BACKEND.equals(readPolicy) || needsBackendRead(model.getAttributeKey(), loaded)) {
+                modelsToRead.put(id, model);
+            }
+        });
+        return modelsToRead;
+    }
+
+    /**
+     * Selects those single values a handler needs to read from its backend as per the read policy. Values
+     * are served from the session only if they were mirrored from the backend before and are not outdated.
+     * @param idsInScope ids of values to be read with their scopes
+     * @return ids of values to be read from the backend with their scopes
+     */
+    Map<String, AlexaScope> selectValuesToRead(final Map<String, AlexaScope> idsInScope) {
+        if (AlexaReadPolicy.ALWAYS_BACKEND.equals(readPolicy)) {
+            return idsInScope;
+        }
+        final Map<String, Object> loaded = getLoadTimestamps();
+        final Map<String, AlexaScope> idsToRead = new HashMap<>();
+        idsInScope.forEach((id, scope) -> {
+            if (needsBackendRead(id, loaded)) {
+                idsToRead.put(id, scope);
+            }
+        });
+        return idsToRead;
+    }
+
+    /**
+     * Remembers the given keys (attribute keys of models or ids of single values) as being mirrored from
+     * the backend to the session right now. Nothing is remembered if the read policy is ALWAYS_BACKEND.
+     * @param keys attribute keys of models or ids of single values
+     */
+    void markAsLoaded(final Collection<String> keys) {
+        if (AlexaReadPolicy.ALWAYS_BACKEND.equals(readPolicy) || keys.isEmpty()) {
+            return;
+        }
+        final Map<String, Object> loaded = getLoadTimestamps();
+        final Long now = System.currentTimeMillis();
+        keys.forEach(key -> loaded.put(key, now));
+        session.setAttribute(attributeKeyLoaded, loaded);
+    }
+
+    /**
+     * Remembers the given models as being mirrored from the backend to the session right now.
+     * Nothing is remembered if the read policy is ALWAYS_BACKEND.
+     * @param models models whose state in the session is in sync with the backend
+     */
+    void markModelsAsLoaded(final Collection<? extends AlexaStateModel> models) {
+        markAsLoaded(models.stream().map(AlexaStateModel::getAttributeKey).collect(Collectors.toList()));
+    }
+
+    /**
+     * Remembers the user- and application-scoped values as being mirrored from the backend to the session
+     * right now. Nothing is remembered if the read policy is ALWAYS_BACKEND.
+     * @param stateObjects values whose state in the session is in sync with the backend
+     */
+    void markValuesAsLoaded(final Collection<? extends AlexaStateObject> stateObjects) {
+        markAsLoaded(stateObjects.stream()
+                .filter(stateObject -> stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
+                .map(AlexaStateObject::getId)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns the model kept in the identity map for the given type and id.
+     * @param modelClass The type of the model.
+     * @param id The id of the model.
+     * @param <TModel> The type of the model.
+     * @return the model kept in the identity map. Null if there's none.
+     */
+    @SuppressWarnings("unchecked")
+    <TModel extends AlexaStateModel> TModel getKnownModel(final Class<TModel> modelClass, final String id) {
+        return (TModel) identityMap.get(AlexaStateKeyCodec.encode(modelClass, id));
+    }
+
+    /**
+     * Returns the key the given model is saved with in the backend.
+     * @param model the model
+     * @param legacy True, to get the key the model was saved with before its type got an alias
+     * @return key of the model
+     */
+    String getAttributeKey(final AlexaStateModel model, final boolean legacy) {
+        return legacy ? AlexaStateKeyCodec.encodeLegacy(model.getClass(), model.getId()) : model.getAttributeKey();
+    }
+
+    /**
+     * Selects those models a handler should look for once more under the key they were saved with before
+     * their type got an alias. These are the models of aliased types not found under their alias.
+     * @param modelsToRead models read from the backend
+     * @param updatedModels models found in the backend (by id)
+     * @param <TModel> model type
+     * @return models to be read from the backend with their legacy key
+     */
+    <TModel extends AlexaStateModel> List<TModel> selectLegacyModelsToRead(final Collection<TModel> modelsToRead, final Map<String, TModel> updatedModels) {
+        return modelsToRead.stream()
+                .filter(model -> !updatedModels.containsKey(model.getId()) && AlexaStateKeyCodec.hasAlias(model.getClass()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keeps the given models in the identity map if it is enabled. A model already kept for the same
+     * type and id is replaced.
+     * @param models models to remember
+     */
+    void rememberModels(final Collection<? extends AlexaStateModel> models) {
+        if (identityMapEnabled) {
+            models.forEach(model -> identityMap.put(model.getAttributeKey(), model));
+        }
+    }
+
+    /**
+     * Writes the chunks of chunked lists in the given models changed since they were saved last. Chunks are
+     * not kept in the session if this handler has a backend to read them from.
+     */
+    private void writeChunks(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        final List<AlexaStateChunkedList<?>> lists = new ArrayList<>();
+        final List<AlexaStateObject> chunks = new ArrayList<>();
+        for (final AlexaStateModel model : models) {
+            for (final AlexaStateChunkedList<?> list : model.getChunkedLists()) {
+                lists.add(list);
+                chunks.addAll(list.getUnsavedChunks());
+            }
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+        // one batch to the backend. it also puts the chunks to the session so they need to be removed afterwards
+        writeValues(chunks);
+        lists.forEach(AlexaStateChunkedList::markAsSaved);
+        final List<String> chunkKeys = chunks.stream()
+                .filter(chunk -> canSpillToBackend() && !AlexaScope.SESSION.equals(chunk.getScope()))
+                .map(AlexaStateObject::getId)
+                .collect(Collectors.toList());
+        chunkKeys.forEach(session::removeAttribute);
+        forgetLoaded(chunkKeys);
+    }
+
+    /**
+     * Returns if this handler is able to spill state of models to its backend and read it back. This is the case
+     * for handlers persisting single values in the user scope. The session handler itself has no backend.
+     * @return True, if this handler can spill state of models to its backend
+     */
+    boolean canSpillToBackend() {
+        return false;
+    }
+
+    /**
+     * Spills the largest models in the session to the backend if the JSON-encoded session attributes
+     * exceed the size budget. Each spilled model is written to the backend as a user-scoped single value
+     * and its session attribute is replaced by a marker. Only the written attributes and those which changed
+     * since they were measured last are encoded to get their size.
+     * @param writtenKeys keys of the session attributes just written
+     */
+    private void enforceSessionSizeBudget(final Set<String> writtenKeys) throws AlexaStateException {
+        if (sessionSizeBudget <= 0 || !canSpillToBackend()) {
+            return;
+        }
+        final Map<String, Integer> modelSizes = new HashMap<>();
+        int sessionSize = 0;
+        for (final Map.Entry<String, Object> attribute : session.getAttributes().entrySet()) {
+            final int size = getAttributeSize(attribute.getKey(), attribute.getValue(), writtenKeys);
+            sessionSize += size;
+            // models are kept as maps in the session
+            if (attribute.getValue() instanceof Map<?, ?> && !attributeKeyLoaded.equals(attribute.getKey())) {
+                modelSizes.put(attribute.getKey(), size);
+            }
+        }
+        // sizes of attributes no longer in the session are not needed anymore
+        attributeSizes.keySet().retainAll(session.getAttributes().keySet());
+        if (sessionSize <= sessionSizeBudget) {
+            return;
+        }
+        // spill largest models first until the session fits into the budget
+        final List<String> attributeKeys = new ArrayList<>(modelSizes.keySet());
+        attributeKeys.sort((key1, key2) -> modelSizes.get(key2).compareTo(modelSizes.get(key1)));
+        final List<AlexaStateObject> spilledStates = new ArrayList<>();
+        for (final String attributeKey : attributeKeys) {
+            if (sessionSize <= sessionSizeBudget) {
+                break;
+            }
+            spilledStates.add(new AlexaStateObject(spilledKeyPrefix + attributeKey, toJson(session.getAttribute(attributeKey)), AlexaScope.USER));
+            sessionSize -= modelSizes.get(attributeKey) - getEncodedSize(attributeKey, spilledMarker);
+        }
+        if (spilledStates.isEmpty()) {
+            return;
+        }
+        // one batch to the backend. it also puts the states to the session so they need to be removed afterwards
+        writeValues(spilledStates);
+        final List<String> spilledKeys = new ArrayList<>();
+        spilledStates.forEach(spilledState -> {
+            final String attributeKey = spilledState.getId().substring(spilledKeyPrefix.length());
+            session.setAttribute(attributeKey, spilledMarker);
+            session.removeAttribute(spilledState.getId());
+            spilledKeys.add(spilledState.getId());
+        });
+        forgetLoaded(spilledKeys);
+        log.info(String.format("Spilled %1$s models to the backend to fit session into %2$s bytes.", spilledStates.size(), sessionSizeBudget));
+        if (sessionSize > sessionSizeBudget) {
+            log.warn(String.format("Session still takes %1$s bytes which exceeds its budget of %2$s bytes.", sessionSize, sessionSizeBudget));
+        }
+    }
+
+    private int getAttributeSize(final String key, final Object value, final Set<String> writtenKeys) throws AlexaStateException {
+        final Map.Entry<Object, Integer> measured = attributeSizes.get(key);
+        // handlers replace session attributes rather than changing them in place so an unchanged value is the same object
+        if (measured != null && measured.getKey() == value && !writtenKeys.contains(key)) {
+            return measured.getValue();
+        }
+        final int size = getEncodedSize(key, value);
+        attributeSizes.put(key, new AbstractMap.SimpleImmutableEntry<>(value, size));
+        return size;
+    }
+
+    private int getEncodedSize(final String key, final Object value) throws AlexaStateException {
+        // key and value plus quotes and colon
+        return (key + toJson(value)).getBytes(StandardCharsets.UTF_8).length + 3;
+    }
+
+    private String toJson(final Object value) throws AlexaStateException {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (final JsonProcessingException e) {
+            final String error = "Could not encode session attribute as Json.";
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).withHandler(this).build();
+        }
+    }
+
+    private void forgetLoaded(final Collection<String> keys) {
+        if (session.getAttributes().containsKey(attributeKeyLoaded)) {
+            final Map<String, Object> loaded = getLoadTimestamps();
+            loaded.keySet().removeAll(keys);
+            session.setAttribute(attributeKeyLoaded, loaded);
+        }
+    }
+
+    private boolean needsBackendRead(final String key, final Map<String, Object> loaded) {
+        // state not in the session or not mirrored from the backend (e.g. written by another session handler)
+        if (!session.getAttributes().containsKey(key) || !(loaded.get(key) instanceof Number)) {
+            return true;
+        }
+        return AlexaReadPolicy.SESSION_FIRST_WITH_MAX_AGE.equals(readPolicy) &&
+                System.currentTimeMillis() - ((Number) loaded.get(key)).longValue() > maxAgeMillis;
+    }
+
+    private Map<String, Object> getLoadTimestamps() {
+        // timestamps come back as a map of numbers after the session went through json serialization
+        final Object loaded = session.getAttribute(attributeKeyLoaded);
+        final Map<String, Object> timestamps = new HashMap<>();
+        if (loaded instanceof Map<?, ?>) {
+            ((Map<?, ?>) loaded).forEach((key, value) -> timestamps.put(String.valueOf(key), value));
+        }
+        return timestamps;
+    }
+
     private boolean existsInSession(final String id, final AlexaScope scope) {
         return AlexaScope.SESSION.includes(scope) && session.getAttributes().containsKey(id);
     }
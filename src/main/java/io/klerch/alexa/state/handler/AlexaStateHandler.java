@@ -10,7 +10,9 @@ import com.amazon.speech.speechlet.Session;
 import io.klerch.alexa.state.model.*;
 import io.klerch.alexa.state.utils.AlexaStateException;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -176,6 +178,40 @@ public interface AlexaStateHandler {
      */
     <TModel extends AlexaStateModel> Optional<TModel> readModel(final Class<TModel> modelClass, final String id) throws AlexaStateException;
 
+    /**
+     * Reads out only the given fields of a model from the persistence store of this handler. State of the model is
+     * parsed for these fields only whereas all other fields keep their default value and are marked as not loaded.
+     * Once you save such a model with this handler the fields not loaded are read before so their state won't get lost.
+     * If the model is already present in the session it is read as a whole. Handlers not able to read single fields
+     * read the whole model by default.
+     * @param modelClass Type of the model you would like to read out. It needs to be of type {@link AlexaStateModel}.
+     * @param id The id of an existing instance of your model in the persistence store. Can be null for the singleton instance of the model.
+     * @param fieldNames Names of AlexaStateSave-fields to read.
+     * @param <TModel> Type derived from {@link AlexaStateModel}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return A model matching the given type and id. Augmented with the given fields found in the persistence store.
+     */
+    default <TModel extends AlexaStateModel> Optional<TModel> readModel(final Class<TModel> modelClass, final String id, final Collection<String> fieldNames) throws AlexaStateException {
+        // handlers not able to read fields separately read the model as a whole
+        return readModel(modelClass, id);
+    }
+
+    /**
+     * Reads out a model as a lazy view backed by its attributes in the session. Other than readModel this does not
+     * create the model and does not set all of its fields but converts a field not before it is accessed in the view.
+     * Values set in the view are written with this handler right away. Handlers not keeping models in the session
+     * read the model as a whole and back the view with its state.
+     * @param modelClass Type of the model you would like to read out. It needs to be of type {@link AlexaStateModel}.
+     * @param id The id of an existing instance of your model in the persistence store. Can be null for the singleton instance of the model.
+     * @param <TModel> Type derived from {@link AlexaStateModel}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return A view on the model matching the given type and id. Empty if the model could not be found.
+     */
+    default <TModel extends AlexaStateModel> Optional<AlexaStateModelView<TModel>> readModelView(final Class<TModel> modelClass, final String id) throws AlexaStateException {
+        final Optional<TModel> model = readModel(modelClass, id);
+        return model.isPresent() ? Optional.of(new AlexaStateModelView<>(modelClass, id, model.get().toMap(AlexaScope.SESSION), this)) : Optional.empty();
+    }
+
     /**
      * Reads out models from the persistence store of this handler. Depending on the {@link AlexaScope AlexaScope}s configured in
      * the {@link AlexaStateSave AlexaStateSave} annotations it will possibly collect data from more than one persistence store. (most
@@ -189,6 +225,151 @@ public interface AlexaStateHandler {
      */
     <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException;
 
+    /**
+     * Reads all models referenced with an AlexaStateRef by the given models and by the models they reference. Referenced
+     * models of the same type are read with one call to readModels per level of the model graph.
+     * @param models The models whose references are resolved.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    default void resolveRefs(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        AlexaStateRef.resolveAll(this, models);
+    }
+
+    /**
+     * Appends an event to the event log of the user. The event is given an id starting with the current time unless
+     * it has one already and is saved as a single user-scoped item. Events are never updated once appended.
+     * Handlers not overriding this fail with an AlexaStateException as their events could not be read anyway.
+     * @param event The event to append.
+     * @param <TEvent> Type derived from {@link AlexaStateEvent}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return the appended event
+     */
+    default <TEvent extends AlexaStateEvent> TEvent appendEvent(final TEvent event) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support range reads. Check supportsRangeReads() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Reads the last events of the given type from the event log of the user with one range read.
+     * Fails with an AlexaStateException if this handler does not support range reads.
+     * @param eventClass Type of the events.
+     * @param count Maximum number of events to read.
+     * @param <TEvent> Type derived from {@link AlexaStateEvent}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return the last events ordered by their time with the latest event at the end
+     */
+    default <TEvent extends AlexaStateEvent> List<TEvent> readLastEvents(final Class<TEvent> eventClass, final int count) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support range reads. Check supportsRangeReads() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Reads the events of the given type within a time window from the event log of the user with one range read.
+     * Fails with an AlexaStateException if this handler does not support range reads.
+     * @param eventClass Type of the events.
+     * @param from Start of the time window (inclusive).
+     * @param to End of the time window (exclusive).
+     * @param <TEvent> Type derived from {@link AlexaStateEvent}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return the events of the time window ordered by their time
+     */
+    default <TEvent extends AlexaStateEvent> List<TEvent> readEvents(final Class<TEvent> eventClass, final Instant from, final Instant to) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support range reads. Check supportsRangeReads() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Returns if this handler is able to read a range of values from its persistence store with one request.
+     * Reading events relies on it.
+     * @return True, if this handler supports range reads.
+     */
+    default boolean supportsRangeReads() {
+        return false;
+    }
+
+    /**
+     * Sets the score of the user in a leaderboard shared by all users of the skill. Only the score of this user is
+     * written so concurrent updates of different users do not interfere. A former score of the user is replaced.
+     * Fails with an AlexaStateException if this handler does not support leaderboards.
+     * @param leaderboard The name of the leaderboard.
+     * @param score The new score of the user.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    default void writeScore(final String leaderboard, final double score) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support leaderboards. Check supportsLeaderboards() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Removes the score of the user from a leaderboard.
+     * Fails with an AlexaStateException if this handler does not support leaderboards.
+     * @param leaderboard The name of the leaderboard.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    default void removeScore(final String leaderboard) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support leaderboards. Check supportsLeaderboards() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Reads the highest scores of a leaderboard along with the ranks of the users.
+     * Fails with an AlexaStateException if this handler does not support leaderboards.
+     * @param leaderboard The name of the leaderboard.
+     * @param count Maximum number of scores to read.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return highest scores ordered by rank
+     */
+    default List<AlexaStateScore> readTopScores(final String leaderboard, final int count) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support leaderboards. Check supportsLeaderboards() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Reads the score of the user in a leaderboard along with the rank of the user.
+     * Fails with an AlexaStateException if this handler does not support leaderboards.
+     * @param leaderboard The name of the leaderboard.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return score of the user. Empty if the user has no score in this leaderboard.
+     */
+    default Optional<AlexaStateScore> readScore(final String leaderboard) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support leaderboards. Check supportsLeaderboards() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Returns if this handler is able to keep leaderboards. It needs a persistence store shared by all users
+     * which can order their scores.
+     * @return True, if this handler supports leaderboards.
+     */
+    default boolean supportsLeaderboards() {
+        return false;
+    }
+
+    /**
+     * Looks up the users having a model of the given type whose indexed field has the given value. The field needs
+     * to be tagged as indexed in its AlexaStateSave-annotation. Read the models of a user with a handler given
+     * the id of that user. Fails with an AlexaStateException if this handler does not support indexes.
+     * @param modelClass Type of the model.
+     * @param fieldName The name of an indexed field of the model.
+     * @param value The value to look up.
+     * @param <TModel> Type derived from {@link AlexaStateModel}
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return ids of the users having a model with this value
+     */
+    default <TModel extends AlexaStateModel> List<String> readUserIds(final Class<TModel> modelClass, final String fieldName, final Object value) throws AlexaStateException {
+        throw AlexaStateException.create(String.format("%1$s does not support indexes. Check supportsIndexes() before.", getClass().getSimpleName()))
+                .withHandler(this).build();
+    }
+
+    /**
+     * Returns if this handler is able to look up users by the values of indexed fields. It needs a persistence
+     * store shared by all users which keeps the index entries of their models.
+     * @return True, if this handler supports indexes.
+     */
+    default boolean supportsIndexes() {
+        return false;
+    }
+
     /**
      * Reads a single object value from the persistence store. If no scope is provided this method will
      * always look for the value in Alexa session by default (Scope = Session). If you want
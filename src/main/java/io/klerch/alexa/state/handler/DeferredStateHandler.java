@@ -0,0 +1,440 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SessionEndedRequest;
+import com.amazon.speech.speechlet.SpeechletRequest;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This handler defers writes of user- and application-scoped state to another handler (e.g. an AWSDynamoStateHandler)
+ * until the session ends. In the meantime written state is kept in the session attributes only and is read from there.
+ * Deferred state is flushed to the backend handler on commit(), on a SessionEndedRequest given to
+ * commitOnSessionEnded() or once a configured number of turns or amount of time has passed since the first deferred write.
+ * Other than with the TieredStateHandler the deferred state survives the turns of a session as it is kept in the session.
+ * Be aware of deferred state getting lost if the session does not end gracefully and there's no threshold set.
+ * This handler derives from the AlexaSessionStateHandler thus it reads and writes state also to your Alexa session.
+ */
+public class DeferredStateHandler extends AlexaSessionStateHandler {
+    private final Logger log = Logger.getLogger(DeferredStateHandler.class);
+    // session attributes keeping track of deferred state across turns
+    static final String attributeKeyDeferredModels = "__deferredModels";
+    static final String attributeKeyDeferredValues = "__deferredValues";
+    static final String attributeKeyDeferredTurns = "__deferredTurns";
+    static final String attributeKeyDeferredSince = "__deferredSince";
+
+    private final AlexaStateHandler backend;
+    private int maxTurns = 0;
+    private long maxMillis = 0L;
+    // a handler lives as long as a request so the turn is counted on its first write
+    private boolean turnCounted = false;
+
+    /**
+     * Takes the Alexa session and the handler to write deferred state to.
+     *
+     * @param session The Alexa session of your current skill invocation.
+     * @param backend The handler persisting state permanently (e.g. an AWSDynamoStateHandler).
+     */
+    public DeferredStateHandler(final Session session, final AlexaStateHandler backend) {
+        super(session);
+        Validate.notNull(backend, "Backend handler must not be null.");
+        this.backend = backend;
+    }
+
+    /**
+     * Returns the handler deferred state is written to.
+     *
+     * @return backend handler
+     */
+    public AlexaStateHandler getBackend() {
+        return this.backend;
+    }
+
+    /**
+     * Sets the number of turns after which deferred state is flushed to the backend. A turn is counted on the
+     * first write of a handler instance as a handler usually lives as long as a request.
+     *
+     * @param maxTurns number of turns with writes after which deferred state is flushed. Zero disables this threshold.
+     * @return handler
+     */
+    public DeferredStateHandler withMaxTurns(final int maxTurns) {
+        Validate.isTrue(maxTurns >= 0, "Max turns must not be negative.");
+        this.maxTurns = maxTurns;
+        return this;
+    }
+
+    /**
+     * Returns the number of turns after which deferred state is flushed to the backend.
+     *
+     * @return number of turns. Zero if this threshold is disabled.
+     */
+    public int getMaxTurns() {
+        return this.maxTurns;
+    }
+
+    /**
+     * Sets the milliseconds after the first deferred write when deferred state is flushed to the backend.
+     *
+     * @param maxMillis milliseconds after which deferred state is flushed. Zero disables this threshold.
+     * @return handler
+     */
+    public DeferredStateHandler withMaxMillis(final long maxMillis) {
+        Validate.isTrue(maxMillis >= 0, "Max millis must not be negative.");
+        this.maxMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Returns the milliseconds after the first deferred write when deferred state is flushed to the backend.
+     *
+     * @return milliseconds. Zero if this threshold is disabled.
+     */
+    public long getMaxMillis() {
+        return this.maxMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The user id is also given to the backend handler.
+     */
+    @Override
+    public DeferredStateHandler withUserId(final String userId) {
+        super.withUserId(userId);
+        if (backend instanceof AlexaSessionStateHandler) {
+            ((AlexaSessionStateHandler) backend).setUserId(userId);
+        }
+        return this;
+    }
+
+    /**
+     * Returns true if there are models or values not yet written to the backend.
+     *
+     * @return True, if there is deferred state to commit
+     */
+    public boolean hasDeferredWrites() {
+        return !getDeferred(attributeKeyDeferredModels).isEmpty() || !getDeferred(attributeKeyDeferredValues).isEmpty();
+    }
+
+    /**
+     * Writes all deferred models and values to the backend handler.
+     *
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public void commit() throws AlexaStateException {
+        final Map<String, String> deferredModels = getDeferred(attributeKeyDeferredModels);
+        final Map<String, String> deferredValues = getDeferred(attributeKeyDeferredValues);
+
+        final List<AlexaStateModel> models = new ArrayList<>();
+        // group by model type as models are read from the session per type
+        final Map<String, List<String>> keysByType = deferredModels.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        for (final Map.Entry<String, List<String>> keys : keysByType.entrySet()) {
+            models.addAll(readDeferredModels(keys.getKey(), keys.getValue()));
+        }
+        final List<AlexaStateObject> values = deferredValues.entrySet().stream()
+                .filter(value -> session.getAttributes().containsKey(value.getKey()))
+                .map(value -> new AlexaStateObject(value.getKey(), session.getAttribute(value.getKey()), AlexaScope.valueOf(value.getValue())))
+                .collect(Collectors.toList());
+
+        if (!models.isEmpty()) {
+            backend.writeModels(models);
+        }
+        if (!values.isEmpty()) {
+            backend.writeValues(values);
+        }
+        log.debug(String.format("Committed %1$s models and %2$s values to backend.", models.size(), values.size()));
+        session.removeAttribute(attributeKeyDeferredModels);
+        session.removeAttribute(attributeKeyDeferredValues);
+        session.removeAttribute(attributeKeyDeferredTurns);
+        session.removeAttribute(attributeKeyDeferredSince);
+    }
+
+    /**
+     * Commits all deferred state to the backend if the given request is a SessionEndedRequest. Call this method
+     * in the onSessionEnded-method of your speechlet.
+     *
+     * @param request The request of the current skill invocation.
+     * @return True, if deferred state was committed
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public boolean commitOnSessionEnded(final SpeechletRequest request) throws AlexaStateException {
+        if (request instanceof SessionEndedRequest) {
+            commit();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * User- and application-scoped state of models is written to the backend not before commit.
+     */
+    @Override
+    public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        // write to session
+        super.writeModels(models);
+        final Map<String, String> deferredModels = getDeferred(attributeKeyDeferredModels);
+        models.stream()
+                .filter(model -> model.hasUserScopedField() || model.hasApplicationScopedField())
+                .forEach(model -> deferredModels.put(model.getAttributeKey(), model.getClass().getTypeName()));
+        session.setAttribute(attributeKeyDeferredModels, deferredModels);
+        onDeferredWrite();
+    }
+
+    /**
+     * {@inheritDoc}
+     * User- and application-scoped values are written to the backend not before commit.
+     */
+    @Override
+    public void writeValues(final Collection<? extends AlexaStateObject> stateObjects) throws AlexaStateException {
+        // write to session
+        super.writeValues(stateObjects);
+        final Map<String, String> deferredValues = getDeferred(attributeKeyDeferredValues);
+        stateObjects.stream()
+                .filter(stateObject -> stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
+                .forEach(stateObject -> deferredValues.put(stateObject.getId(), stateObject.getScope().name()));
+        session.setAttribute(attributeKeyDeferredValues, deferredValues);
+        onDeferredWrite();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Models are removed from the backend right away and deferred state of them is dropped.
+     */
+    @Override
+    public void removeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        Validate.notNull(models, "Collection of models to be removed must not be null.");
+        final List<String> ids = forgetModels(models);
+        // only clean up the session here as the backend removes the models on its own
+        super.removeValues(ids);
+        forgetDeferred(ids);
+        // backend might need the model to find out where its state is stored
+        backend.removeModels(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Values are removed from the backend right away and deferred state of them is dropped.
+     */
+    @Override
+    public void removeValues(final Collection<String> ids) throws AlexaStateException {
+        super.removeValues(ids);
+        forgetDeferred(ids);
+        backend.removeValues(ids);
+    }
+
+    private void forgetDeferred(final Collection<String> ids) {
+        forgetDeferred(attributeKeyDeferredModels, ids);
+        forgetDeferred(attributeKeyDeferredValues, ids);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(final String id, final AlexaScope scope) throws AlexaStateException {
+        if (AlexaScope.SESSION.includes(scope)) {
+            return super.exists(id, scope);
+        }
+        return backend.exists(id, scope);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Deferred models are read from the session. All others are read from the backend.
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        final Map<String, String> deferredModels = getDeferred(attributeKeyDeferredModels);
+        final List<String> deferredIds = new ArrayList<>();
+        final List<String> backendIds = new ArrayList<>();
+        ids.forEach(id -> (deferredModels.containsKey(AlexaStateKeyCodec.encode(modelClass, id)) ? deferredIds : backendIds).add(id));
+
+        final Map<String, TModel> models = new HashMap<>();
+        if (!deferredIds.isEmpty()) {
+            models.putAll(readModelsFromSession(modelClass, deferredIds));
+        }
+        if (!backendIds.isEmpty()) {
+            models.putAll(backend.readModels(modelClass, backendIds));
+        }
+        // models should be saved and removed over this handler rather than over the backend
+        models.values().forEach(model -> model.setHandler(this));
+        rememberModels(models.values());
+        return models;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Deferred values are read from the session. All others are read from the backend.
+     */
+    @Override
+    public Map<String, AlexaStateObject> readValues(final Map<String, AlexaScope> idsInScope) throws AlexaStateException {
+        final Map<String, String> deferredValues = getDeferred(attributeKeyDeferredValues);
+        final Map<String, AlexaScope> sessionIdsInScope = new HashMap<>();
+        final Map<String, AlexaScope> backendIdsInScope = new HashMap<>();
+        idsInScope.forEach((id, scope) -> {
+            if (scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION) && !deferredValues.containsKey(id)) {
+                backendIdsInScope.put(id, scope);
+            } else {
+                sessionIdsInScope.put(id, scope);
+            }
+        });
+        final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
+        if (!sessionIdsInScope.isEmpty()) {
+            stateObjectMap.putAll(super.readValues(sessionIdsInScope));
+        }
+        if (!backendIdsInScope.isEmpty()) {
+            stateObjectMap.putAll(backend.readValues(backendIdsInScope));
+        }
+        return stateObjectMap;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Ranges are read from the backend.
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return backend instanceof AlexaSessionStateHandler && backend.supportsRangeReads();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Deferred values are selected from the session and joined with the range read from the backend.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        if (!supportsRangeReads()) {
+            throw rangeReadsNotSupported();
+        }
+        final List<AlexaStateObject> stateObjects = new ArrayList<>(super.readValueRange(fromId, toId, limit, descending, scope));
+        stateObjects.addAll(((AlexaSessionStateHandler) backend).readValueRange(fromId, toId, limit, descending, scope));
+        return selectRange(stateObjects, fromId, toId, limit, descending);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Leaderboards are kept in the backend.
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return backend.supportsLeaderboards();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Scores are written to the backend right away as they are read across users.
+     */
+    @Override
+    public void writeScore(final String leaderboard, final double score) throws AlexaStateException {
+        backend.writeScore(leaderboard, score);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeScore(final String leaderboard) throws AlexaStateException {
+        backend.removeScore(leaderboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<AlexaStateScore> readTopScores(final String leaderboard, final int count) throws AlexaStateException {
+        return backend.readTopScores(leaderboard, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<AlexaStateScore> readScore(final String leaderboard) throws AlexaStateException {
+        return backend.readScore(leaderboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> List<String> readUserIds(final Class<TModel> modelClass, final String fieldName, final Object value) throws AlexaStateException {
+        return backend.readUserIds(modelClass, fieldName, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return backend.supportsIndexes();
+    }
+
+    private void onDeferredWrite() throws AlexaStateException {
+        if (!hasDeferredWrites()) {
+            return;
+        }
+        if (!(session.getAttribute(attributeKeyDeferredSince) instanceof Number)) {
+            session.setAttribute(attributeKeyDeferredSince, System.currentTimeMillis());
+        }
+        final Object turnsAttribute = session.getAttribute(attributeKeyDeferredTurns);
+        int turns = turnsAttribute instanceof Number ? ((Number) turnsAttribute).intValue() : 0;
+        if (!turnCounted) {
+            turns++;
+            turnCounted = true;
+            session.setAttribute(attributeKeyDeferredTurns, turns);
+        }
+        final long since = ((Number) session.getAttribute(attributeKeyDeferredSince)).longValue();
+        if ((maxTurns > 0 && turns >= maxTurns) || (maxMillis > 0 && System.currentTimeMillis() - since >= maxMillis)) {
+            log.debug(String.format("Threshold reached after %1$s turns. Commit deferred state to backend.", turns));
+            commit();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AlexaStateModel> readDeferredModels(final String typeName, final List<String> attributeKeys) throws AlexaStateException {
+        final Class<? extends AlexaStateModel> modelClass;
+        try {
+            modelClass = (Class<? extends AlexaStateModel>) Class.forName(typeName);
+        } catch (final ClassNotFoundException e) {
+            final String error = String.format("Could not find model type '%1$s' of deferred state.", typeName);
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).withHandler(this).build();
+        }
+        final List<String> ids = attributeKeys.stream()
+                .map(attributeKey -> AlexaStateKeyCodec.decode(modelClass, attributeKey))
+                .collect(Collectors.toList());
+        return new ArrayList<>(readModelsFromSession(modelClass, ids).values());
+    }
+
+    private Map<String, String> getDeferred(final String attributeKey) {
+        final Object deferred = session.getAttribute(attributeKey);
+        final Map<String, String> keys = new HashMap<>();
+        if (deferred instanceof Map<?, ?>) {
+            ((Map<?, ?>) deferred).forEach((key, value) -> keys.put(String.valueOf(key), String.valueOf(value)));
+        }
+        return keys;
+    }
+
+    private void forgetDeferred(final String attributeKey, final Collection<String> keys) {
+        final Map<String, String> deferred = getDeferred(attributeKey);
+        if (deferred.keySet().removeAll(keys)) {
+            session.setAttribute(attributeKey, deferred);
+        }
+    }
+}
@@ -0,0 +1,663 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateIndex;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * As this handler works in the user and application scope it persists all models to a store held in memory of the JVM.
+ * This handler reads and writes state for AlexaStateModels and considers all its fields annotated with AlexaSaveState-tags.
+ * This handler derives from the AlexaSessionStateHandler thus it reads and writes state out of its store also to your Alexa
+ * session. State is kept as long as the store lives so this handler is not meant for production but as a reference backend
+ * for tests, benchmarks and load tests without the need of AWS resources. It stores items with the key schema of either the
+ * AWSDynamoStateHandler or the AWSS3StateHandler and optionally simulates latency and failures of a remote backend.
+ */
+public class InMemoryStateHandler extends AlexaSessionStateHandler {
+    private final Logger log = Logger.getLogger(InMemoryStateHandler.class);
+
+    // store shared by all handlers not given a dedicated store so state survives across invocations within a JVM
+    private static final Store defaultStore = new Store();
+    // context value for all items saved in application scope
+    static final String contextApp = "__application";
+
+    private final Store store;
+    private final KeyScheme keyScheme;
+    private long latencyMillis = 0L;
+    private double failureRate = 0.0;
+
+    /**
+     * The key schema applied to items in the store. Each one mimics how one of the AWS handlers
+     * addresses state in its backend.
+     */
+    public enum KeyScheme {
+        /**
+         * Items are addressed like in the AWSDynamoStateHandler by a hash-key (the attribute key of
+         * a model or id of a single value) and a sort-key (the user-id or __application).
+         */
+        DYNAMO {
+            @Override
+            String toKey(final String context, final String key) {
+                return key + "|" + context;
+            }
+        },
+        /**
+         * Items are addressed like in the AWSS3StateHandler by a file path in a folder named
+         * like the user-id or __application.
+         */
+        S3 {
+            @Override
+            String toKey(final String context, final String key) {
+                return context + "/" + key + ".json";
+            }
+        };
+
+        abstract String toKey(final String context, final String key);
+    }
+
+    /**
+     * A thread-safe key-value store backing one or more InMemoryStateHandlers. Keys are spread over
+     * a number of independent concurrent maps (stripes) to reduce contention under concurrent load.
+     * The keys of the items of a user or the application are also kept ordered by the ids of the items
+     * so a range of items is read without scanning the whole store.
+     */
+    public static class Store {
+        private final List<ConcurrentHashMap<String, String>> stripes;
+        // keys of the items by their ids per context (user-id or __application)
+        private final ConcurrentHashMap<String, ConcurrentSkipListMap<String, String>> keysByContext = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+        // user-ids by key of the index entry per index key and the index key per key of the index entry
+        private final ConcurrentHashMap<String, ConcurrentSkipListMap<String, String>> index = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, String> indexEntries = new ConcurrentHashMap<>();
+
+        /**
+         * Creates a store with 16 stripes.
+         */
+        public Store() {
+            this(16);
+        }
+
+        /**
+         * Creates a store with the given number of stripes.
+         *
+         * @param stripeCount number of concurrent maps keys are spread over. Must be greater than zero.
+         */
+        public Store(final int stripeCount) {
+            Validate.isTrue(stripeCount > 0, "Number of stripes must be greater than zero.");
+            this.stripes = new ArrayList<>(stripeCount);
+            for (int i = 0; i < stripeCount; i++) {
+                stripes.add(new ConcurrentHashMap<>());
+            }
+        }
+
+        /**
+         * Returns the number of items in this store.
+         *
+         * @return number of items in this store
+         */
+        public int size() {
+            int size = 0;
+            for (final Map<String, String> stripe : stripes) {
+                size += stripe.size();
+            }
+            return size;
+        }
+
+        /**
+         * Removes all items from this store.
+         */
+        public void clear() {
+            for (final Map<String, String> stripe : stripes) {
+                stripe.clear();
+            }
+            keysByContext.clear();
+            leaderboards.clear();
+            index.clear();
+            indexEntries.clear();
+        }
+
+        String get(final String key) {
+            return getStripe(key).get(key);
+        }
+
+        void put(final String context, final String id, final String key, final String value) {
+            getStripe(key).put(key, value);
+            keysByContext.computeIfAbsent(context, c -> new ConcurrentSkipListMap<>()).put(id, key);
+        }
+
+        void remove(final String context, final String id, final String key) {
+            // the key goes first so an item present in the store is always found by its id
+            final Map<String, String> keys = keysByContext.get(context);
+            if (keys != null) {
+                keys.remove(id);
+            }
+            getStripe(key).remove(key);
+        }
+
+        /**
+         * Returns values of the items of a context whose ids are within the given range.
+         * @return values by id ordered by id
+         */
+        Map<String, String> getRange(final String context, final String fromId, final String toId, final int limit, final boolean descending) {
+            final Map<String, String> values = new LinkedHashMap<>();
+            final ConcurrentSkipListMap<String, String> keys = keysByContext.get(context);
+            if (keys == null || fromId.compareTo(toId) >= 0) {
+                return values;
+            }
+            final NavigableMap<String, String> range = keys.subMap(fromId, true, toId, false);
+            for (final Map.Entry<String, String> entry : (descending ? range.descendingMap() : range).entrySet()) {
+                if (values.size() >= limit) {
+                    break;
+                }
+                // an item removed in the meantime is skipped
+                final String value = get(entry.getValue());
+                if (value != null) {
+                    values.put(entry.getKey(), value);
+                }
+            }
+            return values;
+        }
+
+        boolean containsKey(final String key) {
+            return getStripe(key).containsKey(key);
+        }
+
+        void putIndexEntry(final String entryKey, final String userId, final String indexKey) {
+            // computing the entry locks this entry only so the index is updated consistently with the entry
+            indexEntries.compute(entryKey, (k, formerIndexKey) -> {
+                if (formerIndexKey != null && !formerIndexKey.equals(indexKey)) {
+                    index.computeIfPresent(formerIndexKey, (key, entries) -> {
+                        entries.remove(entryKey);
+                        return entries.isEmpty() ? null : entries;
+                    });
+                }
+                if (indexKey != null) {
+                    index.compute(indexKey, (key, entries) -> {
+                        final ConcurrentSkipListMap<String, String> indexedEntries = entries != null ? entries : new ConcurrentSkipListMap<>();
+                        indexedEntries.put(entryKey, userId);
+                        return indexedEntries;
+                    });
+                }
+                return indexKey;
+            });
+        }
+
+        List<String> getIndexedUserIds(final String indexKey) {
+            final Map<String, String> entries = index.get(indexKey);
+            return entries != null ? new ArrayList<>(new LinkedHashSet<>(entries.values())) : new ArrayList<>();
+        }
+
+        Leaderboard getLeaderboard(final String name) {
+            return leaderboards.computeIfAbsent(name, n -> new Leaderboard());
+        }
+
+        private ConcurrentHashMap<String, String> getStripe(final String key) {
+            // spread bits of the hash the same way a HashMap does to not only rely on the lower bits
+            final int hash = key.hashCode() ^ (key.hashCode() >>> 16);
+            return stripes.get((hash & 0x7fffffff) % stripes.size());
+        }
+    }
+
+    /**
+     * Scores of one leaderboard. Scores are kept in a skip list ordered by score so the highest scores and the
+     * rank of a score are read without sorting. Reads do not block updates.
+     */
+    static class Leaderboard {
+        // ordered from the highest to the lowest score. users with the same score are ordered by their id
+        private static final Comparator<AlexaStateScore> byScore = Comparator.comparingDouble(AlexaStateScore::getScore).reversed()
+                .thenComparing(AlexaStateScore::getUserId);
+        private final Map<String, AlexaStateScore> scoresByUser = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<AlexaStateScore> scores = new ConcurrentSkipListSet<>(byScore);
+
+        synchronized void put(final String userId, final double score) {
+            // rank is meaningless within the skip list as it is given on read
+            final AlexaStateScore entry = new AlexaStateScore(userId, score, 1);
+            final AlexaStateScore former = scoresByUser.put(userId, entry);
+            if (former != null) {
+                scores.remove(former);
+            }
+            scores.add(entry);
+        }
+
+        synchronized void remove(final String userId) {
+            final AlexaStateScore former = scoresByUser.remove(userId);
+            if (former != null) {
+                scores.remove(former);
+            }
+        }
+
+        Optional<Double> get(final String userId) {
+            return Optional.ofNullable(scoresByUser.get(userId)).map(AlexaStateScore::getScore);
+        }
+
+        Map<String, Double> getTop(final int count) {
+            final Map<String, Double> top = new LinkedHashMap<>();
+            scores.stream().limit(count).forEach(entry -> top.put(entry.getUserId(), entry.getScore()));
+            return top;
+        }
+
+        long countHigher(final double score) {
+            // the head set ends before the first user with the given score as no user id sorts before the NUL character
+            return scores.headSet(new AlexaStateScore("\u0000", score, 1)).size();
+        }
+    }
+
+    /**
+     * Takes the Alexa session. All state goes to a store shared with all other InMemoryStateHandlers
+     * created with this constructor and that lives as long as the JVM. Items are stored with the key schema
+     * of the AWSDynamoStateHandler.
+     *
+     * @param session The Alexa session of your current skill invocation.
+     */
+    public InMemoryStateHandler(final Session session) {
+        this(session, defaultStore, KeyScheme.DYNAMO);
+    }
+
+    /**
+     * Takes the Alexa session and a dedicated store. Items are stored with the key schema
+     * of the AWSDynamoStateHandler.
+     *
+     * @param session The Alexa session of your current skill invocation.
+     * @param store   The store all state goes to.
+     */
+    public InMemoryStateHandler(final Session session, final Store store) {
+        this(session, store, KeyScheme.DYNAMO);
+    }
+
+    /**
+     * Takes the Alexa session, a dedicated store and the key schema to apply to items in the store.
+     *
+     * @param session   The Alexa session of your current skill invocation.
+     * @param store     The store all state goes to.
+     * @param keyScheme The key schema items are addressed with in the store.
+     */
+    public InMemoryStateHandler(final Session session, final Store store, final KeyScheme keyScheme) {
+        super(session);
+        Validate.notNull(store, "Store must not be null.");
+        Validate.notNull(keyScheme, "Key scheme must not be null.");
+        this.store = store;
+        this.keyScheme = keyScheme;
+    }
+
+    /**
+     * Sets an artificial latency applied to each round trip to the store. A round trip is
+     * what a remote backend would need for a single (batched) request.
+     *
+     * @param latencyMillis latency in milliseconds. Must not be negative.
+     * @return this handler
+     */
+    public InMemoryStateHandler withLatency(final long latencyMillis) {
+        Validate.isTrue(latencyMillis >= 0, "Latency must not be negative.");
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Sets the probability of a round trip to the store to fail with an AlexaStateException.
+     *
+     * @param failureRate probability between 0.0 (never fail) and 1.0 (always fail)
+     * @return this handler
+     */
+    public InMemoryStateHandler withFailureRate(final double failureRate) {
+        Validate.inclusiveBetween(0.0, 1.0, failureRate, "Failure rate must be between 0.0 and 1.0.");
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * Returns the store used by this handler.
+     *
+     * @return store used by this handler
+     */
+    public Store getStore() {
+        return this.store;
+    }
+
+    /**
+     * Returns the key schema items are addressed with in the store.
+     *
+     * @return key schema items are addressed with in the store
+     */
+    public KeyScheme getKeyScheme() {
+        return this.keyScheme;
+    }
+
+    /**
+     * Returns the artificial latency applied to each round trip to the store.
+     *
+     * @return latency in milliseconds
+     */
+    public long getLatency() {
+        return this.latencyMillis;
+    }
+
+    /**
+     * Returns the probability of a round trip to the store to fail.
+     *
+     * @return probability between 0.0 and 1.0
+     */
+    public double getFailureRate() {
+        return this.failureRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InMemoryStateHandler withUserId(final String userId) {
+        return (InMemoryStateHandler)super.withUserId(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        // write to session
+        super.writeModels(models);
+
+        roundTrip("write");
+        for (final AlexaStateModel model : models) {
+            if (model.hasUserScopedField()) {
+                putItem(model.getAttributeKey(), AlexaScope.USER, model.toJSON(AlexaScope.USER));
+            }
+            for (final Map.Entry<String, String> entry : AlexaStateIndex.getEntries(model).entrySet()) {
+                store.putIndexEntry(getKey(entry.getKey(), AlexaScope.USER), getUserId(), entry.getValue());
+            }
+            if (model.hasApplicationScopedField()) {
+                putItem(model.getAttributeKey(), AlexaScope.APPLICATION, model.toJSON(AlexaScope.APPLICATION));
+            }
+        }
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeValues(final Collection<? extends AlexaStateObject> stateObjects) throws AlexaStateException {
+        // write to session
+        super.writeValues(stateObjects);
+
+        roundTrip("write");
+        for (final AlexaStateObject stateObject : stateObjects) {
+            // select only USER or APPLICATION scoped state objects
+            if (stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION)) {
+                putItem(stateObject.getId(), stateObject.getScope(), String.valueOf(stateObject.getValue()));
+            }
+        }
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValues(final Collection<String> ids) throws AlexaStateException {
+        super.removeValues(ids);
+
+        roundTrip("remove");
+        for (final String id : ids) {
+            removeItem(id, AlexaScope.USER);
+            removeItem(id, AlexaScope.APPLICATION);
+            // only models with indexed fields have user-scoped index entries
+            if (AlexaStateIndex.isEntryKey(id)) {
+                store.putIndexEntry(getKey(id, AlexaScope.USER), getUserId(), null);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(final String id, final AlexaScope scope) throws AlexaStateException {
+        if (AlexaScope.SESSION.includes(scope)) {
+            return super.exists(id, scope);
+        }
+        roundTrip("read");
+        return store.containsKey(getKey(id, scope));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        // select all models that have a representation in the session
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
+        final Map<String, TModel> allModels = new HashMap<>(existingModels);
+        // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
+        // looking into the store in the following lines. only if there's actually something for it in the store we'll keep it.
+        ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
+            allModels.putIfAbsent(id, createModel(modelClass, id));
+        });
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
+
+        if (!modelsToRead.isEmpty()) {
+            roundTrip("read");
+        }
+        // this is where we store models that were updated with values found in the store
+        final Map<String, TModel> updatedModels = new HashMap<>();
+        for (final TModel model : modelsToRead.values()) {
+            boolean modelChanged = false;
+            if (model.hasUserScopedField() && fromStoreToModel(model, AlexaScope.USER)) {
+                modelChanged = true;
+            }
+            if (model.hasApplicationScopedField() && fromStoreToModel(model, AlexaScope.APPLICATION)) {
+                modelChanged = true;
+            }
+            if (modelChanged) {
+                updatedModels.put(model.getId(), model);
+            }
+        }
+        // write back updated values to session
+        mirrorModelsToSession(updatedModels.values());
+
+        // finally we join models that were found in the session + models with updates from the store
+        existingModels.forEach((id, model) -> {
+            if (!updatedModels.containsKey(id)) {
+                updatedModels.put(id, model);
+            }
+        });
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
+        return updatedModels;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, AlexaStateObject> readValues(final Map<String, AlexaScope> idsInScope) throws AlexaStateException {
+        final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
+        // first read all the session-scoped items and put to result map
+        stateObjectMap.putAll(super.readValues(idsInScope));
+        // values already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, AlexaScope> idsToRead = selectValuesToRead(idsInScope);
+
+        if (!idsToRead.isEmpty()) {
+            roundTrip("read");
+        }
+        idsToRead.forEach((id, scope) -> {
+            if (scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION)) {
+                final String value = store.get(getKey(id, scope));
+                if (value != null) {
+                    stateObjectMap.putIfAbsent(id, new AlexaStateObject(id, value, scope));
+                }
+            }
+        });
+        return stateObjectMap;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Ids within the range are looked up in the ids of the items of the user or the application kept in order.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        roundTrip("read");
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        store.getRange(getContext(scope), fromId, toId, limit, descending)
+                .forEach((id, value) -> stateObjects.add(new AlexaStateObject(id, value, scope)));
+        return stateObjects;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    List<String> readIndexFromBackend(final String indexKey) throws AlexaStateException {
+        roundTrip("read");
+        return store.getIndexedUserIds(indexKey);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void writeScoreToBackend(final String leaderboard, final double score) throws AlexaStateException {
+        roundTrip("write");
+        store.getLeaderboard(leaderboard).put(getUserId(), score);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void removeScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        roundTrip("remove");
+        store.getLeaderboard(leaderboard).remove(getUserId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Map<String, Double> readTopScoresFromBackend(final String leaderboard, final int count) throws AlexaStateException {
+        roundTrip("read");
+        return store.getLeaderboard(leaderboard).getTop(count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Optional<Double> readScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        roundTrip("read");
+        return store.getLeaderboard(leaderboard).get(getUserId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long countHigherScores(final String leaderboard, final double score) throws AlexaStateException {
+        roundTrip("read");
+        return store.getLeaderboard(leaderboard).countHigher(score);
+    }
+
+    private boolean fromStoreToModel(final AlexaStateModel model, final AlexaScope scope) throws AlexaStateException {
+        String json = store.get(getKey(model.getAttributeKey(), scope));
+        if (json == null && AlexaStateKeyCodec.hasAlias(model.getClass())) {
+            // state written before the model got an alias
+            json = store.get(getKey(AlexaStateKeyCodec.encodeLegacy(model.getClass(), model.getId()), scope));
+        }
+        return json != null && model.fromJSON(json, scope);
+    }
+
+    private String getKey(final String key, final AlexaScope scope) {
+        return keyScheme.toKey(getContext(scope), key);
+    }
+
+    private String getContext(final AlexaScope scope) {
+        return AlexaScope.APPLICATION.includes(scope) ? contextApp : getUserId();
+    }
+
+    private void putItem(final String key, final AlexaScope scope, final String value) {
+        store.put(getContext(scope), key, getKey(key, scope), value);
+    }
+
+    private void removeItem(final String key, final AlexaScope scope) {
+        store.remove(getContext(scope), key, getKey(key, scope));
+    }
+
+    /**
+     * Simulates a round trip to a remote backend by applying the configured latency and failure rate.
+     */
+    private void roundTrip(final String operation) throws AlexaStateException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final String error = String.format("Interrupted while waiting for simulated %1$s.", operation);
+                log.error(error, e);
+                throw AlexaStateException.create(error).withCause(e).withHandler(this).build();
+            }
+        }
+        if (failureRate > 0.0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            final String error = String.format("Injected failure on %1$s in the in-memory store.", operation);
+            log.warn(error);
+            throw AlexaStateException.create(error).withHandler(this).build();
+        }
+    }
+}
@@ -0,0 +1,908 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateIndex;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * As this handler works in the user and application scope it persists all models to a table in a relational database
+ * accessed over JDBC (e.g. PostgreSQL, MySQL or H2). This handler reads and writes state for AlexaStateModels and considers
+ * all its fields annotated with AlexaSaveState-tags. This handler derives from the AlexaSessionStateHandler thus it reads
+ * and writes state out of the database also to your Alexa session.
+ * The table follows the key schema of the AWSDynamoStateHandler. Each row is identified by the user-id (or __application
+ * for application-scoped state) and the attribute key of the model (or the id of a single value).
+ * Connections are obtained from the given DataSource for each operation and closed right after. Hand in a pooling
+ * DataSource of your choice to reuse connections across operations and skill invocations.
+ * Scores of leaderboards are kept in a second table named like the first one suffixed with _scores. Its rows are
+ * identified by the name of the leaderboard and the user-id. It is created on first use of a leaderboard.
+ * Index entries of indexed fields are saved as rows of the user holding their index key. To look up users by index key
+ * a third table named like the first one suffixed with _index has a row per index key, user-id and index entry.
+ * Rows and the index table are written in one transaction which locks the rows of the index entries while reading
+ * the index keys they had before.
+ */
+public class JdbcStateHandler extends AlexaSessionStateHandler {
+    private final Logger log = Logger.getLogger(JdbcStateHandler.class);
+
+    private final DataSource dataSource;
+    private final String tableName;
+    private static final int readBatchLimit = 100;
+    private static final String tablePrefix = "alexa_";
+    private static final String validTableNamePattern = "[a-zA-Z0-9_]+";
+    // context value for the primary key of each row saved in application scope
+    static final String attributeValueApp = "__application";
+    // column-name for the first part of the primary key to store the context key (mostly user-id)
+    static final String pkUser = "amzn_user_id";
+    // column-name for the second part of the primary key to store the object identifier (aka id)
+    static final String pkModel = "model_class";
+    // column-name used to store the state value (model JSON, single value)
+    static final String columnState = "state";
+    // column-name used to store the name of a leaderboard in the score table
+    static final String columnLeaderboard = "leaderboard";
+    // column-name used to store the score of a user in the score table
+    static final String columnScore = "score";
+    // suffix appended to the table name to get the name of the score table
+    static final String scoreTableSuffix = "_scores";
+    // column-names used to store the index key and the key of the index entry in the index table
+    static final String columnIndexKey = "index_key";
+    static final String columnEntryKey = "entry_key";
+    // suffix appended to the table name to get the name of the index table
+    static final String indexTableSuffix = "_index";
+    // native upsert statement of the database. empty if there is none. null until first write
+    private Optional<String> upsertSql;
+    // tables whose existence is approved per data source to not check (or create) them more than once in a process
+    private static final Map<DataSource, Set<String>> tablesApproved = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Takes the Alexa session and a data source. On the very first read or write operation of this handler
+     * in your process it creates a table named like your Alexa App Id (non-alphanumeric characters replaced
+     * with underscores) if it does not exist. The credentials of the data source therefore need the right to create a table.
+     * If you don't want this handler to auto-create a table provide the name of an existing table in another constructor.
+     *
+     * @param session    The Alexa session of your current skill invocation.
+     * @param dataSource A data source (ideally pooling connections) capable of creating a table plus reading, writing and removing rows.
+     */
+    public JdbcStateHandler(final Session session, final DataSource dataSource) {
+        this(session, dataSource, null);
+    }
+
+    /**
+     * Takes the Alexa session, a data source and a table. The table needs a string column named amzn_user_id, a string column
+     * named model_class (both forming the primary key) and a text column named state. The option of providing an existing table to this
+     * handler prevents it from checking its existence and you don't need to provide permission of creating a table to the
+     * credentials of the given data source. If you use leaderboards also provide a table named like the given one suffixed with _scores
+     * with a string column named leaderboard, a string column named amzn_user_id (both forming the primary key) and a numeric column named score.
+     * Otherwise this handler tries to create it on first use of a leaderboard. Same applies to indexed fields and a table suffixed
+     * with _index with string columns named index_key, amzn_user_id and entry_key which all form the primary key.
+     *
+     * @param session    The Alexa session of your current skill invocation.
+     * @param dataSource A data source (ideally pooling connections) capable of reading, writing and removing rows of the given table.
+     * @param tableName  An existing table accessible over the data source with columns amzn_user_id, model_class and state.
+     */
+    public JdbcStateHandler(final Session session, final DataSource dataSource, final String tableName) {
+        super(session);
+        Validate.notNull(dataSource, "Data source must not be null.");
+        this.dataSource = dataSource;
+        this.tableName = StringUtils.isNotBlank(tableName) ? tableName :
+                (tablePrefix + session.getApplication().getApplicationId()).replaceAll("[^a-zA-Z0-9_]", "_");
+        Validate.matchesPattern(this.tableName, validTableNamePattern, "Table name contains illegal characters. Ensure it matches the following pattern: " + validTableNamePattern);
+        // assume table exists if table name provided.
+        if (StringUtils.isNotBlank(tableName)) {
+            getApprovedTables().add(this.tableName);
+        }
+    }
+
+    /**
+     * Returns the data source used to obtain connections to the database.
+     *
+     * @return data source of the database
+     */
+    public DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    /**
+     * Returns the name of the table which is used by this handler to store rows with
+     * model states.
+     *
+     * @return name of the table
+     */
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    /**
+     * Returns the name of the table which is used by this handler to store the scores
+     * of all leaderboards. It is the name of the model table suffixed with _scores.
+     *
+     * @return name of the score table
+     */
+    public String getScoreTableName() {
+        return this.tableName + scoreTableSuffix;
+    }
+
+    /**
+     * Returns the name of the table which is used by this handler to look up users by the
+     * values of indexed fields. It is the name of the model table suffixed with _index.
+     *
+     * @return name of the index table
+     */
+    public String getIndexTableName() {
+        return this.tableName + indexTableSuffix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JdbcStateHandler withUserId(final String userId) {
+        return (JdbcStateHandler)super.withUserId(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        // write to session
+        super.writeModels(models);
+
+        final List<String[]> rows = new ArrayList<>();
+        final Map<String, String> indexEntries = new HashMap<>();
+        for (final AlexaStateModel model : models) {
+            if (model.hasUserScopedField()) {
+                rows.add(new String[] { getUserId(), model.getAttributeKey(), model.toJSON(AlexaScope.USER) });
+            }
+            if (model.hasApplicationScopedField()) {
+                rows.add(new String[] { attributeValueApp, model.getAttributeKey(), model.toJSON(AlexaScope.APPLICATION) });
+            }
+            indexEntries.putAll(AlexaStateIndex.getEntries(model));
+        }
+        // index entries are saved as rows of the user holding their index key
+        final List<String> removedEntries = new ArrayList<>();
+        indexEntries.forEach((entryKey, indexKey) -> {
+            if (indexKey != null) {
+                rows.add(new String[] { getUserId(), entryKey, indexKey });
+            } else {
+                removedEntries.add(entryKey);
+            }
+        });
+        writeRows(rows, removedEntries, indexEntries);
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeValues(final Collection<? extends AlexaStateObject> stateObjects) throws AlexaStateException {
+        // write to session
+        super.writeValues(stateObjects);
+
+        final List<String[]> rows = new ArrayList<>();
+        stateObjects.stream()
+                // select only USER or APPLICATION scoped state objects
+                .filter(stateObject -> stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
+                .forEach(stateObject -> rows.add(new String[] {
+                        getContextKey(stateObject.getScope()), stateObject.getId(), String.valueOf(stateObject.getValue()) }));
+        writeRows(rows, Collections.emptyList(), Collections.emptyMap());
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValues(final Collection<String> ids) throws AlexaStateException {
+        super.removeValues(ids);
+
+        // only models with indexed fields have index entries to remove from the index
+        final Map<String, String> indexEntries = new HashMap<>();
+        ids.stream().filter(AlexaStateIndex::isEntryKey).forEach(id -> indexEntries.put(id, null));
+        writeRows(Collections.emptyList(), ids, indexEntries);
+    }
+
+    private void deleteRows(final Connection connection, final Collection<String> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final String sql = "DELETE FROM " + tableName + " WHERE " + pkUser + " = ? AND " + pkModel + " = ?";
+        try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (final String id : ids) {
+                // remove user-scoped row and app-scoped row
+                for (final String contextKey : Arrays.asList(getUserId(), attributeValueApp)) {
+                    statement.setString(1, contextKey);
+                    statement.setString(2, id);
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(final String id, final AlexaScope scope) throws AlexaStateException {
+        if (AlexaScope.SESSION.includes(scope)) {
+            return super.exists(id, scope);
+        }
+        return !readRows(Collections.singletonList(id), Collections.emptyList(), scope).isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        // select all models that have a representation in the session
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
+        final Map<String, TModel> allModels = new HashMap<>(existingModels);
+        // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
+        // querying the database in the following lines. only if there's actually something for it in the table we'll keep it.
+        ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
+            allModels.putIfAbsent(id, createModel(modelClass, id));
+        });
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
+
+        // this is where we store models that were updated with values found in the table
+        final Map<String, TModel> updatedModels = readModelsFromTable(modelsToRead.values(), false);
+        // models not found under the alias of their type are looked up with the key they were saved with before
+        final List<TModel> legacyModelsToRead = selectLegacyModelsToRead(modelsToRead.values(), updatedModels);
+        if (!legacyModelsToRead.isEmpty()) {
+            updatedModels.putAll(readModelsFromTable(legacyModelsToRead, true));
+        }
+        // write back updated values to session
+        mirrorModelsToSession(updatedModels.values());
+
+        // finally we join models that were found in the session + models with updates from the table
+        existingModels.forEach((id, model) -> {
+            if (!updatedModels.containsKey(id)) {
+                updatedModels.put(id, model);
+            }
+        });
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
+        return updatedModels;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, AlexaStateObject> readValues(final Map<String, AlexaScope> idsInScope) throws AlexaStateException {
+        final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
+        // first read all the session-scoped items and put to result map
+        stateObjectMap.putAll(super.readValues(idsInScope));
+        // values already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, AlexaScope> idsToRead = selectValuesToRead(idsInScope);
+
+        final List<String> userIds = new ArrayList<>();
+        final List<String> appIds = new ArrayList<>();
+        idsToRead.forEach((id, scope) -> {
+            if (AlexaScope.USER.equals(scope)) {
+                userIds.add(id);
+            } else if (AlexaScope.APPLICATION.equals(scope)) {
+                appIds.add(id);
+            }
+        });
+        // go through result and transform rows to state objects
+        for (final String[] row : readRows(userIds, appIds, AlexaScope.USER)) {
+            stateObjectMap.putIfAbsent(row[1], new AlexaStateObject(row[1], row[2], idsInScope.get(row[1])));
+        }
+        return stateObjectMap;
+    }
+
+    private <TModel extends AlexaStateModel> Map<String, TModel> readModelsFromTable(final Collection<TModel> models, final boolean legacy) throws AlexaStateException {
+        // collect keys of user-scoped rows and app-scoped rows and remember which model they belong to
+        final Map<String, TModel> modelsByAttributeKey = new HashMap<>();
+        final List<String> userKeys = new ArrayList<>();
+        final List<String> appKeys = new ArrayList<>();
+        for (final TModel model : models) {
+            final String attributeKey = getAttributeKey(model, legacy);
+            modelsByAttributeKey.put(attributeKey, model);
+            if (model.hasUserScopedField()) {
+                userKeys.add(attributeKey);
+            }
+            if (model.hasApplicationScopedField()) {
+                appKeys.add(attributeKey);
+            }
+        }
+        final Map<String, TModel> updatedModels = new HashMap<>();
+        for (final String[] row : readRows(userKeys, appKeys, AlexaScope.USER)) {
+            final TModel model = modelsByAttributeKey.get(row[1]);
+            // only fields in requested scope should be updated in the model
+            final AlexaScope scope = attributeValueApp.equals(row[0]) ? AlexaScope.APPLICATION : AlexaScope.USER;
+            if (model != null && row[2] != null && model.fromJSON(row[2], scope)) {
+                // keep in mind as updated
+                updatedModels.put(model.getId(), model);
+            }
+        }
+        return updatedModels;
+    }
+
+    /**
+     * Reads rows whose keys are in one of the given lists. The first list of keys is looked up in the given scope,
+     * the second list is always looked up in application scope. Keys are sent to the database in IN-lists sized
+     * according to the read-batch-limit.
+     * @return rows as arrays of context key, model key and state
+     */
+    private List<String[]> readRows(final List<String> scopedKeys, final List<String> appKeys, final AlexaScope scope) throws AlexaStateException {
+        final List<String[]> rows = new ArrayList<>();
+        if (scopedKeys.isEmpty() && appKeys.isEmpty()) {
+            return rows;
+        }
+        ensureTableExists();
+
+        final List<String[]> keyPairs = new ArrayList<>(scopedKeys.size() + appKeys.size());
+        scopedKeys.forEach(key -> keyPairs.add(new String[] { getContextKey(scope), key }));
+        appKeys.forEach(key -> keyPairs.add(new String[] { attributeValueApp, key }));
+
+        try (final Connection connection = dataSource.getConnection()) {
+            // ensure batches are sized according to read-batch-limit
+            for (int i = 0; i < keyPairs.size(); i += readBatchLimit) {
+                final List<String[]> batch = keyPairs.subList(i, Math.min(i + readBatchLimit, keyPairs.size()));
+                // group keys of this batch by context key so each context results in one IN-list
+                final Map<String, List<String>> keysByContext = new LinkedHashMap<>();
+                batch.forEach(pair -> keysByContext.computeIfAbsent(pair[0], k -> new ArrayList<>()).add(pair[1]));
+
+                final StringBuilder sql = new StringBuilder("SELECT " + pkUser + ", " + pkModel + ", " + columnState + " FROM " + tableName + " WHERE ");
+                final StringJoiner conditions = new StringJoiner(" OR ");
+                keysByContext.values().forEach(contextKeys -> conditions.add("(" + pkUser + " = ? AND " + pkModel + " IN (" +
+                        StringUtils.repeat("?", ", ", contextKeys.size()) + "))"));
+                sql.append(conditions.toString());
+
+                try (final PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (final Map.Entry<String, List<String>> entry : keysByContext.entrySet()) {
+                        statement.setString(index++, entry.getKey());
+                        for (final String key : entry.getValue()) {
+                            statement.setString(index++, key);
+                        }
+                    }
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            rows.add(new String[] { resultSet.getString(1), resultSet.getString(2), resultSet.getString(3) });
+                        }
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException("Could not read state from table " + tableName, e);
+        }
+        return rows;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The range is read with one query on the second part of the primary key.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        ensureTableExists();
+        final String sql = "SELECT " + pkModel + ", " + columnState + " FROM " + tableName + " WHERE " + pkUser + " = ? AND " +
+                pkModel + " >= ? AND " + pkModel + " < ? ORDER BY " + pkModel + (descending ? " DESC" : " ASC");
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, getContextKey(scope));
+            statement.setString(2, fromId);
+            statement.setString(3, toId);
+            // there is no standard SQL for limiting rows
+            statement.setMaxRows(limit);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    stateObjects.add(new AlexaStateObject(resultSet.getString(1), resultSet.getString(2), scope));
+                }
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException("Could not read range of state from table " + tableName, e);
+        }
+        return stateObjects;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The score is updated in the score table or inserted if the user has no score in the leaderboard yet.
+     */
+    @Override
+    void writeScoreToBackend(final String leaderboard, final double score) throws AlexaStateException {
+        ensureScoreTableExists();
+        final String scoreTableName = getScoreTableName();
+        final String updateSql = "UPDATE " + scoreTableName + " SET " + columnScore + " = ? WHERE " + columnLeaderboard + " = ? AND " + pkUser + " = ?";
+        final String insertSql = "INSERT INTO " + scoreTableName + " (" + columnScore + ", " + columnLeaderboard + ", " + pkUser + ") VALUES (?, ?, ?)";
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement update = connection.prepareStatement(updateSql);
+             final PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            if (executeScoreUpdate(update, leaderboard, score) > 0) {
+                return;
+            }
+            try {
+                executeScoreUpdate(insert, leaderboard, score);
+            } catch (final SQLException e) {
+                // a concurrent writer inserted the score first
+                if (!isDuplicateKey(e) || executeScoreUpdate(update, leaderboard, score) == 0) {
+                    throw e;
+                }
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not write score to leaderboard '%1$s' in table %2$s", leaderboard, scoreTableName), e);
+        }
+    }
+
+    private int executeScoreUpdate(final PreparedStatement statement, final String leaderboard, final double score) throws SQLException {
+        statement.setDouble(1, score);
+        statement.setString(2, leaderboard);
+        statement.setString(3, getUserId());
+        return statement.executeUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void removeScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        ensureScoreTableExists();
+        final String sql = "DELETE FROM " + getScoreTableName() + " WHERE " + columnLeaderboard + " = ? AND " + pkUser + " = ?";
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, leaderboard);
+            statement.setString(2, getUserId());
+            statement.executeUpdate();
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not remove score from leaderboard '%1$s' in table %2$s", leaderboard, getScoreTableName()), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The highest scores are read with one query ordered by score.
+     */
+    @Override
+    Map<String, Double> readTopScoresFromBackend(final String leaderboard, final int count) throws AlexaStateException {
+        ensureScoreTableExists();
+        final String sql = "SELECT " + pkUser + ", " + columnScore + " FROM " + getScoreTableName() + " WHERE " + columnLeaderboard + " = ? " +
+                "ORDER BY " + columnScore + " DESC, " + pkUser + " ASC";
+        final Map<String, Double> scores = new LinkedHashMap<>();
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, leaderboard);
+            // there is no standard SQL for limiting rows
+            statement.setMaxRows(count);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    scores.put(resultSet.getString(1), resultSet.getDouble(2));
+                }
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not read scores of leaderboard '%1$s' from table %2$s", leaderboard, getScoreTableName()), e);
+        }
+        return scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Optional<Double> readScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        ensureScoreTableExists();
+        final String sql = "SELECT " + columnScore + " FROM " + getScoreTableName() + " WHERE " + columnLeaderboard + " = ? AND " + pkUser + " = ?";
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, leaderboard);
+            statement.setString(2, getUserId());
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Optional.of(resultSet.getDouble(1)) : Optional.empty();
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not read score of leaderboard '%1$s' from table %2$s", leaderboard, getScoreTableName()), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long countHigherScores(final String leaderboard, final double score) throws AlexaStateException {
+        final String sql = "SELECT COUNT(*) FROM " + getScoreTableName() + " WHERE " + columnLeaderboard + " = ? AND " + columnScore + " > ?";
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, leaderboard);
+            statement.setDouble(2, score);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not count scores of leaderboard '%1$s' in table %2$s", leaderboard, getScoreTableName()), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Users are looked up with one query on the first part of the primary key of the index table.
+     */
+    @Override
+    List<String> readIndexFromBackend(final String indexKey) throws AlexaStateException {
+        ensureIndexTableExists();
+        final String sql = "SELECT " + pkUser + " FROM " + getIndexTableName() + " WHERE " + columnIndexKey + " = ? ORDER BY " + pkUser;
+        // a user may have several models with the same value
+        final Set<String> userIds = new LinkedHashSet<>();
+        try (final Connection connection = dataSource.getConnection();
+             final PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, indexKey);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    userIds.add(resultSet.getString(1));
+                }
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException("Could not read index from table " + getIndexTableName(), e);
+        }
+        return new ArrayList<>(userIds);
+    }
+
+    /**
+     * Moves the given index entries of the user from the index key they had before to their current index key in
+     * the index table. The index keys they had before are read from their rows in the table, which are locked
+     * until the given connection commits the transaction writing these rows, so concurrent writes of the same
+     * entries are applied one after another.
+     * @param indexEntries index keys by key of the index entry. Null for entries to remove.
+     */
+    private void updateIndex(final Connection connection, final Map<String, String> indexEntries) throws SQLException {
+        if (indexEntries.isEmpty()) {
+            return;
+        }
+        final Map<String, String> formerIndexKeys = readIndexEntriesForUpdate(connection, new ArrayList<>(indexEntries.keySet()));
+        final List<String[]> rowsToDelete = new ArrayList<>();
+        final List<String[]> rowsToInsert = new ArrayList<>();
+        indexEntries.forEach((entryKey, indexKey) -> {
+            final String formerIndexKey = formerIndexKeys.get(entryKey);
+            if (formerIndexKey != null && !formerIndexKey.equals(indexKey)) {
+                rowsToDelete.add(new String[] { formerIndexKey, getUserId(), entryKey });
+            }
+            if (indexKey != null && !indexKey.equals(formerIndexKey)) {
+                rowsToInsert.add(new String[] { indexKey, getUserId(), entryKey });
+            }
+        });
+        final String indexTableName = getIndexTableName();
+        final String deleteSql = "DELETE FROM " + indexTableName + " WHERE " + columnIndexKey + " = ? AND " + pkUser + " = ? AND " + columnEntryKey + " = ?";
+        final String insertSql = "INSERT INTO " + indexTableName + " (" + columnIndexKey + ", " + pkUser + ", " + columnEntryKey + ") VALUES (?, ?, ?)";
+        try (final PreparedStatement delete = connection.prepareStatement(deleteSql);
+             final PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            for (final String[] row : rowsToDelete) {
+                setInsertParameters(delete, row);
+                delete.addBatch();
+            }
+            if (!rowsToDelete.isEmpty()) {
+                delete.executeBatch();
+            }
+            for (final String[] row : rowsToInsert) {
+                insertRowIfAbsent(connection, insert, row);
+            }
+        }
+    }
+
+    /**
+     * Reads the index keys of the given index entries of the user and locks their rows (SELECT ... FOR UPDATE).
+     * @return index keys by key of the index entry. Entries not saved are absent.
+     */
+    private Map<String, String> readIndexEntriesForUpdate(final Connection connection, final List<String> entryKeys) throws SQLException {
+        final Map<String, String> indexKeys = new HashMap<>();
+        for (int i = 0; i < entryKeys.size(); i += readBatchLimit) {
+            final List<String> batch = entryKeys.subList(i, Math.min(i + readBatchLimit, entryKeys.size()));
+            final String sql = "SELECT " + pkModel + ", " + columnState + " FROM " + tableName + " WHERE " + pkUser + " = ? AND " +
+                    pkModel + " IN (" + StringUtils.repeat("?", ", ", batch.size()) + ") FOR UPDATE";
+            try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, getUserId());
+                for (int j = 0; j < batch.size(); j++) {
+                    statement.setString(j + 2, batch.get(j));
+                }
+                try (final ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        indexKeys.put(resultSet.getString(1), resultSet.getString(2));
+                    }
+                }
+            }
+        }
+        return indexKeys;
+    }
+
+    private static void insertRowIfAbsent(final Connection connection, final PreparedStatement insert, final String[] row) throws SQLException {
+        final Savepoint savepoint = connection.setSavepoint();
+        try {
+            setInsertParameters(insert, row);
+            insert.executeUpdate();
+        } catch (final SQLException e) {
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+            // row is inserted by a concurrent first write of the same entry
+            connection.rollback(savepoint);
+        }
+    }
+
+    /**
+     * Writes the given rows, removes the rows of the given ids and updates the index table for the given index
+     * entries within one transaction.
+     * @param rows arrays of context key, model key and state
+     * @param removedIds ids of the user-scoped and app-scoped rows to remove
+     * @param indexEntries index keys by key of the index entry. Null for entries to remove.
+     */
+    private void writeRows(final List<String[]> rows, final Collection<String> removedIds, final Map<String, String> indexEntries) throws AlexaStateException {
+        if (rows.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        ensureTableExists();
+        if (!indexEntries.isEmpty()) {
+            ensureIndexTableExists();
+        }
+
+        try (final Connection connection = dataSource.getConnection()) {
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                updateIndex(connection, indexEntries);
+                upsertRows(connection, rows);
+                deleteRows(connection, removedIds);
+                connection.commit();
+                log.debug(String.format("Wrote %1$s rows to and removed %2$s ids from table '%3$s'.", rows.size(), removedIds.size(), tableName));
+            } catch (final SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (final SQLException e) {
+            throw toAlexaStateException("Could not write state to table " + tableName, e);
+        }
+    }
+
+    /**
+     * Inserts or updates the given rows. Databases with a native upsert (H2, MySQL, MariaDB, PostgreSQL, SQLite) get all
+     * rows in a single batch of upserts. On all other databases rows are tried to be updated in a single batch first
+     * and rows which did not exist are inserted afterwards.
+     * @param rows arrays of context key, model key and state
+     */
+    private void upsertRows(final Connection connection, final List<String[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (upsertSql == null) {
+            upsertSql = Optional.ofNullable(getUpsertSql(connection.getMetaData().getDatabaseProductName(), tableName));
+        }
+        if (upsertSql.isPresent()) {
+            try (final PreparedStatement upsert = connection.prepareStatement(upsertSql.get())) {
+                for (final String[] row : rows) {
+                    upsert.setString(1, row[0]);
+                    upsert.setString(2, row[1]);
+                    upsert.setString(3, row[2]);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+        } else {
+            updateOrInsertRows(connection, rows);
+        }
+    }
+
+    /**
+     * Returns the native upsert statement of a database taking context key, model key and state as parameters.
+     * @param databaseProductName product name of the database as given by its JDBC driver
+     * @param tableName name of the table to upsert rows in
+     * @return upsert statement. Null if the database has no native upsert known to this handler.
+     */
+    static String getUpsertSql(final String databaseProductName, final String tableName) {
+        final String product = databaseProductName != null ? databaseProductName.toLowerCase() : "";
+        final String columns = " (" + pkUser + ", " + pkModel + ", " + columnState + ")";
+        if (product.equals("h2")) {
+            return "MERGE INTO " + tableName + columns + " KEY (" + pkUser + ", " + pkModel + ") VALUES (?, ?, ?)";
+        }
+        if (product.equals("mysql") || product.equals("mariadb")) {
+            return "INSERT INTO " + tableName + columns + " VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE " + columnState + " = VALUES(" + columnState + ")";
+        }
+        if (product.equals("postgresql") || product.equals("sqlite")) {
+            return "INSERT INTO " + tableName + columns + " VALUES (?, ?, ?) ON CONFLICT (" + pkUser + ", " + pkModel + ") DO UPDATE SET " + columnState + " = EXCLUDED." + columnState;
+        }
+        return null;
+    }
+
+    /**
+     * Updates the given rows in a single batch and inserts the ones which did not exist. A row inserted by a concurrent
+     * writer in the meantime is updated instead.
+     */
+    private void updateOrInsertRows(final Connection connection, final List<String[]> rows) throws SQLException {
+        final String updateSql = "UPDATE " + tableName + " SET " + columnState + " = ? WHERE " + pkUser + " = ? AND " + pkModel + " = ?";
+        final String insertSql = "INSERT INTO " + tableName + " (" + pkUser + ", " + pkModel + ", " + columnState + ") VALUES (?, ?, ?)";
+
+        try (final PreparedStatement update = connection.prepareStatement(updateSql);
+             final PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            for (final String[] row : rows) {
+                setUpdateParameters(update, row);
+                update.addBatch();
+            }
+            final int[] updateCounts = update.executeBatch();
+            final List<String[]> rowsToInsert = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                final int updateCount = i < updateCounts.length ? updateCounts[i] : 0;
+                // drivers may not tell if a row was updated so these rows are updated one by one to find out
+                if (updateCount == 0 || (updateCount == Statement.SUCCESS_NO_INFO && executeUpdate(update, rows.get(i)) == 0)) {
+                    rowsToInsert.add(rows.get(i));
+                }
+            }
+            if (rowsToInsert.isEmpty()) {
+                return;
+            }
+            final Savepoint savepoint = connection.setSavepoint();
+            try {
+                for (final String[] row : rowsToInsert) {
+                    setInsertParameters(insert, row);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            } catch (final SQLException e) {
+                if (!isDuplicateKey(e)) {
+                    throw e;
+                }
+                // a concurrent writer inserted one of the rows first. insert row by row and update existing ones
+                connection.rollback(savepoint);
+                insert.clearBatch();
+                for (final String[] row : rowsToInsert) {
+                    insertOrUpdateRow(connection, insert, update, row);
+                }
+            }
+        }
+    }
+
+    private void insertOrUpdateRow(final Connection connection, final PreparedStatement insert, final PreparedStatement update, final String[] row) throws SQLException {
+        final Savepoint savepoint = connection.setSavepoint();
+        try {
+            setInsertParameters(insert, row);
+            insert.executeUpdate();
+        } catch (final SQLException e) {
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+            connection.rollback(savepoint);
+            // nothing to update means the insert failed for another reason than an existing row
+            if (executeUpdate(update, row) == 0) {
+                throw e;
+            }
+        }
+    }
+
+    private static int executeUpdate(final PreparedStatement update, final String[] row) throws SQLException {
+        setUpdateParameters(update, row);
+        return update.executeUpdate();
+    }
+
+    private static void setUpdateParameters(final PreparedStatement update, final String[] row) throws SQLException {
+        update.setString(1, row[2]);
+        update.setString(2, row[0]);
+        update.setString(3, row[1]);
+    }
+
+    private static void setInsertParameters(final PreparedStatement insert, final String[] row) throws SQLException {
+        insert.setString(1, row[0]);
+        insert.setString(2, row[1]);
+        insert.setString(3, row[2]);
+    }
+
+    private static boolean isDuplicateKey(final SQLException e) {
+        // class 23 of the SQL standard state is integrity constraint violation
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            if (next instanceof SQLIntegrityConstraintViolationException || (next.getSQLState() != null && next.getSQLState().startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureTableExists() throws AlexaStateException {
+        ensureTableExists(tableName, pkUser + " VARCHAR(255) NOT NULL, " +
+                pkModel + " VARCHAR(255) NOT NULL, " +
+                columnState + " TEXT, " +
+                "PRIMARY KEY (" + pkUser + ", " + pkModel + ")");
+    }
+
+    private void ensureScoreTableExists() throws AlexaStateException {
+        ensureTableExists(getScoreTableName(), columnLeaderboard + " VARCHAR(255) NOT NULL, " +
+                pkUser + " VARCHAR(255) NOT NULL, " +
+                columnScore + " DOUBLE PRECISION NOT NULL, " +
+                "PRIMARY KEY (" + columnLeaderboard + ", " + pkUser + ")");
+    }
+
+    private void ensureIndexTableExists() throws AlexaStateException {
+        ensureTableExists(getIndexTableName(), columnIndexKey + " VARCHAR(255) NOT NULL, " +
+                pkUser + " VARCHAR(255) NOT NULL, " +
+                columnEntryKey + " VARCHAR(255) NOT NULL, " +
+                "PRIMARY KEY (" + columnIndexKey + ", " + pkUser + ", " + columnEntryKey + ")");
+    }
+
+    private void ensureTableExists(final String table, final String columns) throws AlexaStateException {
+        // given custom table is always assumed as existing. auto-created tables are created only once per process
+        final Set<String> approvedTables = getApprovedTables();
+        if (approvedTables.contains(table)) {
+            return;
+        }
+        final String sql = "CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")";
+        try (final Connection connection = dataSource.getConnection();
+             final Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+            approvedTables.add(table);
+            log.info(String.format("Ensured table '%1$s' exists in database.", table));
+        } catch (final SQLException e) {
+            throw toAlexaStateException(String.format("Could not create table '%1$s' before accessing state", table), e);
+        }
+    }
+
+    private Set<String> getApprovedTables() {
+        synchronized (tablesApproved) {
+            return tablesApproved.computeIfAbsent(dataSource, ds -> Collections.synchronizedSet(new HashSet<>()));
+        }
+    }
+
+    private AlexaStateException toAlexaStateException(final String message, final Exception e) {
+        log.error(message, e);
+        return AlexaStateException.create(message).withCause(e).withHandler(this).build();
+    }
+
+    private String getContextKey(final AlexaScope scope) {
+        return AlexaScope.APPLICATION.includes(scope) ? attributeValueApp : getUserId();
+    }
+}
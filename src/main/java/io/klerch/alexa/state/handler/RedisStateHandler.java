@@ -0,0 +1,612 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateIndex;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * As this handler works in the user and application scope it persists all models to a Redis (or Redis-compatible) server.
+ * This handler reads and writes state for AlexaStateModels and considers all its fields annotated with AlexaSaveState-tags.
+ * This handler derives from the AlexaSessionStateHandler thus it reads and writes state out of Redis also to your Alexa
+ * session. Each user gets a hash whose key contains the user-id, application-scoped state goes to a dedicated hash.
+ * Within these hashes every model or single value is stored as a field named like its attribute key. All reads, writes
+ * and removals of one call are sent to Redis as a single pipeline (HMGET, HMSET, HDEL).
+ * Ids of the events of a user are kept in a sorted set to read a range of events without reading all fields of the hash.
+ * Leaderboards are kept in sorted sets with the user-ids as members. Each index key of indexed fields gets a hash
+ * whose values are the user-ids of the index entries having this index key. Index entries are written and removed
+ * in a transaction (WATCH, MULTI, EXEC) along with the index keys they had before so that concurrent writes of the
+ * same user do not leave stale entries in the index.
+ */
+public class RedisStateHandler extends AlexaSessionStateHandler {
+    private final Logger log = Logger.getLogger(RedisStateHandler.class);
+
+    private final JedisPool jedisPool;
+    private final String keyPrefix;
+    private static final String keyPrefixDefault = "alexa-";
+    private static final String keySeparator = ":";
+    // context value for the hash key of all state saved in application scope
+    static final String hashKeyApp = "__application";
+    // context value prefixing the key of the sorted set of a leaderboard
+    private static final String leaderboardKeyPrefix = "__leaderboard:";
+    // context value prefixing the key of the sorted set of event ids of a user
+    private static final String eventsKeyPrefix = "__events:";
+    // context value prefixing the key of the hash of an index key
+    private static final String indexKeyPrefix = "__index:";
+    // number of attempts of a transaction aborted by a concurrent write of the watched user-hash
+    private static final int maxTransactionAttempts = 3;
+
+    /**
+     * Takes the Alexa session and a pool of connections to a Redis server. All hashes written by this
+     * handler are prefixed with alexa- followed by your Alexa App Id.
+     *
+     * @param session   The Alexa session of your current skill invocation.
+     * @param jedisPool A pool of connections to the Redis server.
+     */
+    public RedisStateHandler(final Session session, final JedisPool jedisPool) {
+        this(session, jedisPool, null);
+    }
+
+    /**
+     * Takes the Alexa session, a pool of connections to a Redis server and a custom key prefix. Use the
+     * prefix if you want to share a Redis database with more than one skill or other applications.
+     *
+     * @param session   The Alexa session of your current skill invocation.
+     * @param jedisPool A pool of connections to the Redis server.
+     * @param keyPrefix The prefix for all keys of hashes written by this handler. If null it defaults to alexa- followed by your Alexa App Id.
+     */
+    public RedisStateHandler(final Session session, final JedisPool jedisPool, final String keyPrefix) {
+        super(session);
+        Validate.notNull(jedisPool, "Pool of Redis connections must not be null.");
+        this.jedisPool = jedisPool;
+        this.keyPrefix = keyPrefix != null ? keyPrefix : keyPrefixDefault + session.getApplication().getApplicationId();
+    }
+
+    /**
+     * Returns the pool of connections used to write to and read from hashes in Redis.
+     *
+     * @return pool of connections to Redis
+     */
+    public JedisPool getJedisPool() {
+        return this.jedisPool;
+    }
+
+    /**
+     * Returns the prefix of all keys of hashes written by this handler.
+     *
+     * @return prefix of all keys of hashes
+     */
+    public String getKeyPrefix() {
+        return this.keyPrefix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RedisStateHandler withUserId(final String userId) {
+        return (RedisStateHandler)super.withUserId(userId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        // write to session
+        super.writeModels(models);
+
+        final Map<String, String> userFields = new HashMap<>();
+        final Map<String, String> appFields = new HashMap<>();
+        final Map<String, String> indexEntries = new HashMap<>();
+        for (final AlexaStateModel model : models) {
+            if (model.hasUserScopedField()) {
+                userFields.put(model.getAttributeKey(), model.toJSON(AlexaScope.USER));
+            }
+            if (model.hasApplicationScopedField()) {
+                appFields.put(model.getAttributeKey(), model.toJSON(AlexaScope.APPLICATION));
+            }
+            indexEntries.putAll(AlexaStateIndex.getEntries(model));
+        }
+        writeFieldsToRedis(userFields, appFields, indexEntries);
+        // state of models in the session is now in sync with the backend
+        markModelsAsLoaded(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeValues(final Collection<? extends AlexaStateObject> stateObjects) throws AlexaStateException {
+        // write to session
+        super.writeValues(stateObjects);
+
+        final Map<String, String> userFields = new HashMap<>();
+        final Map<String, String> appFields = new HashMap<>();
+        stateObjects.stream()
+                // select only USER or APPLICATION scoped state objects
+                .filter(stateObject -> stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
+                .forEach(stateObject -> {
+                    final Map<String, String> fields = AlexaScope.USER.includes(stateObject.getScope()) ? userFields : appFields;
+                    fields.put(stateObject.getId(), String.valueOf(stateObject.getValue()));
+                });
+        writeFieldsToRedis(userFields, appFields, Collections.emptyMap());
+        // state of values in the session is now in sync with the backend
+        markValuesAsLoaded(stateObjects);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValues(final Collection<String> ids) throws AlexaStateException {
+        super.removeValues(ids);
+
+        if (ids.isEmpty()) {
+            return;
+        }
+        final String[] fields = ids.toArray(new String[ids.size()]);
+        // only models with indexed fields have index entries to remove from the index
+        final Map<String, String> indexEntries = new HashMap<>();
+        ids.stream().filter(AlexaStateIndex::isEntryKey).forEach(id -> indexEntries.put(id, null));
+        try (final Jedis jedis = jedisPool.getResource()) {
+            sendCommands(jedis, indexEntries, commands -> {
+                commands.hdel(getUserScopedHashKey(), fields);
+                commands.hdel(getAppScopedHashKey(), fields);
+                // ids of removed events
+                commands.zrem(getEventsKey(AlexaScope.USER), fields);
+            });
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not remove state from Redis", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(final String id, final AlexaScope scope) throws AlexaStateException {
+        if (AlexaScope.SESSION.includes(scope)) {
+            return super.exists(id, scope);
+        }
+        try (final Jedis jedis = jedisPool.getResource()) {
+            return jedis.hexists(getHashKey(scope), id);
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not check existence of '%1$s' in Redis", id), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        // select all models that have a representation in the session
+        final Map<String, TModel> existingModels = readModelsFromSession(modelClass, ids);
+        final Map<String, TModel> allModels = new HashMap<>(existingModels);
+        // create new models were there was no representation in the session with given id. for now we assume a model exists for this id. we find out by
+        // querying redis in the following lines. only if there's actually something for it in redis we'll keep it.
+        ids.stream().filter(id -> !existingModels.containsKey(id)).forEach(id -> {
+            allModels.putIfAbsent(id, createModel(modelClass, id));
+        });
+        // models already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, TModel> modelsToRead = selectModelsToRead(allModels);
+
+        // this is where we store models that were updated with values found in Redis
+        final Map<String, TModel> updatedModels = readModelsFromRedis(modelsToRead.values(), false);
+        // models not found under the alias of their type are looked up with the key they were saved with before
+        final List<TModel> legacyModelsToRead = selectLegacyModelsToRead(modelsToRead.values(), updatedModels);
+        if (!legacyModelsToRead.isEmpty()) {
+            updatedModels.putAll(readModelsFromRedis(legacyModelsToRead, true));
+        }
+        // write back updated values to session
+        mirrorModelsToSession(updatedModels.values());
+
+        // finally we join models that were found in the session + models with updates from Redis
+        existingModels.forEach((id, model) -> {
+            if (!updatedModels.containsKey(id)) {
+                updatedModels.put(id, model);
+            }
+        });
+        // remember models read from the backend which are now mirrored to the session
+        markModelsAsLoaded(modelsToRead.values().stream()
+                .filter(model -> updatedModels.containsKey(model.getId()))
+                .collect(Collectors.toList()));
+        // keep models found in the session or backend for later reads in this request
+        rememberModels(updatedModels.values());
+        return updatedModels;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, AlexaStateObject> readValues(final Map<String, AlexaScope> idsInScope) throws AlexaStateException {
+        final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
+        // first read all the session-scoped items and put to result map
+        stateObjectMap.putAll(super.readValues(idsInScope));
+        // values already mirrored to the session are not read from the backend again as per read policy
+        final Map<String, AlexaScope> idsToRead = selectValuesToRead(idsInScope);
+
+        final List<String> userIds = new ArrayList<>();
+        final List<String> appIds = new ArrayList<>();
+        idsToRead.forEach((id, scope) -> {
+            if (AlexaScope.USER.equals(scope)) {
+                userIds.add(id);
+            } else if (AlexaScope.APPLICATION.equals(scope)) {
+                appIds.add(id);
+            }
+        });
+        final List<String> values = readFieldsFromRedis(getUserScopedHashKey(), userIds, getAppScopedHashKey(), appIds);
+        for (int i = 0; i < values.size(); i++) {
+            final String value = values.get(i);
+            if (value != null) {
+                final String id = i < userIds.size() ? userIds.get(i) : appIds.get(i - userIds.size());
+                stateObjectMap.putIfAbsent(id, new AlexaStateObject(id, value, idsInScope.get(id)));
+            }
+        }
+        return stateObjectMap;
+    }
+
+    private <TModel extends AlexaStateModel> Map<String, TModel> readModelsFromRedis(final Collection<TModel> models, final boolean legacy) throws AlexaStateException {
+        // collect the fields to read from the user-hash and the app-hash. order matters as HMGET returns values in order of requested fields
+        final List<TModel> userScopedModels = new ArrayList<>();
+        final List<TModel> appScopedModels = new ArrayList<>();
+        for (final TModel model : models) {
+            if (model.hasUserScopedField()) {
+                userScopedModels.add(model);
+            }
+            if (model.hasApplicationScopedField()) {
+                appScopedModels.add(model);
+            }
+        }
+        // first part of the result belongs to user-hash, second part to app-hash
+        final List<String> states = readFieldsFromRedis(getUserScopedHashKey(), toAttributeKeys(userScopedModels, legacy),
+                getAppScopedHashKey(), toAttributeKeys(appScopedModels, legacy));
+
+        final Map<String, TModel> updatedModels = new HashMap<>();
+        for (int i = 0; i < userScopedModels.size(); i++) {
+            final TModel model = userScopedModels.get(i);
+            final String state = states.get(i);
+            if (state != null && model.fromJSON(state, AlexaScope.USER)) {
+                updatedModels.put(model.getId(), model);
+            }
+        }
+        for (int i = 0; i < appScopedModels.size(); i++) {
+            final TModel model = appScopedModels.get(i);
+            final String state = states.get(userScopedModels.size() + i);
+            if (state != null && model.fromJSON(state, AlexaScope.APPLICATION)) {
+                updatedModels.put(model.getId(), model);
+            }
+        }
+        return updatedModels;
+    }
+
+    private List<String> toAttributeKeys(final List<? extends AlexaStateModel> models, final boolean legacy) {
+        final List<String> keys = new ArrayList<>(models.size());
+        models.forEach(model -> keys.add(getAttributeKey(model, legacy)));
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The event is written to the user-hash and its id is added to the sorted set of event ids of the user in one pipeline.
+     */
+    @Override
+    void writeEvent(final AlexaStateObject stateObject) throws AlexaStateException {
+        // write to session
+        super.writeValues(Collections.singletonList(stateObject));
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+            final Pipeline pipeline = jedis.pipelined();
+            pipeline.hset(getUserScopedHashKey(), stateObject.getId(), String.valueOf(stateObject.getValue()));
+            // all members have the same score so they are ordered lexicographically
+            pipeline.zadd(getEventsKey(AlexaScope.USER), 0, stateObject.getId());
+            pipeline.sync();
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not write event to Redis", e);
+        }
+        markValuesAsLoaded(Collections.singletonList(stateObject));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Ids within the range are read from the sorted set of event ids (ZRANGEBYLEX) before their values are read
+     * from the hash.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        final String hashKey = getHashKey(scope);
+        final String eventsKey = getEventsKey(scope);
+        try (final Jedis jedis = jedisPool.getResource()) {
+            final List<String> ids = new ArrayList<>(descending ?
+                    jedis.zrevrangeByLex(eventsKey, "(" + toId, "[" + fromId, 0, limit) :
+                    jedis.zrangeByLex(eventsKey, "[" + fromId, "(" + toId, 0, limit));
+            final List<AlexaStateObject> stateObjects = new ArrayList<>();
+            if (ids.isEmpty()) {
+                return stateObjects;
+            }
+            final List<String> values = jedis.hmget(hashKey, ids.toArray(new String[ids.size()]));
+            for (int i = 0; i < ids.size(); i++) {
+                if (values.get(i) != null) {
+                    stateObjects.add(new AlexaStateObject(ids.get(i), values.get(i), scope));
+                }
+            }
+            return stateObjects;
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not read range of state from Redis", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Each leaderboard is a sorted set whose members are the user-ids scored with the score of the user (ZADD).
+     */
+    @Override
+    void writeScoreToBackend(final String leaderboard, final double score) throws AlexaStateException {
+        try (final Jedis jedis = jedisPool.getResource()) {
+            jedis.zadd(getLeaderboardKey(leaderboard), score, getUserId());
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not write score to leaderboard '%1$s' in Redis", leaderboard), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void removeScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        try (final Jedis jedis = jedisPool.getResource()) {
+            jedis.zrem(getLeaderboardKey(leaderboard), getUserId());
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not remove score from leaderboard '%1$s' in Redis", leaderboard), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The highest scores are read from the sorted set in reverse order (ZREVRANGE).
+     */
+    @Override
+    Map<String, Double> readTopScoresFromBackend(final String leaderboard, final int count) throws AlexaStateException {
+        final Map<String, Double> scores = new LinkedHashMap<>();
+        try (final Jedis jedis = jedisPool.getResource()) {
+            jedis.zrevrangeWithScores(getLeaderboardKey(leaderboard), 0, count - 1)
+                    .forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not read scores of leaderboard '%1$s' from Redis", leaderboard), e);
+        }
+        return scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Optional<Double> readScoreFromBackend(final String leaderboard) throws AlexaStateException {
+        try (final Jedis jedis = jedisPool.getResource()) {
+            return Optional.ofNullable(jedis.zscore(getLeaderboardKey(leaderboard), getUserId()));
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not read score of leaderboard '%1$s' from Redis", leaderboard), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Higher scores are counted with an exclusive lower bound (ZCOUNT) so users sharing a score share their rank.
+     */
+    @Override
+    long countHigherScores(final String leaderboard, final double score) throws AlexaStateException {
+        try (final Jedis jedis = jedisPool.getResource()) {
+            return jedis.zcount(getLeaderboardKey(leaderboard), "(" + score, "+inf");
+        } catch (final JedisException e) {
+            throw toAlexaStateException(String.format("Could not count scores of leaderboard '%1$s' in Redis", leaderboard), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Users are read from the hash of the index key (HVALS).
+     */
+    @Override
+    List<String> readIndexFromBackend(final String indexKey) throws AlexaStateException {
+        try (final Jedis jedis = jedisPool.getResource()) {
+            // a user may have several models with the same value
+            return new ArrayList<>(new LinkedHashSet<>(jedis.hvals(getIndexKey(indexKey))));
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not read index from Redis", e);
+        }
+    }
+
+    /**
+     * Reads fields from the user-hash and the app-hash in one pipeline. Returns a list with the values of the
+     * user-hash fields followed by the values of the app-hash fields. Values of absent fields are null.
+     */
+    private List<String> readFieldsFromRedis(final String userHashKey, final List<String> userFields, final String appHashKey, final List<String> appFields) throws AlexaStateException {
+        final List<String> values = new ArrayList<>(userFields.size() + appFields.size());
+        if (userFields.isEmpty() && appFields.isEmpty()) {
+            return values;
+        }
+        try (final Jedis jedis = jedisPool.getResource()) {
+            final Pipeline pipeline = jedis.pipelined();
+            final Response<List<String>> userValues = userFields.isEmpty() ? null :
+                    pipeline.hmget(userHashKey, userFields.toArray(new String[userFields.size()]));
+            final Response<List<String>> appValues = appFields.isEmpty() ? null :
+                    pipeline.hmget(appHashKey, appFields.toArray(new String[appFields.size()]));
+            pipeline.sync();
+            if (userValues != null) {
+                values.addAll(userValues.get());
+            }
+            if (appValues != null) {
+                values.addAll(appValues.get());
+            }
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not read state from Redis", e);
+        }
+        return values;
+    }
+
+    /**
+     * Writes fields to the user-hash and the app-hash in one pipeline. Index entries are saved as fields of the
+     * user-hash holding their index key. Along with index entries the fields are written in a transaction instead.
+     */
+    private void writeFieldsToRedis(final Map<String, String> userFields, final Map<String, String> appFields, final Map<String, String> indexEntries) throws AlexaStateException {
+        if (userFields.isEmpty() && appFields.isEmpty() && indexEntries.isEmpty()) {
+            return;
+        }
+        final Map<String, String> fields = new HashMap<>(userFields);
+        final List<String> removedEntries = new ArrayList<>();
+        indexEntries.forEach((entryKey, indexKey) -> {
+            if (indexKey != null) {
+                fields.put(entryKey, indexKey);
+            } else {
+                removedEntries.add(entryKey);
+            }
+        });
+        try (final Jedis jedis = jedisPool.getResource()) {
+            sendCommands(jedis, indexEntries, commands -> {
+                if (!fields.isEmpty()) {
+                    commands.hmset(getUserScopedHashKey(), fields);
+                }
+                if (!removedEntries.isEmpty()) {
+                    commands.hdel(getUserScopedHashKey(), removedEntries.toArray(new String[removedEntries.size()]));
+                }
+                if (!appFields.isEmpty()) {
+                    commands.hmset(getAppScopedHashKey(), appFields);
+                }
+            });
+            log.debug(String.format("Wrote %1$s user-scoped and %2$s app-scoped states to Redis.", userFields.size(), appFields.size()));
+        } catch (final JedisException e) {
+            throw toAlexaStateException("Could not write state to Redis", e);
+        }
+    }
+
+    /**
+     * Sends the given commands to Redis in one pipeline. If there are index entries to update the commands are sent
+     * in a transaction along with the updates of the index instead. The user-hash is watched while the index keys the
+     * entries had before are read, so the transaction is aborted and repeated if the user-hash is written in the
+     * meantime.
+     */
+    private void sendCommands(final Jedis jedis, final Map<String, String> indexEntries, final Consumer<MultiKeyPipelineBase> commands) throws AlexaStateException {
+        if (indexEntries.isEmpty()) {
+            final Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            pipeline.sync();
+            return;
+        }
+        final String[] entryKeys = indexEntries.keySet().toArray(new String[indexEntries.size()]);
+        for (int attempt = 1; attempt <= maxTransactionAttempts; attempt++) {
+            jedis.watch(getUserScopedHashKey());
+            final List<String> formerIndexKeys = jedis.hmget(getUserScopedHashKey(), entryKeys);
+            final Transaction transaction = jedis.multi();
+            commands.accept(transaction);
+            for (int i = 0; i < entryKeys.length; i++) {
+                updateIndex(transaction, entryKeys[i], formerIndexKeys.get(i), indexEntries.get(entryKeys[i]));
+            }
+            // an aborted transaction has no results
+            if (!transaction.exec().isEmpty()) {
+                return;
+            }
+            log.debug(String.format("Transaction on '%1$s' was aborted by a concurrent write (attempt %2$s).", getUserScopedHashKey(), attempt));
+        }
+        final String message = String.format("Could not update index of '%1$s' in Redis due to concurrent writes.", getUserScopedHashKey());
+        log.error(message);
+        throw AlexaStateException.create(message).withHandler(this).build();
+    }
+
+    /**
+     * Moves an index entry of the user from the hash of the index key it had before to the hash of its
+     * current index key. The hash of an index key has a field per index entry holding the user-id.
+     */
+    private void updateIndex(final MultiKeyPipelineBase commands, final String entryKey, final String formerIndexKey, final String indexKey) {
+        final String field = getUserId() + keySeparator + entryKey;
+        if (formerIndexKey != null && !formerIndexKey.equals(indexKey)) {
+            commands.hdel(getIndexKey(formerIndexKey), field);
+        }
+        if (indexKey != null) {
+            commands.hset(getIndexKey(indexKey), field, getUserId());
+        }
+    }
+
+    private AlexaStateException toAlexaStateException(final String message, final Exception e) {
+        log.error(message, e);
+        return AlexaStateException.create(message).withCause(e).withHandler(this).build();
+    }
+
+    private String getHashKey(final AlexaScope scope) {
+        return AlexaScope.APPLICATION.includes(scope) ? getAppScopedHashKey() : getUserScopedHashKey();
+    }
+
+    String getUserScopedHashKey() {
+        return keyPrefix + keySeparator + getUserId();
+    }
+
+    String getAppScopedHashKey() {
+        return keyPrefix + keySeparator + hashKeyApp;
+    }
+
+    String getLeaderboardKey(final String leaderboard) {
+        return keyPrefix + keySeparator + leaderboardKeyPrefix + leaderboard;
+    }
+
+    String getEventsKey(final AlexaScope scope) {
+        return keyPrefix + keySeparator + eventsKeyPrefix + (AlexaScope.APPLICATION.includes(scope) ? hashKeyApp : getUserId());
+    }
+
+    String getIndexKey(final String indexKey) {
+        return keyPrefix + keySeparator + indexKeyPrefix + indexKey;
+    }
+}
@@ -0,0 +1,469 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.Session;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This handler combines two other handlers to a two-level store. A fast tier (e.g. a RedisStateHandler) is put in front of a
+ * durable tier (e.g. an AWSDynamoStateHandler). Reads are served from the fast tier. Models and values missing in the fast tier
+ * are read from the durable tier and put to the fast tier afterwards (read-through). How writes are propagated to the tiers
+ * is configured per scope with a {@link TierPolicy}. Removals always go to both tiers.
+ * This handler derives from the AlexaSessionStateHandler thus it reads and writes state also to your Alexa session.
+ */
+public class TieredStateHandler extends AlexaSessionStateHandler {
+    private final Logger log = Logger.getLogger(TieredStateHandler.class);
+
+    private final AlexaStateHandler fastTier;
+    private final AlexaStateHandler durableTier;
+    private final Map<AlexaScope, TierPolicy> policies = new EnumMap<>(AlexaScope.class);
+    // models and values written to the fast tier only, waiting to be flushed to the durable tier
+    private final Map<String, AlexaStateModel> pendingModels = new LinkedHashMap<>();
+    private final Map<String, AlexaStateObject> pendingValues = new LinkedHashMap<>();
+
+    /**
+     * Defines how writes of a scope are propagated to the tiers. Reads always go to the fast tier first and
+     * fall back to the durable tier.
+     */
+    public enum TierPolicy {
+        /**
+         * Writes only go to the durable tier. The written state is evicted from the fast tier and
+         * is put to it again on the next read.
+         */
+        WRITE_AROUND,
+        /**
+         * Writes go to the durable tier and to the fast tier at once.
+         */
+        WRITE_THROUGH,
+        /**
+         * Writes only go to the fast tier and are propagated to the durable tier on {@link TieredStateHandler#flush()}.
+         */
+        WRITE_BACK
+    }
+
+    /**
+     * Takes the Alexa session and the two handlers to combine. Both the USER and APPLICATION scope
+     * are set up with WRITE_THROUGH policy.
+     *
+     * @param session     The Alexa session of your current skill invocation.
+     * @param fastTier    The handler serving reads (e.g. an in-memory or Redis handler).
+     * @param durableTier The handler persisting state permanently (e.g. an AWSDynamoStateHandler).
+     */
+    public TieredStateHandler(final Session session, final AlexaStateHandler fastTier, final AlexaStateHandler durableTier) {
+        super(session);
+        Validate.notNull(fastTier, "Fast tier handler must not be null.");
+        Validate.notNull(durableTier, "Durable tier handler must not be null.");
+        this.fastTier = fastTier;
+        this.durableTier = durableTier;
+        this.policies.put(AlexaScope.USER, TierPolicy.WRITE_THROUGH);
+        this.policies.put(AlexaScope.APPLICATION, TierPolicy.WRITE_THROUGH);
+    }
+
+    /**
+     * Returns the handler serving reads.
+     *
+     * @return fast tier handler
+     */
+    public AlexaStateHandler getFastTier() {
+        return this.fastTier;
+    }
+
+    /**
+     * Returns the handler persisting state permanently.
+     *
+     * @return durable tier handler
+     */
+    public AlexaStateHandler getDurableTier() {
+        return this.durableTier;
+    }
+
+    /**
+     * Returns the policy applied on writes of state in the given scope.
+     *
+     * @param scope USER or APPLICATION
+     * @return policy applied on writes of state in the given scope
+     */
+    public TierPolicy getPolicy(final AlexaScope scope) {
+        return policies.get(scope);
+    }
+
+    /**
+     * Sets the policy applied on writes of state in the given scope. A model having fields in more than one
+     * scope whose policies differ is written through to both tiers.
+     *
+     * @param scope  USER or APPLICATION
+     * @param policy policy applied on writes of state in the given scope
+     * @return handler
+     */
+    public TieredStateHandler withPolicy(final AlexaScope scope, final TierPolicy policy) {
+        Validate.isTrue(scope != null && scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION), "Policy can only be set for USER or APPLICATION scope.");
+        Validate.notNull(policy, "Policy must not be null.");
+        this.policies.put(scope, policy);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The user id is also given to both tiers.
+     */
+    @Override
+    public TieredStateHandler withUserId(final String userId) {
+        super.withUserId(userId);
+        if (fastTier instanceof AlexaSessionStateHandler) {
+            ((AlexaSessionStateHandler) fastTier).setUserId(userId);
+        }
+        if (durableTier instanceof AlexaSessionStateHandler) {
+            ((AlexaSessionStateHandler) durableTier).setUserId(userId);
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean canSpillToBackend() {
+        return true;
+    }
+
+    /**
+     * Writes all models and values which were written with WRITE_BACK policy to the durable tier.
+     * Call this method once you're done with writing state in a skill invocation.
+     *
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public void flush() throws AlexaStateException {
+        if (!pendingModels.isEmpty()) {
+            durableTier.writeModels(new ArrayList<>(pendingModels.values()));
+            log.debug(String.format("Flushed %1$s models to durable tier.", pendingModels.size()));
+            pendingModels.clear();
+        }
+        if (!pendingValues.isEmpty()) {
+            durableTier.writeValues(new ArrayList<>(pendingValues.values()));
+            log.debug(String.format("Flushed %1$s values to durable tier.", pendingValues.size()));
+            pendingValues.clear();
+        }
+    }
+
+    /**
+     * Returns true if there are models or values written with WRITE_BACK policy which are not yet
+     * flushed to the durable tier.
+     *
+     * @return True, if there is state to flush to the durable tier
+     */
+    public boolean hasPendingWrites() {
+        return !pendingModels.isEmpty() || !pendingValues.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        // fields not loaded of partially read models must not be overwritten with their defaults
+        completePartialModels(models);
+        final List<AlexaStateModel> fastModels = new ArrayList<>();
+        final List<AlexaStateModel> durableModels = new ArrayList<>();
+        final List<String> evictedKeys = new ArrayList<>();
+        for (final AlexaStateModel model : models) {
+            final Optional<TierPolicy> policy = getPolicy(model);
+            if (!policy.isPresent()) {
+                // session-only model is only written to the session
+                continue;
+            }
+            switch (policy.get()) {
+                case WRITE_AROUND:
+                    durableModels.add(model);
+                    evictedKeys.add(model.getAttributeKey());
+                    break;
+                case WRITE_BACK:
+                    fastModels.add(model);
+                    pendingModels.put(model.getAttributeKey(), model);
+                    break;
+                default:
+                    fastModels.add(model);
+                    durableModels.add(model);
+                    // a write-through overrides a former write-back
+                    pendingModels.remove(model.getAttributeKey());
+            }
+        }
+        // evict first as tiers also remove state from the session which is written afterwards
+        if (!evictedKeys.isEmpty()) {
+            fastTier.removeValues(evictedKeys);
+        }
+        if (!durableModels.isEmpty()) {
+            durableTier.writeModels(durableModels);
+        }
+        if (!fastModels.isEmpty()) {
+            fastTier.writeModels(fastModels);
+        }
+        // write to session
+        super.writeModels(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeValues(final Collection<? extends AlexaStateObject> stateObjects) throws AlexaStateException {
+        final List<AlexaStateObject> fastValues = new ArrayList<>();
+        final List<AlexaStateObject> durableValues = new ArrayList<>();
+        final List<String> evictedIds = new ArrayList<>();
+        stateObjects.stream()
+                // select only USER or APPLICATION scoped state objects
+                .filter(stateObject -> stateObject.getScope().isIn(AlexaScope.USER, AlexaScope.APPLICATION))
+                .forEach(stateObject -> {
+                    switch (policies.get(stateObject.getScope())) {
+                        case WRITE_AROUND:
+                            durableValues.add(stateObject);
+                            evictedIds.add(stateObject.getId());
+                            break;
+                        case WRITE_BACK:
+                            fastValues.add(stateObject);
+                            pendingValues.put(stateObject.getId(), stateObject);
+                            break;
+                        default:
+                            fastValues.add(stateObject);
+                            durableValues.add(stateObject);
+                            pendingValues.remove(stateObject.getId());
+                    }
+                });
+        // evict first as tiers also remove state from the session which is written afterwards
+        if (!evictedIds.isEmpty()) {
+            fastTier.removeValues(evictedIds);
+        }
+        if (!durableValues.isEmpty()) {
+            durableTier.writeValues(durableValues);
+        }
+        if (!fastValues.isEmpty()) {
+            fastTier.writeValues(fastValues);
+        }
+        // write to session
+        super.writeValues(stateObjects);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Models are removed from both tiers and will not be flushed if they were written with WRITE_BACK policy.
+     */
+    @Override
+    public void removeModels(final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        Validate.notNull(models, "Collection of models to be removed must not be null.");
+        final List<String> ids = forgetModels(models);
+        // only clean up the session here as the tiers remove the models on their own
+        super.removeValues(ids);
+        forgetPending(ids);
+        // go for both tiers as some of them (e.g. AWSIotStateHandler) need the model to find out where its state is stored
+        fastTier.removeModels(models);
+        durableTier.removeModels(models);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Values are removed from both tiers and will not be flushed if they were written with WRITE_BACK policy.
+     */
+    @Override
+    public void removeValues(final Collection<String> ids) throws AlexaStateException {
+        super.removeValues(ids);
+        forgetPending(ids);
+        fastTier.removeValues(ids);
+        durableTier.removeValues(ids);
+    }
+
+    private void forgetPending(final Collection<String> ids) {
+        ids.forEach(id -> {
+            pendingModels.remove(id);
+            pendingValues.remove(id);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(final String id, final AlexaScope scope) throws AlexaStateException {
+        if (AlexaScope.SESSION.includes(scope)) {
+            return super.exists(id, scope);
+        }
+        return fastTier.exists(id, scope) || durableTier.exists(id, scope);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> Map<String, TModel> readModels(final Class<TModel> modelClass, final Collection<String> ids) throws AlexaStateException {
+        final Map<String, TModel> models = new HashMap<>();
+        ids.forEach(id -> Optional.ofNullable(getKnownModel(modelClass, id)).ifPresent(model -> models.put(id, model)));
+        // fast tier also covers models found in the session
+        final List<String> unknownIds = ids.stream().filter(id -> !models.containsKey(id)).collect(Collectors.toList());
+        if (!unknownIds.isEmpty()) {
+            models.putAll(fastTier.readModels(modelClass, unknownIds));
+        }
+        final List<String> missingIds = ids.stream().filter(id -> !models.containsKey(id)).collect(Collectors.toList());
+
+        if (!missingIds.isEmpty()) {
+            final Map<String, TModel> durableModels = durableTier.readModels(modelClass, missingIds);
+            if (!durableModels.isEmpty()) {
+                // put to fast tier so next read is served from there
+                fastTier.writeModels(durableModels.values());
+                models.putAll(durableModels);
+                log.debug(String.format("Read %1$s models from durable tier and put them to fast tier.", durableModels.size()));
+            }
+        }
+        // models should be saved and removed over this handler rather than over one of its tiers
+        models.values().forEach(model -> model.setHandler(this));
+        rememberModels(models.values());
+        return models;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, AlexaStateObject> readValues(final Map<String, AlexaScope> idsInScope) throws AlexaStateException {
+        final Map<String, AlexaStateObject> stateObjectMap = new HashMap<>();
+        // first read all the session-scoped items and put to result map
+        stateObjectMap.putAll(super.readValues(idsInScope));
+
+        final Map<String, AlexaScope> persistentIdsInScope = new HashMap<>();
+        idsInScope.forEach((id, scope) -> {
+            if (scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION)) {
+                persistentIdsInScope.put(id, scope);
+            }
+        });
+        if (persistentIdsInScope.isEmpty()) {
+            return stateObjectMap;
+        }
+        fastTier.readValues(persistentIdsInScope).forEach(stateObjectMap::putIfAbsent);
+
+        final Map<String, AlexaScope> missingIdsInScope = new HashMap<>();
+        persistentIdsInScope.forEach((id, scope) -> {
+            if (!stateObjectMap.containsKey(id)) {
+                missingIdsInScope.put(id, scope);
+            }
+        });
+        if (!missingIdsInScope.isEmpty()) {
+            final Map<String, AlexaStateObject> durableValues = durableTier.readValues(missingIdsInScope);
+            if (!durableValues.isEmpty()) {
+                // put to fast tier so next read is served from there
+                fastTier.writeValues(durableValues.values());
+                durableValues.forEach(stateObjectMap::putIfAbsent);
+            }
+        }
+        return stateObjectMap;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Ranges are read from the durable tier.
+     */
+    @Override
+    public boolean supportsRangeReads() {
+        return durableTier instanceof AlexaSessionStateHandler && durableTier.supportsRangeReads();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The range is read from the durable tier and joined with values not yet flushed to it.
+     */
+    @Override
+    List<AlexaStateObject> readValueRange(final String fromId, final String toId, final int limit, final boolean descending, final AlexaScope scope) throws AlexaStateException {
+        if (!supportsRangeReads()) {
+            throw rangeReadsNotSupported();
+        }
+        final List<AlexaStateObject> stateObjects = pendingValues.values().stream()
+                .filter(stateObject -> scope.equals(stateObject.getScope()))
+                .collect(Collectors.toList());
+        stateObjects.addAll(((AlexaSessionStateHandler) durableTier).readValueRange(fromId, toId, limit, descending, scope));
+        return selectRange(stateObjects, fromId, toId, limit, descending);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Leaderboards are kept in the durable tier.
+     */
+    @Override
+    public boolean supportsLeaderboards() {
+        return durableTier.supportsLeaderboards();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Scores are written to the durable tier right away as they are read across users.
+     */
+    @Override
+    public void writeScore(final String leaderboard, final double score) throws AlexaStateException {
+        durableTier.writeScore(leaderboard, score);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeScore(final String leaderboard) throws AlexaStateException {
+        durableTier.removeScore(leaderboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<AlexaStateScore> readTopScores(final String leaderboard, final int count) throws AlexaStateException {
+        return durableTier.readTopScores(leaderboard, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<AlexaStateScore> readScore(final String leaderboard) throws AlexaStateException {
+        return durableTier.readScore(leaderboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <TModel extends AlexaStateModel> List<String> readUserIds(final Class<TModel> modelClass, final String fieldName, final Object value) throws AlexaStateException {
+        return durableTier.readUserIds(modelClass, fieldName, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsIndexes() {
+        return durableTier.supportsIndexes();
+    }
+
+    /**
+     * Returns the policy to apply on writing the given model. It's the policy of the scope the model
+     * has fields in. If the model has fields in USER and APPLICATION scope whose policies differ WRITE_THROUGH is
+     * returned and a warning is logged. Empty, if the model has session-scoped fields only.
+     */
+    private Optional<TierPolicy> getPolicy(final AlexaStateModel model) {
+        final TierPolicy userPolicy = model.hasUserScopedField() ? policies.get(AlexaScope.USER) : null;
+        final TierPolicy appPolicy = model.hasApplicationScopedField() ? policies.get(AlexaScope.APPLICATION) : null;
+        if (userPolicy == null || appPolicy == null || userPolicy.equals(appPolicy)) {
+            return Optional.ofNullable(userPolicy != null ? userPolicy : appPolicy);
+        }
+        log.warn(String.format("Model '%s' has fields in USER scope with policy %s and in APPLICATION scope with policy %s. It is written through to both tiers.",
+                model.getAttributeKey(), userPolicy, appPolicy));
+        return Optional.of(TierPolicy.WRITE_THROUGH);
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A model having this annotation is saved with a key starting with the given alias rather than with its
+ * fully qualified type name. This keeps keys short in all stores and in the session. Once chosen an alias
+ * should not change as state saved with it would not be found anymore. State saved before an alias was given
+ * to the model is still found as AlexaStateHandlers fall back to the type name if nothing is found for the alias.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AlexaStateAlias {
+    /**
+     * The alias used in keys instead of the fully qualified type name of the model. Must only contain characters
+     * allowed in ids of models (a-zA-Z0-9_-) and must be unique among all models.
+     * @return The alias used in keys instead of the fully qualified type name of the model.
+     */
+    String Name();
+}
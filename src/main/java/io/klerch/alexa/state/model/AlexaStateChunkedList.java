@@ -0,0 +1,315 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.klerch.alexa.state.handler.AlexaStateHandler;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * A list whose elements are not saved with the model holding it but in chunks of a fixed size. Each chunk is
+ * saved as a single value in the scope of the field with a key made of the key of the model, the name of the
+ * field and the number of the chunk (e.g. model-key#field#chunk0). Only the size of the list is saved with the
+ * model. Chunks are read not before one of their elements is accessed and only chunks changed since the last
+ * save are written. Appending elements therefore only writes the tail chunk.
+ * @param <E> Type of the elements
+ */
+public final class AlexaStateChunkedList<E> implements Iterable<E> {
+    private static final Logger log = Logger.getLogger(AlexaStateChunkedList.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Number of elements saved in one chunk if not given otherwise.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+    static final String CHUNK_SEPARATOR = "#chunk";
+
+    private final int chunkSize;
+    private int size;
+    // loaded chunks by their number
+    private final Map<Integer, List<E>> chunks = new HashMap<>();
+    // numbers of chunks changed since the last save
+    private final TreeSet<Integer> dirtyChunks = new TreeSet<>();
+    private AlexaStateModel owner;
+    private Field field;
+    private JavaType chunkType;
+
+    /**
+     * Creates an empty list saving its elements in chunks of the default size.
+     */
+    public AlexaStateChunkedList() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates an empty list saving its elements in chunks of the given size.
+     * @param chunkSize Number of elements saved in one chunk.
+     */
+    public AlexaStateChunkedList(final int chunkSize) {
+        this(chunkSize, 0);
+    }
+
+    @JsonCreator
+    private AlexaStateChunkedList(@JsonProperty("chunkSize") final int chunkSize, @JsonProperty("size") final int size) {
+        Validate.isTrue(chunkSize > 0, "Chunk size must be greater than zero.");
+        Validate.isTrue(size >= 0, "Size must not be negative.");
+        this.chunkSize = chunkSize;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     * @return number of elements
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns if this list has no elements.
+     * @return True, if there are no elements
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the number of elements saved in one chunk.
+     * @return number of elements in a chunk
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks of this list. It is the number of pages you can read with getPage.
+     * @return number of chunks
+     */
+    public int getChunkCount() {
+        return (size + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Returns if the chunk with the given number was read already or was created since.
+     * @param chunk The number of a chunk.
+     * @return True, if elements of this chunk are accessed without reading them.
+     */
+    public boolean isLoaded(final int chunk) {
+        return chunks.containsKey(chunk);
+    }
+
+    /**
+     * Returns the element at the given position. The chunk holding it is read on first access.
+     * @param index The position of the element.
+     * @return the element
+     * @throws AlexaStateException The chunk could not be read.
+     */
+    public E get(final int index) throws AlexaStateException {
+        Validate.isTrue(index >= 0 && index < size, "Index %1$s is out of bounds of a list with %2$s elements.", index, size);
+        return getChunk(index / chunkSize).get(index % chunkSize);
+    }
+
+    /**
+     * Replaces the element at the given position. Only the chunk holding it is written on the next save.
+     * @param index The position of the element.
+     * @param element The new element.
+     * @throws AlexaStateException The chunk could not be read.
+     */
+    public void set(final int index, final E element) throws AlexaStateException {
+        Validate.isTrue(index >= 0 && index < size, "Index %1$s is out of bounds of a list with %2$s elements.", index, size);
+        final int chunk = index / chunkSize;
+        getChunk(chunk).set(index % chunkSize, element);
+        dirtyChunks.add(chunk);
+    }
+
+    /**
+     * Appends an element to this list. Only the tail chunk is read and written on the next save.
+     * @param element The element to append.
+     * @throws AlexaStateException The tail chunk could not be read.
+     */
+    public void add(final E element) throws AlexaStateException {
+        final int chunk = size / chunkSize;
+        // a new chunk starts empty whereas a filled up tail chunk needs to be read first
+        final List<E> elements = size % chunkSize == 0 ? chunks.computeIfAbsent(chunk, c -> new ArrayList<>()) : getChunk(chunk);
+        elements.add(element);
+        dirtyChunks.add(chunk);
+        size++;
+    }
+
+    /**
+     * Appends all the given elements to this list.
+     * @param elements The elements to append.
+     * @throws AlexaStateException The tail chunk could not be read.
+     */
+    public void addAll(final Collection<? extends E> elements) throws AlexaStateException {
+        for (final E element : elements) {
+            add(element);
+        }
+    }
+
+    /**
+     * Returns the elements of one chunk. The chunk is read on first access.
+     * @param page The number of the chunk.
+     * @return elements of the chunk
+     * @throws AlexaStateException The chunk could not be read.
+     */
+    public List<E> getPage(final int page) throws AlexaStateException {
+        Validate.isTrue(page >= 0 && page < getChunkCount(), "Page %1$s is out of bounds of a list with %2$s pages.", page, getChunkCount());
+        return Collections.unmodifiableList(getChunk(page));
+    }
+
+    /**
+     * Returns an iterator over all elements of this list. Chunks are read one after another not before the
+     * iterator reaches them.
+     * @return iterator over all elements
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return get(index++);
+                } catch (final AlexaStateException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the key the chunk with the given number is saved with.
+     * @param chunk The number of a chunk.
+     * @return key of the chunk
+     */
+    public String getChunkKey(final int chunk) {
+        Validate.validState(owner != null, "Chunked list is not assigned to a field of a model yet.");
+        return owner.getAttributeKey() + "#" + AlexaStateModel.getPersistedName(field) + CHUNK_SEPARATOR + chunk;
+    }
+
+    /**
+     * Returns the keys of all chunks of this list.
+     * @return keys of all chunks
+     */
+    public List<String> getChunkKeys() {
+        final List<String> keys = new ArrayList<>();
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            keys.add(getChunkKey(chunk));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the scope the chunks of this list are saved in. It is the scope of the field holding the list.
+     * @return scope of the chunks
+     */
+    public AlexaScope getScope() {
+        Validate.validState(owner != null, "Chunked list is not assigned to a field of a model yet.");
+        return AlexaStateModelMetadata.getScope(owner.getClass(), field);
+    }
+
+    /**
+     * Returns the chunks changed since the last save as single values ready to be written by a handler.
+     * @return chunks changed since the last save
+     * @throws AlexaStateException The chunks could not be serialized.
+     */
+    public List<AlexaStateObject> getUnsavedChunks() throws AlexaStateException {
+        final List<AlexaStateObject> stateObjects = new ArrayList<>();
+        for (final Integer chunk : dirtyChunks) {
+            try {
+                stateObjects.add(new AlexaStateObject(getChunkKey(chunk), mapper.writeValueAsString(chunks.get(chunk)), getScope()));
+            } catch (final IOException e) {
+                final String error = String.format("Could not serialize chunk %1$s of field '%2$s' in '%3$s'.", chunk, field.getName(), owner);
+                log.error(error, e);
+                throw AlexaStateException.create(error).withCause(e).withModel(owner).build();
+            }
+        }
+        return stateObjects;
+    }
+
+    /**
+     * Marks all chunks as saved. Handlers call this after they wrote the unsaved chunks.
+     */
+    public void markAsSaved() {
+        dirtyChunks.clear();
+    }
+
+    @JsonValue
+    Map<String, Integer> toHeader() {
+        // only the header of the list is saved with the model
+        final Map<String, Integer> header = new LinkedHashMap<>();
+        header.put("chunkSize", chunkSize);
+        header.put("size", size);
+        return header;
+    }
+
+    /**
+     * Assigns this list to the field of a model. Chunks are read with the handler of the model.
+     * @param owner The model holding this list.
+     * @param field The field of the model holding this list.
+     */
+    void bind(final AlexaStateModel owner, final Field field) {
+        this.owner = owner;
+        this.field = field;
+        final JavaType elementType = mapper.getTypeFactory().constructType(field.getGenericType()).containedType(0);
+        this.chunkType = mapper.getTypeFactory().constructCollectionType(ArrayList.class,
+                elementType != null ? elementType : mapper.getTypeFactory().constructType(Object.class));
+    }
+
+    private List<E> getChunk(final int chunk) throws AlexaStateException {
+        final List<E> loaded = chunks.get(chunk);
+        if (loaded != null) {
+            return loaded;
+        }
+        Validate.validState(owner != null && owner.getHandler() != null, "Chunks of this list cannot be read as it needs an AlexaStateHandler. Assign the list to a model with a handler.");
+        final AlexaStateHandler handler = owner.getHandler();
+        final Optional<AlexaStateObject> stateObject = handler.readValue(getChunkKey(chunk), getScope());
+        final List<E> elements = stateObject.isPresent() ? toChunk(stateObject.get().getValue()) : new ArrayList<>();
+        chunks.put(chunk, elements);
+        return elements;
+    }
+
+    private List<E> toChunk(final Object value) throws AlexaStateException {
+        try {
+            // chunks come as json from a backend or as list from the session
+            return value instanceof String ? mapper.readValue((String) value, chunkType) : mapper.convertValue(value, chunkType);
+        } catch (final IOException | IllegalArgumentException e) {
+            final String error = String.format("Could not deserialize chunk of field '%1$s' in '%2$s'.", field.getName(), owner);
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).withModel(owner).build();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import org.apache.commons.lang3.Validate;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derive your model from this class to append its instances to an append-only event log of a user with
+ * AlexaStateHandler.appendEvent. Each event is saved as its own user-scoped item whose id starts with the time
+ * of the event so the events of a type are ordered by time. Reading the last events or the events of a time window
+ * is a range read on these ids. Fields of an event need to be tagged with AlexaStateSave in USER scope.
+ */
+public abstract class AlexaStateEvent extends AlexaStateModel {
+    // digits of the epoch millis in an event id. good until the year 2286
+    private static final int timeDigits = 13;
+    private static final long maxTime = 9999999999999L;
+    private static final int sequenceBound = 1000000;
+    // distinguishes events of the same millisecond. starts randomly to lower collisions across processes
+    private static final AtomicInteger sequence = new AtomicInteger(ThreadLocalRandom.current().nextInt(sequenceBound));
+
+    /**
+     * Returns a new event id for the given time. It is made of the zero-padded epoch millis of the time and a sequence
+     * number (e.g. 1500000000000-000042) so ids are ordered by time.
+     * @param time The time of the event.
+     * @return id for an event
+     */
+    public static String createId(final Instant time) {
+        return getIdPrefix(time) + "-" + String.format("%06d", Math.floorMod(sequence.getAndIncrement(), sequenceBound));
+    }
+
+    /**
+     * Returns the part of an event id representing the given time. All ids of events at or after the given time
+     * are greater than or equal to it.
+     * @param time A time.
+     * @return zero-padded epoch millis of the time
+     */
+    public static String getIdPrefix(final Instant time) {
+        Validate.notNull(time, "Time must not be null.");
+        final long millis = time.toEpochMilli();
+        Validate.isTrue(millis >= 0 && millis <= maxTime, "Time %1$s cannot be represented in an event id.", time);
+        return String.format("%0" + timeDigits + "d", millis);
+    }
+
+    /**
+     * Returns the latest time which can be represented in an event id.
+     * @return latest time of an event
+     */
+    public static Instant getMaxTime() {
+        return Instant.ofEpochMilli(maxTime);
+    }
+
+    /**
+     * Returns the time of this event taken from its id.
+     * @return time of this event. Null if this event has not been appended yet.
+     */
+    public Instant getTime() {
+        final String id = getId();
+        if (id == null || id.length() < timeDigits) {
+            return null;
+        }
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(id.substring(0, timeDigits)));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.utils.AlexaStateException;
+import io.klerch.alexa.state.utils.ReflectionUtils;
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes a primitive field of a model without boxing its value. Same as AlexaStateModel.get and set it
+ * prefers the getter and setter of a field over accessing the field directly. Both are looked up only once per
+ * model type and field and are invoked over method handles typed with the primitive type of the field.
+ * Fields of type int, long, double, float and boolean are supported. For all others isPrimitive returns false
+ * and AlexaStateModel.get and set should be used.
+ */
+public final class AlexaStateFieldAccessor {
+    private static final Logger log = Logger.getLogger(AlexaStateFieldAccessor.class);
+    private static final List<Class<?>> supportedTypes = Arrays.asList(int.class, long.class, double.class, float.class, boolean.class);
+    // accessors (by field) of model types
+    private static final Map<Class<?>, Map<Field, AlexaStateFieldAccessor>> accessors = new ConcurrentHashMap<>();
+
+    private final Field field;
+    private final Class<?> type;
+    // (AlexaStateModel)type
+    private final MethodHandle getter;
+    // (AlexaStateModel,type)void
+    private final MethodHandle setter;
+
+    private AlexaStateFieldAccessor(final Field field, final MethodHandle getter, final MethodHandle setter) {
+        this.field = field;
+        this.type = field.getType();
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * Returns the accessor of a field in the given model type.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param field A field of the model.
+     * @return accessor of the field
+     */
+    public static AlexaStateFieldAccessor of(final Class<? extends AlexaStateModel> modelClass, final Field field) {
+        final Map<Field, AlexaStateFieldAccessor> accessorsOfModel = accessors.computeIfAbsent(modelClass, clazz -> new ConcurrentHashMap<>());
+        final AlexaStateFieldAccessor accessor = accessorsOfModel.get(field);
+        return accessor != null ? accessor : accessorsOfModel.computeIfAbsent(field, f -> create(modelClass, f));
+    }
+
+    /**
+     * Returns the field of this accessor.
+     * @return the field
+     */
+    public Field getField() {
+        return this.field;
+    }
+
+    /**
+     * Returns the type of the field.
+     * @return type of the field
+     */
+    public Class<?> getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns if the field is of a primitive type read and written without boxing by this accessor.
+     * @return True, if the primitive getters and setters of this accessor can be used.
+     */
+    public boolean isPrimitive() {
+        return this.getter != null;
+    }
+
+    /**
+     * Returns the value of a field of type int.
+     * @param model The model to read the value from.
+     * @return value of the field
+     * @throws AlexaStateException The field could not be read or is not of type int.
+     */
+    public int getInt(final AlexaStateModel model) throws AlexaStateException {
+        try {
+            return (int) getter.invokeExact(model);
+        } catch (final Throwable e) {
+            throw readError(model, e);
+        }
+    }
+
+    /**
+     * Returns the value of a field of type long.
+     * @param model The model to read the value from.
+     * @return value of the field
+     * @throws AlexaStateException The field could not be read or is not of type long.
+     */
+    public long getLong(final AlexaStateModel model) throws AlexaStateException {
+        try {
+            return (long) getter.invokeExact(model);
+        } catch (final Throwable e) {
+            throw readError(model, e);
+        }
+    }
+
+    /**
+     * Returns the value of a field of type double.
+     * @param model The model to read the value from.
+     * @return value of the field
+     * @throws AlexaStateException The field could not be read or is not of type double.
+     */
+    public double getDouble(final AlexaStateModel model) throws AlexaStateException {
+        try {
+            return (double) getter.invokeExact(model);
+        } catch (final Throwable e) {
+            throw readError(model, e);
+        }
+    }
+
+    /**
+     * Returns the value of a field of type float.
+     * @param model The model to read the value from.
+     * @return value of the field
+     * @throws AlexaStateException The field could not be read or is not of type float.
+     */
+    public float getFloat(final AlexaStateModel model) throws AlexaStateException {
+        try {
+            return (float) getter.invokeExact(model);
+        } catch (final Throwable e) {
+            throw readError(model, e);
+        }
+    }
+
+    /**
+     * Returns the value of a field of type boolean.
+     * @param model The model to read the value from.
+     * @return value of the field
+     * @throws AlexaStateException The field could not be read or is not of type boolean.
+     */
+    public boolean getBoolean(final AlexaStateModel model) throws AlexaStateException {
+        try {
+            return (boolean) getter.invokeExact(model);
+        } catch (final Throwable e) {
+            throw readError(model, e);
+        }
+    }
+
+    /**
+     * Sets the value of a field of type int.
+     * @param model The model to write the value to.
+     * @param value New value of the field.
+     * @throws AlexaStateException The field could not be written or is not of type int.
+     */
+    public void setInt(final AlexaStateModel model, final int value) throws AlexaStateException {
+        try {
+            setter.invokeExact(model, value);
+        } catch (final Throwable e) {
+            throw writeError(model, e);
+        }
+    }
+
+    /**
+     * Sets the value of a field of type long.
+     * @param model The model to write the value to.
+     * @param value New value of the field.
+     * @throws AlexaStateException The field could not be written or is not of type long.
+     */
+    public void setLong(final AlexaStateModel model, final long value) throws AlexaStateException {
+        try {
+            setter.invokeExact(model, value);
+        } catch (final Throwable e) {
+            throw writeError(model, e);
+        }
+    }
+
+    /**
+     * Sets the value of a field of type double.
+     * @param model The model to write the value to.
+     * @param value New value of the field.
+     * @throws AlexaStateException The field could not be written or is not of type double.
+     */
+    public void setDouble(final AlexaStateModel model, final double value) throws AlexaStateException {
+        try {
+            setter.invokeExact(model, value);
+        } catch (final Throwable e) {
+            throw writeError(model, e);
+        }
+    }
+
+    /**
+     * Sets the value of a field of type float.
+     * @param model The model to write the value to.
+     * @param value New value of the field.
+     * @throws AlexaStateException The field could not be written or is not of type float.
+     */
+    public void setFloat(final AlexaStateModel model, final float value) throws AlexaStateException {
+        try {
+            setter.invokeExact(model, value);
+        } catch (final Throwable e) {
+            throw writeError(model, e);
+        }
+    }
+
+    /**
+     * Sets the value of a field of type boolean.
+     * @param model The model to write the value to.
+     * @param value New value of the field.
+     * @throws AlexaStateException The field could not be written or is not of type boolean.
+     */
+    public void setBoolean(final AlexaStateModel model, final boolean value) throws AlexaStateException {
+        try {
+            setter.invokeExact(model, value);
+        } catch (final Throwable e) {
+            throw writeError(model, e);
+        }
+    }
+
+    /**
+     * Copies the value of the field from one model to another without boxing it.
+     * @param source The model to read the value from.
+     * @param target The model to write the value to.
+     * @throws AlexaStateException The field could not be read or written.
+     */
+    public void copy(final AlexaStateModel source, final AlexaStateModel target) throws AlexaStateException {
+        if (int.class.equals(type)) {
+            setInt(target, getInt(source));
+        } else if (long.class.equals(type)) {
+            setLong(target, getLong(source));
+        } else if (double.class.equals(type)) {
+            setDouble(target, getDouble(source));
+        } else if (float.class.equals(type)) {
+            setFloat(target, getFloat(source));
+        } else {
+            setBoolean(target, getBoolean(source));
+        }
+    }
+
+    /**
+     * Returns if the field has the same value in both models without boxing it.
+     * @param model A model.
+     * @param other Another model of the same type.
+     * @return True, if the field has the same value in both models
+     * @throws AlexaStateException The field could not be read.
+     */
+    public boolean hasSameValue(final AlexaStateModel model, final AlexaStateModel other) throws AlexaStateException {
+        if (int.class.equals(type)) {
+            return getInt(model) == getInt(other);
+        } else if (long.class.equals(type)) {
+            return getLong(model) == getLong(other);
+        } else if (double.class.equals(type)) {
+            return Double.compare(getDouble(model), getDouble(other)) == 0;
+        } else if (float.class.equals(type)) {
+            return Float.compare(getFloat(model), getFloat(other)) == 0;
+        }
+        return getBoolean(model) == getBoolean(other);
+    }
+
+    private static AlexaStateFieldAccessor create(final Class<? extends AlexaStateModel> modelClass, final Field field) {
+        final Class<?> type = field.getType();
+        if (!supportedTypes.contains(type) || Modifier.isStatic(field.getModifiers())) {
+            return new AlexaStateFieldAccessor(field, null, null);
+        }
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            field.setAccessible(true);
+            final Method getterMethod = ReflectionUtils.getGetter(modelClass, field.getName());
+            final Method setterMethod = ReflectionUtils.getSetter(modelClass, field.getName());
+            // accessors with other signatures are left to the reflective path of the model
+            if ((getterMethod != null && (getterMethod.getParameterCount() != 0 || !type.equals(getterMethod.getReturnType()))) ||
+                    (setterMethod != null && (setterMethod.getParameterCount() != 1 || !type.equals(setterMethod.getParameterTypes()[0])))) {
+                return new AlexaStateFieldAccessor(field, null, null);
+            }
+            if (getterMethod != null) {
+                getterMethod.setAccessible(true);
+            }
+            if (setterMethod != null) {
+                setterMethod.setAccessible(true);
+            }
+            final MethodHandle getter = getterMethod != null ? lookup.unreflect(getterMethod) : lookup.unreflectGetter(field);
+            final MethodHandle setter = setterMethod != null ? lookup.unreflect(setterMethod) : lookup.unreflectSetter(field);
+            return new AlexaStateFieldAccessor(field,
+                    getter.asType(MethodType.methodType(type, AlexaStateModel.class)),
+                    setter.asType(MethodType.methodType(void.class, AlexaStateModel.class, type)));
+        } catch (final IllegalAccessException | SecurityException | WrongMethodTypeException e) {
+            log.warn(String.format("Could not access field '%1$s' of '%2$s' without boxing its value.", field.getName(), modelClass.getTypeName()), e);
+            return new AlexaStateFieldAccessor(field, null, null);
+        }
+    }
+
+    private AlexaStateException readError(final AlexaStateModel model, final Throwable e) {
+        final String error = String.format("Could not access field '%1$s' of model '%2$s' for reading. Ensure there's a public getter for this field.", field.getName(), model);
+        log.error(error, e);
+        return AlexaStateException.create(error).withCause(e).withModel(model).build();
+    }
+
+    private AlexaStateException writeError(final AlexaStateModel model, final Throwable e) {
+        final String error = String.format("Could not access field '%1$s' of model '%2$s' for writing. Ensure there's a public setter for this field.", field.getName(), model);
+        log.error(error, e);
+        return AlexaStateException.create(error).withCause(e).withModel(model).build();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keys of the index over the values of AlexaStateSave-fields tagged as indexed. For each indexed field of a model
+ * handlers save an index entry next to the model. The key of the entry is made of the key of the model and the name
+ * of the field (e.g. model-key#field#index) and the entry holds the index key made of the model type, the name of
+ * the field and the value of the field (e.g. model-type#field="gold"). Looking up an index key gives all users
+ * having a model whose field has that value.
+ */
+public final class AlexaStateIndex {
+    private static final Logger log = Logger.getLogger(AlexaStateIndex.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    static final String ENTRY_SUFFIX = "#index";
+
+    private AlexaStateIndex() {
+    }
+
+    /**
+     * Returns the indexed field with the given name of a model type.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param fieldName The name of a field of the model.
+     * @return the indexed field
+     * @throws IllegalArgumentException The model has no indexed field with the given name.
+     */
+    public static Field getIndexedField(final Class<? extends AlexaStateModel> modelClass, final String fieldName) {
+        Validate.notNull(modelClass, "Model type must not be null.");
+        return AlexaStateModelMetadata.of(modelClass).getIndexedFields().stream()
+                .filter(field -> field.getName().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(String.format("'%1$s' is not an indexed AlexaStateSave-field of '%2$s'.", fieldName, modelClass.getTypeName())));
+    }
+
+    /**
+     * Returns the index key of models of the given type whose field has the given value.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param fieldName The name of an indexed field of the model.
+     * @param value The value of the field.
+     * @return index key
+     * @throws AlexaStateException The value could not be serialized.
+     */
+    public static String getIndexKey(final Class<? extends AlexaStateModel> modelClass, final String fieldName, final Object value) throws AlexaStateException {
+        return getIndexKey(modelClass, getIndexedField(modelClass, fieldName), value);
+    }
+
+    /**
+     * Returns the keys of all index entries of the given model.
+     * @param model A model.
+     * @return keys of the index entries of the model. Empty if the model has no indexed fields.
+     */
+    public static List<String> getEntryKeys(final AlexaStateModel model) {
+        final List<String> keys = new ArrayList<>();
+        for (final Field field : AlexaStateModelMetadata.of(model.getClass()).getIndexedFields()) {
+            keys.add(getEntryKey(model, field));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the index entries of the given model as it is now.
+     * @param model A model.
+     * @return index keys by the keys of the index entries. The index key is null for fields having a null value
+     * whose index entry should be removed.
+     * @throws AlexaStateException The values of the indexed fields could not be read or serialized.
+     */
+    public static Map<String, String> getEntries(final AlexaStateModel model) throws AlexaStateException {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        for (final Field field : AlexaStateModelMetadata.of(model.getClass()).getIndexedFields()) {
+            final Object value = model.get(field);
+            entries.put(getEntryKey(model, field), value != null ? getIndexKey(model.getClass(), field, value) : null);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns if the given key is the key of an index entry.
+     * @param key A key of a model, a single value or an index entry.
+     * @return True, if the key is the key of an index entry.
+     */
+    public static boolean isEntryKey(final String key) {
+        return key != null && key.endsWith(ENTRY_SUFFIX);
+    }
+
+    private static String getEntryKey(final AlexaStateModel model, final Field field) {
+        return model.getAttributeKey() + "#" + AlexaStateModel.getPersistedName(field) + ENTRY_SUFFIX;
+    }
+
+    private static String getIndexKey(final Class<? extends AlexaStateModel> modelClass, final Field field, final Object value) throws AlexaStateException {
+        try {
+            // values are compared by their json so 3 and 3L or an enum and its name end up with the same key
+            return AlexaStateKeyCodec.encode(modelClass, null) + "#" + AlexaStateModel.getPersistedName(field) + "=" + mapper.writeValueAsString(value);
+        } catch (final JsonProcessingException e) {
+            final String error = String.format("Could not serialize value of indexed field '%1$s' in '%2$s'.", field.getName(), modelClass.getTypeName());
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).build();
+        }
+    }
+}
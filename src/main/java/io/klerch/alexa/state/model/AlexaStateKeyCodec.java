@@ -0,0 +1,164 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes the type and id of a model to the key its state is saved with and decodes the id from such a key.
+ * A key is the alias or type name of the model optionally followed by a separator and the id of the model. An alias
+ * is given to a model with the AlexaStateAlias-annotation or with registerAlias. The prefix of a key is looked up
+ * only once per model type.
+ */
+public final class AlexaStateKeyCodec {
+    /**
+     * Separates the type name from the id of a model in its key.
+     */
+    public static final char SEPARATOR = ':';
+    /**
+     * Characters allowed in the id of a model.
+     */
+    public static final String VALID_ID_PATTERN = "[a-zA-Z0-9_\\-]+";
+    // prefix of keys (alias or type name) of model types
+    private static final Map<Class<?>, String> prefixes = new ConcurrentHashMap<>();
+    // model types by alias
+    private static final Map<String, Class<?>> aliases = new ConcurrentHashMap<>();
+
+    private AlexaStateKeyCodec() {
+    }
+
+    /**
+     * Gives an alias to a model type which is used in keys instead of the fully qualified type name. It is an
+     * alternative to the AlexaStateAlias-annotation for models you cannot annotate. Register the alias before
+     * state of the model is read or written the first time.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param alias The alias of the model type. Must only contain characters allowed in ids of models (a-zA-Z0-9_-).
+     * @throws IllegalArgumentException The alias is invalid or already given to another model type.
+     */
+    public static void registerAlias(final Class<? extends AlexaStateModel> modelClass, final String alias) {
+        Validate.notNull(modelClass, "Model class must not be null.");
+        validateAlias(modelClass, alias);
+        prefixes.put(modelClass, alias);
+    }
+
+    /**
+     * Returns if the given model type has an alias.
+     * @param modelClass The type of an AlexaStateModel.
+     * @return True, if the model type has an alias
+     */
+    public static boolean hasAlias(final Class<? extends AlexaStateModel> modelClass) {
+        return !getPrefix(modelClass).equals(modelClass.getTypeName());
+    }
+
+    /**
+     * Returns the key used to save the model with the given id.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param id The id of the model. Null or empty for the singleton object of the model.
+     * @return key used to save the model
+     */
+    public static String encode(final Class<? extends AlexaStateModel> modelClass, final String id) {
+        return encode(getPrefix(modelClass), id);
+    }
+
+    /**
+     * Returns the key the model with the given id was saved with before its type got an alias. It starts
+     * with the fully qualified type name of the model.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param id The id of the model. Null or empty for the singleton object of the model.
+     * @return key used to save the model before its type got an alias
+     */
+    public static String encodeLegacy(final Class<? extends AlexaStateModel> modelClass, final String id) {
+        return encode(modelClass.getTypeName(), id);
+    }
+
+    /**
+     * Returns the id of the model saved with the given key. Keys starting with the type name rather than the alias
+     * of a model are decoded as well.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param key The key used to save the model.
+     * @return id of the model. Null for the singleton object of the model or if the key does not belong to the given model type.
+     */
+    public static String decode(final Class<? extends AlexaStateModel> modelClass, final String key) {
+        final String id = decode(getPrefix(modelClass), key);
+        return id != null || !hasAlias(modelClass) ? id : decode(modelClass.getTypeName(), key);
+    }
+
+    /**
+     * Returns if the given id only contains characters allowed in the id of a model (a-zA-Z0-9_-).
+     * @param id The id of a model.
+     * @return True, if the id is valid
+     */
+    public static boolean isValidId(final String id) {
+        if (id == null || id.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates the given id only contains characters allowed in the id of a model (a-zA-Z0-9_-).
+     * @param id The id of a model.
+     * @throws IllegalArgumentException The id contains illegal characters.
+     */
+    public static void validateId(final String id) {
+        Validate.isTrue(isValidId(id), "Chosen model Id contains illegal characters. Ensure your Id matches the following pattern: " + VALID_ID_PATTERN);
+    }
+
+    private static String encode(final String prefix, final String id) {
+        if (id == null || id.isEmpty()) {
+            return prefix;
+        }
+        return new StringBuilder(prefix.length() + 1 + id.length())
+                .append(prefix).append(SEPARATOR).append(id).toString();
+    }
+
+    private static String decode(final String prefix, final String key) {
+        final int length = prefix.length();
+        // only the part after the prefix and separator is the id so ids may even contain the prefix
+        if (key == null || key.length() <= length + 1 || key.charAt(length) != SEPARATOR || !key.startsWith(prefix)) {
+            return null;
+        }
+        final String id = key.substring(length + 1);
+        return isBlank(id) ? null : id;
+    }
+
+    private static String getPrefix(final Class<? extends AlexaStateModel> modelClass) {
+        final String prefix = prefixes.get(modelClass);
+        return prefix != null ? prefix : prefixes.computeIfAbsent(modelClass, clazz -> {
+            final AlexaStateAlias alias = clazz.getAnnotation(AlexaStateAlias.class);
+            if (alias == null) {
+                return clazz.getTypeName();
+            }
+            validateAlias(modelClass, alias.Name());
+            return alias.Name();
+        });
+    }
+
+    private static void validateAlias(final Class<? extends AlexaStateModel> modelClass, final String alias) {
+        Validate.isTrue(isValidId(alias), "Alias '%1$s' of '%2$s' contains illegal characters. Ensure it matches the following pattern: %3$s", alias, modelClass.getTypeName(), VALID_ID_PATTERN);
+        final Class<?> aliasedClass = aliases.putIfAbsent(alias, modelClass);
+        Validate.isTrue(aliasedClass == null || aliasedClass.equals(modelClass), "Alias '%1$s' of '%2$s' is already given to '%3$s'.", alias, modelClass.getTypeName(), aliasedClass);
+    }
+
+    private static boolean isBlank(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
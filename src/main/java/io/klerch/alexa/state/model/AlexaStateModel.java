@@ -6,10 +6,15 @@
  */
 package io.klerch.alexa.state.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.klerch.alexa.state.handler.AlexaStateHandler;
 import io.klerch.alexa.state.model.serializer.AlexaAppStateSerializer;
 import io.klerch.alexa.state.model.serializer.AlexaSessionStateSerializer;
@@ -18,7 +23,6 @@ import io.klerch.alexa.state.model.serializer.AlexaUserStateSerializer;
 import io.klerch.alexa.state.utils.AlexaStateException;
 import io.klerch.alexa.state.utils.ConversionUtils;
 import io.klerch.alexa.state.utils.ReflectionUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.log4j.Logger;
 
@@ -26,31 +30,24 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 /**
  * This abstract class turns your POJO model into a model compatible to the AlexaStateHandler.
  */
 public abstract class AlexaStateModel {
-    @AlexaStateIgnore
-    private final Logger log = Logger.getLogger(AlexaStateModel.class);
+    private static final Logger log = Logger.getLogger(AlexaStateModel.class);
+    private static final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     @AlexaStateIgnore
     private String __internalId;
     @AlexaStateIgnore
     private AlexaStateHandler __handler;
-    @AlexaStateIgnore
-    private final String validIdPattern = "[a-zA-Z0-9_\\-]+";
-    @AlexaStateIgnore
-    private Boolean hasSessionScopedFields;
-    @AlexaStateIgnore
-    private Boolean hasApplicationScopedFields;
-    @AlexaStateIgnore
-    private Boolean hasUserScopedFields;
-    @AlexaStateIgnore
-    private static final String AttributeKeySeparator = ":";
 
     /**
      * Returns the key used to save the model in the session attributes. This method doesn't take an id
@@ -72,12 +69,63 @@ public abstract class AlexaStateModel {
      * @return key used to save the model in the session attributes
      */
     public static <TModel extends AlexaStateModel> String getAttributeKey(final Class<TModel> modelClass, final String id) {
-        return modelClass.getTypeName() + (id != null && !id.isEmpty() ? AttributeKeySeparator + id : "");
+        return AlexaStateKeyCodec.encode(modelClass, id);
     }
 
+    /**
+     * Returns the id of a model from the key used to save the model in the session attributes.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param attributeKey key used to save the model in the session attributes
+     * @param <TModel> The model type derived from AlexaStateModel.
+     * @return id of the model. Null for the singleton object of the model.
+     */
     public static <TModel extends AlexaStateModel> String resolveAttributeKeyToId(final Class<TModel> modelClass, final String attributeKey) {
-        final String id = attributeKey.replace(modelClass.getTypeName(), "").replace(AttributeKeySeparator, "");
-        return StringUtils.isNotBlank(id) ? id : null;
+        return AlexaStateKeyCodec.decode(modelClass, attributeKey);
+    }
+
+    /**
+     * Returns the name the given field is saved with. It is the name given in its AlexaStateSave-annotation
+     * or the name of the field if there is none.
+     * @param field A field of an AlexaStateModel.
+     * @return name the given field is saved with
+     */
+    public static String getPersistedName(final Field field) {
+        final AlexaStateSave annotation = field.getAnnotation(AlexaStateSave.class);
+        return annotation != null && !annotation.Name().isEmpty() ? annotation.Name() : field.getName();
+    }
+
+    /**
+     * Returns if this model is saved sparsely as it is tagged with AlexaStateSparse.
+     * @return True, if fields having their default value and a null id are not saved.
+     */
+    public boolean isSparse() {
+        return AlexaStateModelMetadata.of(this.getClass()).isSparse();
+    }
+
+    /**
+     * Returns if the given value equals the value the given field has in a new instance of this model. Null is
+     * considered a default value for models which cannot be instantiated with a parameterless constructor.
+     * @param field A field of this model.
+     * @param value The value to check.
+     * @return True, if the value equals the default value of the field.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public boolean isDefaultValue(final Field field, final Object value) throws AlexaStateException {
+        final AlexaStateModel prototype = AlexaStateModelFactory.getPrototype(this.getClass());
+        return prototype != null ? Objects.equals(value, prototype.get(field)) : value == null;
+    }
+
+    /**
+     * Returns if the given field has the value it has in a new instance of this model. Fields of primitive types
+     * are compared without boxing their values.
+     * @param field A field of this model.
+     * @return True, if the field has its default value.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public boolean hasDefaultValue(final Field field) throws AlexaStateException {
+        final AlexaStateFieldAccessor accessor = AlexaStateFieldAccessor.of(this.getClass(), field);
+        final AlexaStateModel prototype = AlexaStateModelFactory.getPrototype(this.getClass());
+        return accessor.isPrimitive() && prototype != null ? accessor.hasSameValue(this, prototype) : isDefaultValue(field, get(field));
     }
 
     /**
@@ -87,7 +135,7 @@ public abstract class AlexaStateModel {
      * @return key used to save the model in the session attributes
      */
     public String getAttributeKey() {
-        return getAttributeKey(this.getClass(), __internalId);
+        return AlexaStateKeyCodec.encode(this.getClass(), __internalId);
     }
 
     /**
@@ -98,7 +146,7 @@ public abstract class AlexaStateModel {
      */
     public void setId(final String id) {
         if (id != null && !id.isEmpty()) {
-            Validate.matchesPattern(id, validIdPattern, "Chosen model Id contains illegal characters. Ensure your Id matches the following pattern: " + validIdPattern);
+            AlexaStateKeyCodec.validateId(id);
             this.__internalId = id;
         }
     }
@@ -203,6 +251,14 @@ public abstract class AlexaStateModel {
      */
     public void set(final Field field, final Object value) throws AlexaStateException {
         final String fieldName = field.getName();
+        // references are resolved with the handler of the model holding them
+        if (value instanceof AlexaStateRef && ((AlexaStateRef<?>) value).getHandler() == null) {
+            ((AlexaStateRef<?>) value).setHandler(this.__handler);
+        }
+        // chunks of a list are read with the handler of the model holding it
+        if (value instanceof AlexaStateChunkedList) {
+            ((AlexaStateChunkedList<?>) value).bind(this, field);
+        }
         // prefer setting value with setter over direct value assignment to field
         try {
             // look for a setter for this field
@@ -254,10 +310,30 @@ public abstract class AlexaStateModel {
             final ObjectMapper om = new ObjectMapper();
             om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
-            final Object model = new ObjectMapper().readValue(json, this.getClass());
+            final JsonNode node = om.readTree(json);
+            if (node instanceof ObjectNode) {
+                // values saved with the short name of a field are moved to the name of the field
+                for (final Field field : getSaveStateFields(scope)) {
+                    final String persistedName = getPersistedName(field);
+                    if (!persistedName.equals(field.getName()) && node.has(persistedName)) {
+                        ((ObjectNode) node).set(field.getName(), ((ObjectNode) node).remove(persistedName));
+                    }
+                }
+            }
+            final Object model = om.treeToValue(node, this.getClass());
             for (final Field field : getSaveStateFields(scope)) {
-                field.setAccessible(true);
-                this.set(field, field.get(model));
+                // fields not saved in sparse state keep their value
+                if (isSparse() && !node.has(field.getName())) {
+                    continue;
+                }
+                final AlexaStateFieldAccessor accessor = AlexaStateFieldAccessor.of(this.getClass(), field);
+                if (accessor.isPrimitive()) {
+                    // primitive values are copied without boxing them
+                    accessor.copy((AlexaStateModel) model, this);
+                } else {
+                    field.setAccessible(true);
+                    this.set(field, field.get(model));
+                }
                 modelChanged = true;
             }
         } catch (final IOException | IllegalAccessException e) {
@@ -268,6 +344,55 @@ public abstract class AlexaStateModel {
         return modelChanged;
     }
 
+    /**
+     * Expects a json-string which contains keys with values. Only the values of the given AlexaStateSave-fields with
+     * the given scope are written to this model. The json is parsed as a stream and values of all other keys are
+     * skipped without converting them. Fields not contained in the json keep their value.
+     * @param json A json with key-value-pairs where the keys likely equal some of the AlexaStateSave-tagged with given scope fields in this model.
+     * @param scope The scope a AlexaStateSave-annotated field must have to be considered for value assignment
+     * @param fieldNames Names of the fields to read from the json.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     * @return True, if json-keys matched with the given fields.
+     */
+    public boolean fromJSON(final String json, final AlexaScope scope, final Collection<String> fieldNames) throws AlexaStateException {
+        // fields to read by their persisted name and by their own name
+        final Map<String, Field> fields = new HashMap<>();
+        for (final Field field : getSaveStateFields(scope)) {
+            if (fieldNames.contains(field.getName())) {
+                fields.put(field.getName(), field);
+                fields.put(getPersistedName(field), field);
+            }
+        }
+        boolean modelChanged = false;
+        if (fields.isEmpty()) {
+            return modelChanged;
+        }
+        try (final JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return modelChanged;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final Field field = fields.get(parser.getCurrentName());
+                parser.nextToken();
+                if (field == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+                final Object value = mapper.readValue(parser, mapper.getTypeFactory().constructType(field.getGenericType()));
+                // null cannot be assigned to primitive fields so they keep their value
+                if (value != null || !field.getType().isPrimitive()) {
+                    this.set(field, value);
+                    modelChanged = true;
+                }
+            }
+        } catch (final IOException e) {
+            final String error = String.format("Error while deserializing fields %1$s of model '%2$s' from Json.", fieldNames, this);
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).withModel(this).build();
+        }
+        return modelChanged;
+    }
+
     /**
      * Returns a json with key-value-pairs - one for each AlexaStateSave-annotated field in this model configured to be valid
      * in the given scope
@@ -312,9 +437,7 @@ public abstract class AlexaStateModel {
      * @return True, if there are any AlexaStateSave fields in the model scoped in SESSION
      */
     public Boolean hasSessionScopedField() {
-        hasSessionScopedFields = (hasSessionScopedFields != null) ? hasSessionScopedFields :
-                hasFieldInScope(AlexaScope.SESSION);
-        return hasSessionScopedFields;
+        return AlexaStateModelMetadata.of(this.getClass()).hasFieldInScope(AlexaScope.SESSION);
     }
 
     /**
@@ -322,9 +445,7 @@ public abstract class AlexaStateModel {
      * @return True, if there are any AlexaStateSave fields in the model scoped in USER
      */
     public Boolean hasUserScopedField() {
-        hasUserScopedFields = (hasUserScopedFields != null) ? hasUserScopedFields :
-                hasFieldInScope(AlexaScope.USER);
-        return hasUserScopedFields;
+        return AlexaStateModelMetadata.of(this.getClass()).hasFieldInScope(AlexaScope.USER);
     }
 
     /**
@@ -332,60 +453,82 @@ public abstract class AlexaStateModel {
      * @return True, if there are any AlexaStateSave fields in the model scoped in APPLICATION
      */
     public Boolean hasApplicationScopedField() {
-        hasApplicationScopedFields = (hasApplicationScopedFields != null) ? hasApplicationScopedFields :
-                hasFieldInScope(AlexaScope.APPLICATION);
-        return hasApplicationScopedFields;
+        return AlexaStateModelMetadata.of(this.getClass()).hasFieldInScope(AlexaScope.APPLICATION);
     }
 
     /**
-     * Gives you all the fields of this model which are annotated with AlexaStateSave
+     * Gives you all the fields of this model which are annotated with AlexaStateSave. The list is shared by all
+     * instances of the model type thus cannot be modified.
      * @return list of all the fields of this model which are annotated with AlexaStateSave
      */
     public List<Field> getSaveStateFields() {
-        return Arrays.stream(this.getClass().getDeclaredFields()).filter(this::isStateSave).collect(Collectors.toList());
+        return AlexaStateModelMetadata.of(this.getClass()).getSaveStateFields();
     }
 
     /**
      * Gives you all the fields of this model which are annotated with AlexaStateSave and whose scope is set to a scope
-     * which at least in included in the given scope.
+     * which at least in included in the given scope. The list is shared by all instances of the model type thus
+     * cannot be modified.
      * @param scope Defines the scope which is used to filter all the AlexaStateSave-annotated fields
      * @return list of all the fields of this model which are annotated with AlexaStateSave and whose scope is set to a scope
      * which at least in included in the given scope.
      */
     public List<Field> getSaveStateFields(final AlexaScope scope) {
-        return Arrays.stream(this.getClass().getDeclaredFields()).filter(field -> isStateSave(field, scope)).collect(Collectors.toList());
+        return AlexaStateModelMetadata.of(this.getClass()).getSaveStateFields(scope);
     }
 
     /**
-     * Checks, if the given field is tagged with AlexaStateSave
-     * @param field the field you want to check for the AlexaStateSave-annotation
-     * @return True, if the given field has the AlexaStateSave-annotation
+     * Gives you all references to other models held by AlexaStateSave-fields of this model. References in
+     * collections and maps are considered as well. References without a handler get the handler of this model.
+     * @return list of all references held by this model
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
      */
-    private boolean isStateSave(final Field field) {
-        // either field itself is annotated as statesave or whole class is
-        // however, StateIgnore prevends field of being statesave
-        return !field.isAnnotationPresent(AlexaStateIgnore.class) &&
-                (field.isAnnotationPresent(AlexaStateSave.class) ||
-                        this.getClass().isAnnotationPresent(AlexaStateSave.class));
+    @JsonIgnore
+    public List<AlexaStateRef<?>> getStateRefs() throws AlexaStateException {
+        final List<AlexaStateRef<?>> refs = new ArrayList<>();
+        for (final Field field : getSaveStateFields()) {
+            final Object value = get(field);
+            if (value instanceof AlexaStateRef) {
+                refs.add((AlexaStateRef<?>) value);
+            } else if (value instanceof Collection) {
+                ((Collection<?>) value).stream().filter(AlexaStateRef.class::isInstance).forEach(o -> refs.add((AlexaStateRef<?>) o));
+            } else if (value instanceof Map) {
+                ((Map<?, ?>) value).values().stream().filter(AlexaStateRef.class::isInstance).forEach(o -> refs.add((AlexaStateRef<?>) o));
+            }
+        }
+        refs.stream().filter(ref -> ref.getHandler() == null).forEach(ref -> ref.setHandler(this.__handler));
+        return refs;
     }
 
     /**
-     * Checks, if the given field is tagged with AlexaStateSave and whose scope is set to a scope which at least
-     * is included in the given scope.
-     * @param field the field you want to check for the AlexaStateSave-annotation
-     * @param scope the scope which at least must be included in the scope of the field
-     * @return True, if the field has the AlexaStateSave-annotation and given scope (or an included scope)
+     * Gives you all chunked lists held by AlexaStateSave-fields of this model. The lists are assigned to this model
+     * so their chunks are saved with the key of this model.
+     * @return list of all chunked lists held by this model
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
      */
-    private boolean isStateSave(final Field field, final AlexaScope scope) {
-        // either field itself is tagged as state-save in given scope or whole class is statesave in the given scope
-        // however, StateIgnore in given scope prevents field of being statesave
-        return ((!field.isAnnotationPresent(AlexaStateIgnore.class) || !scope.isIn(field.getAnnotation(AlexaStateIgnore.class).Scope())) &&
-                ((field.isAnnotationPresent(AlexaStateSave.class) && scope.includes(field.getAnnotation(AlexaStateSave.class).Scope()) ||
-                        (this.getClass().isAnnotationPresent(AlexaStateSave.class) && scope.includes(this.getClass().getAnnotation(AlexaStateSave.class).Scope())))));
+    @JsonIgnore
+    public List<AlexaStateChunkedList<?>> getChunkedLists() throws AlexaStateException {
+        final List<AlexaStateChunkedList<?>> lists = new ArrayList<>();
+        for (final Field field : getSaveStateFields()) {
+            if (AlexaStateChunkedList.class.equals(field.getType())) {
+                final AlexaStateChunkedList<?> list = (AlexaStateChunkedList<?>) get(field);
+                if (list != null) {
+                    list.bind(this, field);
+                    lists.add(list);
+                }
+            }
+        }
+        return lists;
     }
 
-    private boolean hasFieldInScope(final AlexaScope scope) {
-        return !getSaveStateFields(scope).isEmpty();
+    /**
+     * Reads all models referenced by this model and by the models it references with the handler of this model.
+     * Referenced models of the same type are read at once.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public void resolveRefs() throws AlexaStateException {
+        Validate.notNull(this.__handler, "Resolving references is not allowed for this model as it needs an AlexaSessionHandler. Assign a handler to this object or use AlexaStateModelFactory.");
+        this.__handler.resolveRefs(Collections.singletonList(this));
     }
 
     static final class AlexaModelBuilder {
@@ -393,7 +536,7 @@ public abstract class AlexaStateModel {
 
         private String __internalId;
         private AlexaStateHandler __handler;
-        private Class<?> modelClass;
+        private Class<? extends AlexaStateModel> modelClass;
 
         <T extends AlexaStateModel> AlexaModelBuilder(Class<T> modelClass) {
             this.modelClass = modelClass;
@@ -423,23 +566,23 @@ public abstract class AlexaStateModel {
         }
 
         /**
-         * Builds the model. Be sure your model class has a parameterless constructor otherwise this
-         * instanciation will fail. In that case this method returns null.
+         * Builds the model. Be sure your model class has a parameterless constructor or a factory registered
+         * with AlexaStateModelFactory.registerFactory otherwise this instanciation will fail. In that case this method returns null.
          * @param <TModel> type of the model. Must be of type AlexaStateModel
          * @return model of desired type
          */
+        @SuppressWarnings("unchecked")
         public <TModel extends AlexaStateModel> TModel build() {
             Validate.notNull(this.__handler, "Model needs a handler for its initialization.");
 
-            try {
-                final TModel model = (TModel)modelClass.newInstance();
-                model.setId(__internalId);
-                model.setHandler(__handler);
-                return model;
-            } catch (InstantiationException | IllegalAccessException e) {
-                log.error(String.format("Could not create model of '%1$s'.", this.modelClass.getTypeName()), e);
+            final TModel model = AlexaStateModelFactory.newInstance((Class<TModel>) modelClass);
+            if (model == null) {
+                log.error(String.format("Could not create model of '%1$s'.", this.modelClass.getTypeName()));
                 return null;
             }
+            model.setId(__internalId);
+            model.setHandler(__handler);
+            return model;
         }
     }
 
@@ -7,8 +7,91 @@
 package io.klerch.alexa.state.model;
 
 import io.klerch.alexa.state.handler.AlexaStateHandler;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class AlexaStateModelFactory {
+    private static final Logger log = Logger.getLogger(AlexaStateModelFactory.class);
+    // suppliers of new instances (by model type) either registered or resolved from the parameterless constructor
+    private static final Map<Class<?>, Supplier<? extends AlexaStateModel>> suppliers = new ConcurrentHashMap<>();
+    // unmodified instances (by model type) holding the default values of fields
+    private static final Map<Class<?>, AlexaStateModel> prototypes = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a factory for your POJO model class. It is used instead of the parameterless constructor of the
+     * model whenever a model of this type is created. This is useful for models without a parameterless constructor.
+     * @param modelClass The type of your POJO model derived from AlexaStateModel
+     * @param supplier The factory returning a new instance of the model on each call.
+     * @param <TModel> The type of your POJO model derived from AlexaStateModel
+     */
+    public static <TModel extends AlexaStateModel> void registerFactory(final Class<TModel> modelClass, final Supplier<TModel> supplier) {
+        Validate.notNull(modelClass, "Model class must not be null.");
+        Validate.notNull(supplier, "Factory must not be null.");
+        suppliers.put(modelClass, supplier);
+    }
+
+    /**
+     * Returns a new instance of the given model type without any handler or id applied. The constructor of a model
+     * type is looked up only once and is invoked over a cached method handle from then on.
+     * @param modelClass The type of your POJO model derived from AlexaStateModel
+     * @param <TModel> The type of your POJO model derived from AlexaStateModel
+     * @return a new instance of the model. Null if the model type has neither a registered factory nor a parameterless constructor.
+     */
+    @SuppressWarnings("unchecked")
+    static <TModel extends AlexaStateModel> TModel newInstance(final Class<TModel> modelClass) {
+        Supplier<? extends AlexaStateModel> supplier = suppliers.get(modelClass);
+        if (supplier == null) {
+            supplier = createSupplier(modelClass);
+            if (supplier == null) {
+                return null;
+            }
+            suppliers.putIfAbsent(modelClass, supplier);
+        }
+        return (TModel) supplier.get();
+    }
+
+    /**
+     * Returns an instance of the given model type which is never handed out to be modified. It holds the default
+     * values of all fields of the model and is created only once per model type.
+     * @param modelClass The type of your POJO model derived from AlexaStateModel
+     * @return an instance of the model. Null if the model type has neither a registered factory nor a parameterless constructor.
+     */
+    static AlexaStateModel getPrototype(final Class<? extends AlexaStateModel> modelClass) {
+        final AlexaStateModel prototype = prototypes.get(modelClass);
+        if (prototype != null) {
+            return prototype;
+        }
+        final AlexaStateModel model = newInstance(modelClass);
+        return model != null ? prototypes.computeIfAbsent(modelClass, clazz -> model) : null;
+    }
+
+    private static Supplier<? extends AlexaStateModel> createSupplier(final Class<? extends AlexaStateModel> modelClass) {
+        try {
+            final Constructor<? extends AlexaStateModel> constructor = modelClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            final MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(AlexaStateModel.class));
+            return () -> {
+                try {
+                    return (AlexaStateModel) handle.invokeExact();
+                } catch (final Throwable e) {
+                    log.error(String.format("Could not create model of '%1$s'.", modelClass.getTypeName()), e);
+                    return null;
+                }
+            };
+        } catch (final NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            log.error(String.format("Could not find parameterless constructor of '%1$s'.", modelClass.getTypeName()), e);
+            return null;
+        }
+    }
     /**
      * Creates an instance of your POJO model classes derived from AlexaStateModel. This is the usual way of instantiating
      * the models as it makes sure a AlexaStateHandler is applied. An even more convenient way of instantiating your models
@@ -0,0 +1,125 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Facts about a model type which are the same for all of its instances. They are resolved once per model type
+ * and shared by all instances so a model instance only needs to hold its id and handler.
+ */
+final class AlexaStateModelMetadata {
+    private static final Map<Class<?>, AlexaStateModelMetadata> metadata = new ConcurrentHashMap<>();
+
+    private final List<Field> saveStateFields;
+    private final Map<AlexaScope, List<Field>> saveStateFieldsByScope = new EnumMap<>(AlexaScope.class);
+    private final List<Field> indexedFields;
+    private final boolean sparse;
+
+    private AlexaStateModelMetadata(final Class<?> modelClass) {
+        this.saveStateFields = Collections.unmodifiableList(Arrays.stream(modelClass.getDeclaredFields())
+                .filter(field -> isStateSave(modelClass, field)).collect(Collectors.toList()));
+        for (final AlexaScope scope : AlexaScope.values()) {
+            saveStateFieldsByScope.put(scope, Collections.unmodifiableList(Arrays.stream(modelClass.getDeclaredFields())
+                    .filter(field -> isStateSave(modelClass, field, scope)).collect(Collectors.toList())));
+        }
+        this.indexedFields = Collections.unmodifiableList(saveStateFieldsByScope.get(AlexaScope.USER).stream()
+                .filter(field -> AlexaScope.USER.equals(getScope(modelClass, field)))
+                .filter(field -> field.isAnnotationPresent(AlexaStateSave.class) && field.getAnnotation(AlexaStateSave.class).Indexed())
+                .collect(Collectors.toList()));
+        this.sparse = modelClass.isAnnotationPresent(AlexaStateSparse.class);
+    }
+
+    /**
+     * Returns the metadata of the given model type.
+     * @param modelClass The type of an AlexaStateModel.
+     * @return metadata of the model type
+     */
+    static AlexaStateModelMetadata of(final Class<? extends AlexaStateModel> modelClass) {
+        final AlexaStateModelMetadata modelMetadata = metadata.get(modelClass);
+        return modelMetadata != null ? modelMetadata : metadata.computeIfAbsent(modelClass, AlexaStateModelMetadata::new);
+    }
+
+    /**
+     * Returns all the fields of the model type which are annotated with AlexaStateSave.
+     * @return unmodifiable list of fields
+     */
+    List<Field> getSaveStateFields() {
+        return saveStateFields;
+    }
+
+    /**
+     * Returns all the fields of the model type which are annotated with AlexaStateSave and whose scope is set to a
+     * scope which at least is included in the given scope.
+     * @param scope Defines the scope which is used to filter all the AlexaStateSave-annotated fields
+     * @return unmodifiable list of fields
+     */
+    List<Field> getSaveStateFields(final AlexaScope scope) {
+        return saveStateFieldsByScope.get(scope);
+    }
+
+    /**
+     * Returns if any AlexaStateSave field of the model type is in the given scope.
+     * @param scope The scope to check.
+     * @return True, if there are any AlexaStateSave fields in the given scope
+     */
+    boolean hasFieldInScope(final AlexaScope scope) {
+        return !getSaveStateFields(scope).isEmpty();
+    }
+
+    /**
+     * Returns all the USER-scoped fields of the model type which are tagged as indexed in their AlexaStateSave-annotation.
+     * @return unmodifiable list of fields
+     */
+    List<Field> getIndexedFields() {
+        return indexedFields;
+    }
+
+    /**
+     * Returns if the model type is tagged with AlexaStateSparse.
+     * @return True, if the model type is saved sparsely
+     */
+    boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     * Returns the scope of an AlexaStateSave-field. It is the scope of its own annotation or the scope of the
+     * annotation of its model type.
+     * @param modelClass The type of an AlexaStateModel.
+     * @param field An AlexaStateSave-field of the model.
+     * @return scope of the field
+     */
+    static AlexaScope getScope(final Class<?> modelClass, final Field field) {
+        final AlexaStateSave annotation = field.isAnnotationPresent(AlexaStateSave.class) ?
+                field.getAnnotation(AlexaStateSave.class) : modelClass.getAnnotation(AlexaStateSave.class);
+        return annotation != null ? annotation.Scope() : AlexaScope.SESSION;
+    }
+
+    private static boolean isStateSave(final Class<?> modelClass, final Field field) {
+        // either field itself is annotated as statesave or whole class is
+        // however, StateIgnore prevends field of being statesave
+        return !field.isAnnotationPresent(AlexaStateIgnore.class) &&
+                (field.isAnnotationPresent(AlexaStateSave.class) ||
+                        modelClass.isAnnotationPresent(AlexaStateSave.class));
+    }
+
+    private static boolean isStateSave(final Class<?> modelClass, final Field field, final AlexaScope scope) {
+        // either field itself is tagged as state-save in given scope or whole class is statesave in the given scope
+        // however, StateIgnore in given scope prevents field of being statesave
+        return ((!field.isAnnotationPresent(AlexaStateIgnore.class) || !scope.isIn(field.getAnnotation(AlexaStateIgnore.class).Scope())) &&
+                ((field.isAnnotationPresent(AlexaStateSave.class) && scope.includes(field.getAnnotation(AlexaStateSave.class).Scope()) ||
+                        (modelClass.isAnnotationPresent(AlexaStateSave.class) && scope.includes(modelClass.getAnnotation(AlexaStateSave.class).Scope())))));
+    }
+}
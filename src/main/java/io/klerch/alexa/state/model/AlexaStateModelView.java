@@ -0,0 +1,263 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.klerch.alexa.state.handler.AlexaStateHandler;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A lazy view on the state of a model kept in the session attributes. Other than reading a model the view does not
+ * create a model instance and does not copy all of its fields. It is backed by the map the session holds for the model
+ * and converts the value of a field not before it is accessed. Values set in the view are written with the handler
+ * of the view right away thus they go to the session and the backend of the handler. Reading single fields of big
+ * models is close to free this way.
+ * Use toModel() to get a full-fledged model out of the view.
+ * A view can also load the user- and application-scoped state of its model lazily. The state of such a scope is
+ * loaded by the given loader not before a field in this scope is accessed.
+ * @param <TModel> The type of the model.
+ */
+public class AlexaStateModelView<TModel extends AlexaStateModel> {
+    private static final Logger log = Logger.getLogger(AlexaStateModelView.class);
+    private static final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // AlexaStateSave-fields valid in session scope (by name) of model types
+    private static final Map<Class<?>, Map<String, Field>> fieldsByModelClass = new ConcurrentHashMap<>();
+
+    private final Class<TModel> modelClass;
+    private final String id;
+    private final Map<String, Object> attributes;
+    private final AlexaStateHandler handler;
+    // values already converted to the type of their field
+    private final Map<String, Object> convertedValues = new HashMap<>();
+    // scopes whose state is not loaded yet
+    private final Set<AlexaScope> pendingScopes = EnumSet.noneOf(AlexaScope.class);
+    // attributes set in this view which must not be overwritten by lazily loaded state
+    private final Set<String> attributesSet = new HashSet<>();
+    private Loader loader;
+
+    /**
+     * Loads the state of a scope into views loading their state lazily.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * Loads the state of the given scope into the given view and possibly into other views waiting for it.
+         * It's expected to call {@link #load(AlexaScope, Map)} on the view.
+         * @param view The view whose field in the given scope is accessed.
+         * @param scope The scope to load.
+         * @throws AlexaStateException Any error while reading state
+         */
+        void load(final AlexaStateModelView<?> view, final AlexaScope scope) throws AlexaStateException;
+    }
+
+    /**
+     * Creates a view on the state of a model.
+     * @param modelClass The type of the model.
+     * @param id The id of the model. Can be null for the singleton instance of the model.
+     * @param attributes The map holding the state of the model in the session. It's not copied so changes are visible in both directions.
+     * @param handler The handler to apply to models created out of this view.
+     */
+    public AlexaStateModelView(final Class<TModel> modelClass, final String id, final Map<String, Object> attributes, final AlexaStateHandler handler) {
+        Validate.notNull(modelClass, "Model class must not be null.");
+        Validate.notNull(attributes, "Attributes of the model must not be null.");
+        Validate.notNull(handler, "Handler must not be null.");
+        this.modelClass = modelClass;
+        this.id = id;
+        this.attributes = attributes;
+        this.handler = handler;
+    }
+
+    /**
+     * Makes this view load the state of the given scopes not before a field in one of these scopes is accessed.
+     * @param scopes The scopes to load lazily. Only USER and APPLICATION are considered.
+     * @param loader The loader of state in these scopes.
+     * @return this view
+     */
+    public AlexaStateModelView<TModel> withLazyLoading(final Collection<AlexaScope> scopes, final Loader loader) {
+        Validate.notNull(loader, "Loader must not be null.");
+        scopes.stream().filter(scope -> scope.isIn(AlexaScope.USER, AlexaScope.APPLICATION)).forEach(pendingScopes::add);
+        this.loader = loader;
+        return this;
+    }
+
+    /**
+     * Returns if the state of the given scope is loaded.
+     * @param scope The scope to check.
+     * @return True, if the state of the given scope is loaded or is not loaded lazily
+     */
+    public boolean isLoaded(final AlexaScope scope) {
+        return !pendingScopes.contains(scope);
+    }
+
+    /**
+     * Takes over the state of a scope which is loaded lazily. Values set in this view before are kept.
+     * @param scope The loaded scope.
+     * @param state The state of the model in the loaded scope. Null or empty if there's no state for this scope.
+     */
+    public void load(final AlexaScope scope, final Map<String, ?> state) {
+        if (state != null) {
+            state.forEach((attributeName, value) -> {
+                if (!attributesSet.contains(attributeName)) {
+                    attributes.put(attributeName, value);
+                }
+            });
+        }
+        pendingScopes.remove(scope);
+    }
+
+    /**
+     * Returns the type of the model.
+     * @return type of the model
+     */
+    public Class<TModel> getModelClass() {
+        return this.modelClass;
+    }
+
+    /**
+     * Returns the id of the model. It's null for the singleton instance of the model.
+     * @return id of the model
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the value of a field in the model. The value is converted to the type of the field on first access.
+     * For models tagged with AlexaStateSparse the default value of a field is returned if the field is not saved.
+     * @param fieldName Name of an AlexaStateSave-field in the model
+     * @param <T> The type of the field
+     * @return Value of the field. Null if there's no value for this field.
+     * @throws AlexaStateException The value could not be converted to the type of the field.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String fieldName) throws AlexaStateException {
+        final Field field = getField(fieldName);
+        if (!convertedValues.containsKey(fieldName)) {
+            ensureLoaded(field);
+            final String attributeName = getAttributeName(field);
+            final AlexaStateModel prototype = AlexaStateModelFactory.getPrototype(modelClass);
+            // sparse state omits fields having their default value so it's taken from a new instance of the model
+            final Object value = !attributes.containsKey(attributeName) && prototype != null && prototype.isSparse() ?
+                    prototype.get(field) : attributes.get(attributeName);
+            convertedValues.put(fieldName, convert(field, value));
+        }
+        return (T) convertedValues.get(fieldName);
+    }
+
+    /**
+     * Sets the value of a field in the model. The value is written to the map backing this view and the model
+     * is written with the handler of this view right away. The handler takes care of saving the model in the session
+     * and in its backend. State of the model not loaded yet is loaded before.
+     * @param fieldName Name of an AlexaStateSave-field in the model
+     * @param value New value of the field
+     * @return this view
+     * @throws AlexaStateException Writing the model failed.
+     */
+    public AlexaStateModelView<TModel> set(final String fieldName, final Object value) throws AlexaStateException {
+        final Field field = getField(fieldName);
+        final String persistedName = AlexaStateModel.getPersistedName(field);
+        convertedValues.put(fieldName, value);
+        attributes.put(persistedName, value);
+        attributesSet.add(persistedName);
+        attributesSet.add(fieldName);
+        if (!persistedName.equals(fieldName)) {
+            // drop the value still saved with the full name of the field
+            attributes.remove(fieldName);
+        }
+        handler.writeModel(toModel());
+        return this;
+    }
+
+    /**
+     * Returns if there's a value for the given field.
+     * @param fieldName Name of an AlexaStateSave-field in the model
+     * @return True, if there's a value for the given field.
+     * @throws AlexaStateException The state of the field could not be loaded.
+     */
+    public boolean has(final String fieldName) throws AlexaStateException {
+        final Field field = getFields(modelClass).get(fieldName);
+        if (field == null) {
+            return false;
+        }
+        ensureLoaded(field);
+        return attributes.get(getAttributeName(field)) != null;
+    }
+
+    /**
+     * Creates a model out of this view with all its fields set. The model is not backed by this view.
+     * @return a new model
+     * @throws AlexaStateException A value could not be converted to the type of its field.
+     */
+    public TModel toModel() throws AlexaStateException {
+        final TModel model = AlexaStateModelFactory.createModel(modelClass, handler, id);
+        for (final AlexaScope scope : new ArrayList<>(pendingScopes)) {
+            ensureLoaded(scope);
+        }
+        for (final Map.Entry<String, Field> field : getFields(modelClass).entrySet()) {
+            if (attributes.containsKey(getAttributeName(field.getValue()))) {
+                model.set(field.getValue(), get(field.getKey()));
+            }
+        }
+        return model;
+    }
+
+    private Field getField(final String fieldName) {
+        final Field field = getFields(modelClass).get(fieldName);
+        Validate.isTrue(field != null, "'%1$s' is not an AlexaStateSave-field of '%2$s'.", fieldName, modelClass.getTypeName());
+        return field;
+    }
+
+    private void ensureLoaded(final Field field) throws AlexaStateException {
+        ensureLoaded(AlexaStateModelMetadata.getScope(modelClass, field));
+    }
+
+    private void ensureLoaded(final AlexaScope scope) throws AlexaStateException {
+        if (!isLoaded(scope)) {
+            loader.load(this, scope);
+            // the loader is expected to load the scope though an unloaded scope must not be loaded again and again
+            pendingScopes.remove(scope);
+        }
+    }
+
+    private String getAttributeName(final Field field) {
+        // fields with a short name might still be saved with their full name
+        final String persistedName = AlexaStateModel.getPersistedName(field);
+        return attributes.containsKey(persistedName) ? persistedName : field.getName();
+    }
+
+    private Object convert(final Field field, final Object value) throws AlexaStateException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return mapper.convertValue(value, mapper.getTypeFactory().constructType(field.getGenericType()));
+        } catch (final IllegalArgumentException e) {
+            final String error = String.format("Could not convert value of '%1$s' in view on '%2$s'.", field.getName(), modelClass.getTypeName());
+            log.error(error, e);
+            throw AlexaStateException.create(error).withCause(e).withHandler(handler).build();
+        }
+    }
+
+    private Map<String, Field> getFields(final Class<? extends AlexaStateModel> modelClass) {
+        return fieldsByModelClass.computeIfAbsent(modelClass, clazz -> {
+            // a prototype is needed once per type to find out about its fields
+            final Map<String, Field> fields = new HashMap<>();
+            AlexaStateModelFactory.createModel(modelClass, handler).getSaveStateFields(AlexaScope.SESSION).forEach(field -> {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            });
+            return fields;
+        });
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.klerch.alexa.state.handler.AlexaStateHandler;
+import io.klerch.alexa.state.model.serializer.AlexaStateRefDeserializer;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A reference from one model to another. Only the key of the referenced model is saved with the model holding
+ * the reference. The referenced model is read not before you call get. Use AlexaStateModel.resolveRefs or
+ * AlexaStateHandler.resolveRefs to read all referenced models of a model graph at once.
+ * @param <TModel> Type of the referenced model
+ */
+@JsonDeserialize(using = AlexaStateRefDeserializer.class)
+public final class AlexaStateRef<TModel extends AlexaStateModel> {
+    private final Class<TModel> modelClass;
+    private final String id;
+    private AlexaStateHandler handler;
+    private TModel model;
+    private boolean resolved;
+
+    private AlexaStateRef(final Class<TModel> modelClass, final String id) {
+        this.modelClass = modelClass;
+        this.id = id;
+    }
+
+    /**
+     * Returns a reference to the model of given type and id. It is resolved not before you call get.
+     * @param modelClass The type of the referenced model.
+     * @param id The id of the referenced model. Null for the singleton object of the model.
+     * @param <TModel> Type of the referenced model
+     * @return reference to the model
+     */
+    public static <TModel extends AlexaStateModel> AlexaStateRef<TModel> of(final Class<TModel> modelClass, final String id) {
+        Validate.notNull(modelClass, "Type of referenced model must not be null.");
+        if (id != null) {
+            AlexaStateKeyCodec.validateId(id);
+        }
+        return new AlexaStateRef<>(modelClass, id);
+    }
+
+    /**
+     * Returns a reference to the given model. The reference is resolved already.
+     * @param model The referenced model.
+     * @param <TModel> Type of the referenced model
+     * @return reference to the model
+     */
+    @SuppressWarnings("unchecked")
+    public static <TModel extends AlexaStateModel> AlexaStateRef<TModel> to(final TModel model) {
+        Validate.notNull(model, "Referenced model must not be null.");
+        final AlexaStateRef<TModel> ref = new AlexaStateRef<>((Class<TModel>) model.getClass(), model.getId());
+        ref.handler = model.getHandler();
+        ref.resolve(model);
+        return ref;
+    }
+
+    /**
+     * Returns the type of the referenced model.
+     * @return type of the referenced model
+     */
+    public Class<TModel> getModelClass() {
+        return this.modelClass;
+    }
+
+    /**
+     * Returns the id of the referenced model.
+     * @return id of the referenced model. Null for the singleton object of the model.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the key the referenced model is saved with. It is what gets saved for this reference.
+     * @return key of the referenced model
+     */
+    @JsonValue
+    public String getKey() {
+        return AlexaStateKeyCodec.encode(modelClass, id);
+    }
+
+    /**
+     * Returns the handler used to read the referenced model.
+     * @return handler used to read the referenced model
+     */
+    public AlexaStateHandler getHandler() {
+        return this.handler;
+    }
+
+    /**
+     * Sets the handler used to read the referenced model.
+     * @param handler handler used to read the referenced model
+     */
+    public void setHandler(final AlexaStateHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the handler used to read the referenced model.
+     * @param handler handler used to read the referenced model
+     * @return this reference
+     */
+    public AlexaStateRef<TModel> withHandler(final AlexaStateHandler handler) {
+        setHandler(handler);
+        return this;
+    }
+
+    /**
+     * Returns if the referenced model was read already.
+     * @return True, if get returns without going to the handler
+     */
+    public boolean isResolved() {
+        return this.resolved;
+    }
+
+    /**
+     * Returns the referenced model. It is read with the handler of this reference on first access.
+     * @return the referenced model. Empty if it does not exist.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public Optional<TModel> get() throws AlexaStateException {
+        if (!resolved) {
+            Validate.validState(handler != null, "Reference to '%1$s' cannot be resolved as it needs an AlexaStateHandler. Assign a handler to this reference or to the model holding it.", getKey());
+            resolve(handler.readModel(modelClass, id).orElse(null));
+        }
+        return Optional.ofNullable(model);
+    }
+
+    /**
+     * Reads all models referenced by the given models and the models referenced by them. Referenced models of the
+     * same type are read with one call to readModels of the handler per level of the model graph.
+     * @param handler The handler used to read the referenced models.
+     * @param models The models whose references are resolved.
+     * @throws AlexaStateException Wraps all inner exceptions and gives you context related to handler and model
+     */
+    public static void resolveAll(final AlexaStateHandler handler, final Collection<? extends AlexaStateModel> models) throws AlexaStateException {
+        Validate.notNull(handler, "Handler to resolve references must not be null.");
+        Validate.notNull(models, "Collection of models whose references are resolved must not be null.");
+        // referenced models are visited once so cycles in the graph are no problem
+        final Set<AlexaStateModel> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<AlexaStateModel> pending = new ArrayList<>(models);
+        while (!pending.isEmpty()) {
+            final List<AlexaStateModel> next = new ArrayList<>();
+            final Map<Class<? extends AlexaStateModel>, List<AlexaStateRef<?>>> unresolved = new LinkedHashMap<>();
+            for (final AlexaStateModel model : pending) {
+                if (model == null || !visited.add(model)) {
+                    continue;
+                }
+                for (final AlexaStateRef<?> ref : model.getStateRefs()) {
+                    if (ref.handler == null) {
+                        ref.handler = handler;
+                    }
+                    if (ref.resolved) {
+                        next.add(ref.model);
+                    } else {
+                        unresolved.computeIfAbsent(ref.modelClass, clazz -> new ArrayList<>()).add(ref);
+                    }
+                }
+            }
+            for (final List<AlexaStateRef<?>> refs : unresolved.values()) {
+                next.addAll(resolve(handler, refs));
+            }
+            pending = next;
+        }
+    }
+
+    private static <TModel extends AlexaStateModel> List<TModel> resolve(final AlexaStateHandler handler, final List<AlexaStateRef<?>> refs) throws AlexaStateException {
+        @SuppressWarnings("unchecked")
+        final Class<TModel> modelClass = (Class<TModel>) refs.get(0).modelClass;
+        final Set<String> ids = new LinkedHashSet<>();
+        refs.forEach(ref -> ids.add(ref.id));
+        final Map<String, TModel> models = new LinkedHashMap<>();
+        // the singleton object of a model has no id to read it by
+        if (ids.remove(null)) {
+            models.put(null, handler.readModel(modelClass).orElse(null));
+        }
+        if (!ids.isEmpty()) {
+            models.putAll(handler.readModels(modelClass, ids));
+        }
+        for (final AlexaStateRef<?> ref : refs) {
+            @SuppressWarnings("unchecked")
+            final AlexaStateRef<TModel> typedRef = (AlexaStateRef<TModel>) ref;
+            typedRef.resolve(models.get(ref.id));
+        }
+        return new ArrayList<>(models.values());
+    }
+
+    private void resolve(final TModel model) {
+        this.model = model;
+        this.resolved = true;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AlexaStateRef)) {
+            return false;
+        }
+        final AlexaStateRef<?> other = (AlexaStateRef<?>) o;
+        return modelClass.equals(other.modelClass) && Objects.equals(id, other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(modelClass, id);
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+}
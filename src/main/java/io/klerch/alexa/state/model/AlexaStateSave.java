@@ -24,4 +24,20 @@ public @interface AlexaStateSave {
      * @return The scope in which the field is considered by AlexaStateHandlers.
      */
     AlexaScope Scope() default AlexaScope.SESSION;
+
+    /**
+     * The name the field is saved with by AlexaStateHandlers. Give chatty fields a short name to save space in the
+     * persistence store. State saved with the name of the field is still read. Only applies to fields and must be
+     * unique within the model. Defaults to the name of the field.
+     * @return The name the field is saved with by AlexaStateHandlers.
+     */
+    String Name() default "";
+
+    /**
+     * Set to true to index the field by its value so models are found across users by the value of this field
+     * with AlexaStateHandler.readUserIds. Only applies to fields in USER scope and only handlers with a backend
+     * shared by all users maintain the index. Defaults to false.
+     * @return True, if the field is indexed by its value.
+     */
+    boolean Indexed() default false;
 }
\ No newline at end of file
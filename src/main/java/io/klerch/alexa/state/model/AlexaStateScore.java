@@ -0,0 +1,81 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Objects;
+
+/**
+ * The score of a user in a leaderboard along with the rank of the user. Users with the same score share the
+ * same rank and the next lower score is ranked behind all of them (e.g. 1, 2, 2, 4).
+ */
+public final class AlexaStateScore {
+    private final String userId;
+    private final double score;
+    private final int rank;
+
+    /**
+     * Creates the score of a user.
+     * @param userId The id of the user.
+     * @param score The score of the user.
+     * @param rank The rank of the user in the leaderboard starting with 1.
+     */
+    public AlexaStateScore(final String userId, final double score, final int rank) {
+        Validate.notBlank(userId, "User id must not be blank.");
+        Validate.isTrue(rank > 0, "Rank must be greater than zero.");
+        this.userId = userId;
+        this.score = score;
+        this.rank = rank;
+    }
+
+    /**
+     * Returns the id of the user.
+     * @return id of the user
+     */
+    public String getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * Returns the score of the user.
+     * @return score of the user
+     */
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Returns the rank of the user in the leaderboard. The user with the highest score is ranked first.
+     * @return rank of the user starting with 1
+     */
+    public int getRank() {
+        return this.rank;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AlexaStateScore)) {
+            return false;
+        }
+        final AlexaStateScore other = (AlexaStateScore) o;
+        return userId.equals(other.userId) && Double.compare(score, other.score) == 0 && rank == other.rank;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, score, rank);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%1$s. %2$s (%3$s)", rank, userId, score);
+    }
+}
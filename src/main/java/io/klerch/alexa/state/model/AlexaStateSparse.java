@@ -0,0 +1,23 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A model having this annotation is saved sparsely. Fields whose value equals the value they have in a new instance
+ * of the model are not saved, neither is a null id. On reading the model those fields keep the value they have
+ * in the model instance, which for a newly created model is the default value anyway. This shrinks state of models
+ * where most of the fields are unset.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AlexaStateSparse {
+}
@@ -0,0 +1,66 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.serializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateRef;
+
+import java.io.IOException;
+
+/**
+ * This custom JSON deserializer turns the saved key of a referenced model back into an AlexaStateRef. The type
+ * of the referenced model is taken from the declared type of the field holding the reference.
+ */
+public class AlexaStateRefDeserializer extends JsonDeserializer<AlexaStateRef<?>> implements ContextualDeserializer {
+    private final Class<? extends AlexaStateModel> modelClass;
+
+    public AlexaStateRefDeserializer() {
+        this(null);
+    }
+
+    private AlexaStateRefDeserializer(final Class<? extends AlexaStateModel> modelClass) {
+        this.modelClass = modelClass;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(final DeserializationContext ctxt, final BeanProperty property) throws JsonMappingException {
+        final JavaType type = ctxt.getContextualType() != null ? ctxt.getContextualType() : property != null ? property.getType() : null;
+        final JavaType referencedType = type != null ? type.containedType(0) : null;
+        // without a type parameter the reference fails not before it is deserialized
+        if (referencedType == null || !AlexaStateModel.class.isAssignableFrom(referencedType.getRawClass())) {
+            return this;
+        }
+        @SuppressWarnings("unchecked")
+        final Class<? extends AlexaStateModel> referencedClass = (Class<? extends AlexaStateModel>) referencedType.getRawClass();
+        return new AlexaStateRefDeserializer(referencedClass);
+    }
+
+    @Override
+    public AlexaStateRef<?> deserialize(final JsonParser jsonParser, final DeserializationContext ctxt) throws IOException {
+        final String key = jsonParser.getValueAsString();
+        if (key == null) {
+            return null;
+        }
+        if (modelClass == null) {
+            throw ctxt.mappingException("Cannot tell the type of the model referenced by '" + key + "'. Declare it as type parameter of AlexaStateRef.");
+        }
+        final String id = AlexaStateKeyCodec.decode(modelClass, key);
+        // keys without an id are only valid for the singleton object of the model
+        if (id == null && !key.equals(AlexaStateKeyCodec.encode(modelClass, null)) && !key.equals(AlexaStateKeyCodec.encodeLegacy(modelClass, null))) {
+            throw ctxt.weirdStringException(key, AlexaStateRef.class, "Key does not belong to a model of type " + modelClass.getTypeName());
+        }
+        return AlexaStateRef.of(modelClass, id);
+    }
+}
@@ -11,6 +11,7 @@ import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import io.klerch.alexa.state.utils.AlexaStateException;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateFieldAccessor;
 import io.klerch.alexa.state.model.AlexaStateModel;
 
 import java.io.IOException;
@@ -29,20 +30,49 @@ public abstract class AlexaStateSerializer extends JsonSerializer<AlexaStateMode
         jsonGenerator.writeStartObject();
         {
             final AlexaScope scope = (AlexaScope)serializerProvider.getAttribute(scopeAttributeKey);
-            jsonGenerator.writeObjectField("id", alexaStateModel.getId());
+            final boolean sparse = alexaStateModel.isSparse();
+            if (!sparse || alexaStateModel.getId() != null) {
+                jsonGenerator.writeObjectField("id", alexaStateModel.getId());
+            }
             // look for statesave fields in model if not already whole class is statesave
             for (final Field field : alexaStateModel.getSaveStateFields(scope)) {
                 final String fieldName = field.getName();
-                Object fieldValue;
+                final AlexaStateFieldAccessor accessor = AlexaStateFieldAccessor.of(alexaStateModel.getClass(), field);
                 try {
-                    fieldValue = alexaStateModel.get(field);
+                    if (accessor.isPrimitive()) {
+                        // sparse models omit fields having their default value
+                        if (!sparse || !alexaStateModel.hasDefaultValue(field)) {
+                            jsonGenerator.writeFieldName(AlexaStateModel.getPersistedName(field));
+                            writePrimitive(alexaStateModel, accessor, jsonGenerator);
+                        }
+                        continue;
+                    }
+                    final Object fieldValue = alexaStateModel.get(field);
+                    if (!sparse || !alexaStateModel.isDefaultValue(field, fieldValue)) {
+                        jsonGenerator.writeObjectField(AlexaStateModel.getPersistedName(field), fieldValue);
+                    }
                 } catch (AlexaStateException e) {
                     // wrap custom exception with expected IOException
                     throw new IOException("Could not get value of field " + fieldName, e);
                 }
-                jsonGenerator.writeObjectField(fieldName, fieldValue);
             }
         }
         jsonGenerator.writeEndObject();
     }
+
+    private void writePrimitive(final AlexaStateModel alexaStateModel, final AlexaStateFieldAccessor accessor, final JsonGenerator jsonGenerator) throws IOException, AlexaStateException {
+        // primitive values are written without boxing them
+        final Class<?> type = accessor.getType();
+        if (int.class.equals(type)) {
+            jsonGenerator.writeNumber(accessor.getInt(alexaStateModel));
+        } else if (long.class.equals(type)) {
+            jsonGenerator.writeNumber(accessor.getLong(alexaStateModel));
+        } else if (double.class.equals(type)) {
+            jsonGenerator.writeNumber(accessor.getDouble(alexaStateModel));
+        } else if (float.class.equals(type)) {
+            jsonGenerator.writeNumber(accessor.getFloat(alexaStateModel));
+        } else {
+            jsonGenerator.writeBoolean(accessor.getBoolean(alexaStateModel));
+        }
+    }
 }
@@ -33,6 +33,28 @@ public class ReflectionUtils {
         return getMethodWithPrefix(o, fieldName, "set").orElse(null);
     }
 
+    /**
+     * Returns the method of a given type which is the getter-method of a given field
+     * whose name is expected to be like getFieldname. Returns null if method not found.
+     * @param clazz The type containing the getter-method.
+     * @param fieldName The field whose getter-method is desired
+     * @return the reflected method. Is null if method was not found in the given type
+     */
+    public static Method getGetter(final Class<?> clazz, final String fieldName) {
+        return getMethodWithPrefix(clazz, fieldName, "get").orElse(null);
+    }
+
+    /**
+     * Returns the method of a given type which is the setter-method of a given field
+     * whose name is expected to be like setFieldname. Returns null if method not found.
+     * @param clazz The type containing the setter-method.
+     * @param fieldName The field whose setter-method is desired
+     * @return the reflected method. Is null if method was not found in the given type
+     */
+    public static Method getSetter(final Class<?> clazz, final String fieldName) {
+        return getMethodWithPrefix(clazz, fieldName, "set").orElse(null);
+    }
+
     /**
      * Returns any method whose name starts with given prefix and ends with given fieldname where
      * first letter of the fieldname will be uppercased.
@@ -42,7 +64,11 @@ public class ReflectionUtils {
      * @return The reflected method. Is empty if method was not found.
      */
     private static Optional<Method> getMethodWithPrefix(final Object o, final String fieldName, final String prefix) {
+        return getMethodWithPrefix(o.getClass(), fieldName, prefix);
+    }
+
+    private static Optional<Method> getMethodWithPrefix(final Class<?> clazz, final String fieldName, final String prefix) {
         final String methodName = prefix + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-        return Arrays.stream(o.getClass().getMethods()).filter(method -> method.getName().equals(methodName)).findFirst();
+        return Arrays.stream(clazz.getMethods()).filter(method -> method.getName().equals(methodName)).findFirst();
     }
 }
@@ -9,12 +9,20 @@ package io.klerch.alexa.state.handler;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.*;
 import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.AlexaStateIndex;
+import io.klerch.alexa.state.model.AlexaStateObject;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.IndexedModel;
 import io.klerch.alexa.state.utils.AlexaStateException;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
@@ -117,4 +125,289 @@ public class AWSDynamoStateHandlerTest extends AlexaStateHandlerTest<AWSDynamoSt
         final AWSDynamoStateHandler handler = new AWSDynamoStateHandler(session, awsClient, 100L, 200L);
         assertEquals(awsClient, handler.getAwsClient());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void readSingleValueFromTable() throws Exception {
+        session.getAttributes().clear();
+        final Optional<AlexaStateObject> stateObject = handler.readValue(modelId, AlexaScope.USER);
+        assertTrue(stateObject.isPresent());
+        // value is the string saved in the table rather than the attribute value holding it
+        assertEquals(stateModelValue, stateObject.get().getValue());
+    }
+
+    @Test
+    public void leaveExistingTableAloneByDefault() throws Exception {
+        final List<UpdateTableRequest> updates = new ArrayList<>();
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, givenClientOfExistingTable(updates, 5L));
+        assertFalse(handler2.isIndexMigrationEnabled());
+        session.getAttributes().clear();
+        assertFalse(handler2.readValue("absentValue", AlexaScope.USER).isPresent());
+        handler2.writeScore("quiz", 30);
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    public void addMissingIndexToExistingTable() throws Exception {
+        final List<UpdateTableRequest> updates = new ArrayList<>();
+        final AmazonDynamoDBClient awsClient = givenClientOfExistingTable(updates, 5L);
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, awsClient).withIndexMigration(true);
+        session.getAttributes().clear();
+        // indexes are added on first use only
+        assertFalse(handler2.readValue("absentValue", AlexaScope.USER).isPresent());
+        assertTrue(updates.isEmpty());
+        handler2.writeScore("quiz", 30);
+        handler2.writeScore("quiz", 40);
+        assertEquals(1, updates.size());
+        final CreateGlobalSecondaryIndexAction leaderboardIndex = updates.get(0).getGlobalSecondaryIndexUpdates().get(0).getCreate();
+        assertEquals(AWSDynamoStateHandler.leaderboardIndex, leaderboardIndex.getIndexName());
+        assertNotNull(leaderboardIndex.getProvisionedThroughput());
+        // only key attributes of table and new index are defined
+        assertEquals(4, updates.get(0).getAttributeDefinitions().size());
+
+        // the next handler making use of indexed fields adds the other index
+        final AWSDynamoStateHandler handler3 = new AWSDynamoStateHandler(session, awsClient).withIndexMigration(true);
+        final IndexedModel model = handler3.createModel(IndexedModel.class, modelId);
+        model.tier = "gold";
+        handler3.writeModel(model);
+        assertEquals(2, updates.size());
+        assertEquals(AWSDynamoStateHandler.valueIndex, updates.get(1).getGlobalSecondaryIndexUpdates().get(0).getCreate().getIndexName());
+        assertEquals(3, updates.get(1).getAttributeDefinitions().size());
+        // an up-to-date table is left alone
+        assertTrue(new AWSDynamoStateHandler(session, awsClient).withIndexMigration(true).readUserIds(IndexedModel.class, "tier", "gold").isEmpty());
+        assertEquals(2, updates.size());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void addMissingIndexToOnDemandTable() throws Exception {
+        final List<UpdateTableRequest> updates = new ArrayList<>();
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, givenClientOfExistingTable(updates, 0L)).withIndexMigration(true);
+        handler2.writeScore("quiz", 30);
+        assertEquals(1, updates.size());
+        // tables billed on demand reject throughput for a new index
+        assertNull(updates.get(0).getGlobalSecondaryIndexUpdates().get(0).getCreate().getProvisionedThroughput());
+    }
+
+    @Test
+    public void failedIndexMigrationDoesNotFailHandler() throws Exception {
+        final AmazonDynamoDBClient awsClient = mock(AmazonDynamoDBClient.class, (Answer) invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            if (methodName.equals("createTable")) {
+                throw new ResourceInUseException("Table already exists");
+            }
+            if (methodName.equals("describeTable")) {
+                // credentials lacking the right to describe the table
+                throw new AmazonDynamoDBException("Access denied");
+            }
+            return null;
+        });
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, awsClient).withIndexMigration(true);
+        handler2.writeScore("quiz", 30);
+    }
+
+    private AmazonDynamoDBClient givenClientOfExistingTable(final List<UpdateTableRequest> updates, final long readCapacityUnits) {
+        final boolean[] creating = { false };
+        return mock(AmazonDynamoDBClient.class, (Answer) invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            if (methodName.equals("createTable")) {
+                throw new ResourceInUseException("Table already exists");
+            }
+            if (methodName.equals("describeTable")) {
+                // table created by an earlier version of the handler has the indexes added since then only
+                // which are backfilled by the time the table is described again
+                creating[0] = false;
+                final TableDescription tableDescription = new TableDescription().withTableName(tableName).withTableStatus(TableStatus.ACTIVE)
+                        .withKeySchema(new KeySchemaElement(AWSDynamoStateHandler.pkUser, KeyType.HASH), new KeySchemaElement(AWSDynamoStateHandler.pkModel, KeyType.RANGE))
+                        .withProvisionedThroughput(new ProvisionedThroughputDescription().withReadCapacityUnits(readCapacityUnits).withWriteCapacityUnits(readCapacityUnits))
+                        .withGlobalSecondaryIndexes(updates.stream()
+                                .map(update -> new GlobalSecondaryIndexDescription().withIndexName(update.getGlobalSecondaryIndexUpdates().get(0).getCreate().getIndexName()))
+                                .collect(Collectors.toList()));
+                return new DescribeTableResult().withTable(tableDescription);
+            }
+            if (methodName.equals("updateTable")) {
+                // an index still being backfilled blocks adding another one
+                if (creating[0]) {
+                    throw new LimitExceededException("Only one global secondary index can be created at a time");
+                }
+                creating[0] = true;
+                updates.add(invocation.getArgumentAt(0, UpdateTableRequest.class));
+                return new UpdateTableResult();
+            }
+            if (methodName.equals("batchGetItem")) {
+                return new BatchGetItemResult().withResponses(Collections.singletonMap(tableName, Collections.emptyList()));
+            }
+            if (methodName.equals("query")) {
+                return new QueryResult().withItems(Collections.emptyList());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void appendAndReadEvents() throws Exception {
+        // items of the user ordered by their range key as in the table
+        final TreeMap<String, Map<String, AttributeValue>> items = new TreeMap<>();
+        final AmazonDynamoDBClient awsClient = mock(AmazonDynamoDBClient.class, (Answer) invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            if (methodName.equals("batchWriteItem")) {
+                invocation.getArgumentAt(0, BatchWriteItemRequest.class).getRequestItems().get(tableName).forEach(request -> {
+                    if (request.getPutRequest() != null) {
+                        items.put(request.getPutRequest().getItem().get(AWSDynamoStateHandler.pkModel).getS(), request.getPutRequest().getItem());
+                    } else {
+                        items.remove(request.getDeleteRequest().getKey().get(AWSDynamoStateHandler.pkModel).getS());
+                    }
+                });
+                return new BatchWriteItemResult();
+            }
+            if (methodName.equals("query")) {
+                final QueryRequest queryRequest = invocation.getArgumentAt(0, QueryRequest.class);
+                final Map<String, AttributeValue> values = queryRequest.getExpressionAttributeValues();
+                // between includes both bounds
+                NavigableMap<String, Map<String, AttributeValue>> range = items.subMap(values.get(":from").getS(), true, values.get(":to").getS(), true);
+                if (!queryRequest.getScanIndexForward()) {
+                    range = range.descendingMap();
+                }
+                if (queryRequest.getExclusiveStartKey() != null) {
+                    final String startKey = queryRequest.getExclusiveStartKey().get(AWSDynamoStateHandler.pkModel).getS();
+                    range = range.tailMap(startKey, false);
+                }
+                // pages of at most two items make the handler follow the last evaluated key
+                final List<Map<String, AttributeValue>> page = range.values().stream()
+                        .limit(Math.min(queryRequest.getLimit(), 2))
+                        .collect(Collectors.toList());
+                final QueryResult result = new QueryResult().withItems(page);
+                if (page.size() < range.size()) {
+                    result.setLastEvaluatedKey(Collections.singletonMap(AWSDynamoStateHandler.pkModel, page.get(page.size() - 1).get(AWSDynamoStateHandler.pkModel)));
+                }
+                return result;
+            }
+            return null;
+        });
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, awsClient, tableName);
+        assertTrue(handler2.supportsRangeReads());
+        for (int i = 1; i <= 5; i++) {
+            final EventModel event = handler2.createModel(EventModel.class, AlexaStateEvent.createId(Instant.ofEpochMilli(1000L * i)));
+            event.answer = "answer" + i;
+            handler2.appendEvent(event);
+        }
+        session.getAttributes().clear();
+
+        final List<EventModel> last = handler2.readLastEvents(EventModel.class, 3);
+        assertEquals(3, last.size());
+        assertEquals("answer3", last.get(0).answer);
+        assertEquals("answer4", last.get(1).answer);
+        assertEquals("answer5", last.get(2).answer);
+        assertEquals(5, handler2.readLastEvents(EventModel.class, 10).size());
+
+        // the end of a time window is exclusive even if an event matches it exactly
+        final List<EventModel> window = handler2.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L));
+        assertEquals(2, window.size());
+        assertEquals("answer2", window.get(0).answer);
+        assertEquals("answer3", window.get(1).answer);
+        assertEquals(4, handler2.readEvents(EventModel.class, Instant.ofEpochMilli(1000L), Instant.ofEpochMilli(5000L)).size());
+        assertTrue(handler2.readEvents(EventModel.class, Instant.ofEpochMilli(6000L), Instant.ofEpochMilli(7000L)).isEmpty());
+    }
+
+    @Test
+    public void writeAndReadScores() throws Exception {
+        final List<Object> requests = new ArrayList<>();
+        final AmazonDynamoDBClient awsClient = mock(AmazonDynamoDBClient.class, (Answer) invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            if (methodName.equals("batchWriteItem")) {
+                requests.add(invocation.getArguments()[0]);
+                return new BatchWriteItemResult();
+            }
+            if (methodName.equals("query")) {
+                final QueryRequest queryRequest = invocation.getArgumentAt(0, QueryRequest.class);
+                requests.add(queryRequest);
+                if (Select.COUNT.toString().equals(queryRequest.getSelect())) {
+                    return new QueryResult().withCount(2);
+                }
+                final List<Map<String, AttributeValue>> items = new ArrayList<>();
+                for (final String[] score : new String[][] { { "bob", "50" }, { "anna", "30" }, { "carl", "30" } }) {
+                    final Map<String, AttributeValue> item = new HashMap<>();
+                    item.put(AWSDynamoStateHandler.pkUser, new AttributeValue(score[0]));
+                    item.put(AWSDynamoStateHandler.attributeKeyScore, new AttributeValue().withN(score[1]));
+                    items.add(item);
+                }
+                return new QueryResult().withItems(items);
+            }
+            if (methodName.equals("batchGetItem")) {
+                final Map<String, AttributeValue> item = new HashMap<>();
+                item.put(AWSDynamoStateHandler.attributeKeyScore, new AttributeValue().withN("30"));
+                return new BatchGetItemResult().addResponsesEntry(tableName, Collections.singletonList(item));
+            }
+            return null;
+        });
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, awsClient, tableName).withUserId("carl");
+
+        handler2.writeScore("quiz", 30);
+        // the score is a single item of the user keyed for the leaderboard index
+        final Map<String, AttributeValue> item = ((BatchWriteItemRequest) requests.get(0)).getRequestItems().get(tableName).get(0).getPutRequest().getItem();
+        assertEquals("carl", item.get(AWSDynamoStateHandler.pkUser).getS());
+        assertEquals("quiz", item.get(AWSDynamoStateHandler.attributeKeyLeaderboard).getS());
+        assertEquals("30", item.get(AWSDynamoStateHandler.attributeKeyScore).getN());
+
+        final List<AlexaStateScore> top = handler2.readTopScores("quiz", 3);
+        final QueryRequest topQuery = (QueryRequest) requests.get(1);
+        assertEquals(AWSDynamoStateHandler.leaderboardIndex, topQuery.getIndexName());
+        assertFalse(topQuery.getScanIndexForward());
+        assertEquals(Integer.valueOf(3), topQuery.getLimit());
+        assertEquals(new AlexaStateScore("bob", 50, 1), top.get(0));
+        assertEquals(new AlexaStateScore("anna", 30, 2), top.get(1));
+        assertEquals(new AlexaStateScore("carl", 30, 2), top.get(2));
+
+        // the rank is given by the number of higher scores
+        assertEquals(Optional.of(new AlexaStateScore("carl", 30, 3)), handler2.readScore("quiz"));
+        final QueryRequest countQuery = (QueryRequest) requests.get(2);
+        assertEquals(AWSDynamoStateHandler.leaderboardIndex, countQuery.getIndexName());
+        assertEquals("30", countQuery.getExpressionAttributeValues().get(":s").getN());
+
+        handler2.removeScore("quiz");
+        assertNotNull(((BatchWriteItemRequest) requests.get(3)).getRequestItems().get(tableName).get(0).getDeleteRequest());
+    }
+
+    @Test
+    public void writeAndReadIndexedModels() throws Exception {
+        final List<Object> requests = new ArrayList<>();
+        final AmazonDynamoDBClient awsClient = mock(AmazonDynamoDBClient.class, (Answer) invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            if (methodName.equals("batchWriteItem") || methodName.equals("query")) {
+                requests.add(invocation.getArguments()[0]);
+            }
+            if (methodName.equals("query")) {
+                final List<Map<String, AttributeValue>> items = new ArrayList<>();
+                // two models of the same user share the value
+                for (final String userId : Arrays.asList("anna", "bob", "anna")) {
+                    items.add(Collections.singletonMap(AWSDynamoStateHandler.pkUser, new AttributeValue(userId)));
+                }
+                return new QueryResult().withItems(items);
+            }
+            return methodName.equals("batchWriteItem") ? new BatchWriteItemResult() : null;
+        });
+        final AWSDynamoStateHandler handler2 = new AWSDynamoStateHandler(session, awsClient, tableName).withUserId("anna");
+        final IndexedModel model = handler2.createModel(IndexedModel.class, modelId);
+        model.tier = "gold";
+        handler2.writeModel(model);
+        // the index entry is written along with the model
+        final String entryKey = AlexaStateIndex.getEntryKeys(model).get(0);
+        final Optional<Map<String, AttributeValue>> entry = ((BatchWriteItemRequest) requests.get(0)).getRequestItems().get(tableName).stream()
+                .filter(request -> request.getPutRequest() != null)
+                .map(request -> request.getPutRequest().getItem())
+                .filter(item -> entryKey.equals(item.get(AWSDynamoStateHandler.pkModel).getS()))
+                .findFirst();
+        assertTrue(entry.isPresent());
+        assertEquals(AlexaStateIndex.getIndexKey(IndexedModel.class, "tier", "gold"), entry.get().get(AWSDynamoStateHandler.attributeKeyIndex).getS());
+
+        // entries of null values are deleted
+        model.tier = null;
+        handler2.writeModel(model);
+        assertTrue(((BatchWriteItemRequest) requests.get(1)).getRequestItems().get(tableName).stream()
+                .anyMatch(request -> request.getDeleteRequest() != null && entryKey.equals(request.getDeleteRequest().getKey().get(AWSDynamoStateHandler.pkModel).getS())));
+
+        assertEquals(Arrays.asList("anna", "bob"), handler2.readUserIds(IndexedModel.class, "tier", "gold"));
+        final QueryRequest queryRequest = (QueryRequest) requests.get(2);
+        assertEquals(AWSDynamoStateHandler.valueIndex, queryRequest.getIndexName());
+        assertEquals(AlexaStateIndex.getIndexKey(IndexedModel.class, "tier", "gold"), queryRequest.getExpressionAttributeValues().get(":k").getS());
+    }
+}
@@ -6,9 +6,221 @@
  */
 package io.klerch.alexa.state.handler;
 
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.dummies.AliasedModel;
+import io.klerch.alexa.state.model.dummies.ChunkedModel;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.IndexedModel;
+import io.klerch.alexa.state.model.dummies.NestedRefModel;
+import io.klerch.alexa.state.model.dummies.SparseModel;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateModelView;
+import io.klerch.alexa.state.model.AlexaStateRef;
+import io.klerch.alexa.state.model.dummies.RefModel;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import io.klerch.alexa.state.model.dummies.Model;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
 public class AlexaSessionStateHandlerTest extends AlexaStateHandlerTest<AlexaSessionStateHandler> {
     @Override
     public AlexaSessionStateHandler givenHandler() {
         return new AlexaSessionStateHandler(session);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void readModelsFromJsonAttributes() throws Exception {
+        final Model model = givenModel(modelId);
+        // models in the session may also come as json-strings
+        session.setAttribute(model.getAttributeKey(), model.toJSON(AlexaScope.SESSION));
+        // lots of unrelated attributes in the session
+        for (int i = 0; i < 500; i++) {
+            session.setAttribute("attribute" + i, i);
+        }
+        final Map<String, Model> models = handler.readModels(Model.class, Arrays.asList(modelId, absentModelId));
+        assertEquals(1, models.size());
+        assertEquals(modelId, models.get(modelId).getId());
+        assertEquals(model.sampleUser, models.get(modelId).sampleUser);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelView() throws Exception {
+        final Model model = givenModel(modelId);
+        model.sampleSession.add("sessionValue");
+        handler.writeModel(model);
+
+        final AlexaStateModelView<Model> view = handler.readModelView(Model.class, modelId).get();
+        assertEquals(modelId, view.getId());
+        assertEquals(Model.class, view.getModelClass());
+        final List<String> sampleSession = view.get("sampleSession");
+        assertEquals("sessionValue", sampleSession.get(0));
+        assertEquals(model.sampleUser, view.get("sampleUser"));
+
+        // changes in the view go to the session
+        view.set("sampleUser", "newValue");
+        assertEquals("newValue", handler.readModel(Model.class, modelId).get().sampleUser);
+        assertEquals("newValue", view.toModel().sampleUser);
+
+        // models given as json are read once and put to the session as a map
+        session.setAttribute(model.getAttributeKey(), model.toJSON(AlexaScope.SESSION));
+        assertEquals(model.sampleUser, handler.readModelView(Model.class, modelId).get().get("sampleUser"));
+        assertTrue(session.getAttribute(model.getAttributeKey()) instanceof Map);
+
+        assertFalse(handler.readModelView(Model.class, absentModelId).isPresent());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelWithRefs() throws Exception {
+        final AliasedModel aliased = handler.createModel(AliasedModel.class, "a1");
+        aliased.sampleUser = "a1";
+        final RefModel model = handler.createModel(RefModel.class, modelId);
+        model.aliased = AlexaStateRef.to(aliased);
+        model.aliasedList.add(AlexaStateRef.of(AliasedModel.class, "a1"));
+        handler.writeModels(Arrays.asList(aliased, model));
+
+        final RefModel read = handler.readModel(RefModel.class, modelId).get();
+        assertEquals(model.aliased, read.aliased);
+        assertEquals(model.aliasedList, read.aliasedList);
+        read.resolveRefs();
+        assertEquals("a1", read.aliased.get().get().sampleUser);
+        assertEquals("a1", read.aliasedList.get(0).get().get().sampleUser);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelWithNestedRefs() throws Exception {
+        final NestedRefModel model = handler.createModel(NestedRefModel.class, modelId);
+        model.aliasedByName.put("a", Collections.singletonList(AlexaStateRef.of(AliasedModel.class, "a1")));
+        handler.writeModel(model);
+
+        // references nested in a map of lists are converted back as well
+        final NestedRefModel read = handler.readModel(NestedRefModel.class, modelId).get();
+        assertEquals(model.aliasedByName, read.aliasedByName);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelWithChunkedList() throws Exception {
+        final ChunkedModel model = handler.createModel(ChunkedModel.class, modelId);
+        model.history.addAll(Arrays.asList(1, 2, 3));
+        handler.writeModel(model);
+        // without a backend chunks are kept in the session
+        assertTrue(session.getAttributes().containsKey(model.history.getChunkKey(1)));
+
+        final ChunkedModel read = handler.readModel(ChunkedModel.class, modelId).get();
+        assertEquals(3, read.history.size());
+        assertEquals(Integer.valueOf(3), read.history.get(2));
+        session.getAttributes().clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readModelViewWithInvalidField() throws Exception {
+        handler.writeModel(givenModel(modelId));
+        try {
+            handler.readModelView(Model.class, modelId).get().get("sampleIgnore");
+        } finally {
+            session.getAttributes().clear();
+        }
+    }
+
+    @Test
+    public void readModelWithLegacyKey() throws Exception {
+        final AliasedModel model = handler.createModel(AliasedModel.class, modelId);
+        model.sampleUser = "userValue";
+        assertEquals("aliased:" + modelId, model.getAttributeKey());
+        // state written to the session before the model got an alias
+        session.setAttribute(AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, modelId), model.toMap(AlexaScope.SESSION));
+        assertTrue(handler.exists(AliasedModel.class, modelId));
+        assertEquals("userValue", handler.readModel(AliasedModel.class, modelId).get().sampleUser);
+
+        handler.removeModel(model);
+        assertFalse(handler.exists(AliasedModel.class, modelId));
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelWithShortFieldName() throws Exception {
+        final AliasedModel model = handler.createModel(AliasedModel.class, modelId);
+        model.sampleShortName = "shortValue";
+        handler.writeModel(model);
+        final Map<?, ?> attributes = (Map<?, ?>) session.getAttribute(model.getAttributeKey());
+        assertEquals("shortValue", attributes.get("s"));
+        assertFalse(attributes.containsKey("sampleShortName"));
+        assertEquals("shortValue", handler.readModel(AliasedModel.class, modelId).get().sampleShortName);
+        assertEquals("shortValue", handler.readModelView(AliasedModel.class, modelId).get().get("sampleShortName"));
+
+        // state saved with the full name of the field
+        final Map<String, Object> legacy = new HashMap<>();
+        legacy.put("sampleShortName", "longValue");
+        session.setAttribute(model.getAttributeKey(), legacy);
+        assertEquals("longValue", handler.readModel(AliasedModel.class, modelId).get().sampleShortName);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readSparseModel() throws Exception {
+        final SparseModel model = handler.createModel(SparseModel.class, modelId);
+        model.score = 10;
+        handler.writeModel(model);
+        final Map<?, ?> attributes = (Map<?, ?>) session.getAttribute(model.getAttributeKey());
+        assertEquals(2, attributes.size());
+
+        final SparseModel model2 = handler.readModel(SparseModel.class, modelId).get();
+        assertEquals(10, model2.score);
+        assertEquals(1, model2.level);
+        final AlexaStateModelView<SparseModel> view = handler.readModelView(SparseModel.class, modelId).get();
+        assertEquals(Integer.valueOf(1), view.get("level"));
+        assertTrue(view.<List<String>>get("badges").isEmpty());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void appendAndReadEvents() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            final EventModel event = handler.createModel(EventModel.class, AlexaStateEvent.createId(Instant.ofEpochMilli(1000L * i)));
+            event.answer = "answer" + i;
+            handler.appendEvent(event);
+            // without a backend the session holds the event log
+            assertTrue(session.getAttributes().containsKey(event.getAttributeKey()));
+        }
+        final List<EventModel> last = handler.readLastEvents(EventModel.class, 2);
+        assertEquals(2, last.size());
+        assertEquals("answer2", last.get(0).answer);
+        assertEquals("answer3", last.get(1).answer);
+
+        final List<EventModel> window = handler.readEvents(EventModel.class, Instant.ofEpochMilli(1000L), Instant.ofEpochMilli(2000L));
+        assertEquals(1, window.size());
+        assertEquals("answer1", window.get(0).answer);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void noLeaderboardsInSession() throws Exception {
+        // the session only sees one user and cannot hold a leaderboard
+        assertFalse(handler.supportsLeaderboards());
+        try {
+            handler.writeScore("quiz", 1);
+            fail("Score should not be written to the session.");
+        } catch (final AlexaStateException e) {
+            assertFalse(session.getAttributes().containsKey("quiz"));
+        }
+    }
+
+    @Test(expected = AlexaStateException.class)
+    public void noIndexesInSession() throws Exception {
+        // the session only sees one user and cannot hold an index
+        assertFalse(handler.supportsIndexes());
+        handler.readUserIds(IndexedModel.class, "tier", "gold");
+    }
+}
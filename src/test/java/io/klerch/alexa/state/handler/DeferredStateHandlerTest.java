@@ -0,0 +1,125 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.SessionEndedRequest;
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.dummies.Model;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+public class DeferredStateHandlerTest extends AlexaStateHandlerTest<DeferredStateHandler> {
+    private static final InMemoryStateHandler.Store store = new InMemoryStateHandler.Store();
+
+    @Override
+    public DeferredStateHandler givenHandler() throws Exception {
+        return new DeferredStateHandler(session, new InMemoryStateHandler(session, store));
+    }
+
+    @Test
+    public void getBackendAndThresholds() throws Exception {
+        assertNotNull(handler.getBackend());
+        assertEquals(0, handler.getMaxTurns());
+        assertEquals(0L, handler.getMaxMillis());
+        assertEquals(3, new DeferredStateHandler(session, handler.getBackend()).withMaxTurns(3).getMaxTurns());
+        assertEquals(100L, new DeferredStateHandler(session, handler.getBackend()).withMaxMillis(100L).getMaxMillis());
+    }
+
+    @Test
+    public void deferUntilSessionEnded() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final DeferredStateHandler handler2 = new DeferredStateHandler(session, new InMemoryStateHandler(session, store2));
+
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        handler2.writeModel(model);
+        handler2.writeValue(modelId2, stateModelValue, AlexaScope.USER);
+
+        // nothing went to the backend but state is read from the session
+        assertTrue(handler2.hasDeferredWrites());
+        assertEquals(0, store2.size());
+        assertEquals("userValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        assertEquals(stateModelValue, handler2.readValue(modelId2, AlexaScope.USER).get().getValue());
+
+        // a later turn in the same session still sees the deferred state
+        final DeferredStateHandler nextTurn = new DeferredStateHandler(session, new InMemoryStateHandler(session, store2));
+        assertTrue(nextTurn.hasDeferredWrites());
+        assertFalse(nextTurn.commitOnSessionEnded(IntentRequest.builder().withRequestId("requestId").build()));
+        assertEquals(0, store2.size());
+
+        assertTrue(nextTurn.commitOnSessionEnded(SessionEndedRequest.builder().withRequestId("requestId").build()));
+        assertFalse(nextTurn.hasDeferredWrites());
+        // user- and app-scoped item of the model plus the value
+        assertEquals(3, store2.size());
+
+        session.getAttributes().clear();
+        assertEquals("userValue", nextTurn.readModel(Model.class, modelId).get().sampleUser);
+        assertEquals(stateModelValue, nextTurn.readValue(modelId2, AlexaScope.USER).get().getValue());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void commitAfterMaxTurns() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        for (int turn = 1; turn <= 3; turn++) {
+            final DeferredStateHandler turnHandler = new DeferredStateHandler(session, new InMemoryStateHandler(session, store2)).withMaxTurns(3);
+            // more than one write in a turn counts as one turn
+            turnHandler.writeValue(modelId, stateModelValue + turn, AlexaScope.USER);
+            turnHandler.writeValue(modelId2, stateModelValue + turn, AlexaScope.USER);
+            assertEquals(turn < 3 ? 0 : 2, store2.size());
+        }
+        assertEquals(stateModelValue + 3, store2.get(modelId + "|" + session.getUser().getUserId()));
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void commitAfterMaxMillis() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final DeferredStateHandler handler2 = new DeferredStateHandler(session, new InMemoryStateHandler(session, store2)).withMaxMillis(50L);
+        handler2.writeValue(modelId, stateModelValue, AlexaScope.USER);
+        assertEquals(0, store2.size());
+        Thread.sleep(100L);
+        handler2.writeValue(modelId2, stateModelValue, AlexaScope.USER);
+        assertEquals(2, store2.size());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void removeDropsDeferredState() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final DeferredStateHandler handler2 = new DeferredStateHandler(session, new InMemoryStateHandler(session, store2));
+        handler2.writeValue(modelId, stateModelValue, AlexaScope.USER);
+        handler2.removeValues(Collections.singletonList(modelId));
+        assertFalse(handler2.hasDeferredWrites());
+        handler2.commit();
+        assertEquals(0, store2.size());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void removeModelsFromBackendOnce() throws Exception {
+        final InMemoryStateHandler backend = spy(new InMemoryStateHandler(session, new InMemoryStateHandler.Store()));
+        final DeferredStateHandler handler2 = new DeferredStateHandler(session, backend);
+        final Model model = handler2.createModel(Model.class, modelId);
+        handler2.writeModel(model);
+        handler2.commit();
+
+        handler2.removeModel(model);
+        assertFalse(handler2.exists(Model.class, modelId));
+        // the backend removes the values of the model on its own
+        verify(backend, times(1)).removeModels(anyCollectionOf(AlexaStateModel.class));
+        verify(backend, times(1)).removeValues(anyCollectionOf(String.class));
+        session.getAttributes().clear();
+    }
+}
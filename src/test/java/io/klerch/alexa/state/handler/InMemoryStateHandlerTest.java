@@ -0,0 +1,667 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModelView;
+import io.klerch.alexa.state.model.AlexaStateRef;
+import io.klerch.alexa.state.model.dummies.AliasedModel;
+import io.klerch.alexa.state.model.dummies.ChunkedModel;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.IndexedModel;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.model.dummies.Model;
+import io.klerch.alexa.state.model.dummies.RefModel;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+public class InMemoryStateHandlerTest extends AlexaStateHandlerTest<InMemoryStateHandler> {
+    private static final InMemoryStateHandler.Store store = new InMemoryStateHandler.Store();
+
+    @Override
+    public InMemoryStateHandler givenHandler() throws Exception {
+        return new InMemoryStateHandler(session, store);
+    }
+
+    @Test
+    public void getStoreAndKeyScheme() throws Exception {
+        assertEquals(store, handler.getStore());
+        assertEquals(InMemoryStateHandler.KeyScheme.DYNAMO, handler.getKeyScheme());
+        assertEquals(0L, handler.getLatency());
+        assertEquals(0.0, handler.getFailureRate(), 0.0);
+    }
+
+    @Test
+    public void writeWithKeySchemes() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store(4);
+        final InMemoryStateHandler dynamoHandler = new InMemoryStateHandler(session, store2, InMemoryStateHandler.KeyScheme.DYNAMO);
+        final InMemoryStateHandler s3Handler = new InMemoryStateHandler(session, store2, InMemoryStateHandler.KeyScheme.S3);
+
+        final Model model = dynamoHandler.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        model.sampleApplication = true;
+        dynamoHandler.writeModel(model);
+        // one item for user-scoped and one for app-scoped fields
+        assertEquals(2, store2.size());
+        assertTrue(store2.containsKey(model.getAttributeKey() + "|" + session.getUser().getUserId()));
+        assertTrue(store2.containsKey(model.getAttributeKey() + "|" + InMemoryStateHandler.contextApp));
+
+        s3Handler.writeValue(modelId, stateModelValue, AlexaScope.USER);
+        assertEquals(3, store2.size());
+        assertEquals(stateModelValue, store2.get(session.getUser().getUserId() + "/" + modelId + ".json"));
+
+        session.getAttributes().clear();
+        // handlers with different key schemes do not see each other's state
+        assertFalse(s3Handler.readModel(Model.class, modelId).isPresent());
+        assertTrue(dynamoHandler.readModel(Model.class, modelId).isPresent());
+
+        store2.clear();
+        assertEquals(0, store2.size());
+    }
+
+    @Test(expected = AlexaStateException.class)
+    public void failureInjection() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store).withFailureRate(1.0);
+        assertEquals(1.0, handler2.getFailureRate(), 0.0);
+        handler2.writeValue(modelId, stateModelValue, AlexaScope.USER);
+    }
+
+    @Test
+    public void latency() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store).withLatency(50L);
+        assertEquals(50L, handler2.getLatency());
+        final long start = System.currentTimeMillis();
+        handler2.writeValue(modelId, stateModelValue, AlexaScope.USER);
+        assertTrue(System.currentTimeMillis() - start >= 50L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFailureRate() throws Exception {
+        new InMemoryStateHandler(session, store).withFailureRate(1.5);
+    }
+
+    @Test
+    public void sessionFirstReadPolicy() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        handler2.withReadPolicy(AlexaReadPolicy.SESSION_FIRST);
+        assertEquals(AlexaReadPolicy.SESSION_FIRST, handler2.getReadPolicy());
+
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        handler2.writeModel(model);
+        handler2.writeValue(modelId2, stateModelValue, AlexaScope.USER);
+
+        // store is not reachable anymore but state was mirrored to the session on write
+        handler2.withFailureRate(1.0);
+        assertEquals("userValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        assertEquals(stateModelValue, handler2.readValue(modelId2, AlexaScope.USER).get().getValue());
+
+        // state in the session not known to come from the backend needs to be read from the store
+        session.removeAttribute(AlexaSessionStateHandler.attributeKeyLoaded);
+        try {
+            handler2.readModel(Model.class, modelId);
+            fail("Model not read from store.");
+        } catch (final AlexaStateException e) {
+            // expected as store is not reachable
+        }
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void sessionFirstWithMaxAgeReadPolicy() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        handler2.withReadPolicy(AlexaReadPolicy.SESSION_FIRST_WITH_MAX_AGE, 50L);
+        assertEquals(50L, handler2.getMaxAge());
+
+        final Model model = handler2.createModel(Model.class, modelId);
+        handler2.writeModel(model);
+
+        handler2.withFailureRate(1.0);
+        assertTrue(handler2.readModel(Model.class, modelId).isPresent());
+        Thread.sleep(100L);
+        try {
+            handler2.readModel(Model.class, modelId);
+            fail("Outdated model not read from store.");
+        } catch (final AlexaStateException e) {
+            // expected as store is not reachable
+        }
+        // model was read from store and mirrored to the session again
+        handler2.withFailureRate(0.0).readModel(Model.class, modelId);
+        handler2.withFailureRate(1.0);
+        assertTrue(handler2.readModel(Model.class, modelId).isPresent());
+
+        // removal also forgets about the model being mirrored
+        handler2.withFailureRate(0.0).removeModel(model);
+        assertFalse(handler2.readModel(Model.class, modelId).isPresent());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void alwaysBackendReadPolicy() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        assertEquals(AlexaReadPolicy.ALWAYS_BACKEND, handler2.getReadPolicy());
+        handler2.writeModel(handler2.createModel(Model.class, modelId));
+        // nothing is remembered about state mirrored to the session
+        assertFalse(session.getAttributes().containsKey(AlexaSessionStateHandler.attributeKeyLoaded));
+        handler2.withFailureRate(1.0);
+        try {
+            handler2.readModel(Model.class, modelId);
+            fail("Model not read from store.");
+        } catch (final AlexaStateException e) {
+            // expected as store is not reachable
+        }
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void spillToBackend() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2);
+        handler2.withSessionSizeBudget(1000);
+        assertEquals(1000, handler2.getSessionSizeBudget());
+
+        final Model smallModel = handler2.createModel(Model.class, modelId);
+        final Model bigModel = handler2.createModel(Model.class, modelId2);
+        for (int i = 0; i < 100; i++) {
+            bigModel.sampleSession.add("sessionValue" + i);
+        }
+        handler2.writeModels(Arrays.asList(smallModel, bigModel));
+
+        // only the biggest model is spilled
+        assertEquals(AlexaSessionStateHandler.spilledMarker, session.getAttribute(bigModel.getAttributeKey()));
+        assertTrue(session.getAttribute(smallModel.getAttributeKey()) instanceof Map);
+        assertFalse(session.getAttributes().containsKey(AlexaSessionStateHandler.spilledKeyPrefix + bigModel.getAttributeKey()));
+        assertTrue(store2.containsKey(AlexaSessionStateHandler.spilledKeyPrefix + bigModel.getAttributeKey() + "|" + session.getUser().getUserId()));
+
+        // session-scoped state is reloaded from the backend
+        final Model model = handler2.readModel(Model.class, modelId2).get();
+        assertEquals(100, model.sampleSession.size());
+        assertEquals("sessionValue99", model.sampleSession.get(99));
+
+        handler2.removeModel(bigModel);
+        assertFalse(store2.containsKey(AlexaSessionStateHandler.spilledKeyPrefix + bigModel.getAttributeKey() + "|" + session.getUser().getUserId()));
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void spillGrownModelToBackend() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2);
+        handler2.withSessionSizeBudget(1000);
+
+        final Model smallModel = handler2.createModel(Model.class, modelId);
+        final Model growingModel = handler2.createModel(Model.class, modelId2);
+        handler2.writeModels(Arrays.asList(smallModel, growingModel));
+        assertTrue(session.getAttribute(growingModel.getAttributeKey()) instanceof Map);
+
+        // size of a model written again is measured anew
+        for (int i = 0; i < 100; i++) {
+            growingModel.sampleSession.add("sessionValue" + i);
+        }
+        handler2.writeModel(growingModel);
+        assertEquals(AlexaSessionStateHandler.spilledMarker, session.getAttribute(growingModel.getAttributeKey()));
+        assertTrue(session.getAttribute(smallModel.getAttributeKey()) instanceof Map);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void removeOutdatedSpilledState() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2);
+        handler2.withSessionSizeBudget(1000);
+        final String spilledKey = AlexaSessionStateHandler.spilledKeyPrefix + handler2.createModel(Model.class, modelId2).getAttributeKey() + "|" + session.getUser().getUserId();
+
+        final Model bigModel = handler2.createModel(Model.class, modelId2);
+        for (int i = 0; i < 100; i++) {
+            bigModel.sampleSession.add("sessionValue" + i);
+        }
+        handler2.writeModel(bigModel);
+        assertTrue(store2.containsKey(spilledKey));
+        // a model spilled again keeps its spilled state
+        handler2.writeModel(bigModel);
+        assertEquals(AlexaSessionStateHandler.spilledMarker, session.getAttribute(bigModel.getAttributeKey()));
+        assertTrue(store2.containsKey(spilledKey));
+
+        // a model fitting into the session replaces the marker and its spilled state is removed
+        bigModel.sampleSession.clear();
+        handler2.writeModel(bigModel);
+        assertTrue(session.getAttribute(bigModel.getAttributeKey()) instanceof Map);
+        assertFalse(store2.containsKey(spilledKey));
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void noSpillOnRead() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        final Model bigModel = new InMemoryStateHandler(session, store2).createModel(Model.class, modelId2);
+        bigModel.sampleUser = StringUtils.repeat("userValue", 200);
+        bigModel.saveState();
+        session.getAttributes().clear();
+
+        // models read from the backend are mirrored to the session without writing to the backend
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2);
+        handler2.withSessionSizeBudget(1000);
+        final int storeSize = store2.size();
+        assertTrue(handler2.readModel(Model.class, modelId2).isPresent());
+        assertTrue(session.getAttribute(bigModel.getAttributeKey()) instanceof Map);
+        assertEquals(storeSize, store2.size());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void noSpillWithoutBackend() throws Exception {
+        final AlexaSessionStateHandler handler2 = new AlexaSessionStateHandler(session);
+        handler2.withSessionSizeBudget(10);
+        final Model model = handler2.createModel(Model.class, modelId);
+        handler2.writeModel(model);
+        assertTrue(session.getAttribute(model.getAttributeKey()) instanceof Map);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void identityMap() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        assertFalse(handler2.isIdentityMapEnabled());
+        handler2.withIdentityMap(true);
+        assertTrue(handler2.isIdentityMapEnabled());
+
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        handler2.writeModel(model);
+
+        // written model is served from the identity map without going to the store
+        handler2.withFailureRate(1.0);
+        assertSame(model, handler2.readModel(Model.class, modelId).get());
+        assertSame(model, handler2.readModels(Model.class, Arrays.asList(modelId)).get(modelId));
+
+        // models read from the store are kept as well
+        handler2.withFailureRate(0.0).clearIdentityMap();
+        final Model model2 = handler2.readModel(Model.class, modelId).get();
+        assertNotSame(model, model2);
+        assertEquals("userValue", model2.sampleUser);
+        assertSame(model2, handler2.readModel(Model.class, modelId).get());
+
+        // removed models are forgotten
+        handler2.removeModel(model2);
+        assertFalse(handler2.readModel(Model.class, modelId).isPresent());
+
+        handler2.setIdentityMapEnabled(false);
+        handler2.writeModel(model);
+        assertNotSame(model, handler2.readModel(Model.class, modelId).get());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelWithLegacyKey() throws Exception {
+        final AliasedModel model = handler.createModel(AliasedModel.class, modelId);
+        model.sampleUser = "userValue";
+        // state saved before the model got an alias
+        handler.writeValue(AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, modelId), model.toJSON(AlexaScope.USER), AlexaScope.USER);
+        session.getAttributes().clear();
+        assertEquals("userValue", handler.readModel(AliasedModel.class, modelId).get().sampleUser);
+
+        // saving the model writes it with its alias and removing it removes the legacy state as well
+        handler.writeModel(model);
+        assertTrue(handler.readValue(model.getAttributeKey(), AlexaScope.USER).isPresent());
+        handler.removeModel(model);
+        session.getAttributes().clear();
+        assertFalse(handler.readModel(AliasedModel.class, modelId).isPresent());
+        assertFalse(handler.readValue(AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, modelId), AlexaScope.USER).isPresent());
+    }
+
+    @Test
+    public void setValueInModelView() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        model.sampleApplication = true;
+        handler2.writeModel(model);
+
+        final AlexaStateModelView<Model> view = handler2.readModelView(Model.class, modelId).get();
+        view.set("sampleUser", "newValue");
+        // value set in the view went to the store
+        session.getAttributes().clear();
+        final Model model2 = handler2.readModel(Model.class, modelId).get();
+        assertEquals("newValue", model2.sampleUser);
+        assertTrue(model2.sampleApplication);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelViewLazilyWithAnyHandler() throws Exception {
+        final AlexaStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store()).withLazyLoading(true);
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        handler2.writeModel(model);
+        session.getAttributes().clear();
+
+        final AlexaStateModelView<Model> view = handler2.readModelView(Model.class, modelId).get();
+        assertFalse(view.isLoaded(AlexaScope.USER));
+        assertEquals("userValue", view.get("sampleUser"));
+        view.set("sampleUser", "newValue");
+        session.getAttributes().clear();
+        assertEquals("newValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelViewLazily() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        assertFalse(handler2.isLazyLoadingEnabled());
+        handler2.withLazyLoading(true);
+        assertTrue(handler2.isLazyLoadingEnabled());
+
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        model.sampleApplication = true;
+        final Model model2 = handler2.createModel(Model.class, modelId + "2");
+        model2.sampleUser = "userValue2";
+        handler2.writeModels(Arrays.asList(model, model2));
+        session.getAttributes().clear();
+
+        // views are returned without going to the store
+        handler2.withFailureRate(1.0);
+        final AlexaStateModelView<Model> view = handler2.readModelView(Model.class, modelId).get();
+        final AlexaStateModelView<Model> view2 = handler2.readModelView(Model.class, modelId + "2").get();
+        assertFalse(view.isLoaded(AlexaScope.USER));
+        assertFalse(view.isLoaded(AlexaScope.APPLICATION));
+
+        // first access to a user-scoped field loads user-scoped state of both views
+        handler2.withFailureRate(0.0);
+        assertEquals("userValue", view.get("sampleUser"));
+        handler2.withFailureRate(1.0);
+        assertEquals("userValue2", view2.get("sampleUser"));
+        assertTrue(view2.isLoaded(AlexaScope.USER));
+        assertFalse(view2.isLoaded(AlexaScope.APPLICATION));
+
+        // application-scoped state is loaded not before it is accessed
+        try {
+            view.get("sampleApplication");
+            fail("Application-scoped state should be read from the store.");
+        } catch (final AlexaStateException e) {
+            assertFalse(view.isLoaded(AlexaScope.APPLICATION));
+        }
+        handler2.withFailureRate(0.0);
+        assertEquals(Boolean.TRUE, view.get("sampleApplication"));
+
+        // fully loaded views are mirrored to the session
+        assertTrue(session.getAttributes().containsKey(model.getAttributeKey()));
+        assertEquals("userValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void readModelPartially() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        model.sampleApplication = true;
+        handler2.writeModel(model);
+        session.getAttributes().clear();
+        final InMemoryStateHandler handler3 = new InMemoryStateHandler(session, handler2.getStore());
+
+        final Model partial = handler3.readModel(Model.class, modelId, Collections.singletonList("sampleUser")).get();
+        assertEquals("userValue", partial.sampleUser);
+        assertFalse(partial.sampleApplication);
+        assertTrue(handler3.getUnloadedFields(partial).contains("sampleApplication"));
+        assertFalse(handler3.getUnloadedFields(partial).contains("sampleUser"));
+        assertFalse(session.getAttributes().containsKey(model.getAttributeKey()));
+
+        // fields not loaded are read before the model is written
+        partial.sampleUser = "userValue2";
+        handler3.writeModel(partial);
+        assertTrue(handler3.getUnloadedFields(partial).isEmpty());
+        session.getAttributes().clear();
+        final Model model2 = new InMemoryStateHandler(session, handler2.getStore()).readModel(Model.class, modelId).get();
+        assertEquals("userValue2", model2.sampleUser);
+        assertTrue(model2.sampleApplication);
+        session.getAttributes().clear();
+
+        assertFalse(handler3.readModel(Model.class, "unknown", Collections.singletonList("sampleUser")).isPresent());
+    }
+
+    @Test
+    public void writePartialModelsKeepsFieldsSetAfterRead() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        final Model model = handler2.createModel(Model.class, modelId);
+        model.sampleUser = "userValue";
+        model.sampleApplication = true;
+        final Model model2 = handler2.createModel(Model.class, modelId2);
+        model2.sampleUser = "userValue2";
+        model2.sampleApplication = true;
+        handler2.writeModels(Arrays.asList(model, model2));
+        session.getAttributes().clear();
+        final InMemoryStateHandler handler3 = spy(new InMemoryStateHandler(session, handler2.getStore()));
+
+        final Model partial = handler3.readModel(Model.class, modelId, Collections.singletonList("sampleApplication")).get();
+        final Model partial2 = handler3.readModel(Model.class, modelId2, Collections.singletonList("sampleApplication")).get();
+        // a field not loaded but set after the read must not be overwritten with its saved state
+        partial.sampleUser = "newValue";
+        reset(handler3);
+        handler3.writeModels(Arrays.asList(partial, partial2));
+        // one read for the user-scoped state of both models
+        verify(handler3, times(1)).readModelJson(anyCollectionOf(String.class), any(AlexaScope.class));
+        assertEquals("newValue", partial.sampleUser);
+        assertEquals("userValue2", partial2.sampleUser);
+
+        session.getAttributes().clear();
+        assertEquals("newValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        assertEquals("userValue2", handler2.readModel(Model.class, modelId2).get().sampleUser);
+        session.getAttributes().clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readModelPartiallyWithUnknownField() throws Exception {
+        handler.readModel(Model.class, modelId, Collections.singletonList("sampleIgnore"));
+    }
+
+    @Test
+    public void resolveRefs() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        final AliasedModel aliased = handler2.createModel(AliasedModel.class, "a1");
+        aliased.sampleUser = "a1";
+        final AliasedModel aliased2 = handler2.createModel(AliasedModel.class, "a2");
+        aliased2.sampleUser = "a2";
+        final RefModel last = handler2.createModel(RefModel.class, "r2");
+        last.aliasedList.add(AlexaStateRef.to(aliased2));
+        final RefModel first = handler2.createModel(RefModel.class, "r1");
+        first.aliased = AlexaStateRef.to(aliased);
+        first.next = AlexaStateRef.to(last);
+        handler2.writeModels(Arrays.asList(aliased, aliased2, last, first));
+        session.getAttributes().clear();
+
+        final InMemoryStateHandler handler3 = new InMemoryStateHandler(session, handler2.getStore());
+        final RefModel read = handler3.readModel(RefModel.class, "r1").get();
+        assertFalse(read.aliased.isResolved());
+        assertSame(handler3, read.aliased.getHandler());
+        // references are resolved lazily
+        assertEquals("a1", read.aliased.get().get().sampleUser);
+
+        // all references in the graph are resolved at once
+        read.resolveRefs();
+        assertTrue(read.next.isResolved());
+        final RefModel next = read.next.get().get();
+        assertTrue(next.aliasedList.get(0).isResolved());
+        assertEquals("a2", next.aliasedList.get(0).get().get().sampleUser);
+        assertNull(next.next);
+
+        // references to models not existing resolve to nothing
+        final RefModel dangling = handler3.createModel(RefModel.class, "r3");
+        dangling.aliased = AlexaStateRef.of(AliasedModel.class, "unknown");
+        handler3.resolveRefs(Collections.singletonList(dangling));
+        assertTrue(dangling.aliased.isResolved());
+        assertFalse(dangling.aliased.get().isPresent());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void writeAndReadChunkedList() throws Exception {
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, new InMemoryStateHandler.Store());
+        final ChunkedModel model = handler2.createModel(ChunkedModel.class, modelId);
+        model.history.addAll(Arrays.asList(1, 2, 3));
+        handler2.writeModel(model);
+        // chunks are saved apart from the model and are not kept in the session
+        assertTrue(handler2.readValue(model.history.getChunkKey(0), AlexaScope.USER).isPresent());
+        assertFalse(session.getAttributes().containsKey(model.history.getChunkKey(0)));
+        assertTrue(model.history.getUnsavedChunks().isEmpty());
+        session.getAttributes().clear();
+
+        final InMemoryStateHandler handler3 = new InMemoryStateHandler(session, handler2.getStore());
+        final ChunkedModel read = handler3.readModel(ChunkedModel.class, modelId).get();
+        assertEquals(3, read.history.size());
+        assertFalse(read.history.isLoaded(0));
+        assertEquals(Integer.valueOf(3), read.history.get(2));
+        assertFalse(read.history.isLoaded(0));
+
+        // appending only touches the tail chunk
+        read.history.add(4);
+        read.history.add(5);
+        assertEquals(2, read.history.getUnsavedChunks().size());
+        assertFalse(read.history.isLoaded(0));
+        handler3.writeModel(read);
+        session.getAttributes().clear();
+
+        final ChunkedModel read2 = new InMemoryStateHandler(session, handler2.getStore()).readModel(ChunkedModel.class, modelId).get();
+        final List<Integer> elements = new ArrayList<>();
+        read2.history.forEach(elements::add);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), elements);
+
+        // chunks are removed along with their model
+        handler3.removeModel(read2);
+        assertFalse(handler3.readValue(read2.history.getChunkKey(2), AlexaScope.USER).isPresent());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void appendAndReadEvents() throws Exception {
+        for (final InMemoryStateHandler.KeyScheme keyScheme : InMemoryStateHandler.KeyScheme.values()) {
+            final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+            final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2, keyScheme);
+            for (int i = 1; i <= 5; i++) {
+                final EventModel event = handler2.createModel(EventModel.class, AlexaStateEvent.createId(Instant.ofEpochMilli(1000L * i)));
+                event.answer = "answer" + i;
+                handler2.appendEvent(event);
+                // events are not kept in the session
+                assertFalse(session.getAttributes().containsKey(event.getAttributeKey()));
+            }
+            // an event without id is appended at the current time
+            final EventModel latest = handler2.createModel(EventModel.class);
+            latest.answer = "latest";
+            handler2.appendEvent(latest);
+            assertNotNull(latest.getTime());
+            // other models do not show up in the event log
+            handler2.writeModel(handler2.createModel(Model.class, modelId));
+
+            final List<EventModel> last = handler2.readLastEvents(EventModel.class, 3);
+            assertEquals(3, last.size());
+            assertEquals("answer4", last.get(0).answer);
+            assertEquals("answer5", last.get(1).answer);
+            assertEquals("latest", last.get(2).answer);
+            assertEquals(Instant.ofEpochMilli(4000L), last.get(0).getTime());
+
+            // the end of a time window is exclusive
+            final List<EventModel> window = handler2.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L));
+            assertEquals(2, window.size());
+            assertEquals("answer2", window.get(0).answer);
+            assertEquals("answer3", window.get(1).answer);
+
+            assertEquals(6, handler2.readLastEvents(EventModel.class, 10).size());
+            assertTrue(handler2.readEvents(EventModel.class, Instant.ofEpochMilli(6000L), Instant.ofEpochMilli(7000L)).isEmpty());
+            // removed events and events of other users are not read
+            handler2.removeModel(window.get(0));
+            assertEquals("answer3", handler2.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L)).get(0).answer);
+            assertTrue(new InMemoryStateHandler(session, store2, keyScheme).withUserId("otherUser").readLastEvents(EventModel.class, 10).isEmpty());
+            session.getAttributes().clear();
+        }
+    }
+
+    @Test
+    public void writeAndReadScores() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        // each player writes its own score only
+        new InMemoryStateHandler(session, store2).withUserId("anna").writeScore("quiz", 30);
+        new InMemoryStateHandler(session, store2).withUserId("bob").writeScore("quiz", 50);
+        new InMemoryStateHandler(session, store2).withUserId("carl").writeScore("quiz", 30);
+        new InMemoryStateHandler(session, store2).withUserId("dora").writeScore("quiz", 10);
+        new InMemoryStateHandler(session, store2).withUserId("dora").writeScore("trivia", 99);
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2).withUserId("carl");
+
+        final List<AlexaStateScore> top = handler2.readTopScores("quiz", 3);
+        assertEquals(3, top.size());
+        assertEquals(new AlexaStateScore("bob", 50, 1), top.get(0));
+        // same score shares the rank
+        assertEquals(new AlexaStateScore("anna", 30, 2), top.get(1));
+        assertEquals(new AlexaStateScore("carl", 30, 2), top.get(2));
+        assertEquals(4, handler2.readTopScores("quiz", 10).size());
+
+        assertEquals(Optional.of(new AlexaStateScore("carl", 30, 2)), handler2.readScore("quiz"));
+        assertFalse(handler2.readScore("trivia").isPresent());
+
+        // a new score replaces the former one
+        handler2.writeScore("quiz", 60);
+        assertEquals(Optional.of(new AlexaStateScore("carl", 60, 1)), handler2.readScore("quiz"));
+        assertEquals(Integer.valueOf(4), handler2.withUserId("dora").readScore("quiz").map(AlexaStateScore::getRank).orElse(0));
+
+        handler2.withUserId("carl").removeScore("quiz");
+        assertFalse(handler2.readScore("quiz").isPresent());
+        assertEquals("bob", handler2.readTopScores("quiz", 1).get(0).getUserId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeScoreWithoutLeaderboard() throws Exception {
+        handler.writeScore(" ", 1);
+    }
+
+    @Test
+    public void writeAndReadIndexedModels() throws Exception {
+        final InMemoryStateHandler.Store store2 = new InMemoryStateHandler.Store();
+        for (final String userId : Arrays.asList("anna", "bob", "carl")) {
+            final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2).withUserId(userId);
+            final IndexedModel model = handler2.createModel(IndexedModel.class, modelId);
+            model.tier = "carl".equals(userId) ? "silver" : "gold";
+            handler2.writeModel(model);
+            session.getAttributes().clear();
+        }
+        final InMemoryStateHandler handler2 = new InMemoryStateHandler(session, store2).withUserId("anna");
+        assertEquals(Arrays.asList("anna", "bob"), handler2.readUserIds(IndexedModel.class, "tier", "gold"));
+        assertEquals(Collections.singletonList("carl"), handler2.readUserIds(IndexedModel.class, "tier", "silver"));
+        assertTrue(handler2.readUserIds(IndexedModel.class, "tier", "bronze").isEmpty());
+
+        // changing the value moves the user to the other value
+        final IndexedModel model = handler2.readModel(IndexedModel.class, modelId).get();
+        model.tier = "silver";
+        handler2.writeModel(model);
+        assertEquals(Collections.singletonList("bob"), handler2.readUserIds(IndexedModel.class, "tier", "gold"));
+        // users come in the order of the keys of their index entries
+        assertEquals(Arrays.asList("anna", "carl"), handler2.readUserIds(IndexedModel.class, "tier", "silver"));
+
+        // a null value and removing the model remove the user from the index
+        model.tier = null;
+        handler2.writeModel(model);
+        assertEquals(Collections.singletonList("carl"), handler2.readUserIds(IndexedModel.class, "tier", "silver"));
+        final InMemoryStateHandler handler3 = new InMemoryStateHandler(session, store2).withUserId("bob");
+        handler3.removeModel(handler3.readModel(IndexedModel.class, modelId).get());
+        assertTrue(handler3.readUserIds(IndexedModel.class, "tier", "gold").isEmpty());
+        session.getAttributes().clear();
+    }
+}
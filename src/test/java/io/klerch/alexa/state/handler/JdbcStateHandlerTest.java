@@ -0,0 +1,286 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.dummies.AliasedModel;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.IndexedModel;
+import io.klerch.alexa.state.model.AlexaStateKeyCodec;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.model.dummies.Model;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class JdbcStateHandlerTest extends AlexaStateHandlerTest<JdbcStateHandler> {
+    private static final JdbcDataSource dataSource = new JdbcDataSource();
+
+    static {
+        // embedded in-memory database kept alive for the lifetime of the JVM
+        dataSource.setURL("jdbc:h2:mem:alexa;DB_CLOSE_DELAY=-1");
+    }
+
+    @Override
+    public JdbcStateHandler givenHandler() throws Exception {
+        return new JdbcStateHandler(session, dataSource);
+    }
+
+    @Test
+    public void getDataSourceAndTableName() throws Exception {
+        assertEquals(dataSource, handler.getDataSource());
+        assertTrue(handler.getTableName().matches("[a-zA-Z0-9_]+"));
+        assertTrue(handler.getTableName().startsWith("alexa_"));
+
+        final JdbcStateHandler handler2 = new JdbcStateHandler(session, dataSource, "tableName");
+        assertEquals("tableName", handler2.getTableName());
+        assertEquals("tableName_scores", handler2.getScoreTableName());
+        assertEquals("tableName_index", handler2.getIndexTableName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegalTableName() throws Exception {
+        new JdbcStateHandler(session, dataSource, "table; DROP TABLE x");
+    }
+
+    @Test
+    public void upsertModels() throws Exception {
+        final Model model = givenModel(modelId);
+        final Model model2 = givenModel(modelId2);
+        handler.writeModels(Arrays.asList(model, model2));
+        model.sampleUser = "updatedValue";
+        // first one updates the existing rows, second one inserts new rows
+        handler.writeModels(Arrays.asList(model, givenModel(absentModelId)));
+
+        try (final Connection connection = dataSource.getConnection();
+             final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + handler.getTableName() +
+                     " WHERE " + JdbcStateHandler.pkModel + " IN ('" + model.getAttributeKey() + "', '" + model2.getAttributeKey() + "')")) {
+            assertTrue(resultSet.next());
+            // one user-scoped and one app-scoped row per model
+            assertEquals(4, resultSet.getInt(1));
+        }
+
+        session.getAttributes().clear();
+        assertEquals("updatedValue", handler.readModel(Model.class, modelId).get().sampleUser);
+        assertTrue(handler.exists(Model.class, absentModelId, AlexaScope.USER));
+        handler.removeModels(Arrays.asList(model, model2, givenModel(absentModelId)));
+        assertFalse(handler.exists(Model.class, modelId, AlexaScope.USER));
+    }
+
+    @Test
+    public void readModelWithLegacyKey() throws Exception {
+        final AliasedModel model = handler.createModel(AliasedModel.class, modelId);
+        model.sampleUser = "userValue";
+        // state saved before the model got an alias
+        handler.writeValue(AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, modelId), model.toJSON(AlexaScope.USER), AlexaScope.USER);
+        session.getAttributes().clear();
+        assertEquals("userValue", handler.readModel(AliasedModel.class, modelId).get().sampleUser);
+
+        // saving the model writes it with its alias and removing it removes the legacy state as well
+        handler.writeModel(model);
+        assertTrue(handler.readValue(model.getAttributeKey(), AlexaScope.USER).isPresent());
+        handler.removeModel(model);
+        session.getAttributes().clear();
+        assertFalse(handler.readModel(AliasedModel.class, modelId).isPresent());
+        assertFalse(handler.readValue(AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, modelId), AlexaScope.USER).isPresent());
+    }
+
+    @Test
+    public void appendAndReadEvents() throws Exception {
+        // the database outlives the test so events go to a user of their own
+        final JdbcStateHandler handler2 = new JdbcStateHandler(session, dataSource).withUserId("eventUser");
+        assertTrue(handler2.supportsRangeReads());
+        for (int i = 1; i <= 5; i++) {
+            final EventModel event = handler2.createModel(EventModel.class, AlexaStateEvent.createId(Instant.ofEpochMilli(1000L * i)));
+            event.answer = "answer" + i;
+            handler2.appendEvent(event);
+        }
+        // other models do not show up in the event log
+        handler2.writeModel(handler2.createModel(Model.class, modelId));
+        session.getAttributes().clear();
+
+        final List<EventModel> last = handler2.readLastEvents(EventModel.class, 2);
+        assertEquals(2, last.size());
+        assertEquals("answer4", last.get(0).answer);
+        assertEquals("answer5", last.get(1).answer);
+        assertEquals(5, handler2.readLastEvents(EventModel.class, 10).size());
+
+        // the end of a time window is exclusive even if an event matches it exactly
+        final List<EventModel> window = handler2.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L));
+        assertEquals(2, window.size());
+        assertEquals("answer2", window.get(0).answer);
+        assertEquals("answer3", window.get(1).answer);
+        assertTrue(handler2.readEvents(EventModel.class, Instant.ofEpochMilli(6000L), Instant.ofEpochMilli(7000L)).isEmpty());
+
+        // events of other users are not read
+        assertTrue(new JdbcStateHandler(session, dataSource).withUserId("otherUser").readLastEvents(EventModel.class, 10).isEmpty());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void writeAndReadScores() throws Exception {
+        assertTrue(handler.supportsLeaderboards());
+        handler.withUserId("anna").writeScore("quiz", 30);
+        handler.withUserId("bob").writeScore("quiz", 50);
+        handler.withUserId("carl").writeScore("quiz", 30);
+        handler.withUserId("dora").writeScore("quiz", 10);
+        handler.withUserId("dora").writeScore("trivia", 99);
+        handler.withUserId("carl");
+
+        final List<AlexaStateScore> top = handler.readTopScores("quiz", 3);
+        assertEquals(3, top.size());
+        assertEquals(new AlexaStateScore("bob", 50, 1), top.get(0));
+        // same score shares the rank
+        assertEquals(new AlexaStateScore("anna", 30, 2), top.get(1));
+        assertEquals(new AlexaStateScore("carl", 30, 2), top.get(2));
+        assertEquals(4, handler.readTopScores("quiz", 10).size());
+
+        assertEquals(Optional.of(new AlexaStateScore("carl", 30, 2)), handler.readScore("quiz"));
+        assertFalse(handler.readScore("trivia").isPresent());
+
+        // a new score replaces the former one
+        handler.writeScore("quiz", 60);
+        assertEquals(Optional.of(new AlexaStateScore("carl", 60, 1)), handler.readScore("quiz"));
+
+        handler.removeScore("quiz");
+        assertFalse(handler.readScore("quiz").isPresent());
+        assertEquals("bob", handler.readTopScores("quiz", 1).get(0).getUserId());
+    }
+
+    @Test
+    public void writeAndReadIndexedModels() throws Exception {
+        assertTrue(handler.supportsIndexes());
+        for (final String userId : Arrays.asList("anna", "bob", "carl")) {
+            final IndexedModel model = handler.withUserId(userId).createModel(IndexedModel.class, modelId);
+            model.tier = "carl".equals(userId) ? "silver" : "gold";
+            handler.writeModel(model);
+            session.getAttributes().clear();
+        }
+        handler.withUserId("anna");
+        // users come ordered by their ids
+        assertEquals(Arrays.asList("anna", "bob"), handler.readUserIds(IndexedModel.class, "tier", "gold"));
+        assertEquals(Collections.singletonList("carl"), handler.readUserIds(IndexedModel.class, "tier", "silver"));
+        assertTrue(handler.readUserIds(IndexedModel.class, "tier", "bronze").isEmpty());
+
+        // changing the value moves the user to the other value
+        final IndexedModel model = handler.readModel(IndexedModel.class, modelId).get();
+        model.tier = "silver";
+        handler.writeModel(model);
+        assertEquals(Collections.singletonList("bob"), handler.readUserIds(IndexedModel.class, "tier", "gold"));
+        assertEquals(Arrays.asList("anna", "carl"), handler.readUserIds(IndexedModel.class, "tier", "silver"));
+
+        // a null value and removing the model remove the user from the index
+        model.tier = null;
+        handler.writeModel(model);
+        assertEquals(Collections.singletonList("carl"), handler.readUserIds(IndexedModel.class, "tier", "silver"));
+        session.getAttributes().clear();
+        handler.withUserId("bob").removeModel(handler.readModel(IndexedModel.class, modelId).get());
+        assertTrue(handler.readUserIds(IndexedModel.class, "tier", "gold").isEmpty());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void writeIndexedModelInOneTransaction() throws Exception {
+        // statements prepared by the handler prefixed with the number of the connection they were prepared on
+        final List<String> statements = new ArrayList<>();
+        final int[] connections = { 0 };
+        final DataSource recordingDataSource = (DataSource) Proxy.newProxyInstance(JdbcStateHandlerTest.class.getClassLoader(), new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+            final Object result = invoke(method, dataSource, args);
+            if (!(result instanceof Connection)) {
+                return result;
+            }
+            final int connection = ++connections[0];
+            return Proxy.newProxyInstance(JdbcStateHandlerTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (connectionProxy, connectionMethod, connectionArgs) -> {
+                if (connectionMethod.getName().equals("prepareStatement")) {
+                    statements.add(connection + " " + connectionArgs[0]);
+                }
+                return invoke(connectionMethod, result, connectionArgs);
+            });
+        });
+        final JdbcStateHandler handler2 = new JdbcStateHandler(session, recordingDataSource).withUserId("lockingUser");
+        final IndexedModel model = handler2.createModel(IndexedModel.class, modelId);
+        model.tier = "gold";
+        handler2.writeModel(model);
+        model.tier = "silver";
+        handler2.writeModel(model);
+        assertEquals(Collections.singletonList("lockingUser"), handler2.readUserIds(IndexedModel.class, "tier", "silver"));
+
+        // former index keys are read with a lock on the connection writing the index and the rows
+        final String lockingStatement = statements.stream().filter(sql -> sql.endsWith("FOR UPDATE")).reduce((first, second) -> second).get();
+        final String connection = lockingStatement.substring(0, lockingStatement.indexOf(' ') + 1);
+        assertTrue(statements.stream().anyMatch(sql -> sql.startsWith(connection + "DELETE FROM " + handler2.getIndexTableName())));
+        assertTrue(statements.stream().anyMatch(sql -> sql.startsWith(connection + "INSERT INTO " + handler2.getIndexTableName())));
+        assertTrue(statements.stream().anyMatch(sql -> sql.startsWith(connection + "MERGE INTO " + handler2.getTableName())));
+        // the database outlives the test so the user is removed from the index
+        handler2.removeModel(model);
+        assertTrue(handler2.readUserIds(IndexedModel.class, "tier", "silver").isEmpty());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void getUpsertSql() throws Exception {
+        assertTrue(JdbcStateHandler.getUpsertSql("H2", "t").startsWith("MERGE INTO t "));
+        assertTrue(JdbcStateHandler.getUpsertSql("MySQL", "t").endsWith("ON DUPLICATE KEY UPDATE state = VALUES(state)"));
+        assertTrue(JdbcStateHandler.getUpsertSql("PostgreSQL", "t").contains("ON CONFLICT (amzn_user_id, model_class)"));
+        assertNull(JdbcStateHandler.getUpsertSql("Apache Derby", "t"));
+    }
+
+    @Test
+    public void upsertWithoutNativeUpsert() throws Exception {
+        // database without a native upsert known to the handler
+        final JdbcStateHandler handler2 = new JdbcStateHandler(session, givenDataSourceOfUnknownDatabase());
+        final Model model = givenModel(modelId);
+        handler2.writeModel(model);
+        model.sampleUser = "updatedValue";
+        handler2.writeModels(Arrays.asList(model, givenModel(modelId2)));
+        session.getAttributes().clear();
+        assertEquals("updatedValue", handler2.readModel(Model.class, modelId).get().sampleUser);
+        assertTrue(handler2.readModel(Model.class, modelId2).isPresent());
+    }
+
+    private static DataSource givenDataSourceOfUnknownDatabase() {
+        return (DataSource) Proxy.newProxyInstance(JdbcStateHandlerTest.class.getClassLoader(), new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+            final Object result = invoke(method, dataSource, args);
+            if (!(result instanceof Connection)) {
+                return result;
+            }
+            return Proxy.newProxyInstance(JdbcStateHandlerTest.class.getClassLoader(), new Class<?>[] { Connection.class }, (connectionProxy, connectionMethod, connectionArgs) -> {
+                if (connectionMethod.getName().equals("getMetaData")) {
+                    final DatabaseMetaData metaData = ((Connection) result).getMetaData();
+                    return Proxy.newProxyInstance(JdbcStateHandlerTest.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class }, (metaDataProxy, metaDataMethod, metaDataArgs) ->
+                            metaDataMethod.getName().equals("getDatabaseProductName") ? "Unknown" : invoke(metaDataMethod, metaData, metaDataArgs));
+                }
+                return invoke(connectionMethod, result, connectionArgs);
+            });
+        });
+    }
+
+    private static Object invoke(final java.lang.reflect.Method method, final Object target, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.AlexaStateScore;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.IndexedModel;
+import io.klerch.alexa.state.model.dummies.Model;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+import org.mockito.stubbing.Answer;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RedisStateHandlerTest extends AlexaStateHandlerTest<RedisStateHandler> {
+    static final String keyPrefix = "keyPrefix";
+    // number of upcoming transactions aborted as if the watched key was written concurrently
+    private int transactionsToAbort = 0;
+
+    @Override
+    public RedisStateHandler givenHandler() throws Exception {
+        // hashes and sorted sets of a local stand-in for the Redis server
+        final Map<String, Map<String, String>> hashes = new HashMap<>();
+        final Map<String, Map<String, Double>> sortedSets = new HashMap<>();
+        // applies a command to the local hashes and sorted sets right away and returns its result
+        final Answer<Object> commands = invocation -> {
+            final String methodName = invocation.getMethod().getName();
+            final Object[] args = invocation.getArguments();
+            if (args.length == 0 || !(args[0] instanceof String)) {
+                return null;
+            }
+            if (methodName.startsWith("z")) {
+                final Map<String, Double> sortedSet = sortedSets.computeIfAbsent(invocation.getArgumentAt(0, String.class), k -> new HashMap<>());
+                switch (methodName) {
+                    case "zadd":
+                        return sortedSet.put(invocation.getArgumentAt(2, String.class), invocation.getArgumentAt(1, Double.class)) == null ? 1L : 0L;
+                    case "zrem":
+                        long removed = 0;
+                        for (int i = 1; i < args.length; i++) {
+                            removed += sortedSet.remove(String.valueOf(args[i])) != null ? 1 : 0;
+                        }
+                        return removed;
+                    case "zscore":
+                        return sortedSet.get(invocation.getArgumentAt(1, String.class));
+                    case "zcount":
+                        final double min = Double.parseDouble(invocation.getArgumentAt(1, String.class).substring(1));
+                        return sortedSet.values().stream().filter(score -> score > min).count();
+                    case "zrevrangeWithScores":
+                        // members with equal scores are returned in reverse lexicographical order
+                        final Set<Tuple> tuples = new LinkedHashSet<>();
+                        sortedSet.entrySet().stream()
+                                .sorted(Map.Entry.<String, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()).reversed())
+                                .map(entry -> new Tuple(entry.getKey(), entry.getValue()))
+                                .limit(invocation.getArgumentAt(2, Long.class) + 1)
+                                .forEach(tuples::add);
+                        return tuples;
+                    case "zrangeByLex":
+                    case "zrevrangeByLex":
+                        // members are expected to have the same score and are given an inclusive and an exclusive bound
+                        final boolean reverse = methodName.equals("zrevrangeByLex");
+                        final String from = String.valueOf(args[reverse ? 2 : 1]).substring(1);
+                        final String to = String.valueOf(args[reverse ? 1 : 2]).substring(1);
+                        final Set<String> members = new LinkedHashSet<>();
+                        sortedSet.keySet().stream()
+                                .filter(member -> member.compareTo(from) >= 0 && member.compareTo(to) < 0)
+                                .sorted(reverse ? Comparator.reverseOrder() : Comparator.naturalOrder())
+                                .skip((Integer) args[3])
+                                .limit((Integer) args[4])
+                                .forEach(members::add);
+                        return members;
+                }
+            }
+            if (methodName.equals("hmset")) {
+                // hmset is only ever given a map of field names to string values
+                @SuppressWarnings("unchecked")
+                final Map<String, String> fields = (Map<String, String>) args[1];
+                hashes.computeIfAbsent(invocation.getArgumentAt(0, String.class), k -> new HashMap<>()).putAll(fields);
+                return "OK";
+            }
+            if (methodName.equals("hset")) {
+                final Map<String, String> hash = hashes.computeIfAbsent(invocation.getArgumentAt(0, String.class), k -> new HashMap<>());
+                return hash.put(invocation.getArgumentAt(1, String.class), invocation.getArgumentAt(2, String.class)) == null ? 1L : 0L;
+            }
+            final Map<String, String> hash = hashes.getOrDefault(invocation.getArgumentAt(0, String.class), new HashMap<>());
+            if (methodName.equals("hmget")) {
+                final List<String> values = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    values.add(hash.get(String.valueOf(args[i])));
+                }
+                return values;
+            }
+            if (methodName.equals("hdel")) {
+                long removed = 0;
+                for (int i = 1; i < args.length; i++) {
+                    removed += hash.remove(String.valueOf(args[i])) != null ? 1 : 0;
+                }
+                return removed;
+            }
+            if (methodName.equals("hvals")) {
+                return new ArrayList<>(hash.values());
+            }
+            if (methodName.equals("hexists")) {
+                return hash.containsKey(invocation.getArgumentAt(1, String.class));
+            }
+            return null;
+        };
+        // mock a pipeline which immediately applies all commands
+        final Pipeline pipeline = Mockito.mock(Pipeline.class, (Answer) invocation -> givenResponse(commands.answer(invocation)));
+        // mock a transaction which immediately applies all commands unless it is going to be aborted
+        final List<Invocation> queued = new ArrayList<>();
+        final Transaction transaction = Mockito.mock(Transaction.class, (Answer) invocation -> {
+            if (invocation.getMethod().getName().equals("exec")) {
+                final List<Object> results = new ArrayList<>();
+                if (transactionsToAbort > 0) {
+                    transactionsToAbort--;
+                } else {
+                    for (final Invocation command : queued) {
+                        results.add(commands.answer(command));
+                    }
+                }
+                queued.clear();
+                return results;
+            }
+            queued.add((Invocation) invocation);
+            return givenResponse(null);
+        });
+        final Jedis jedis = Mockito.mock(Jedis.class, (Answer) invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "pipelined": return pipeline;
+                case "multi": return transaction;
+                case "watch": return "OK";
+                default: return commands.answer(invocation);
+            }
+        });
+        final JedisPool jedisPool = Mockito.mock(JedisPool.class);
+        Mockito.when(jedisPool.getResource()).thenReturn(jedis);
+        // return handler with mocked Redis connection
+        return new RedisStateHandler(session, jedisPool, keyPrefix);
+    }
+
+    private static <T> Response<T> givenResponse(final T value) {
+        final Response<T> response = new Response<>(new Builder<T>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T build(final Object data) {
+                return (T)data;
+            }
+        });
+        response.set(value);
+        return response;
+    }
+
+    @Test
+    public void getJedisPoolAndKeyPrefix() throws Exception {
+        assertNotNull(handler.getJedisPool());
+        assertEquals(keyPrefix, handler.getKeyPrefix());
+
+        final RedisStateHandler handler2 = new RedisStateHandler(session, handler.getJedisPool());
+        assertEquals("alexa-" + session.getApplication().getApplicationId(), handler2.getKeyPrefix());
+    }
+
+    @Test
+    public void getHashKeys() throws Exception {
+        assertEquals(keyPrefix + ":" + session.getUser().getUserId(), handler.getUserScopedHashKey());
+        assertEquals(keyPrefix + ":" + RedisStateHandler.hashKeyApp, handler.getAppScopedHashKey());
+        assertEquals(keyPrefix + ":customUserId", handler.withUserId("customUserId").getUserScopedHashKey());
+    }
+
+    @Test
+    public void writeAndReadScores() throws Exception {
+        assertTrue(handler.supportsLeaderboards());
+        handler.withUserId("anna").writeScore("quiz", 30);
+        handler.withUserId("bob").writeScore("quiz", 50);
+        handler.withUserId("carl").writeScore("quiz", 30);
+        handler.withUserId("dora").writeScore("quiz", 10);
+        handler.withUserId("dora").writeScore("trivia", 99);
+        handler.withUserId("carl");
+
+        final List<AlexaStateScore> top = handler.readTopScores("quiz", 3);
+        assertEquals(3, top.size());
+        assertEquals(new AlexaStateScore("bob", 50, 1), top.get(0));
+        // same score shares the rank
+        assertEquals(new AlexaStateScore("carl", 30, 2), top.get(1));
+        assertEquals(new AlexaStateScore("anna", 30, 2), top.get(2));
+        assertEquals(4, handler.readTopScores("quiz", 10).size());
+
+        assertEquals(Optional.of(new AlexaStateScore("carl", 30, 2)), handler.readScore("quiz"));
+        assertFalse(handler.readScore("trivia").isPresent());
+
+        // a new score replaces the former one
+        handler.writeScore("quiz", 60);
+        assertEquals(Optional.of(new AlexaStateScore("carl", 60, 1)), handler.readScore("quiz"));
+
+        handler.removeScore("quiz");
+        assertFalse(handler.readScore("quiz").isPresent());
+        assertEquals("bob", handler.readTopScores("quiz", 1).get(0).getUserId());
+    }
+
+    @Test
+    public void appendAndReadEvents() throws Exception {
+        assertTrue(handler.supportsRangeReads());
+        for (int i = 1; i <= 5; i++) {
+            final EventModel event = handler.createModel(EventModel.class, AlexaStateEvent.createId(Instant.ofEpochMilli(1000L * i)));
+            event.answer = "answer" + i;
+            handler.appendEvent(event);
+        }
+        // other models do not show up in the event log
+        handler.writeModel(handler.createModel(Model.class, modelId));
+        session.getAttributes().clear();
+
+        final List<EventModel> last = handler.readLastEvents(EventModel.class, 2);
+        assertEquals(2, last.size());
+        assertEquals("answer4", last.get(0).answer);
+        assertEquals("answer5", last.get(1).answer);
+
+        // the end of a time window is exclusive even if an event matches it exactly
+        final List<EventModel> window = handler.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L));
+        assertEquals(2, window.size());
+        assertEquals("answer2", window.get(0).answer);
+        assertEquals("answer3", window.get(1).answer);
+
+        // a removed event is no longer read
+        handler.removeModel(window.get(0));
+        assertEquals(4, handler.readLastEvents(EventModel.class, 10).size());
+        assertEquals("answer3", handler.readEvents(EventModel.class, Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(4000L)).get(0).answer);
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void writeAndReadIndexedModels() throws Exception {
+        assertTrue(handler.supportsIndexes());
+        for (final String userId : Arrays.asList("anna", "bob", "carl")) {
+            final IndexedModel model = handler.withUserId(userId).createModel(IndexedModel.class, modelId);
+            model.tier = "carl".equals(userId) ? "silver" : "gold";
+            handler.writeModel(model);
+            session.getAttributes().clear();
+        }
+        handler.withUserId("anna");
+        assertEquals(new HashSet<>(Arrays.asList("anna", "bob")), new HashSet<>(handler.readUserIds(IndexedModel.class, "tier", "gold")));
+        assertEquals(Collections.singletonList("carl"), handler.readUserIds(IndexedModel.class, "tier", "silver"));
+        assertTrue(handler.readUserIds(IndexedModel.class, "tier", "bronze").isEmpty());
+
+        // changing the value moves the user to the other value
+        final IndexedModel model = handler.readModel(IndexedModel.class, modelId).get();
+        model.tier = "silver";
+        handler.writeModel(model);
+        assertEquals(Collections.singletonList("bob"), handler.readUserIds(IndexedModel.class, "tier", "gold"));
+        assertEquals(new HashSet<>(Arrays.asList("anna", "carl")), new HashSet<>(handler.readUserIds(IndexedModel.class, "tier", "silver")));
+
+        // a null value and removing the model remove the user from the index
+        model.tier = null;
+        handler.writeModel(model);
+        assertEquals(Collections.singletonList("carl"), handler.readUserIds(IndexedModel.class, "tier", "silver"));
+        session.getAttributes().clear();
+        handler.withUserId("bob").removeModel(handler.readModel(IndexedModel.class, modelId).get());
+        assertTrue(handler.readUserIds(IndexedModel.class, "tier", "gold").isEmpty());
+        session.getAttributes().clear();
+    }
+
+    @Test
+    public void retryIndexUpdateOnConcurrentWrite() throws Exception {
+        final IndexedModel model = handler.withUserId("anna").createModel(IndexedModel.class, modelId);
+        model.tier = "gold";
+        // the first transaction is aborted as the user-hash is written in the meantime
+        transactionsToAbort = 1;
+        handler.writeModel(model);
+        assertEquals(0, transactionsToAbort);
+        assertEquals(Collections.singletonList("anna"), handler.readUserIds(IndexedModel.class, "tier", "gold"));
+        session.getAttributes().clear();
+    }
+
+    @Test(expected = AlexaStateException.class)
+    public void failIndexUpdateOnRepeatedConcurrentWrites() throws Exception {
+        final IndexedModel model = handler.withUserId("anna").createModel(IndexedModel.class, modelId);
+        model.tier = "gold";
+        transactionsToAbort = Integer.MAX_VALUE;
+        handler.writeModel(model);
+    }
+}
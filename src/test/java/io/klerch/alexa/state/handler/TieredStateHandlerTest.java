@@ -0,0 +1,128 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.handler;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.dummies.EventModel;
+import io.klerch.alexa.state.model.dummies.Model;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class TieredStateHandlerTest extends AlexaStateHandlerTest<TieredStateHandler> {
+    private static final JdbcDataSource fastDataSource = new JdbcDataSource();
+    private static final JdbcDataSource durableDataSource = new JdbcDataSource();
+
+    static {
+        // two embedded in-memory databases kept alive for the lifetime of the JVM
+        fastDataSource.setURL("jdbc:h2:mem:fast;DB_CLOSE_DELAY=-1");
+        durableDataSource.setURL("jdbc:h2:mem:durable;DB_CLOSE_DELAY=-1");
+    }
+
+    @Override
+    public TieredStateHandler givenHandler() throws Exception {
+        return new TieredStateHandler(session, new JdbcStateHandler(session, fastDataSource), new JdbcStateHandler(session, durableDataSource));
+    }
+
+    @Test
+    public void getTiersAndPolicies() throws Exception {
+        assertNotNull(handler.getFastTier());
+        assertNotNull(handler.getDurableTier());
+        assertEquals(TieredStateHandler.TierPolicy.WRITE_THROUGH, handler.getPolicy(AlexaScope.USER));
+        assertEquals(TieredStateHandler.TierPolicy.WRITE_THROUGH, handler.getPolicy(AlexaScope.APPLICATION));
+        handler.withPolicy(AlexaScope.APPLICATION, TieredStateHandler.TierPolicy.WRITE_BACK);
+        assertEquals(TieredStateHandler.TierPolicy.WRITE_BACK, handler.getPolicy(AlexaScope.APPLICATION));
+    }
+
+    @Test
+    public void noRangeReadsWithoutCapableDurableTier() throws Exception {
+        assertTrue(handler.supportsRangeReads());
+        final TieredStateHandler handler2 = new TieredStateHandler(session, handler.getFastTier(), mock(AlexaStateHandler.class));
+        assertFalse(handler2.supportsRangeReads());
+        try {
+            handler2.readLastEvents(EventModel.class, 1);
+            fail("Events should not be read without range reads.");
+        } catch (final AlexaStateException e) {
+            // expected as the durable tier cannot read ranges
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noPolicyForSessionScope() throws Exception {
+        handler.withPolicy(AlexaScope.SESSION, TieredStateHandler.TierPolicy.WRITE_BACK);
+    }
+
+    @Test
+    public void writeBackValue() throws Exception {
+        handler.withPolicy(AlexaScope.USER, TieredStateHandler.TierPolicy.WRITE_BACK);
+        handler.writeValue(modelId, stateModelValue, AlexaScope.USER);
+
+        assertTrue(handler.hasPendingWrites());
+        assertTrue(isValueInTier(handler.getFastTier(), modelId));
+        assertFalse(isValueInTier(handler.getDurableTier(), modelId));
+
+        handler.flush();
+        assertFalse(handler.hasPendingWrites());
+        assertTrue(isValueInTier(handler.getDurableTier(), modelId));
+
+        handler.removeValue(modelId);
+        assertFalse(isValueInTier(handler.getFastTier(), modelId));
+        assertFalse(isValueInTier(handler.getDurableTier(), modelId));
+    }
+
+    @Test
+    public void removeDiscardsWriteBack() throws Exception {
+        handler.withPolicy(AlexaScope.USER, TieredStateHandler.TierPolicy.WRITE_BACK)
+                .withPolicy(AlexaScope.APPLICATION, TieredStateHandler.TierPolicy.WRITE_BACK);
+        final Model model = givenModel(modelId);
+        handler.writeModel(model);
+        assertTrue(handler.hasPendingWrites());
+        handler.removeModel(model);
+        assertFalse(handler.hasPendingWrites());
+        handler.flush();
+        assertFalse(isModelInTier(handler.getDurableTier(), modelId));
+    }
+
+    @Test
+    public void writeAroundToDurableTier() throws Exception {
+        handler.withPolicy(AlexaScope.USER, TieredStateHandler.TierPolicy.WRITE_AROUND)
+                .withPolicy(AlexaScope.APPLICATION, TieredStateHandler.TierPolicy.WRITE_AROUND);
+        final Model model = givenModel(modelId2);
+        handler.writeModel(model);
+        // only written to durable tier
+        assertFalse(isModelInTier(handler.getFastTier(), modelId2));
+        assertTrue(isModelInTier(handler.getDurableTier(), modelId2));
+
+        session.getAttributes().clear();
+        final Optional<Model> model2 = handler.readModel(Model.class, modelId2);
+        assertTrue(model2.isPresent());
+        assertEquals(handler, model2.get().getHandler());
+        assertEquals(model.sampleUser, model2.get().sampleUser);
+        // read from durable tier put the model to the fast tier
+        assertTrue(isModelInTier(handler.getFastTier(), modelId2));
+
+        handler.removeModel(model);
+        assertFalse(isModelInTier(handler.getFastTier(), modelId2));
+        assertFalse(isModelInTier(handler.getDurableTier(), modelId2));
+    }
+
+    // tiers share the session with the tiered handler so it needs to be cleared to reach out to the tier's backend
+    private boolean isModelInTier(final AlexaStateHandler tier, final String id) throws Exception {
+        session.getAttributes().clear();
+        return tier.readModel(Model.class, id).isPresent();
+    }
+
+    private boolean isValueInTier(final AlexaStateHandler tier, final String id) throws Exception {
+        session.getAttributes().clear();
+        return tier.readValue(id, AlexaScope.USER).isPresent();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.model.dummies.ChunkedModel;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateChunkedListTest {
+    @Test
+    public void addAndGet() throws Exception {
+        final AlexaStateChunkedList<Integer> list = new AlexaStateChunkedList<>(2);
+        assertTrue(list.isEmpty());
+        assertEquals(0, list.getChunkCount());
+        list.addAll(Arrays.asList(1, 2, 3));
+        assertEquals(3, list.size());
+        assertEquals(2, list.getChunkCount());
+        assertEquals(Integer.valueOf(3), list.get(2));
+        assertEquals(Arrays.asList(1, 2), list.getPage(0));
+        list.set(0, 0);
+        assertEquals(Integer.valueOf(0), list.get(0));
+        final Iterator<Integer> iterator = list.iterator();
+        assertEquals(Integer.valueOf(0), iterator.next());
+        assertEquals(Integer.valueOf(2), iterator.next());
+        assertEquals(Integer.valueOf(3), iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getOutOfBounds() throws Exception {
+        new AlexaStateChunkedList<Integer>().get(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidChunkSize() throws Exception {
+        new AlexaStateChunkedList<Integer>(0);
+    }
+
+    @Test
+    public void toAndFromJSON() throws Exception {
+        final ChunkedModel model = new ChunkedModel();
+        model.setId("id");
+        model.history.addAll(Arrays.asList(1, 2, 3));
+        final String json = model.toJSON(AlexaScope.USER);
+        // only the header of the list is saved with the model
+        assertEquals("{\"id\":\"id\",\"sampleUser\":null,\"h\":{\"chunkSize\":2,\"size\":3}}", json);
+
+        final ChunkedModel model2 = new ChunkedModel();
+        model2.setId("id");
+        model2.fromJSON(json, AlexaScope.USER);
+        assertEquals(3, model2.history.size());
+        assertEquals(2, model2.history.getChunkSize());
+        assertFalse(model2.history.isLoaded(0));
+        assertEquals(ChunkedModel.class.getTypeName() + ":id#h#chunk1", model2.history.getChunkKey(1));
+        assertEquals(AlexaScope.USER, model2.history.getScope());
+    }
+
+    @Test
+    public void getUnsavedChunks() throws Exception {
+        final ChunkedModel model = new ChunkedModel();
+        model.history.addAll(Arrays.asList(1, 2, 3));
+        model.getChunkedLists();
+        final List<AlexaStateObject> chunks = model.history.getUnsavedChunks();
+        assertEquals(2, chunks.size());
+        assertEquals("[1,2]", chunks.get(0).getValue());
+        assertEquals("[3]", chunks.get(1).getValue());
+        model.history.markAsSaved();
+        assertTrue(model.history.getUnsavedChunks().isEmpty());
+        model.history.add(4);
+        assertEquals(1, model.history.getUnsavedChunks().size());
+    }
+}
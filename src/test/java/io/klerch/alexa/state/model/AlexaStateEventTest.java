@@ -0,0 +1,50 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.model.dummies.EventModel;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateEventTest {
+    @Test
+    public void createId() throws Exception {
+        final Instant time = Instant.ofEpochMilli(1500000000000L);
+        final String id = AlexaStateEvent.createId(time);
+        assertTrue(id.startsWith("1500000000000-"));
+        assertEquals(20, id.length());
+        // ids of the same time differ and ids of later times are greater
+        assertNotEquals(id, AlexaStateEvent.createId(time));
+        assertTrue(AlexaStateEvent.createId(time.plusMillis(1)).compareTo(id) > 0);
+        assertTrue(AlexaStateEvent.createId(Instant.ofEpochMilli(2L)).compareTo(AlexaStateEvent.createId(Instant.ofEpochMilli(10L))) < 0);
+    }
+
+    @Test
+    public void getIdPrefix() throws Exception {
+        assertEquals("0000000000042", AlexaStateEvent.getIdPrefix(Instant.ofEpochMilli(42L)));
+        assertEquals("9999999999999", AlexaStateEvent.getIdPrefix(AlexaStateEvent.getMaxTime()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getIdPrefixBeforeEpoch() throws Exception {
+        AlexaStateEvent.getIdPrefix(Instant.ofEpochMilli(-1L));
+    }
+
+    @Test
+    public void getTime() throws Exception {
+        final EventModel event = new EventModel();
+        assertNull(event.getTime());
+        final Instant time = Instant.ofEpochMilli(1500000000000L);
+        event.setId(AlexaStateEvent.createId(time));
+        assertEquals(time, event.getTime());
+        event.setId("no-time");
+        assertNull(event.getTime());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateFieldAccessorTest {
+    @Test
+    public void isPrimitive() throws Exception {
+        assertTrue(accessor("score").isPrimitive());
+        assertTrue(accessor("highscore").isPrimitive());
+        assertTrue(accessor("ratio").isPrimitive());
+        assertTrue(accessor("weight").isPrimitive());
+        assertTrue(accessor("active").isPrimitive());
+        assertFalse(accessor("name").isPrimitive());
+        assertFalse(accessor("boxed").isPrimitive());
+        // getter with another return type is left to the reflective path
+        assertFalse(accessor("level").isPrimitive());
+    }
+
+    @Test
+    public void getAndSet() throws Exception {
+        final PrimitiveModel model = new PrimitiveModel();
+        accessor("score").setInt(model, 10);
+        accessor("highscore").setLong(model, 20L);
+        accessor("ratio").setDouble(model, 0.5);
+        accessor("weight").setFloat(model, 1.5f);
+        accessor("active").setBoolean(model, true);
+        // setter is preferred over the field
+        assertEquals(11, model.score);
+        assertEquals(12, accessor("score").getInt(model));
+        assertEquals(20L, accessor("highscore").getLong(model));
+        assertEquals(0.5, accessor("ratio").getDouble(model), 0);
+        assertEquals(1.5f, accessor("weight").getFloat(model), 0);
+        assertTrue(accessor("active").getBoolean(model));
+    }
+
+    @Test(expected = AlexaStateException.class)
+    public void getWithWrongType() throws Exception {
+        accessor("score").getLong(new PrimitiveModel());
+    }
+
+    @Test
+    public void copyAndCompare() throws Exception {
+        final PrimitiveModel model = new PrimitiveModel();
+        final PrimitiveModel model2 = new PrimitiveModel();
+        model.highscore = 20L;
+        assertFalse(accessor("highscore").hasSameValue(model, model2));
+        accessor("highscore").copy(model, model2);
+        assertEquals(20L, model2.highscore);
+        assertTrue(accessor("highscore").hasSameValue(model, model2));
+    }
+
+    @Test
+    public void toAndFromJSON() throws Exception {
+        final PrimitiveModel model = new PrimitiveModel();
+        model.highscore = 20L;
+        model.ratio = 0.5;
+        model.weight = 1.5f;
+        model.active = true;
+        final String json = model.toJSON(AlexaScope.SESSION);
+        assertEquals("{\"id\":null,\"score\":1,\"highscore\":20,\"ratio\":0.5,\"weight\":1.5,\"active\":true,\"name\":null,\"boxed\":null}", json);
+
+        final PrimitiveModel model2 = new PrimitiveModel();
+        model2.fromJSON(json);
+        assertEquals(20L, model2.highscore);
+        assertEquals(0.5, model2.ratio, 0);
+        assertEquals(1.5f, model2.weight, 0);
+        assertTrue(model2.active);
+    }
+
+    private static AlexaStateFieldAccessor accessor(final String fieldName) throws NoSuchFieldException {
+        return AlexaStateFieldAccessor.of(PrimitiveModel.class, PrimitiveModel.class.getDeclaredField(fieldName));
+    }
+
+    public static class PrimitiveModel extends AlexaStateModel {
+        @AlexaStateSave private int score;
+        @AlexaStateSave public long highscore;
+        @AlexaStateSave public double ratio;
+        @AlexaStateSave public float weight;
+        @AlexaStateSave public boolean active;
+        @AlexaStateSave public String name;
+        @AlexaStateSave public Integer boxed;
+        public int level;
+
+        public int getScore() {
+            return score + 1;
+        }
+
+        public void setScore(final int score) {
+            this.score = score + 1;
+        }
+
+        public String getLevel() {
+            return String.valueOf(level);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.model.dummies.IndexedModel;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateIndexTest {
+    @Test
+    public void getIndexKey() throws Exception {
+        final String prefix = AlexaStateKeyCodec.encode(IndexedModel.class, null);
+        // the index key is made of the persisted name of the field and the json of the value
+        assertEquals(prefix + "#t=\"gold\"", AlexaStateIndex.getIndexKey(IndexedModel.class, "tier", "gold"));
+        assertEquals("tier", AlexaStateIndex.getIndexedField(IndexedModel.class, "tier").getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getIndexKeyOfFieldNotIndexed() throws Exception {
+        AlexaStateIndex.getIndexKey(IndexedModel.class, "level", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getIndexKeyOfFieldNotInUserScope() throws Exception {
+        AlexaStateIndex.getIndexKey(IndexedModel.class, "region", "eu");
+    }
+
+    @Test
+    public void getEntries() throws Exception {
+        final IndexedModel model = new IndexedModel();
+        model.setId("id");
+        final String entryKey = model.getAttributeKey() + "#t#index";
+        assertEquals(Collections.singletonList(entryKey), AlexaStateIndex.getEntryKeys(model));
+        // entries of null values are to be removed
+        assertEquals(Collections.singletonMap(entryKey, null), AlexaStateIndex.getEntries(model));
+        model.tier = "gold";
+        final Map<String, String> entries = AlexaStateIndex.getEntries(model);
+        assertEquals(AlexaStateIndex.getIndexKey(IndexedModel.class, "tier", "gold"), entries.get(entryKey));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ * <p>
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.model.dummies.AliasedModel;
+import io.klerch.alexa.state.model.dummies.Model;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateKeyCodecTest {
+    @Test
+    public void encode() throws Exception {
+        assertEquals(Model.class.getTypeName(), AlexaStateKeyCodec.encode(Model.class, null));
+        assertEquals(Model.class.getTypeName(), AlexaStateKeyCodec.encode(Model.class, ""));
+        assertEquals(Model.class.getTypeName() + ":id", AlexaStateKeyCodec.encode(Model.class, "id"));
+    }
+
+    @Test
+    public void decode() throws Exception {
+        assertEquals("id", AlexaStateKeyCodec.decode(Model.class, AlexaStateKeyCodec.encode(Model.class, "id")));
+        assertNull(AlexaStateKeyCodec.decode(Model.class, AlexaStateKeyCodec.encode(Model.class, null)));
+        assertNull(AlexaStateKeyCodec.decode(Model.class, Model.class.getTypeName() + ": "));
+        assertNull(AlexaStateKeyCodec.decode(Model.class, null));
+        // keys of other models
+        assertNull(AlexaStateKeyCodec.decode(Model.class, AlexaStateKeyCodec.encode(UserModelStub.class, "id")));
+    }
+
+    @Test
+    public void decodeIdContainingTypeName() throws Exception {
+        final String id = "io-klerch-Model-Model";
+        assertEquals(id, AlexaStateKeyCodec.decode(Model.class, AlexaStateKeyCodec.encode(Model.class, id)));
+        final String idWithSimpleName = "Model";
+        assertEquals(idWithSimpleName, AlexaStateKeyCodec.decode(Model.class, AlexaStateKeyCodec.encode(Model.class, idWithSimpleName)));
+    }
+
+    @Test
+    public void isValidId() throws Exception {
+        assertTrue(AlexaStateKeyCodec.isValidId("aZ09_-"));
+        assertFalse(AlexaStateKeyCodec.isValidId(""));
+        assertFalse(AlexaStateKeyCodec.isValidId(null));
+        assertFalse(AlexaStateKeyCodec.isValidId("a:b"));
+        assertFalse(AlexaStateKeyCodec.isValidId("a.b"));
+        assertFalse(AlexaStateKeyCodec.isValidId("ä"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateInvalidId() throws Exception {
+        AlexaStateKeyCodec.validateId("a b");
+    }
+
+    public static class UserModelStub extends AlexaStateModel {
+    }
+
+    @Test
+    public void encodeAndDecodeWithAlias() throws Exception {
+        assertTrue(AlexaStateKeyCodec.hasAlias(AliasedModel.class));
+        assertFalse(AlexaStateKeyCodec.hasAlias(Model.class));
+        assertEquals("aliased:id", AlexaStateKeyCodec.encode(AliasedModel.class, "id"));
+        assertEquals(AliasedModel.class.getTypeName() + ":id", AlexaStateKeyCodec.encodeLegacy(AliasedModel.class, "id"));
+        // ids are resolved from new and legacy keys
+        assertEquals("id", AlexaStateKeyCodec.decode(AliasedModel.class, "aliased:id"));
+        assertEquals("id", AlexaStateKeyCodec.decode(AliasedModel.class, AliasedModel.class.getTypeName() + ":id"));
+    }
+
+    @Test
+    public void registerAlias() throws Exception {
+        AlexaStateKeyCodec.registerAlias(RegisteredModelStub.class, "registered");
+        assertEquals("registered", AlexaStateKeyCodec.encode(RegisteredModelStub.class, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerAliasTwice() throws Exception {
+        AlexaStateKeyCodec.encode(AliasedModel.class, null);
+        AlexaStateKeyCodec.registerAlias(UserModelStub.class, "aliased");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerInvalidAlias() throws Exception {
+        AlexaStateKeyCodec.registerAlias(UserModelStub.class, "io.klerch");
+    }
+
+    public static class RegisteredModelStub extends AlexaStateModel {
+    }
+}
@@ -32,4 +32,26 @@ public class AlexaStateModelFactoryTest {
         assertEquals(id, model.getId());
     }
 
+    @Test
+    public void createModelWithRegisteredFactory() throws Exception {
+        final AlexaSessionStateHandler handler = new AlexaSessionStateHandler(null);
+        // no parameterless constructor
+        assertNull(AlexaStateModelFactory.createModel(NamedModel.class, handler));
+
+        AlexaStateModelFactory.registerFactory(NamedModel.class, () -> new NamedModel("name"));
+        final NamedModel model = AlexaStateModelFactory.createModel(NamedModel.class, handler, "id");
+        assertNotNull(model);
+        assertEquals("name", model.name);
+        assertEquals("id", model.getId());
+        assertEquals(handler, model.getHandler());
+        assertNotSame(model, AlexaStateModelFactory.createModel(NamedModel.class, handler, "id"));
+    }
+
+    public static class NamedModel extends AlexaStateModel {
+        @AlexaStateSave public String name;
+
+        public NamedModel(final String name) {
+            this.name = name;
+        }
+    }
 }
\ No newline at end of file
@@ -15,8 +15,12 @@ import io.klerch.alexa.state.model.dummies.*;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -188,6 +192,60 @@ public class AlexaStateModelTest {
         assertEquals(model.toJSON(AlexaScope.APPLICATION), json);
     }
 
+    @Test
+    public void toJSONWithShortName() throws Exception {
+        final String json = "{\"id\":null,\"sampleUser\":null,\"s\":\"value\"}";
+        final AliasedModel model = new AliasedModel();
+        model.sampleShortName = "value";
+        assertEquals(json, model.toJSON(AlexaScope.USER));
+    }
+
+    @Test
+    public void fromJSONWithShortName() throws Exception {
+        final AliasedModel model = new AliasedModel();
+        model.fromJSON("{\"s\":\"value\"}", AlexaScope.USER);
+        assertEquals("value", model.sampleShortName);
+        // state saved with the full name of the field
+        model.fromJSON("{\"sampleShortName\":\"value2\"}", AlexaScope.USER);
+        assertEquals("value2", model.sampleShortName);
+    }
+
+    @Test
+    public void fromJSONWithFieldNames() throws Exception {
+        final AliasedModel model = new AliasedModel();
+        final String json = "{\"id\":null,\"sampleUser\":\"user\",\"s\":\"value\"}";
+        assertTrue(model.fromJSON(json, AlexaScope.USER, Collections.singletonList("sampleShortName")));
+        assertEquals("value", model.sampleShortName);
+        // other fields are skipped
+        assertNull(model.sampleUser);
+        assertFalse(model.fromJSON(json, AlexaScope.USER, Collections.singletonList("sampleIgnore")));
+        assertTrue(model.fromJSON(json, AlexaScope.USER, Collections.singletonList("sampleUser")));
+        assertEquals("user", model.sampleUser);
+    }
+
+    @Test
+    public void toJSONSparse() throws Exception {
+        final SparseModel model = new SparseModel();
+        assertEquals("{}", model.toJSON(AlexaScope.USER));
+        model.setId("id");
+        model.score = 10;
+        model.level = 0;
+        model.badges.add("first");
+        assertEquals("{\"id\":\"id\",\"score\":10,\"level\":0,\"badges\":[\"first\"]}", model.toJSON(AlexaScope.USER));
+    }
+
+    @Test
+    public void fromJSONSparse() throws Exception {
+        final SparseModel model = new SparseModel();
+        model.name = "name";
+        model.fromJSON("{\"score\":10}", AlexaScope.USER);
+        // fields not contained in sparse state are left untouched
+        assertEquals("name", model.name);
+        assertEquals(10, model.score);
+        assertEquals(1, model.level);
+        assertTrue(model.badges.isEmpty());
+    }
+
     @Test
     public void toMapInScope() throws Exception {
         final String value = "value";
@@ -318,4 +376,22 @@ public class AlexaStateModelTest {
         assertFalse(fields.stream().filter(x -> x.getName().equals("sampleIgnoreApplication")).findAny().isPresent());
         assertFalse(fields.stream().filter(x -> x.getName().equals("sampleIgnore")).findAny().isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shallowSizeWithinBudget() throws Exception {
+        // besides its own single field an instance only holds its id and handler (plus object header and padding).
+        // sizes of headers and references depend on the JVM so the model is compared with a plain object measured here
+        final long instanceSize = ClassLayout.parseClass(EmptyModel.class).instanceSize();
+        final long baselineSize = ClassLayout.parseClass(ThreeReferences.class).instanceSize();
+        assertTrue("Shallow size of a model is " + instanceSize + " bytes but should not exceed " + baselineSize + " bytes.", instanceSize <= baselineSize);
+        assertEquals(2, Arrays.stream(AlexaStateModel.class.getDeclaredFields())
+                .filter(field -> !Modifier.isStatic(field.getModifiers())).count());
+    }
+
+    @SuppressWarnings("unused")
+    private static class ThreeReferences {
+        private Object first;
+        private Object second;
+        private Object third;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import io.klerch.alexa.state.model.dummies.AliasedModel;
+import io.klerch.alexa.state.model.dummies.RefModel;
+import io.klerch.alexa.state.utils.AlexaStateException;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateRefTest {
+    @Test
+    public void getKey() throws Exception {
+        final AlexaStateRef<AliasedModel> ref = AlexaStateRef.of(AliasedModel.class, "id");
+        assertEquals(AliasedModel.class, ref.getModelClass());
+        assertEquals("id", ref.getId());
+        assertEquals("aliased:id", ref.getKey());
+        assertEquals("aliased", AlexaStateRef.of(AliasedModel.class, null).getKey());
+        assertFalse(ref.isResolved());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ofWithInvalidId() throws Exception {
+        AlexaStateRef.of(AliasedModel.class, "in:valid");
+    }
+
+    @Test
+    public void to() throws Exception {
+        final AliasedModel model = new AliasedModel();
+        model.setId("id");
+        final AlexaStateRef<AliasedModel> ref = AlexaStateRef.to(model);
+        assertTrue(ref.isResolved());
+        assertSame(model, ref.get().get());
+        assertEquals(AlexaStateRef.of(AliasedModel.class, "id"), ref);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getWithoutHandler() throws Exception {
+        AlexaStateRef.of(AliasedModel.class, "id").get();
+    }
+
+    @Test
+    public void toAndFromJSON() throws Exception {
+        final RefModel model = new RefModel();
+        model.aliased = AlexaStateRef.of(AliasedModel.class, "id");
+        model.aliasedList.add(AlexaStateRef.of(AliasedModel.class, "id2"));
+        model.next = AlexaStateRef.of(RefModel.class, null);
+        final String json = model.toJSON(AlexaScope.USER);
+        assertEquals("{\"id\":null,\"aliased\":\"aliased:id\",\"aliasedList\":[\"aliased:id2\"],\"next\":\"" + RefModel.class.getTypeName() + "\"}", json);
+
+        final RefModel model2 = new RefModel();
+        model2.fromJSON(json, AlexaScope.USER);
+        assertEquals(model.aliased, model2.aliased);
+        assertEquals(model.aliasedList, model2.aliasedList);
+        assertEquals(model.next, model2.next);
+        assertEquals(3, model2.getStateRefs().size());
+
+        final RefModel model3 = new RefModel();
+        model3.fromJSON(json, AlexaScope.USER, Collections.singletonList("aliased"));
+        assertEquals(model.aliased, model3.aliased);
+        assertNull(model3.next);
+    }
+
+    @Test(expected = AlexaStateException.class)
+    public void fromJSONWithForeignKey() throws Exception {
+        new RefModel().fromJSON("{\"aliased\":\"other:id\"}", AlexaScope.USER);
+    }
+}
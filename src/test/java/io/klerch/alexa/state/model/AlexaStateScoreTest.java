@@ -0,0 +1,29 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlexaStateScoreTest {
+    @Test
+    public void getters() throws Exception {
+        final AlexaStateScore score = new AlexaStateScore("userId", 42.5, 3);
+        assertEquals("userId", score.getUserId());
+        assertEquals(42.5, score.getScore(), 0.0);
+        assertEquals(3, score.getRank());
+        assertEquals(new AlexaStateScore("userId", 42.5, 3), score);
+        assertEquals(new AlexaStateScore("userId", 42.5, 3).hashCode(), score.hashCode());
+        assertNotEquals(new AlexaStateScore("userId", 42.5, 2), score);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRank() throws Exception {
+        new AlexaStateScore("userId", 1, 0);
+    }
+}
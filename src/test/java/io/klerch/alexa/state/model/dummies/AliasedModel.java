@@ -0,0 +1,19 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateAlias;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+@AlexaStateAlias(Name = "aliased")
+public class AliasedModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.USER) public String sampleUser;
+    @AlexaStateSave(Scope = AlexaScope.USER, Name = "s") public String sampleShortName;
+    public AliasedModel() {}
+}
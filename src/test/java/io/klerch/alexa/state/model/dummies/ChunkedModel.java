@@ -0,0 +1,18 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateChunkedList;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+public class ChunkedModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.USER) public String sampleUser;
+    @AlexaStateSave(Scope = AlexaScope.USER, Name = "h") public AlexaStateChunkedList<Integer> history = new AlexaStateChunkedList<>(2);
+    public ChunkedModel() {}
+}
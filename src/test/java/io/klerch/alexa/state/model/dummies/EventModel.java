@@ -0,0 +1,16 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateEvent;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+public class EventModel extends AlexaStateEvent {
+    @AlexaStateSave(Scope = AlexaScope.USER) public String answer;
+    public EventModel() {}
+}
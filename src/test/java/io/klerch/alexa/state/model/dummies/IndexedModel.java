@@ -0,0 +1,19 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+public class IndexedModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.USER, Name = "t", Indexed = true) public String tier;
+    @AlexaStateSave(Scope = AlexaScope.USER) public int level;
+    // only fields in user scope are indexed
+    @AlexaStateSave(Scope = AlexaScope.APPLICATION, Indexed = true) public String region;
+    public IndexedModel() {}
+}
@@ -0,0 +1,21 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateRef;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NestedRefModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.USER) public Map<String, List<AlexaStateRef<AliasedModel>>> aliasedByName = new HashMap<>();
+    public NestedRefModel() {}
+}
@@ -0,0 +1,22 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateRef;
+import io.klerch.alexa.state.model.AlexaStateSave;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RefModel extends AlexaStateModel {
+    @AlexaStateSave(Scope = AlexaScope.USER) public AlexaStateRef<AliasedModel> aliased;
+    @AlexaStateSave(Scope = AlexaScope.USER) public List<AlexaStateRef<AliasedModel>> aliasedList = new ArrayList<>();
+    @AlexaStateSave(Scope = AlexaScope.USER) public AlexaStateRef<RefModel> next;
+    public RefModel() {}
+}
@@ -0,0 +1,25 @@
+/**
+ * Made by Kay Lerch (https://twitter.com/KayLerch)
+ *
+ * Attached license applies.
+ * This library is licensed under GNU GENERAL PUBLIC LICENSE Version 3 as of 29 June 2007
+ */
+package io.klerch.alexa.state.model.dummies;
+
+import io.klerch.alexa.state.model.AlexaScope;
+import io.klerch.alexa.state.model.AlexaStateModel;
+import io.klerch.alexa.state.model.AlexaStateSave;
+import io.klerch.alexa.state.model.AlexaStateSparse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@AlexaStateSparse
+@AlexaStateSave(Scope = AlexaScope.USER)
+public class SparseModel extends AlexaStateModel {
+    public String name;
+    public int score;
+    public int level = 1;
+    public List<String> badges = new ArrayList<>();
+    public SparseModel() {}
+}